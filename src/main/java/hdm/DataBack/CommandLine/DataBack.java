@@ -1,13 +1,20 @@
 package hdm.DataBack.CommandLine;
 
 import hdm.DataBack.JDBCExporter.Backup.BackupController;
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
+import hdm.DataBack.JDBCExporter.Backup.CaptureOptions;
+import hdm.DataBack.JDBCExporter.Backup.CaptureSession;
+import hdm.DataBack.JDBCExporter.Backup.RestoreOptions;
+import hdm.DataBack.JDBCExporter.FileCodec;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 
 @Command(name = "databack", mixinStandardHelpOptions = true, version = "DataBack 1.0",
         description = "Backup and restore PostgreSQL databases with ease.")
@@ -23,6 +30,8 @@ public class DataBack implements Callable<Integer> {
         int exitCode = new CommandLine(new DataBack())
                 .addSubcommand(new BackupCommand())
                 .addSubcommand(new RestoreCommand())
+                .addSubcommand(new CaptureCommand())
+                .setCaseInsensitiveEnumValuesAllowed(true)
                 .execute(args);
         System.out.println("\033[1;226m" + """
                 
@@ -68,6 +77,51 @@ public class DataBack implements Callable<Integer> {
         @Option(names = {"--password"}, required = true, description = "the password for the user")
         private String password;
 
+        @Option(names = {"--fetch-size"}, required = false, defaultValue = "10000", description = "number of rows fetched per round trip while streaming table data")
+        private int fetchSize;
+
+        @Option(names = {"--jobs"}, required = false, defaultValue = "1", description = "number of connections exporting tables in parallel from one consistent snapshot")
+        private int jobs;
+
+        @Option(names = {"--diff-mode"}, required = false, defaultValue = "MEMORY", description = "how incremental changes are computed: ${COMPLETION-CANDIDATES} (merge streams PK-sorted exports and needs constant memory, server lets the database compute the changes)")
+        private BackupOptions.DiffMode diffMode;
+
+        @Option(names = {"--checkpoint-interval"}, required = false, defaultValue = "10", description = "write a full snapshot checkpoint of a table every N versions, 0 to disable")
+        private int checkpointInterval;
+
+        @Option(names = {"--checkpoint-size"}, required = false, defaultValue = "0", description = "write a full snapshot checkpoint of a table once its incremental files since the last checkpoint exceed this many MB, 0 to disable")
+        private long checkpointSizeMb;
+
+        @Option(names = {"--layout"}, required = false, defaultValue = "FORWARD", description = "storage layout of a new backup repository: ${COMPLETION-CANDIDATES} (reverse keeps the newest version in full and older versions as backward deltas)")
+        private BackupOptions.Layout layout;
+
+        @Option(names = {"--change-detection"}, required = false, defaultValue = "HASH", description = "skip tables that did not change since the previous backup: ${COMPLETION-CANDIDATES} (hash compares a server-side hash of all rows, stats uses the table statistics and is best effort)")
+        private BackupOptions.ChangeDetection changeDetection;
+
+        @Option(names = {"--extraction"}, required = false, defaultValue = "FULL", description = "how rows are extracted for incremental backups: ${COMPLETION-CANDIDATES} (watermark fetches only rows changed since the previous backup)")
+        private BackupOptions.Extraction extraction;
+
+        @Option(names = {"--watermark-column"}, required = false, description = "watermark column of a table as <table>=<column>, use xmin for the transaction ID; can be repeated")
+        private Map<String, String> watermarkColumns;
+
+        @Option(names = {"--watermark-lag"}, required = false, defaultValue = "300", description = "seconds a stored timestamp watermark is moved back to catch transactions that committed late")
+        private int watermarkLagSeconds;
+
+        @Option(names = {"--compression-level"}, required = false, defaultValue = "0", description = "gzip level of the backup files from 1 (fastest) to 9 (smallest), 0 to write them uncompressed")
+        private int compressionLevel;
+
+        @Option(names = {"--compression-threads"}, required = false, defaultValue = "0", description = "number of threads compressing blocks of large files in parallel, 0 for one per CPU core")
+        private int compressionThreads;
+
+        @Option(names = {"--codec"}, required = false, defaultValue = "JSON", description = "encoding of the backup files of a new backup repository: ${COMPLETION-CANDIDATES} (smile is a compact binary JSON, json stays readable)")
+        private FileCodec codec;
+
+        @Option(names = {"--table-format"}, required = false, defaultValue = "ROWS", description = "storage of full table snapshots of a new backup repository: ${COMPLETION-CANDIDATES} (columnar stores segments of columns with light encodings)")
+        private BackupOptions.TableFormat tableFormat;
+
+        @Option(names = {"--deduplicate"}, required = false, description = "store full table snapshots of a new backup repository as content-defined chunks shared between versions")
+        private boolean deduplicate;
+
         /**
          * Executes the backup operation.
          *
@@ -78,7 +132,25 @@ public class DataBack implements Callable<Integer> {
             System.out.printf("Backing up database '%s'",
                     url);
             try {
-                BackupController backupController = new BackupController(url, user, password);
+                BackupOptions options = new BackupOptions();
+                options.setFetchSize(fetchSize);
+                options.setJobs(jobs);
+                options.setDiffMode(diffMode);
+                options.setCheckpointInterval(checkpointInterval);
+                options.setCheckpointDeltaBytes(checkpointSizeMb * 1024 * 1024);
+                options.setLayout(layout);
+                options.setChangeDetection(changeDetection);
+                options.setExtraction(extraction);
+                options.setWatermarkColumns(watermarkColumns);
+                options.setWatermarkLagSeconds(watermarkLagSeconds);
+                options.setCompressionLevel(compressionLevel);
+                options.setCodec(codec);
+                options.setTableFormat(tableFormat);
+                options.setDeduplicate(deduplicate);
+                if (compressionThreads > 0) {
+                    options.setCompressionThreads(compressionThreads);
+                }
+                BackupController backupController = new BackupController(url, user, password, options);
                 backupController.performBackup();
             } catch (SQLException | IOException e) {
                 throw new RuntimeException(e);
@@ -108,6 +180,12 @@ public class DataBack implements Callable<Integer> {
         @Option(names = {"--version"}, required = false, description = "version name (in Form \"v<VERSION_NUMBER>\"")
         private String version;
 
+        @Option(names = {"--cache-size"}, required = false, defaultValue = "1024", description = "maximum size in MB of the cache of reconstructed older versions, 0 to disable")
+        private long cacheSizeMb;
+
+        @Option(names = {"--jobs"}, required = false, defaultValue = "1", description = "number of connections loading tables in parallel")
+        private int jobs;
+
         /**
          * Executes the restore operation.
          * - If no version is provided, restores the most recent backup.
@@ -119,7 +197,10 @@ public class DataBack implements Callable<Integer> {
         public Integer call() {
             System.out.printf("Restoring database '%s' from '%s'%n", url, version);
             try {
-                BackupController backupController = new BackupController(url, user, password);
+                RestoreOptions options = new RestoreOptions();
+                options.setCacheBytes(cacheSizeMb * 1024 * 1024);
+                options.setJobs(jobs);
+                BackupController backupController = new BackupController(url, user, password, options);
                 if (version == null) {
                     backupController.restoreLastBackup();
                 }else {
@@ -132,4 +213,98 @@ public class DataBack implements Callable<Integer> {
             return 0;
         }
     }
+
+    /**
+     * Command to capture the changes of a PostgreSQL database continuously through logical decoding.
+     * - Requires database URL, user, and password; the user needs the REPLICATION privilege.
+     * - Runs until it is interrupted or the optional duration has passed.
+     */
+    @Command(name = "capture", mixinStandardHelpOptions = true,
+            description = "Continuously capture changes of a PostgreSQL database (wal_level=logical) as backup versions.")
+    static class CaptureCommand implements Callable<Integer> {
+
+        @Option(names = {"--db-url"}, required = true, description = "url of the postgres database without user and password")
+        private String url;
+
+        @Option(names = {"--user"}, required = true, description = "Name of the user with access to the database")
+        private String user;
+
+        @Option(names = {"--password"}, required = true, description = "the password for the user")
+        private String password;
+
+        @Option(names = {"--slot"}, required = false, defaultValue = CaptureOptions.DEFAULT_SLOT_NAME, description = "name of the logical replication slot, created with a base backup if it does not exist")
+        private String slotName;
+
+        @Option(names = {"--roll-interval"}, required = false, defaultValue = "60", description = "write captured changes as a new version every N seconds")
+        private long rollIntervalSeconds;
+
+        @Option(names = {"--roll-changes"}, required = false, defaultValue = "100000", description = "write a new version as soon as this many row changes were captured")
+        private int rollChanges;
+
+        @Option(names = {"--duration"}, required = false, defaultValue = "0", description = "stop capturing after N seconds, 0 to run until interrupted")
+        private long durationSeconds;
+
+        @Option(names = {"--fetch-size"}, required = false, defaultValue = "10000", description = "number of rows fetched per round trip while exporting tables in full")
+        private int fetchSize;
+
+        @Option(names = {"--checkpoint-interval"}, required = false, defaultValue = "10", description = "write a full snapshot checkpoint of a table every N versions, 0 to disable")
+        private int checkpointInterval;
+
+        @Option(names = {"--compression-level"}, required = false, defaultValue = "0", description = "gzip level of the backup files from 1 (fastest) to 9 (smallest), 0 to write them uncompressed")
+        private int compressionLevel;
+
+        @Option(names = {"--compression-threads"}, required = false, defaultValue = "0", description = "number of threads compressing blocks of large files in parallel, 0 for one per CPU core")
+        private int compressionThreads;
+
+        @Option(names = {"--codec"}, required = false, defaultValue = "JSON", description = "encoding of the backup files of a new backup repository: ${COMPLETION-CANDIDATES} (smile is a compact binary JSON, json stays readable)")
+        private FileCodec codec;
+
+        @Option(names = {"--table-format"}, required = false, defaultValue = "ROWS", description = "storage of full table snapshots of a new backup repository: ${COMPLETION-CANDIDATES} (columnar stores segments of columns with light encodings)")
+        private BackupOptions.TableFormat tableFormat;
+
+        @Option(names = {"--deduplicate"}, required = false, description = "store full table snapshots of a new backup repository as content-defined chunks shared between versions")
+        private boolean deduplicate;
+
+        /**
+         * Executes the capture operation until it is interrupted or the duration has passed.
+         *
+         * @return exit code 0
+         */
+        @Override
+        public Integer call() {
+            System.out.printf("Capturing changes of database '%s'%n", url);
+            BackupOptions backupOptions = new BackupOptions();
+            backupOptions.setFetchSize(fetchSize);
+            backupOptions.setCheckpointInterval(checkpointInterval);
+            backupOptions.setCompressionLevel(compressionLevel);
+            backupOptions.setCodec(codec);
+            backupOptions.setTableFormat(tableFormat);
+            backupOptions.setDeduplicate(deduplicate);
+            if (compressionThreads > 0) {
+                backupOptions.setCompressionThreads(compressionThreads);
+            }
+            CaptureOptions captureOptions = new CaptureOptions();
+            captureOptions.setSlotName(slotName);
+            captureOptions.setRollIntervalSeconds(rollIntervalSeconds);
+            captureOptions.setRollChanges(rollChanges);
+            captureOptions.setDurationSeconds(durationSeconds);
+            CountDownLatch finished = new CountDownLatch(1);
+            try (CaptureSession session = new CaptureSession(url, user, password, backupOptions, captureOptions)) {
+                // Bei Ctrl+C die letzten Änderungen noch als Version schreiben
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    session.stop();
+                    try {
+                        finished.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }));
+                session.capture();
+            } catch (SQLException | IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                finished.countDown();
+            }
+            return 0;
+        }
+    }
 }
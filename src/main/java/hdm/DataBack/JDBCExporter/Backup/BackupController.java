@@ -27,11 +27,51 @@ public class BackupController {
      * @throws SQLException if a database access error occurs
      */
     public BackupController(String url, String user, String password) throws SQLException {
+        this(url, user, password, new BackupOptions());
+    }
+
+    /**
+     * Constructor for BackupController that initializes database connection and backup operations with custom options.
+     *
+     * @param url the database connection URL (e.g., jdbc:postgresql://localhost:5432/databack)
+     * @param user the username with access to the database
+     * @param password the password for the database user
+     * @param options the options controlling how backups are created
+     * @throws SQLException if a database access error occurs
+     */
+    public BackupController(String url, String user, String password, BackupOptions options) throws SQLException {
+        this(url, user, password, options, new RestoreOptions());
+    }
+
+    /**
+     * Constructor for BackupController that initializes database connection and restore operations with custom options.
+     *
+     * @param url the database connection URL (e.g., jdbc:postgresql://localhost:5432/databack)
+     * @param user the username with access to the database
+     * @param password the password for the database user
+     * @param restoreOptions the options controlling how backups are restored
+     * @throws SQLException if a database access error occurs
+     */
+    public BackupController(String url, String user, String password, RestoreOptions restoreOptions) throws SQLException {
+        this(url, user, password, new BackupOptions(), restoreOptions);
+    }
+
+    /**
+     * Constructor for BackupController that initializes database connection and backup operations with custom options.
+     *
+     * @param url the database connection URL (e.g., jdbc:postgresql://localhost:5432/databack)
+     * @param user the username with access to the database
+     * @param password the password for the database user
+     * @param options the options controlling how backups are created
+     * @param restoreOptions the options controlling how backups are restored
+     * @throws SQLException if a database access error occurs
+     */
+    public BackupController(String url, String user, String password, BackupOptions options, RestoreOptions restoreOptions) throws SQLException {
         this.connection = DriverManager.getConnection(url, user, password);
         this.logger = new Logger();
         this.fileWriter = new FileWriter();
-        this.createBackup = new CreateBackup(connection, logger, fileWriter);
-        this.restoreBackup = new RestoreBackup(connection, logger);
+        this.createBackup = new CreateBackup(connection, logger, fileWriter, options, () -> DriverManager.getConnection(url, user, password));
+        this.restoreBackup = new RestoreBackup(connection, logger, restoreOptions, () -> DriverManager.getConnection(url, user, password));
     }
 
     /**
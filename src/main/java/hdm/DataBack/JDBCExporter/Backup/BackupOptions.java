@@ -0,0 +1,353 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+import hdm.DataBack.JDBCExporter.FileCodec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class BackupOptions {
+    public static final int DEFAULT_FETCH_SIZE = 10000;
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 10;
+    public static final int DEFAULT_WATERMARK_LAG_SECONDS = 300;
+
+    public enum DiffMode {
+        /** Loads both versions of a table into memory and diffs them through hash lookups. */
+        MEMORY,
+        /** Exports tables sorted by primary key and diffs them with a streaming merge-join. */
+        MERGE,
+        /** Loads the previous version into a temporary table and lets the database compute the changes; only the changes are transferred. */
+        SERVER
+    }
+
+    public enum Layout {
+        /** Stores the first version in full and every later version as changes against its predecessor. */
+        FORWARD,
+        /** Stores the newest version in full and every older version as changes against its successor. */
+        REVERSE
+    }
+
+    public enum TableFormat {
+        /** Stores full table snapshots as an array of rows in the codec of the repository. */
+        ROWS,
+        /** Stores full table snapshots column by column in segments with dictionary, delta and run-length encodings. */
+        COLUMNAR
+    }
+
+    public enum ChangeDetection {
+        /** Exports every table in every backup. */
+        OFF,
+        /**
+         * Skips tables whose insert/update/delete counters and data file in pg_stat_user_tables did not move.
+         * Best effort: the counters are flushed asynchronously, so a change committed shortly before the backup can be missed.
+         */
+        STATS,
+        /** Skips tables whose row count and order-independent hash over all rows, computed on the server, did not change. */
+        HASH
+    }
+
+    public enum Extraction {
+        /** Exports every changed table in full and computes its changes client-side. */
+        FULL,
+        /** Fetches only the rows changed since a stored watermark (a timestamp column or xmin) plus the keys of all rows. */
+        WATERMARK
+    }
+
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int jobs = 1;
+    private DiffMode diffMode = DiffMode.MEMORY;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private long checkpointDeltaBytes = 0;
+    private Layout layout = Layout.FORWARD;
+    private ChangeDetection changeDetection = ChangeDetection.HASH;
+    private Extraction extraction = Extraction.FULL;
+    private Map<String, String> watermarkColumns = new HashMap<>();
+    private int watermarkLagSeconds = DEFAULT_WATERMARK_LAG_SECONDS;
+    private int compressionLevel = 0;
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private FileCodec codec = FileCodec.JSON;
+    private TableFormat tableFormat = TableFormat.ROWS;
+    private boolean deduplicate = false;
+
+    /**
+     * Returns the number of rows the PostgreSQL driver fetches per round trip while streaming table data.
+     *
+     * @return the cursor fetch size
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows fetched per round trip while streaming table data.
+     * Values below 1 fall back to the default fetch size.
+     *
+     * @param fetchSize the cursor fetch size
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE;
+    }
+
+    /**
+     * Returns the number of connections that export tables in parallel.
+     *
+     * @return the number of parallel export jobs
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Sets the number of connections that export tables in parallel.
+     * A value of 1 exports all tables sequentially over the main connection.
+     *
+     * @param jobs the number of parallel export jobs
+     */
+    public void setJobs(int jobs) {
+        this.jobs = Math.max(1, jobs);
+    }
+
+    /**
+     * Returns how incremental changes are computed.
+     *
+     * @return the diff mode
+     */
+    public DiffMode getDiffMode() {
+        return diffMode;
+    }
+
+    /**
+     * Sets how incremental changes are computed.
+     *
+     * @param diffMode the diff mode, null for the in-memory diff
+     */
+    public void setDiffMode(DiffMode diffMode) {
+        this.diffMode = diffMode != null ? diffMode : DiffMode.MEMORY;
+    }
+
+    /**
+     * Returns after how many versions a table gets a new full snapshot checkpoint.
+     *
+     * @return the number of versions between checkpoints, 0 if checkpoints are not created by version count
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Sets after how many versions a table gets a new full snapshot checkpoint.
+     * Restoring a version then replays at most this many incremental files.
+     *
+     * @param checkpointInterval the number of versions between checkpoints, 0 to disable
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = Math.max(0, checkpointInterval);
+    }
+
+    /**
+     * Returns the cumulative size of incremental files after which a table gets a new checkpoint.
+     *
+     * @return the size threshold in bytes, 0 if checkpoints are not created by size
+     */
+    public long getCheckpointDeltaBytes() {
+        return checkpointDeltaBytes;
+    }
+
+    /**
+     * Sets the cumulative size of incremental files since the last checkpoint after which a table gets a new checkpoint.
+     *
+     * @param checkpointDeltaBytes the size threshold in bytes, 0 to disable
+     */
+    public void setCheckpointDeltaBytes(long checkpointDeltaBytes) {
+        this.checkpointDeltaBytes = Math.max(0, checkpointDeltaBytes);
+    }
+
+    /**
+     * Returns the storage layout used when a new backup repository is created.
+     *
+     * @return the layout of the version chain
+     */
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Sets the storage layout used when a new backup repository is created.
+     * An existing repository keeps the layout it was created with.
+     *
+     * @param layout the layout of the version chain, null for the forward layout
+     */
+    public void setLayout(Layout layout) {
+        this.layout = layout != null ? layout : Layout.FORWARD;
+    }
+
+    /**
+     * Returns how unchanged tables are detected before the export.
+     *
+     * @return the change detection mode
+     */
+    public ChangeDetection getChangeDetection() {
+        return changeDetection;
+    }
+
+    /**
+     * Sets how unchanged tables are detected before the export.
+     * Tables whose change signal did not move since the previous backup are not exported again;
+     * the new version only records that they are unchanged.
+     *
+     * @param changeDetection the change detection mode, null for the default HASH
+     */
+    public void setChangeDetection(ChangeDetection changeDetection) {
+        this.changeDetection = changeDetection != null ? changeDetection : ChangeDetection.HASH;
+    }
+
+    /**
+     * Returns how the rows of a table are extracted for an incremental backup.
+     *
+     * @return the extraction mode
+     */
+    public Extraction getExtraction() {
+        return extraction;
+    }
+
+    /**
+     * Sets how the rows of a table are extracted for an incremental backup.
+     * In watermark mode, tables with a primary key only transfer the rows changed since the previous backup.
+     *
+     * @param extraction the extraction mode, null for FULL
+     */
+    public void setExtraction(Extraction extraction) {
+        this.extraction = extraction != null ? extraction : Extraction.FULL;
+    }
+
+    /**
+     * Returns the configured watermark columns.
+     *
+     * @return a map where the key is the table name and the value is the watermark column or "xmin"
+     */
+    public Map<String, String> getWatermarkColumns() {
+        return watermarkColumns;
+    }
+
+    /**
+     * Sets the watermark column per table. Tables without an entry use a timestamp column named like
+     * "updated_at" if they have one, otherwise the transaction ID (xmin) of their rows.
+     *
+     * @param watermarkColumns a map where the key is the table name and the value is the watermark column or "xmin"
+     */
+    public void setWatermarkColumns(Map<String, String> watermarkColumns) {
+        this.watermarkColumns = watermarkColumns != null ? new HashMap<>(watermarkColumns) : new HashMap<>();
+    }
+
+    /**
+     * Returns how far a stored timestamp watermark is moved back.
+     *
+     * @return the safety lag in seconds
+     */
+    public int getWatermarkLagSeconds() {
+        return watermarkLagSeconds;
+    }
+
+    /**
+     * Sets how far a stored timestamp watermark is moved back. A transaction sets its timestamps before it commits,
+     * so a row can become visible after rows with a later timestamp were already backed up. Rows of transactions
+     * that commit within the lag are read again by the next backup instead of being missed.
+     *
+     * @param watermarkLagSeconds the safety lag in seconds, at least 0
+     */
+    public void setWatermarkLagSeconds(int watermarkLagSeconds) {
+        this.watermarkLagSeconds = Math.max(0, watermarkLagSeconds);
+    }
+
+    /**
+     * Returns the gzip level backup files are compressed with.
+     *
+     * @return the deflate level from 1 to 9, or 0 if files are written uncompressed
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the gzip level backup files are compressed with. Restoring reads compressed and uncompressed files alike.
+     *
+     * @param compressionLevel the deflate level from 1 (fastest) to 9 (smallest), 0 to write uncompressed files
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = Math.max(0, Math.min(9, compressionLevel));
+    }
+
+    /**
+     * Returns the number of threads compressing the blocks of one file.
+     *
+     * @return the number of compression threads
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * Sets the number of threads compressing the blocks of one file.
+     *
+     * @param compressionThreads the number of compression threads, at least 1
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = Math.max(1, compressionThreads);
+    }
+
+    /**
+     * Returns the codec the backup files are written in when a new backup repository is created.
+     *
+     * @return the codec of the backup files
+     */
+    public FileCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec the backup files are written in when a new backup repository is created.
+     * An existing repository keeps the codec it was created with.
+     *
+     * @param codec the codec of the backup files, null for JSON
+     */
+    public void setCodec(FileCodec codec) {
+        this.codec = codec != null ? codec : FileCodec.JSON;
+    }
+
+    /**
+     * Returns the format of full table snapshots when a new backup repository is created.
+     *
+     * @return the format of table snapshots
+     */
+    public TableFormat getTableFormat() {
+        return tableFormat;
+    }
+
+    /**
+     * Sets the format of full table snapshots when a new backup repository is created.
+     * An existing repository keeps the format it was created with.
+     *
+     * @param tableFormat the format of table snapshots, null for rows
+     */
+    public void setTableFormat(TableFormat tableFormat) {
+        this.tableFormat = tableFormat != null ? tableFormat : TableFormat.ROWS;
+    }
+
+    /**
+     * Returns whether full table snapshots are deduplicated in a chunk store when a new backup repository is created.
+     *
+     * @return true if table snapshots are stored as chunks
+     */
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Sets whether full table snapshots are cut into content-defined chunks that are stored once per repository
+     * when a new backup repository is created. An existing repository keeps the setting it was created with.
+     *
+     * @param deduplicate true to store table snapshots as chunks
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+}
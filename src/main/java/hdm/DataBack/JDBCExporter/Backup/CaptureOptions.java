@@ -0,0 +1,87 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+public class CaptureOptions {
+    public static final String DEFAULT_SLOT_NAME = "databack";
+    public static final long DEFAULT_ROLL_INTERVAL_SECONDS = 60;
+    public static final int DEFAULT_ROLL_CHANGES = 100000;
+
+    private String slotName = DEFAULT_SLOT_NAME;
+    private long rollIntervalSeconds = DEFAULT_ROLL_INTERVAL_SECONDS;
+    private int rollChanges = DEFAULT_ROLL_CHANGES;
+    private long durationSeconds = 0;
+
+    /**
+     * Returns the name of the logical replication slot the changes are read from.
+     *
+     * @return the slot name
+     */
+    public String getSlotName() {
+        return slotName;
+    }
+
+    /**
+     * Sets the name of the logical replication slot the changes are read from.
+     * The slot is created together with a base backup if it does not exist yet.
+     *
+     * @param slotName the slot name
+     */
+    public void setSlotName(String slotName) {
+        this.slotName = slotName;
+    }
+
+    /**
+     * Returns the time after which captured changes are written as a new backup version.
+     *
+     * @return the roll interval in seconds
+     */
+    public long getRollIntervalSeconds() {
+        return rollIntervalSeconds;
+    }
+
+    /**
+     * Sets the time after which captured changes are written as a new backup version.
+     * Versions are only written if changes were captured.
+     *
+     * @param rollIntervalSeconds the roll interval in seconds, at least 1
+     */
+    public void setRollIntervalSeconds(long rollIntervalSeconds) {
+        this.rollIntervalSeconds = Math.max(1, rollIntervalSeconds);
+    }
+
+    /**
+     * Returns the number of captured row changes after which a new backup version is written.
+     *
+     * @return the number of row changes per version
+     */
+    public int getRollChanges() {
+        return rollChanges;
+    }
+
+    /**
+     * Sets the number of captured row changes after which a new backup version is written,
+     * independent of the roll interval. The changes of one version are held in memory until they are written.
+     *
+     * @param rollChanges the number of row changes per version, at least 1
+     */
+    public void setRollChanges(int rollChanges) {
+        this.rollChanges = Math.max(1, rollChanges);
+    }
+
+    /**
+     * Returns how long changes are captured before the session ends.
+     *
+     * @return the duration in seconds, 0 to capture until the session is stopped
+     */
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * Sets how long changes are captured before the session ends.
+     *
+     * @param durationSeconds the duration in seconds, 0 to capture until the session is stopped
+     */
+    public void setDurationSeconds(long durationSeconds) {
+        this.durationSeconds = Math.max(0, durationSeconds);
+    }
+}
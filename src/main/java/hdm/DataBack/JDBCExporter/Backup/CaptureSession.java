@@ -0,0 +1,307 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.IncrementalMain;
+import hdm.DataBack.JDBCExporter.KeyedChangeSet;
+import hdm.DataBack.JDBCExporter.MetaDataController;
+import hdm.DataBack.JDBCExporter.ObjectExporter;
+import hdm.DataBack.JDBCExporter.TableCatalog;
+import hdm.DataBack.JDBCExporter.TestDecodingParser;
+import hdm.DataBack.Logger.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.LogSequenceNumber;
+import org.postgresql.replication.PGReplicationStream;
+import org.postgresql.replication.ReplicationSlotInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+Continuously captures the row changes of the database through a logical replication slot and writes them as
+backup versions, instead of reading the tables again for every backup.
+- On the first start the slot is created with the test_decoding plugin. The base backup is read in the snapshot
+  exported with the slot, so the stream continues exactly where the base backup ends.
+- Decoded changes are buffered until their transaction commits, then matched by primary key to the current state of
+  each table (see CapturedChanges) and collected until the roll interval has passed or the configured number of changes
+  was captured. Then a new version is written in the existing format: the delta files of the changed tables, empty
+  deltas for all other tables, and the schema. A version therefore only ever holds whole transactions, also when it is
+  written while a transaction is still being received; the changes of that transaction go into the next version.
+- Only after the metadata of the version was saved, the slot is told that the changes up to the last committed
+  transaction were flushed. After a crash the stream replays from there; replayed inserts and updates match their
+  rows by key and replayed deletes of missing keys are ignored, so the versions stay correct.
+- New tables and tables without a primary key are exported in full when they were touched.
+The server has to run with wal_level=logical, and the backup repository has to use the forward layout.
+
+ */
+
+public class CaptureSession implements AutoCloseable {
+    private static final String OUTPUT_PLUGIN = "test_decoding";
+
+    private final Logger logger = new Logger();
+    private final FileWriter fileWriter = new FileWriter();
+    private final TestDecodingParser parser = new TestDecodingParser();
+    private final MetaDataController metaDataController = MetaDataController.getInstance();
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final BackupOptions backupOptions;
+    private final CaptureOptions captureOptions;
+    private final Connection connection;
+    private final Connection replicationConnection;
+
+    private final CapturedChanges changes = new CapturedChanges();
+    private LogSequenceNumber committedLsn;
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for CaptureSession that opens a regular and a replication connection to the database.
+     *
+     * @param url the database connection URL (e.g., jdbc:postgresql://localhost:5432/databack)
+     * @param user the username with the REPLICATION privilege
+     * @param password the password for the database user
+     * @param backupOptions the options controlling how the base backup and full table exports are created
+     * @param captureOptions the options controlling the replication slot and when versions are written
+     * @throws SQLException if a database access error occurs
+     */
+    public CaptureSession(String url, String user, String password, BackupOptions backupOptions, CaptureOptions captureOptions) throws SQLException {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.backupOptions = backupOptions;
+        this.captureOptions = captureOptions;
+        // Tabellen werden vollständig gelesen, die Änderungen liefert der Replikationsstrom
+        backupOptions.setJobs(1);
+        backupOptions.setChangeDetection(BackupOptions.ChangeDetection.OFF);
+        backupOptions.setExtraction(BackupOptions.Extraction.FULL);
+        backupOptions.setLayout(BackupOptions.Layout.FORWARD);
+
+        this.connection = DriverManager.getConnection(url, user, password);
+        Properties properties = new Properties();
+        PGProperty.USER.set(properties, user);
+        PGProperty.PASSWORD.set(properties, password);
+        PGProperty.REPLICATION.set(properties, "database");
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(properties, "9.4");
+        PGProperty.PREFER_QUERY_MODE.set(properties, "simple");
+        this.replicationConnection = DriverManager.getConnection(url, properties);
+    }
+
+    /**
+     * Captures changes until the configured duration has passed or {@link #stop()} is called.
+     * Creates the replication slot and a base backup first if the slot does not exist yet.
+     * Changes of transactions committed since the last version are written as a final version before returning;
+     * a transaction that was not committed yet is received again on the next start.
+     *
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while writing backup files
+     */
+    public void capture() throws SQLException, IOException {
+        FileWriter.setCompression(backupOptions.getCompressionLevel(), backupOptions.getCompressionThreads());
+        metaDataController.initLayout(BackupOptions.Layout.FORWARD);
+        if (metaDataController.getLayout() != BackupOptions.Layout.FORWARD) {
+            throw new IllegalStateException("Change data capture requires a backup repository with the forward layout");
+        }
+        metaDataController.initCodec(backupOptions.getCodec());
+        FileWriter.setCodec(metaDataController.getCodec());
+        metaDataController.initTableFormat(backupOptions.getTableFormat());
+        FileWriter.setTableFormat(metaDataController.getTableFormat());
+        metaDataController.initDeduplication(backupOptions.isDeduplicate());
+        FileWriter.setChunkStore(metaDataController.getChunkStore());
+        if (!slotExists()) {
+            createSlotWithBaseBackup();
+        } else if (metaDataController.getCurrentVersion() < 0) {
+            throw new IllegalStateException(String.format(
+                    "Replication slot %s exists but the backup repository is empty; drop the slot to start with a base backup",
+                    captureOptions.getSlotName()));
+        }
+
+        PGReplicationStream stream = replicationConnection.unwrap(PGConnection.class).getReplicationAPI()
+                .replicationStream()
+                .logical()
+                .withSlotName(captureOptions.getSlotName())
+                .withSlotOption("include-xids", false)
+                .withSlotOption("skip-empty-xacts", true)
+                .withStatusInterval(10, TimeUnit.SECONDS)
+                .start();
+        logger.info(String.format("Capturing changes from replication slot %s...", captureOptions.getSlotName()));
+
+        long rollIntervalMillis = TimeUnit.SECONDS.toMillis(captureOptions.getRollIntervalSeconds());
+        long end = captureOptions.getDurationSeconds() > 0
+                ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(captureOptions.getDurationSeconds())
+                : Long.MAX_VALUE;
+        long lastRoll = System.currentTimeMillis();
+        try {
+            while (running && System.currentTimeMillis() < end) {
+                ByteBuffer message = stream.readPending();
+                if (message == null) {
+                    if (System.currentTimeMillis() - lastRoll >= rollIntervalMillis) {
+                        roll(stream);
+                        lastRoll = System.currentTimeMillis();
+                    }
+                    TimeUnit.MILLISECONDS.sleep(10);
+                    continue;
+                }
+                // Nur abgeschlossene Transaktionen zählen und bestätigen
+                if (apply(message)) {
+                    committedLsn = stream.getLastReceiveLSN();
+                    if (changes.getPendingChanges() >= captureOptions.getRollChanges()) {
+                        roll(stream);
+                        lastRoll = System.currentTimeMillis();
+                    }
+                }
+            }
+            roll(stream);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            roll(stream);
+        } finally {
+            stream.close();
+        }
+        logger.info("Change data capture stopped.");
+    }
+
+    /**
+     * Ends the capture loop; the changes captured so far are written as a final version.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Checks whether the replication slot exists and was created with the expected output plugin.
+     *
+     * @return true if the slot exists
+     * @throws SQLException if a database access error occurs or the slot uses another output plugin
+     */
+    private boolean slotExists() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT plugin FROM pg_replication_slots WHERE slot_name = ?")) {
+            statement.setString(1, captureOptions.getSlotName());
+            try (ResultSet slot = statement.executeQuery()) {
+                if (!slot.next()) {
+                    return false;
+                }
+                if (!OUTPUT_PLUGIN.equals(slot.getString("plugin"))) {
+                    throw new SQLException(String.format("Replication slot %s uses the output plugin %s instead of %s",
+                            captureOptions.getSlotName(), slot.getString("plugin"), OUTPUT_PLUGIN));
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Creates the replication slot and a base backup from the snapshot exported with it.
+     * The snapshot is only valid until the next command on the replication connection, so the backup has to be
+     * finished before the stream is started.
+     *
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while writing backup files
+     */
+    private void createSlotWithBaseBackup() throws SQLException, IOException {
+        ReplicationSlotInfo slot = replicationConnection.unwrap(PGConnection.class).getReplicationAPI()
+                .createReplicationSlot()
+                .logical()
+                .withSlotName(captureOptions.getSlotName())
+                .withOutputPlugin(OUTPUT_PLUGIN)
+                .make();
+        logger.info(String.format("Created replication slot %s at %s, creating base backup...",
+                slot.getSlotName(), slot.getConsistentPoint()));
+
+        try (Connection snapshotConnection = DriverManager.getConnection(url, user, password)) {
+            snapshotConnection.setAutoCommit(false);
+            snapshotConnection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try (Statement statement = snapshotConnection.createStatement()) {
+                statement.execute(String.format("SET TRANSACTION SNAPSHOT '%s'", slot.getSnapshotName()));
+            }
+            new CreateBackup(snapshotConnection, logger, fileWriter, backupOptions, null).performBackup();
+            snapshotConnection.commit();
+        }
+    }
+
+    /**
+     * Applies one decoded message to the captured changes.
+     *
+     * @param message the message of the replication stream
+     * @return true if the message committed a transaction
+     * @throws IOException if the previous state of a table cannot be read
+     */
+    private boolean apply(ByteBuffer message) throws IOException {
+        return changes.apply(parser.parse(new String(message.array(), message.arrayOffset() + message.position(),
+                message.remaining(), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes the changes of the transactions committed since the last version as a new backup version and confirms
+     * them to the slot. The slot only advances to the last commit, never into a transaction that is still open.
+     * Without captured changes no version is written, but the position of the slot still advances,
+     * so the server can release the WAL of transactions that did not touch any backed up table.
+     *
+     * @param stream the replication stream
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while writing backup files
+     */
+    private void roll(PGReplicationStream stream) throws SQLException, IOException {
+        if (changes.getPendingChanges() > 0) {
+            TableCatalog catalog = TableCatalog.load(connection);
+            metaDataController.updateMetaData(catalog);
+            ObjectExporter objectExporter = new ObjectExporter(connection, metaDataController.getObjectsFilePath(), backupOptions, catalog);
+            int changedTables = 0;
+            for (String tableName : catalog.getTableNames()) {
+                metaDataController.updateChangeSignal(tableName, null);
+                KeyedChangeSet changeSet = changes.getChangeSet(tableName);
+                List<String> primaryKeys = catalog.getPrimaryKeys(tableName);
+                if (metaDataController.getIncrementalFilePath(tableName).isEmpty() || changes.isFullExport(tableName)
+                        || (changeSet != null && primaryKeys.isEmpty())) {
+                    objectExporter.exportTable(tableName, metaDataController.getTableFilePath(tableName));
+                    changedTables++;
+                } else if (changeSet != null) {
+                    changeSet.write(metaDataController.getTableFilePath(tableName), metaDataController.getTableCurrentFilePath(tableName));
+                    metaDataController.markChangesExported(tableName);
+                    metaDataController.setSortedBy(tableName, null);
+                    changedTables++;
+                } else {
+                    metaDataController.markUnchanged(tableName);
+                }
+            }
+            new IncrementalMain(backupOptions).processTables();
+            CreateBackup createBackup = new CreateBackup(connection, logger, fileWriter, backupOptions, null);
+            createBackup.exportSchema(catalog);
+            metaDataController.save();
+            createBackup.collectChunkGarbage();
+            logger.info(String.format("Wrote version %s with %d captured changes in %d tables.",
+                    metaDataController.getCurrentVersionName(), changes.getPendingChanges(), changedTables));
+            changes.clear();
+        }
+        if (committedLsn != null) {
+            stream.setFlushedLSN(committedLsn);
+            stream.setAppliedLSN(committedLsn);
+            stream.forceUpdateStatus();
+        }
+    }
+
+    /**
+     * Closes the database connections; the replication slot is kept so capturing can continue later.
+     *
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            replicationConnection.close();
+        } finally {
+            connection.close();
+        }
+    }
+}
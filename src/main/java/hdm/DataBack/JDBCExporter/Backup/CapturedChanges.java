@@ -0,0 +1,181 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.KeyedChangeSet;
+import hdm.DataBack.JDBCExporter.MetaDataController;
+import hdm.DataBack.JDBCExporter.TestDecodingParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+
+Collects the decoded row changes of a CaptureSession until the next version is written.
+- Changes are buffered until their transaction commits. Only then they are matched by primary key to the current
+  state of each table (see KeyedChangeSet), so a version never holds a part of a transaction.
+- Tables that are new or have no primary key are only remembered; they are exported in full when the version is written.
+- Clearing after a version keeps the open transaction, its changes go into the next version.
+
+ */
+
+class CapturedChanges {
+    private static final String SCHEMA_PREFIX = "public.";
+
+    private final MetaDataController metaDataController = MetaDataController.getInstance();
+
+    // Änderungen der offenen Transaktion, erst beim COMMIT übernommen
+    private final List<TestDecodingParser.Change> openTransaction = new ArrayList<>();
+    // Änderungen seit der letzten Version
+    private final Map<String, KeyedChangeSet> changeSets = new HashMap<>();
+    private final Set<String> fullExportTables = new HashSet<>();
+    private int pendingChanges;
+
+    /**
+     * Applies one decoded change. The changes of a transaction are only added to the changes of the current version
+     * when its COMMIT is applied.
+     *
+     * @param change the decoded change of the replication stream
+     * @return true if the change committed a transaction
+     * @throws IOException if the previous state of a table cannot be read
+     */
+    boolean apply(TestDecodingParser.Change change) throws IOException {
+        switch (change.getKind()) {
+            case BEGIN -> {
+                openTransaction.clear();
+                return false;
+            }
+            case COMMIT -> {
+                for (TestDecodingParser.Change committed : openTransaction) {
+                    applyCommitted(committed);
+                }
+                openTransaction.clear();
+                return true;
+            }
+            default -> {
+                openTransaction.add(change);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of committed row changes since the last version.
+     *
+     * @return the number of pending changes
+     */
+    int getPendingChanges() {
+        return pendingChanges;
+    }
+
+    /**
+     * Returns the change set of a table collected since the last version.
+     *
+     * @param tableName the name of the table
+     * @return the change set, or null if the table was not changed or has to be exported in full
+     */
+    KeyedChangeSet getChangeSet(String tableName) {
+        return changeSets.get(tableName);
+    }
+
+    /**
+     * Checks whether a changed table is new or has no primary key and has to be exported in full.
+     *
+     * @param tableName the name of the table
+     * @return true if the table has to be exported in full
+     */
+    boolean isFullExport(String tableName) {
+        return fullExportTables.contains(tableName);
+    }
+
+    /**
+     * Removes the committed changes after they were written as a version. The open transaction is kept.
+     */
+    void clear() {
+        changeSets.clear();
+        fullExportTables.clear();
+        pendingChanges = 0;
+    }
+
+    /**
+     * Adds one change of a committed transaction to the changes of the current version.
+     *
+     * @param change the decoded row change
+     * @throws IOException if the previous state of a table cannot be read
+     */
+    private void applyCommitted(TestDecodingParser.Change change) throws IOException {
+        for (String qualifiedName : change.getTableNames()) {
+            if (!qualifiedName.startsWith(SCHEMA_PREFIX)) {
+                continue;
+            }
+            String tableName = qualifiedName.substring(SCHEMA_PREFIX.length());
+            pendingChanges++;
+            KeyedChangeSet changeSet = changeSetOf(tableName);
+            if (changeSet == null) {
+                fullExportTables.add(tableName);
+                continue;
+            }
+            switch (change.getKind()) {
+                case INSERT, UPDATE -> {
+                    if (change.getOldKey() != null) {
+                        changeSet.delete(normalize(change.getOldKey()));
+                    }
+                    changeSet.upsert(normalize(change.getValues()));
+                }
+                case DELETE -> changeSet.delete(normalize(change.getValues()));
+                case TRUNCATE -> changeSet.truncate();
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the change set of a table, reading the table's current state on first use.
+     *
+     * @param tableName the name of the table
+     * @return the change set, or null if the table is new or has no primary key and has to be exported in full
+     * @throws IOException if the current state of the table cannot be read
+     */
+    private KeyedChangeSet changeSetOf(String tableName) throws IOException {
+        if (fullExportTables.contains(tableName)) {
+            return null;
+        }
+        KeyedChangeSet changeSet = changeSets.get(tableName);
+        if (changeSet == null) {
+            if (!metaDataController.getTableNames().contains(tableName) || metaDataController.getPrimaryKeys(tableName).isEmpty()) {
+                return null;
+            }
+            String currentPath = metaDataController.getTableCurrentFilePath(tableName);
+            String previousPath = new File(currentPath).exists() ? currentPath : metaDataController.getTableBaseFilePath(tableName);
+            changeSet = new KeyedChangeSet(previousPath, metaDataController.getPrimaryKeys(tableName));
+            changeSets.put(tableName, changeSet);
+        }
+        return changeSet;
+    }
+
+    /**
+     * Passes decoded values through the codec of the repository like rows written to and read from a backup file,
+     * so unchanged rows have the same fingerprint as their stored state.
+     *
+     * @param values the decoded column values
+     * @return the normalized column values
+     * @throws IOException if a value cannot be converted
+     */
+    private Map<String, Object> normalize(Map<String, Object> values) throws IOException {
+        Map<String, Object> plain = new HashMap<>(values);
+        plain.values().removeIf(value -> value == KeyedChangeSet.UNCHANGED);
+        Map<String, Object> normalized = FileWriter.getCodec().normalize(plain);
+        for (Map.Entry<String, Object> column : values.entrySet()) {
+            if (column.getValue() == KeyedChangeSet.UNCHANGED) {
+                normalized.put(column.getKey(), KeyedChangeSet.UNCHANGED);
+            }
+        }
+        return normalized;
+    }
+}
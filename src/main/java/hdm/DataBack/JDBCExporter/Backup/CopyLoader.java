@@ -0,0 +1,187 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hdm.DataBack.JDBCExporter.RowSource;
+import hdm.DataBack.Logger.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+
+Loads the rows of a backup into a table with the COPY protocol (COPY ... FROM STDIN) instead of INSERT statements.
+Rows are encoded into PostgreSQL's text format while they are read and sent to the server in blocks,
+so neither an SQL script nor the whole table has to be held in memory.
+
+ */
+
+public class CopyLoader {
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final Connection connection;
+    private final Logger logger = new Logger();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Constructor for CopyLoader.
+     *
+     * @param connection the PostgreSQL connection the rows are copied over
+     */
+    public CopyLoader(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Copies all rows of a source into a table.
+     * The columns are taken from the first row; columns in skippedColumns are left to their default values.
+     *
+     * @param tableName the name of the table
+     * @param skippedColumns the columns that are not copied
+     * @param source the entries to copy, each holding an "index" and an "object"
+     * @return the number of copied rows
+     * @throws SQLException if the server rejects the data
+     * @throws IOException if an error occurs while reading the source
+     */
+    public long load(String tableName, Set<String> skippedColumns, RowSource source) throws SQLException, IOException {
+        Map<String, Object> entry = source.next();
+        while (entry != null && !entry.containsKey("object")) {
+            entry = source.next();
+        }
+        if (entry == null) {
+            return 0;
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (String column : ((Map<String, Object>) entry.get("object")).keySet()) {
+            if (!skippedColumns.contains(column)) {
+                columns.add(column);
+            }
+        }
+        if (columns.isEmpty()) {
+            return 0;
+        }
+
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        CopyIn copyIn = copyManager.copyIn(copyStatement(tableName, columns));
+        long rowCount = 0;
+        try {
+            StringBuilder block = new StringBuilder(BLOCK_SIZE + 1024);
+            for (; entry != null; entry = source.next()) {
+                Map<String, Object> object = (Map<String, Object>) entry.get("object");
+                if (object == null) {
+                    continue;
+                }
+                encodeRow(block, columns, object);
+                rowCount++;
+                if (block.length() >= BLOCK_SIZE) {
+                    writeBlock(copyIn, block);
+                }
+            }
+            writeBlock(copyIn, block);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+        logger.info(String.format("Copied %d rows into table %s", rowCount, tableName));
+        return rowCount;
+    }
+
+    /**
+     * Builds the COPY statement for a table.
+     *
+     * @param tableName the name of the table
+     * @param columns the copied columns
+     * @return the COPY ... FROM STDIN statement
+     */
+    static String copyStatement(String tableName, List<String> columns) {
+        StringBuilder statement = new StringBuilder("COPY ").append(quoteIdentifier(tableName)).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) statement.append(", ");
+            statement.append(quoteIdentifier(columns.get(i)));
+        }
+        return statement.append(") FROM STDIN").toString();
+    }
+
+    /**
+     * Appends one row in COPY text format: values separated by tabs and terminated by a newline.
+     *
+     * @param block the buffer the row is appended to
+     * @param columns the copied columns in COPY column order
+     * @param object the column values of the row
+     * @throws JsonProcessingException if a JSON value cannot be serialized
+     */
+    void encodeRow(StringBuilder block, List<String> columns, Map<String, Object> object) throws JsonProcessingException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) block.append('\t');
+            encodeValue(block, object.get(columns.get(i)));
+        }
+        block.append('\n');
+    }
+
+    /**
+     * Appends a single value in COPY text format.
+     * - null becomes \N
+     * - booleans become t and f
+     * - JSON objects and arrays (json/jsonb columns) are serialized to JSON text
+     * - backslashes and control characters in text are escaped
+     *
+     * @param block the buffer the value is appended to
+     * @param value the value to encode
+     * @throws JsonProcessingException if a JSON value cannot be serialized
+     */
+    void encodeValue(StringBuilder block, Object value) throws JsonProcessingException {
+        if (value == null) {
+            block.append("\\N");
+        } else if (value instanceof Boolean) {
+            block.append((Boolean) value ? 't' : 'f');
+        } else if (value instanceof Number) {
+            block.append(value);
+        } else if (value instanceof Map || value instanceof Collection) {
+            escape(block, objectMapper.writeValueAsString(value));
+        } else {
+            escape(block, value.toString());
+        }
+    }
+
+    private static void escape(StringBuilder block, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> block.append("\\\\");
+                case '\n' -> block.append("\\n");
+                case '\r' -> block.append("\\r");
+                case '\t' -> block.append("\\t");
+                case '\b' -> block.append("\\b");
+                case '\f' -> block.append("\\f");
+                case 0x0B -> block.append("\\v");
+                default -> block.append(c);
+            }
+        }
+    }
+
+    private static void writeBlock(CopyIn copyIn, StringBuilder block) throws SQLException {
+        if (block.length() == 0) {
+            return;
+        }
+        byte[] bytes = block.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        block.setLength(0);
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+}
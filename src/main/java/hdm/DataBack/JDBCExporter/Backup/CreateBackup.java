@@ -1,20 +1,28 @@
 package hdm.DataBack.JDBCExporter.Backup;
 
+import hdm.DataBack.JDBCExporter.ChangeDetector;
+import hdm.DataBack.JDBCExporter.ChunkStore;
+import hdm.DataBack.JDBCExporter.ConnectionFactory;
 import hdm.DataBack.JDBCExporter.FileWriter;
 import hdm.DataBack.JDBCExporter.MetaDataController;
 import hdm.DataBack.JDBCExporter.ObjectExporter;
 import hdm.DataBack.JDBCExporter.SchemaExporter;
+import hdm.DataBack.JDBCExporter.SnapshotConnectionPool;
+import hdm.DataBack.JDBCExporter.TableCatalog;
 import hdm.DataBack.JDBCExporter.IncrementalExporter.IncrementalMain;
 import hdm.DataBack.Logger.Logger;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Map;
 
 public class CreateBackup {
     private final Connection connection;
     private final Logger logger;
     private final FileWriter fileWriter;
+    private final BackupOptions options;
+    private final ConnectionFactory connectionFactory;
     MetaDataController metaDataController = MetaDataController.getInstance();
 
     /**
@@ -25,9 +33,24 @@ public class CreateBackup {
      * @param fileWriter the file writer for saving backup files
      */
     public CreateBackup(Connection connection, Logger logger, FileWriter fileWriter) {
+        this(connection, logger, fileWriter, new BackupOptions(), null);
+    }
+
+    /**
+     * Constructor to initialize CreateBackup with a database connection, logger, file writer and backup options.
+     *
+     * @param connection the database connection
+     * @param logger the logger instance for logging operations
+     * @param fileWriter the file writer for saving backup files
+     * @param options the options controlling how the backup is created
+     * @param connectionFactory the factory used to open additional connections for parallel jobs
+     */
+    public CreateBackup(Connection connection, Logger logger, FileWriter fileWriter, BackupOptions options, ConnectionFactory connectionFactory) {
         this.connection = connection;
         this.logger = logger;
         this.fileWriter = fileWriter;
+        this.options = options;
+        this.connectionFactory = connectionFactory;
     }
 
     /**
@@ -35,41 +58,133 @@ public class CreateBackup {
      * - Exports table data to JSON files.
      * - Saves table schema and constraints as SQL scripts.
      * - If a previous backup exists, stores only the incremental changes.
+     * - With more than one job, all tables are exported in parallel from one shared snapshot.
+     * - With change detection enabled, tables whose change signal did not move are not exported again.
+     * - With a compression level set, all backup files are written gzip compressed.
+     * - Backup files are written in the codec recorded for the repository (JSON or Smile),
+     *   full table snapshots in the recorded table format (rows or columnar).
+     * - In a deduplicating repository, table snapshots are stored as shared chunks, and unreferenced chunks are removed at the end.
      *
      * @throws SQLException if a database access error occurs
      * @throws IOException if an error occurs while writing backup files
      */
     public void performBackup() throws SQLException, IOException {
-        metaDataController.updateMetaData(connection);
-
-        exportObjects();
-        exportSchema();
+        FileWriter.setCompression(options.getCompressionLevel(), options.getCompressionThreads());
+        metaDataController.initLayout(options.getLayout());
+        metaDataController.initCodec(options.getCodec());
+        FileWriter.setCodec(metaDataController.getCodec());
+        metaDataController.initTableFormat(options.getTableFormat());
+        FileWriter.setTableFormat(metaDataController.getTableFormat());
+        metaDataController.initDeduplication(options.isDeduplicate());
+        FileWriter.setChunkStore(metaDataController.getChunkStore());
+        // Statistiken vor dem Snapshot lesen. Der Server schreibt die Zähler verzögert fort, eine gerade
+        // abgeschlossene Änderung kann darin noch fehlen; STATS ist deshalb nur eine Schätzung, HASH ist exakt
+        Map<String, String> statistics = options.getChangeDetection() == BackupOptions.ChangeDetection.STATS
+                ? new ChangeDetector().readStatistics(connection)
+                : null;
+        if (options.getJobs() > 1 && connectionFactory != null) {
+            try (SnapshotConnectionPool pool = new SnapshotConnectionPool(connection, connectionFactory, options.getJobs())) {
+                TableCatalog catalog = TableCatalog.load(connection);
+                metaDataController.updateMetaData(catalog);
+                detectUnchangedTables(catalog, statistics);
+                exportObjects(pool, catalog);
+                exportSchema(catalog);
+            }
+        } else {
+            TableCatalog catalog = TableCatalog.load(connection);
+            metaDataController.updateMetaData(catalog);
+            detectUnchangedTables(catalog, statistics);
+            exportObjects(catalog);
+            exportSchema(catalog);
+        }
         if(metaDataController.getCurrentVersion() > 0){
             exportIncremental();
         }
 
         metaDataController.save();
+        collectChunkGarbage();
+    }
+
+    /**
+     * Removes the chunks no table snapshot refers to any more, e.g. those of replaced current files and of exports
+     * that were turned into changes, if the repository deduplicates table snapshots.
+     *
+     * @throws IOException if the repository cannot be read or a chunk cannot be removed
+     */
+    void collectChunkGarbage() throws IOException {
+        ChunkStore chunkStore = FileWriter.getChunkStore();
+        if (chunkStore != null) {
+            chunkStore.collectGarbage();
+        }
     }
 
 
+    /**
+     * Records the change signal of every table and marks the tables whose signal matches the previous backup as unchanged.
+     * Tables exported for the first time are always exported. Without change detection, stored signals are removed,
+     * because the next backup could otherwise compare against a signal older than its previous version.
+     *
+     * @param catalog the table catalog of the database
+     * @param statistics the statistics signals read before the snapshot, or null if statistics are not used
+     * @throws SQLException if a database access error occurs
+     */
+    void detectUnchangedTables(TableCatalog catalog, Map<String, String> statistics) throws SQLException {
+        ChangeDetector changeDetector = new ChangeDetector();
+        int unchanged = 0;
+        for (String tableName : catalog.getTableNames()) {
+            String signal = switch (options.getChangeDetection()) {
+                case STATS -> statistics.get(tableName);
+                case HASH -> changeDetector.readHash(connection, tableName);
+                case OFF -> null;
+            };
+            String previousSignal = metaDataController.updateChangeSignal(tableName, signal);
+            if (signal != null && signal.equals(previousSignal) && !metaDataController.getIncrementalFilePath(tableName).isEmpty()) {
+                metaDataController.markUnchanged(tableName);
+                unchanged++;
+            }
+        }
+        if (options.getChangeDetection() != BackupOptions.ChangeDetection.OFF) {
+            logger.info(String.format("%d of %d tables unchanged since the previous backup.", unchanged, catalog.getTableNames().size()));
+        }
+    }
+
     /**
      * Exports data from all tables in the database into JSON files.
      *
+     * @param catalog the table catalog of the database
      * @throws SQLException if a database access error occurs
      */
-    private void exportObjects() throws SQLException {
-        ObjectExporter objectExporter = new ObjectExporter(connection, metaDataController.getObjectsFilePath());
+    private void exportObjects(TableCatalog catalog) throws SQLException {
+        ObjectExporter objectExporter = new ObjectExporter(connection, metaDataController.getObjectsFilePath(), options, catalog);
         objectExporter.exportData();
     }
 
+    /**
+     * Exports data from all tables in parallel over the worker connections of a snapshot pool.
+     *
+     * @param pool the pool of connections sharing one snapshot
+     * @param catalog the table catalog of the database
+     * @throws SQLException if a database access error occurs
+     */
+    private void exportObjects(SnapshotConnectionPool pool, TableCatalog catalog) throws SQLException {
+        ObjectExporter objectExporter = new ObjectExporter(connection, metaDataController.getObjectsFilePath(), options, catalog);
+        objectExporter.exportData(pool);
+    }
+
     /**
      * Exports the database schema, including table structures and constraints, into SQL script files.
+     * If the schema fingerprint matches the previous version, the new version refers to the previous scripts instead.
      *
+     * @param catalog the table catalog of the database
      * @throws SQLException if a database access error occurs
      * @throws IOException if an error occurs while writing schema files
      */
-    private void exportSchema() throws SQLException, IOException {
-        SchemaExporter schemaExporter = new SchemaExporter(connection);
+    void exportSchema(TableCatalog catalog) throws SQLException, IOException {
+        SchemaExporter schemaExporter = new SchemaExporter(connection, catalog);
+        if (metaDataController.reuseSchemaScripts(schemaExporter.getSchemaFingerprint())) {
+            logger.info("Schema unverändert, Skripte der vorherigen Version werden verwendet.");
+            return;
+        }
         String tableScript = schemaExporter.generateTableScript();
         String constraintsScript = schemaExporter.generateConstraintsScript();
 
@@ -89,7 +204,7 @@ public class CreateBackup {
      * @throws IOException if an error occurs while processing incremental backups
      */
     private void exportIncremental() throws SQLException, IOException {
-        IncrementalMain incrementalMain = new IncrementalMain();
+        IncrementalMain incrementalMain = new IncrementalMain(options);
         incrementalMain.processTables();
     }
 }
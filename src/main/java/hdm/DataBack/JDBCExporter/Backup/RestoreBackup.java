@@ -1,26 +1,41 @@
 package hdm.DataBack.JDBCExporter.Backup;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import hdm.DataBack.JDBCExporter.ConnectionFactory;
+import hdm.DataBack.JDBCExporter.FileReader;
 import hdm.DataBack.JDBCExporter.IncrementalExporter.IncrementalHelper;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.VersionCache;
 import hdm.DataBack.JDBCExporter.MetaDataController;
+import hdm.DataBack.JDBCExporter.PipelinedRowSource;
+import hdm.DataBack.JDBCExporter.RowSource;
+import hdm.DataBack.JDBCExporter.TableCatalog;
 import hdm.DataBack.Logger.Logger;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class RestoreBackup {
 
     private final Connection connection;
     private final Logger logger;
+    private final RestoreOptions options;
+    private final ConnectionFactory connectionFactory;
     private String version;
 
     /**
@@ -30,8 +45,33 @@ public class RestoreBackup {
      * @param logger the logger instance for logging operations
      */
     public RestoreBackup(Connection connection, Logger logger) {
+        this(connection, logger, new RestoreOptions());
+    }
+
+    /**
+     * Constructor for RestoreBackup with custom options.
+     *
+     * @param connection the database connection
+     * @param logger the logger instance for logging operations
+     * @param options the options controlling how backups are restored
+     */
+    public RestoreBackup(Connection connection, Logger logger, RestoreOptions options) {
+        this(connection, logger, options, null);
+    }
+
+    /**
+     * Constructor for RestoreBackup with custom options and a factory for the worker connections of a parallel restore.
+     *
+     * @param connection the database connection
+     * @param logger the logger instance for logging operations
+     * @param options the options controlling how backups are restored
+     * @param connectionFactory opens additional connections when more than one job is configured
+     */
+    public RestoreBackup(Connection connection, Logger logger, RestoreOptions options, ConnectionFactory connectionFactory) {
         this.connection = connection;
         this.logger = logger;
+        this.options = options;
+        this.connectionFactory = connectionFactory;
     }
 
     /**
@@ -58,10 +98,8 @@ public class RestoreBackup {
         DeleteDataFromDatabase();
         logger.info("Creating Tables in Database...");
         executeSqlScript(connection, tableScriptFile, false);
-        logger.info("Generating Data from JSON file");
-        String insertQuery = generateInsertQuery(version);
-        logger.info("Inserting Data in Database...");
-        executeSqlScript(connection, insertQuery, true);
+        logger.info("Copying Data from JSON files into Database...");
+        copyData(version);
         logger.info("Altering Tables and adding Constraints...");
         executeSqlScript(connection, constraintsFile, false);
 
@@ -98,98 +136,161 @@ public class RestoreBackup {
     }
 
     /**
-     * Reads JSON data from a file and converts it into a list of maps representing table rows.
+     * Copies the data of all tables of a backup version into the database with the COPY protocol.
+     * The newest version is streamed directly from the current files, older versions are reconstructed first.
+     * With more than one job, the tables are loaded in parallel over separate connections.
      *
-     * @param filePath the path to the JSON file
-     * @return a list of maps containing table data
+     * @param version the backup version to restore
+     * @throws SQLException if a database access error occurs
      */
-    private List<Map<String, Object>> generateInsertQueryFromJson(String filePath) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            List<Map<String, Object>> data = objectMapper.readValue(Files.readAllBytes(Paths.get(filePath)), new TypeReference<>() {
-            });
-            return data;
-        }catch (IOException e) {
-            logger.error(e.getMessage() + " " + e.getStackTrace());
-            throw new RuntimeException(e.getMessage());
+    private void copyData(String version) throws SQLException {
+        List<String> tableNames = MetaDataController.getInstance().getTableNames();
+        if (tableNames == null) {
+            return;
         }
+        TableCatalog catalog = TableCatalog.load(connection);
+        IncrementalHelper incrementalHelper = new IncrementalHelper(createVersionCache());
+
+        if (options.getJobs() > 1 && connectionFactory != null) {
+            copyDataParallel(version, tableNames, catalog, incrementalHelper);
+        } else {
+            CopyLoader copyLoader = new CopyLoader(connection);
+            for (String tableName : tableNames) {
+                copyTable(copyLoader, tableName, version, catalog, incrementalHelper);
+            }
+        }
+        logger.info("Successfully copied data of all tables");
     }
 
     /**
-     * Generates an SQL insert query from JSON backup data.
+     * Copies the tables over a fixed number of worker connections, all tables at the same time.
+     * Foreign keys are only created by the constraints script after all data is loaded, so the tables do not depend
+     * on each other while loading. The largest tables are started first, so the slowest table does not
+     * start last and hold up the end of the restore.
      *
      * @param version the backup version to restore
-     * @return a string containing the SQL insert queries for all tables
+     * @param tableNames the names of the tables to load
+     * @param catalog the table catalog of the restored tables
+     * @param incrementalHelper the helper reconstructing older versions
+     * @throws SQLException if a worker connection cannot be opened or a table cannot be loaded
      */
-    private String generateInsertQuery(String version) {
-        List<String> tableNames = MetaDataController.getInstance().getTableNames();
-        if (tableNames == null) {
-            return null;
+    private void copyDataParallel(String version, List<String> tableNames, TableCatalog catalog,
+                                  IncrementalHelper incrementalHelper) throws SQLException {
+        int jobs = options.getJobs();
+        logger.info(String.format("Copying data of %d tables with %d parallel jobs...", tableNames.size(), jobs));
+        Map<String, Long> sizes = new HashMap<>();
+        for (String tableName : tableNames) {
+            sizes.put(tableName, getRestoreSize(tableName, version, incrementalHelper));
         }
-        StringBuilder queryBuilder = new StringBuilder();
+        List<String> largestFirst = new ArrayList<>(tableNames);
+        largestFirst.sort(Comparator.comparingLong(sizes::get).reversed());
 
-        for (String tableName : tableNames) {
-            List<Map<String, Object>> data = null;
-            if (MetaDataController.getInstance().getCurrentVersionName().equals(version)) {
-                String filePathToCurrentData = getFilePathToCurrentData(tableName, version);
-                data = generateInsertQueryFromJson(filePathToCurrentData);
-            } else {
-                IncrementalHelper incrementalHelper = new IncrementalHelper();
-                try {
-                    data = incrementalHelper.getBackupCurrentData(version, tableName);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+        BlockingQueue<Connection> workers = new ArrayBlockingQueue<>(jobs);
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try {
+            for (int i = 0; i < jobs; i++) {
+                workers.add(connectionFactory.open());
             }
-            if (data.isEmpty()) continue; // Keine Daten vorhanden, weiter zur nächsten Tabelle
-
-            StringBuilder columns = new StringBuilder();
-            boolean columnsSet = false;
-
-            for (Map<String, Object> row : data) {
-                if (!row.containsKey("object")) continue; // Falls kein "object"-Key existiert, überspringen
-                Map<String, Object> actualData = (Map<String, Object>) row.get("object"); // Echte Tabellenwerte extrahieren
-
-                StringBuilder values = new StringBuilder("(");
-
-                for (Map.Entry<String, Object> entry : actualData.entrySet()) {
-                    String columnName = entry.getKey();
-
-                    // Überprüfen, ob die Spalte SERIAL ist
+            List<Future<?>> tasks = new ArrayList<>();
+            for (String tableName : largestFirst) {
+                tasks.add(executor.submit(() -> {
+                    Connection worker = workers.take();
                     try {
-                        if (isSerialColumn(tableName, columnName)) {
-                            continue; // Spalte überspringen, wenn sie SERIAL ist
-                        }
-                    } catch (SQLException e) {
-                        logger.error("Fehler beim Überprüfen des Spaltentyps: " + e.getMessage());
-                        throw new RuntimeException(e);
-                    }
-
-                    if (!columnsSet) {
-                        if (columns.length() > 0) columns.append(", ");
-                        columns.append(columnName);
+                        copyTable(new CopyLoader(worker), tableName, version, catalog, incrementalHelper);
+                    } finally {
+                        workers.put(worker);
                     }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Data restore was interrupted", e);
+        } catch (ExecutionException e) {
+            logger.error(String.format("Error during parallel data restore: %s", e.getCause().getMessage()));
+            throw new SQLException("Parallel data restore failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (Connection worker : workers) {
+                worker.close();
+            }
+        }
+    }
 
-                    values.append(formatValue(entry.getValue())).append(", ");
-                }
+    /**
+     * Opens the rows of a table in a backup version. The newest version is streamed directly from the current file,
+     * older versions are reconstructed from their full state and the changes after it.
+     *
+     * @param tableName the name of the table
+     * @param version the backup version to restore
+     * @param incrementalHelper the helper reconstructing older versions
+     * @return the entries of the table, to be closed by the caller
+     * @throws IOException if the full state of the table is missing or cannot be read
+     */
+    RowSource openTableData(String tableName, String version, IncrementalHelper incrementalHelper) throws IOException {
+        if (!MetaDataController.getInstance().getCurrentVersionName().equals(version)) {
+            return incrementalHelper.openBackupData(version, tableName);
+        }
+        String currentPath = getFilePathToCurrentData(tableName, version);
+        // Eine fehlende Datei darf nicht als leere Tabelle wiederhergestellt werden
+        if (!new File(currentPath).exists()) {
+            throw new FileNotFoundException("Current file of table " + tableName + " does not exist: " + currentPath);
+        }
+        return new FileReader().openRowReader(currentPath);
+    }
 
-                values.setLength(values.length() - 2); // Entferne letztes Komma und Leerzeichen
-                values.append(")");
+    /**
+     * Estimates how much data of a table is loaded for a backup version by the size of the full snapshot
+     * the version is restored from: the current file for the newest version, otherwise the base file or checkpoint
+     * the replay starts at. The changes replayed on top of it are not counted.
+     *
+     * @param tableName the name of the table
+     * @param version the backup version to restore
+     * @param incrementalHelper the helper reconstructing older versions
+     * @return the size of the full snapshot in bytes, 0 if it does not exist
+     */
+    private long getRestoreSize(String tableName, String version, IncrementalHelper incrementalHelper) {
+        String snapshotPath = MetaDataController.getInstance().getCurrentVersionName().equals(version)
+                ? getFilePathToCurrentData(tableName, version)
+                : incrementalHelper.planReplay(version, tableName).get(0);
+        return new File(snapshotPath).length();
+    }
 
-                if (!columnsSet) {
-                    columns.insert(0, "(").append(")");
-                    columnsSet = true;
-                }
+    /**
+     * Copies the data of a single table.
+     *
+     * @param copyLoader the loader of the connection the table is copied over
+     * @param tableName the name of the table
+     * @param version the backup version to restore
+     * @param catalog the table catalog of the restored tables
+     * @param incrementalHelper the helper reconstructing older versions
+     * @throws SQLException if the server rejects the data
+     */
+    private void copyTable(CopyLoader copyLoader, String tableName, String version, TableCatalog catalog,
+                           IncrementalHelper incrementalHelper) throws SQLException {
+        // Lesen und Laden überlappen sich
+        try (RowSource rows = new PipelinedRowSource(openTableData(tableName, version, incrementalHelper))) {
+            // SERIAL-Spalten werden übersprungen
+            copyLoader.load(tableName, getSerialColumns(catalog, tableName), rows);
+        } catch (IOException e) {
+            logger.error("Error reading backup data of table " + tableName + ": " + e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
 
-                queryBuilder.append("INSERT INTO ").append('"').append(tableName).append('"')
-                        .append(" ").append(columns)
-                        .append(" VALUES ").append(values)
-                        .append(";")
-                        .append(System.lineSeparator());
-            }
+    /**
+     * Creates the cache of reconstructed table versions.
+     *
+     * @return the version cache, or null if caching is disabled
+     */
+    private VersionCache createVersionCache() {
+        if (options.getCacheBytes() <= 0) {
+            return null;
         }
-        logger.info("Successfully generated INSERT commands");
-        return queryBuilder.toString();
+        return new VersionCache(MetaDataController.getInstance().getCacheDirectoryPath(), options.getCacheBytes());
     }
 
     /**
@@ -207,55 +308,20 @@ public class RestoreBackup {
     }
 
     /**
-     * Formats a value for safe SQL insertion.
-     *
-     * @param value the value to format
-     * @return the formatted SQL-compatible string
-     */
-    private String formatValue(Object value) {
-        if (value == null) {
-            return "NULL";
-        } else if (value instanceof String) {
-            return "'" + ((String) value).replace("'", "''") + "'"; // String mit Escaping
-        } else if (value instanceof Boolean) {
-            return (Boolean) value ? "TRUE" : "FALSE"; // Boolean direkt in SQL-Format
-        } else if (value instanceof Number) {
-            return value.toString(); // Zahlen direkt übernehmen (ohne Anführungszeichen)
-        } else {
-            return "'" + value.toString().replace("'", "''") + "'"; // Fallback als String
-        }
-    }
-
-    /**
-     * Checks if a column is of type SERIAL.
+     * Retrieves the columns of a table that are of type SERIAL.
      *
+     * @param catalog the table catalog of the restored tables
      * @param tableName the name of the table
-     * @param columnName the name of the column
-     * @return true if the column is of type SERIAL, false otherwise
-     * @throws SQLException if a database access error occurs
+     * @return the names of all SERIAL columns of the table
      */
-    private boolean isSerialColumn(String tableName, String columnName) throws SQLException {
-        String query = """
-        SELECT EXISTS (
-            SELECT 1
-            FROM information_schema.columns
-            WHERE table_name = ?
-            AND column_name = ?
-            AND data_type = 'integer'
-            AND column_default LIKE 'nextval%'
-        );
-        """;
-
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, tableName);
-            stmt.setString(2, columnName);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getBoolean(1);
-                }
+    static Set<String> getSerialColumns(TableCatalog catalog, String tableName) {
+        Set<String> serialColumns = new HashSet<>();
+        for (TableCatalog.Column column : catalog.getColumns(tableName)) {
+            if (column.isSerial() && "integer".equals(column.getDataType())) {
+                serialColumns.add(column.getName());
             }
         }
-        return false;
+        return serialColumns;
     }
 
     /**
@@ -269,7 +335,7 @@ public class RestoreBackup {
         try {
             String sql;
             if (!isQuery) {
-                sql = new String(Files.readAllBytes(Paths.get(filePathOrQuery)));
+                sql = new FileReader().readString(filePathOrQuery);
             }else {
                 sql = filePathOrQuery;
             }
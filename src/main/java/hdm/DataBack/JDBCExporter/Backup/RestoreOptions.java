@@ -0,0 +1,46 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+public class RestoreOptions {
+    public static final long DEFAULT_CACHE_BYTES = 1024L * 1024 * 1024;
+
+    private long cacheBytes = DEFAULT_CACHE_BYTES;
+    private int jobs = 1;
+
+    /**
+     * Returns the maximum size of the cache of reconstructed table versions.
+     *
+     * @return the cache size in bytes, 0 if the cache is disabled
+     */
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    /**
+     * Sets the maximum size of the cache of reconstructed table versions.
+     * Restoring an older version again then reads the cached tables instead of replaying their version chains.
+     *
+     * @param cacheBytes the cache size in bytes, 0 to disable the cache
+     */
+    public void setCacheBytes(long cacheBytes) {
+        this.cacheBytes = Math.max(0, cacheBytes);
+    }
+
+    /**
+     * Returns the number of connections that load tables in parallel.
+     *
+     * @return the number of parallel restore jobs
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Sets the number of connections that load tables in parallel.
+     * All tables are loaded at the same time; foreign keys are created after the data is loaded.
+     *
+     * @param jobs the number of parallel restore jobs, at least 1
+     */
+    public void setJobs(int jobs) {
+        this.jobs = Math.max(1, jobs);
+    }
+}
@@ -0,0 +1,76 @@
+package hdm.DataBack.JDBCExporter;
+
+import hdm.DataBack.Logger.Logger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+
+Reads a change signal per table that is compared with the signal stored for the previous backup.
+If the signal of a table did not move, the table is not exported again.
+- Statistics signal: the data file (relfilenode) and the cumulative insert/update/delete counters of pg_stat_user_tables.
+  One query covers all tables. The signal is best effort: the server flushes the counters with a delay after a
+  transaction ends, so a change committed just before the backup may not be counted yet and its table is skipped.
+  A table whose counters are missing is always exported.
+- Hash signal: the row count and the sum of a 64 bit hash over the text form of every row, computed on the server.
+  It is exact up to hash collisions and independent of the row order, but reads every table.
+
+ */
+
+public class ChangeDetector {
+    private static final String STATISTICS_QUERY = """
+            SELECT c.relname AS table_name, c.relfilenode, s.n_tup_ins, s.n_tup_upd, s.n_tup_del
+            FROM pg_class c
+            JOIN pg_namespace n ON n.oid = c.relnamespace
+            JOIN pg_stat_user_tables s ON s.relid = c.oid
+            WHERE n.nspname = 'public' AND c.relkind = 'r'""";
+
+    private final Logger logger = new Logger();
+
+    /**
+     * Reads the statistics signal of all tables in the public schema with one query.
+     *
+     * @param connection the database connection
+     * @return a map where the key is the table name and the value is the statistics signal
+     * @throws SQLException if a database access error occurs
+     */
+    public Map<String, String> readStatistics(Connection connection) throws SQLException {
+        Map<String, String> signals = new HashMap<>();
+        logger.info("Reading table statistics for change detection...");
+        try (Statement statement = connection.createStatement(); ResultSet stats = statement.executeQuery(STATISTICS_QUERY)) {
+            while (stats.next()) {
+                signals.put(stats.getString("table_name"), String.format("stats:%d:%d:%d:%d",
+                        stats.getLong("relfilenode"),
+                        stats.getLong("n_tup_ins"),
+                        stats.getLong("n_tup_upd"),
+                        stats.getLong("n_tup_del")));
+            }
+        }
+        return signals;
+    }
+
+    /**
+     * Computes the hash signal of a table on the server. Only the count and the hash sum are transferred.
+     *
+     * @param connection the database connection
+     * @param tableName the name of the table
+     * @return the hash signal of the table
+     * @throws SQLException if a database access error occurs
+     */
+    public String readHash(Connection connection, String tableName) throws SQLException {
+        String query = String.format("""
+                SELECT count(*) AS row_count, coalesce(sum(hashtextextended(t::text, 0)::numeric), 0) AS row_hash
+                FROM "%s" t""", tableName.replace("\"", "\"\""));
+
+        logger.info(String.format("Computing change hash for table: %s", tableName));
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(query)) {
+            result.next();
+            return "hash:" + result.getLong("row_count") + ":" + result.getBigDecimal("row_hash").toPlainString();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package hdm.DataBack.JDBCExporter;
+
+import hdm.DataBack.Logger.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/*
+
+A content-addressed store for the chunks of full table snapshots. A snapshot written through the store is cut into
+chunks of varying size by a rolling hash over its content (see ChunkingOutputStream), and every chunk is stored once
+under the SHA-256 hash of its bytes, e.g. Chunks/3f/3fa4...e1. The snapshot file itself becomes a manifest:
+
+    DBCM 1
+    <hash> <length>
+    ...
+
+Chunk boundaries depend only on the bytes around them, so a row inserted or changed in the middle of a table only
+changes the chunks around it, and the unchanged chunks of the previous version are referenced again instead of being
+written. A manifest can be copied or moved like any other file. Chunks are compressed individually if compression
+is enabled. Readers recognize a manifest by its first bytes and find the store in the nearest parent directory.
+Chunks no manifest in the repository refers to any more are removed by collectGarbage after a backup.
+
+ */
+
+public class ChunkStore {
+    public static final String DIRECTORY_NAME = "Chunks";
+
+    // Jedes Manifest beginnt mit dieser Zeile
+    private static final byte[] MANIFEST_HEADER = "DBCM 1\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Logger logger = new Logger();
+    private final Path directory;
+
+    /**
+     * Constructor for ChunkStore.
+     *
+     * @param directory the directory holding the chunks, a direct child of the backup repository named {@value #DIRECTORY_NAME}
+     */
+    public ChunkStore(Path directory) {
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Finds the store a manifest refers to in the nearest parent directory of the manifest.
+     *
+     * @param manifestPath the path of the manifest
+     * @return the store
+     * @throws IOException if no parent directory holds a chunk directory
+     */
+    static ChunkStore locate(Path manifestPath) throws IOException {
+        for (Path parent = manifestPath.toAbsolutePath().getParent(); parent != null; parent = parent.getParent()) {
+            Path candidate = parent.resolve(DIRECTORY_NAME);
+            if (Files.isDirectory(candidate)) {
+                return new ChunkStore(candidate);
+            }
+        }
+        throw new IOException("No chunk directory found for chunk manifest: " + manifestPath);
+    }
+
+    /**
+     * Checks whether a stream starts with a chunk manifest without consuming it.
+     *
+     * @param in a stream supporting mark and reset, positioned at the start of the content
+     * @return true if the stream holds a manifest
+     * @throws IOException if the stream cannot be read
+     */
+    static boolean isManifest(InputStream in) throws IOException {
+        in.mark(MANIFEST_HEADER.length);
+        try {
+            for (byte expected : MANIFEST_HEADER) {
+                if (in.read() != expected) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Stores a chunk unless a chunk with the same content is stored already.
+     *
+     * @param data the buffer holding the chunk
+     * @param length the number of bytes of the chunk
+     * @param compressionLevel the gzip level the chunk is compressed with, 0 to store it uncompressed
+     * @return the hash of the chunk
+     * @throws IOException if the chunk cannot be written
+     */
+    String put(byte[] data, int length, int compressionLevel) throws IOException {
+        String hash = hash(data, length);
+        Path path = chunkPath(hash);
+        if (Files.exists(path)) {
+            return hash;
+        }
+        Files.createDirectories(path.getParent());
+        // Erst vollständig schreiben, dann umbenennen, damit parallele Exporte nie einen halben Chunk sehen
+        Path temp = Files.createTempFile(path.getParent(), hash, ".tmp");
+        try {
+            if (compressionLevel == FileWriter.NO_COMPRESSION) {
+                try (var out = Files.newOutputStream(temp)) {
+                    out.write(data, 0, length);
+                }
+            } else {
+                Files.write(temp, ParallelGzipOutputStream.compress(data, length, compressionLevel));
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the manifest of a file.
+     *
+     * @param manifestPath the path of the file
+     * @param hashes the hashes of the chunks of the file in order
+     * @param lengths the lengths of the chunks
+     * @throws IOException if the manifest cannot be written
+     */
+    void writeManifest(Path manifestPath, List<String> hashes, List<Integer> lengths) throws IOException {
+        StringBuilder manifest = new StringBuilder(new String(MANIFEST_HEADER, StandardCharsets.US_ASCII));
+        for (int i = 0; i < hashes.size(); i++) {
+            manifest.append(hashes.get(i)).append(' ').append(lengths.get(i)).append('\n');
+        }
+        Files.writeString(manifestPath, manifest);
+    }
+
+    /**
+     * Opens the content of a file made of chunks. The chunks are opened one after another while the content is read.
+     *
+     * @param manifest the manifest of the file, positioned at its start; it is read completely but not closed
+     * @param manifestPath the path of the manifest, used in error messages
+     * @return a buffered stream over the content of the file
+     * @throws IOException if the manifest cannot be read
+     */
+    InputStream open(InputStream manifest, String manifestPath) throws IOException {
+        return new BufferedInputStream(new ChunkSequence(readManifest(manifest), manifestPath), 64 * 1024);
+    }
+
+    /**
+     * Removes all chunks no manifest of the backup repository refers to, e.g. the chunks of overwritten current files.
+     * The repository is the parent directory of the chunk directory. No backup may be written at the same time.
+     *
+     * @return the number of removed chunks
+     * @throws IOException if the repository cannot be read or a chunk cannot be removed
+     */
+    public long collectGarbage() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        Set<String> referenced = new HashSet<>();
+        try (Stream<Path> files = Files.walk(directory.getParent())) {
+            for (Path file : (Iterable<Path>) files.filter(path -> !path.startsWith(directory) && Files.isRegularFile(path))::iterator) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                    if (isManifest(in)) {
+                        referenced.addAll(readManifest(in));
+                    }
+                }
+            }
+        }
+
+        long removed = 0;
+        long removedBytes = 0;
+        try (Stream<Path> chunks = Files.walk(directory)) {
+            for (Path chunk : (Iterable<Path>) chunks.filter(Files::isRegularFile)::iterator) {
+                if (!referenced.contains(chunk.getFileName().toString())) {
+                    removedBytes += Files.size(chunk);
+                    Files.delete(chunk);
+                    removed++;
+                }
+            }
+        }
+        logger.info(String.format("Removed %d unreferenced chunks (%d bytes), %d chunks in use", removed, removedBytes, referenced.size()));
+        return removed;
+    }
+
+    /**
+     * Reads the chunks of a file one after another, opening each chunk when the previous one is exhausted.
+     */
+    private class ChunkSequence extends InputStream {
+        private final Iterator<String> hashes;
+        private final String manifestPath;
+        private InputStream chunk;
+
+        ChunkSequence(List<String> hashes, String manifestPath) {
+            this.hashes = hashes.iterator();
+            this.manifestPath = manifestPath;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                if (chunk == null) {
+                    if (!hashes.hasNext()) {
+                        return -1;
+                    }
+                    String hash = hashes.next();
+                    try {
+                        chunk = FileReader.openDecompressed(chunkPath(hash));
+                    } catch (NoSuchFileException e) {
+                        throw new IOException("Missing chunk " + hash + " of file " + manifestPath, e);
+                    }
+                }
+                int read = chunk.read(buffer, offset, length);
+                if (read != -1) {
+                    return read;
+                }
+                chunk.close();
+                chunk = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (chunk != null) {
+                chunk.close();
+            }
+        }
+    }
+
+    private Path chunkPath(String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static List<String> readManifest(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        reader.readLine();
+        List<String> hashes = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                hashes.add(line.substring(0, line.indexOf(' ')));
+            }
+        }
+        return hashes;
+    }
+
+    private static String hash(byte[] data, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+
+Cuts the written bytes into content-defined chunks, stores them in a ChunkStore and writes the manifest of the
+file on close. A chunk ends where a gear hash over the last bytes (the hash is shifted by one bit per byte, so it
+only depends on the last 64 bytes) has its 16 upper bits zero, which happens on average every 64 KiB.
+Chunks are at least 16 KiB and at most 256 KiB long. Because a boundary only depends on the bytes right before it,
+an inserted or removed row shifts the following boundaries along with the content, and the chunks after the change
+are the same as before.
+
+ */
+
+final class ChunkingOutputStream extends OutputStream {
+    static final int MIN_CHUNK_SIZE = 16 * 1024;
+    static final int MAX_CHUNK_SIZE = 256 * 1024;
+    private static final long BOUNDARY_MASK = 0xFFFFL << 48;
+
+    // Feste Zufallswerte je Bytewert; andere Werte würden andere Grenzen und damit keine gemeinsamen Chunks ergeben
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x4442434DL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final ChunkStore store;
+    private final Path manifestPath;
+    private final int compressionLevel;
+    private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+    private final List<String> hashes = new ArrayList<>();
+    private final List<Integer> lengths = new ArrayList<>();
+    private int length;
+    private long hash;
+    private boolean closed;
+
+    /**
+     * Constructor for ChunkingOutputStream.
+     *
+     * @param store the store the chunks are written to
+     * @param manifestPath the path of the file, which receives the manifest on close
+     * @param compressionLevel the gzip level of the chunks, 0 to store them uncompressed
+     */
+    ChunkingOutputStream(ChunkStore store, Path manifestPath, int compressionLevel) {
+        this.store = store;
+        this.manifestPath = manifestPath;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[length++] = (byte) b;
+        hash = (hash << 1) + GEAR[b & 0xff];
+        if (length >= MAX_CHUNK_SIZE || (length >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0)) {
+            cut();
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int count) throws IOException {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            buffer[length++] = b;
+            hash = (hash << 1) + GEAR[b & 0xff];
+            if (length >= MAX_CHUNK_SIZE || (length >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0)) {
+                cut();
+            }
+        }
+    }
+
+    /**
+     * Stores the last chunk and writes the manifest.
+     *
+     * @throws IOException if a chunk or the manifest cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (length > 0) {
+            cut();
+        }
+        store.writeManifest(manifestPath, hashes, lengths);
+    }
+
+    private void cut() throws IOException {
+        hashes.add(store.put(buffer, length, compressionLevel));
+        lengths.add(length);
+        length = 0;
+        hash = 0;
+    }
+}
@@ -0,0 +1,197 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+
+The columnar file format for full table snapshots. A file holds the same entries as a JSON array of
+{"index", "object"} entries, but stores them column by column in segments of a fixed number of rows:
+
+    file    = magic "DBCS", format version, codec of the VALUES columns, segment*, 0
+    segment = row count, column count, index column, (name, column)*, footer
+    column  = kind, states of the rows (run-length encoded), values of the rows in state VALUE
+    footer  = per column: null count, and min/max if the kind has an order
+
+Every row has one of three states per column: the column is absent from the row, null, or has a value.
+The states are run-length encoded, so columns without nulls cost a few bytes per segment.
+The kind of a column is chosen per segment from the values it holds:
+    - LONG: integers, stored as deltas to the previous value or as offsets to the minimum, whichever needs fewer bits,
+      zigzag encoded and bit-packed
+    - TIMESTAMP and DATE: strings in the form written by the exporter, stored like LONG as nanoseconds or days since 1970
+    - UUID: canonical UUID strings, stored as 16 bytes
+    - DICTIONARY: strings with few distinct values, stored once each and referenced by bit-packed codes
+    - STRING: other strings, stored with their length
+    - BOOLEAN: run-length encoded
+    - DOUBLE: 8 bytes each
+    - VALUES: anything else (decimals, json values, mixed types), stored as values of the file's codec
+A reader returns the same values a JSON or Smile row file would return, so both formats can be mixed in one repository.
+
+ */
+
+final class ColumnarSegment {
+    static final byte[] MAGIC = {'D', 'B', 'C', 'S'};
+    static final int VERSION = 1;
+    static final int DEFAULT_SEGMENT_ROWS = 16 * 1024;
+
+    static final byte STATE_ABSENT = 0;
+    static final byte STATE_NULL = 1;
+    static final byte STATE_VALUE = 2;
+
+    static final byte KIND_NULL = 0;
+    static final byte KIND_LONG = 1;
+    static final byte KIND_DOUBLE = 2;
+    static final byte KIND_BOOLEAN = 3;
+    static final byte KIND_STRING = 4;
+    static final byte KIND_DICTIONARY = 5;
+    static final byte KIND_UUID = 6;
+    static final byte KIND_TIMESTAMP = 7;
+    static final byte KIND_DATE = 8;
+    static final byte KIND_VALUES = 9;
+
+    static final byte PACKING_OFFSET = 0;
+    static final byte PACKING_DELTA = 1;
+
+    // Längere Zeichenketten bekommen keine Min/Max-Statistik
+    static final int MAX_STATISTICS_LENGTH = 256;
+
+    private ColumnarSegment() {
+    }
+
+    /**
+     * Checks whether a stream starts with the columnar magic without consuming it.
+     *
+     * @param in a stream supporting mark and reset, positioned at the start of the content
+     * @return true if the stream holds a columnar file
+     * @throws IOException if the stream cannot be read
+     */
+    static boolean isColumnar(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (byte expected : MAGIC) {
+                if (in.read() != expected) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length number in columnar file");
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Count out of range in columnar file: " + value);
+        }
+        return (int) value;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Returns the number of bits needed for the largest of the given unsigned values.
+     *
+     * @param bits all values combined with OR
+     * @return the bit width, 0 if all values are 0
+     */
+    static int bitWidth(long bits) {
+        return 64 - Long.numberOfLeadingZeros(bits);
+    }
+
+    /**
+     * Writes values with a fixed number of bits each, least significant bit first.
+     *
+     * @param out the target
+     * @param values the unsigned values
+     * @param count the number of values to write
+     * @param width the number of bits per value, 0 to 64
+     * @throws IOException if an error occurs while writing
+     */
+    static void writePacked(DataOutput out, long[] values, int count, int width) throws IOException {
+        out.writeByte(width);
+        int current = 0;
+        int bitCount = 0;
+        for (int i = 0; i < count; i++) {
+            long value = values[i];
+            int remaining = width;
+            while (remaining > 0) {
+                int take = Math.min(remaining, 8 - bitCount);
+                current |= (int) (value & ((1L << take) - 1)) << bitCount;
+                value >>>= take;
+                remaining -= take;
+                bitCount += take;
+                if (bitCount == 8) {
+                    out.writeByte(current);
+                    current = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+        if (bitCount > 0) {
+            out.writeByte(current);
+        }
+    }
+
+    /**
+     * Reads values written by {@link #writePacked(DataOutput, long[], int, int)}.
+     *
+     * @param in the source
+     * @param count the number of values to read
+     * @return the unsigned values
+     * @throws IOException if an error occurs while reading
+     */
+    static long[] readPacked(DataInput in, int count) throws IOException {
+        int width = in.readUnsignedByte();
+        if (width > 64) {
+            throw new IOException("Invalid bit width in columnar file: " + width);
+        }
+        long[] values = new long[count];
+        int current = 0;
+        int bitsLeft = 0;
+        for (int i = 0; i < count; i++) {
+            long value = 0;
+            int got = 0;
+            while (got < width) {
+                if (bitsLeft == 0) {
+                    current = in.readUnsignedByte();
+                    bitsLeft = 8;
+                }
+                int take = Math.min(width - got, bitsLeft);
+                value |= (long) ((current >>> (8 - bitsLeft)) & ((1 << take) - 1)) << got;
+                got += take;
+                bitsLeft -= take;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,360 @@
+package hdm.DataBack.JDBCExporter;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static hdm.DataBack.JDBCExporter.ColumnarSegment.*;
+
+/*
+
+Reads a columnar file (see ColumnarSegment) back row by row. One segment is decoded at a time, and its rows are
+returned as entries holding an "index" and an "object", with the same values a JSON row file would return.
+
+ */
+
+public class ColumnarSegmentReader implements RowSource {
+    private final DataInputStream in;
+    private final ObjectMapper valueMapper;
+    private final boolean exact;
+
+    private Object[] indexes = new Object[0];
+    private String[] names = new String[0];
+    private byte[][] states = new byte[0][];
+    private Object[][] values = new Object[0][];
+    private Map<String, ColumnStatistics> statistics = Map.of();
+    private int rowCount;
+    private int position;
+    private boolean finished;
+
+    /**
+     * The statistics of a column within one segment.
+     */
+    public static class ColumnStatistics {
+        private final long nullCount;
+        private final Object min;
+        private final Object max;
+
+        ColumnStatistics(long nullCount, Object min, Object max) {
+            this.nullCount = nullCount;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Returns the number of rows holding null in the column.
+         *
+         * @return the number of null values
+         */
+        public long getNullCount() {
+            return nullCount;
+        }
+
+        /**
+         * Returns the smallest value of the column, in the form the reader returns values.
+         *
+         * @return the smallest value, or null if the column has no ordered values
+         */
+        public Object getMin() {
+            return min;
+        }
+
+        /**
+         * Returns the largest value of the column, in the form the reader returns values.
+         *
+         * @return the largest value, or null if the column has no ordered values
+         */
+        public Object getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * Constructor for ColumnarSegmentReader that reads the file header.
+     *
+     * @param stream the stream positioned at the start of the file
+     * @param exact true to return decimal numbers as BigDecimal, like a JSON reader with USE_BIG_DECIMAL_FOR_FLOATS
+     * @throws IOException if the stream does not hold a columnar file of a known version
+     */
+    ColumnarSegmentReader(InputStream stream, boolean exact) throws IOException {
+        this.in = new DataInputStream(stream);
+        this.exact = exact;
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a columnar backup file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported columnar file version: " + version);
+        }
+        ObjectMapper codecMapper = FileCodec.valueOf(in.readUTF()).getObjectMapper();
+        this.valueMapper = exact ? codecMapper.copy().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS) : codecMapper;
+    }
+
+    /**
+     * Returns the next entry, decoding the next segment when the current one is exhausted.
+     *
+     * @return the next entry holding an "index" and an "object", or null if the file is exhausted
+     * @throws IOException if an error occurs while reading the file
+     */
+    @Override
+    public Map<String, Object> next() throws IOException {
+        while (position == rowCount) {
+            if (finished || !readSegment()) {
+                finished = true;
+                return null;
+            }
+        }
+        Map<String, Object> object = new LinkedHashMap<>();
+        for (int column = 0; column < names.length; column++) {
+            byte state = states[column][position];
+            if (state != STATE_ABSENT) {
+                object.put(names[column], values[column][position]);
+            }
+        }
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("index", indexes[position]);
+        entry.put("object", object);
+        position++;
+        return entry;
+    }
+
+    /**
+     * Returns the statistics of the segment holding the entry last returned by {@link #next()}.
+     *
+     * @return the statistics by column name
+     */
+    public Map<String, ColumnStatistics> getSegmentStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Decodes the next segment.
+     *
+     * @return false if the end marker was reached
+     * @throws IOException if an error occurs while reading the file
+     */
+    private boolean readSegment() throws IOException {
+        int count = readVarInt(in);
+        if (count == 0) {
+            return false;
+        }
+        int columnCount = readVarInt(in);
+        byte[] indexStates = new byte[count];
+        byte[] indexKind = new byte[1];
+        indexes = readColumn(count, indexStates, indexKind);
+
+        names = new String[columnCount];
+        states = new byte[columnCount][];
+        values = new Object[columnCount][];
+        byte[] kinds = new byte[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            names[column] = readString();
+            states[column] = new byte[count];
+            byte[] kind = new byte[1];
+            values[column] = readColumn(count, states[column], kind);
+            kinds[column] = kind[0];
+        }
+        Map<String, ColumnStatistics> segmentStatistics = new LinkedHashMap<>();
+        for (int column = 0; column < columnCount; column++) {
+            segmentStatistics.put(names[column], readStatistics(kinds[column]));
+        }
+        statistics = segmentStatistics;
+        rowCount = count;
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Decodes one column.
+     *
+     * @param count the number of rows of the segment
+     * @param rowStates receives the state of every row
+     * @param kind receives the kind of the column
+     * @return the value of every row, null unless the state is VALUE
+     * @throws IOException if an error occurs while reading the file
+     */
+    private Object[] readColumn(int count, byte[] rowStates, byte[] kind) throws IOException {
+        kind[0] = in.readByte();
+        int n = readStates(count, rowStates);
+        Object[] present = new Object[n];
+        switch (kind[0]) {
+            case KIND_NULL -> {
+            }
+            case KIND_LONG -> {
+                long[] longs = readLongs(n);
+                for (int i = 0; i < n; i++) {
+                    present[i] = toNumber(longs[i]);
+                }
+            }
+            case KIND_TIMESTAMP -> {
+                long[] nanos = readLongs(n);
+                for (int i = 0; i < n; i++) {
+                    present[i] = toTimestamp(nanos[i]);
+                }
+            }
+            case KIND_DATE -> {
+                long[] days = readLongs(n);
+                for (int i = 0; i < n; i++) {
+                    present[i] = LocalDate.ofEpochDay(days[i]).toString();
+                }
+            }
+            case KIND_DOUBLE -> {
+                for (int i = 0; i < n; i++) {
+                    present[i] = toDouble(in.readDouble());
+                }
+            }
+            case KIND_BOOLEAN -> {
+                int i = 0;
+                while (i < n) {
+                    boolean value = in.readBoolean();
+                    int run = readVarInt(in);
+                    Arrays.fill(present, i, i + run, value);
+                    i += run;
+                }
+            }
+            case KIND_UUID -> {
+                for (int i = 0; i < n; i++) {
+                    present[i] = new UUID(in.readLong(), in.readLong()).toString();
+                }
+            }
+            case KIND_DICTIONARY -> {
+                String[] dictionary = new String[readVarInt(in)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = readString();
+                }
+                long[] codes = readPacked(in, n);
+                for (int i = 0; i < n; i++) {
+                    present[i] = dictionary[(int) codes[i]];
+                }
+            }
+            case KIND_STRING -> {
+                for (int i = 0; i < n; i++) {
+                    present[i] = readString();
+                }
+            }
+            case KIND_VALUES -> {
+                for (int i = 0; i < n; i++) {
+                    byte[] bytes = new byte[readVarInt(in)];
+                    in.readFully(bytes);
+                    present[i] = valueMapper.readValue(bytes, Object.class);
+                }
+            }
+            default -> throw new IOException("Unknown column kind in columnar file: " + kind[0]);
+        }
+
+        Object[] rowValues = new Object[count];
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (rowStates[i] == STATE_VALUE) {
+                rowValues[i] = present[next++];
+            }
+        }
+        return rowValues;
+    }
+
+    /**
+     * Reads the run-length encoded states of all rows.
+     *
+     * @param count the number of rows
+     * @param rowStates receives the state of every row
+     * @return the number of rows in state VALUE
+     * @throws IOException if an error occurs while reading the file
+     */
+    private int readStates(int count, byte[] rowStates) throws IOException {
+        int i = 0;
+        int valueCount = 0;
+        while (i < count) {
+            byte state = in.readByte();
+            int run = readVarInt(in);
+            if (run == 0 || i + run > count) {
+                throw new IOException("Invalid run length in columnar file");
+            }
+            Arrays.fill(rowStates, i, i + run, state);
+            if (state == STATE_VALUE) {
+                valueCount += run;
+            }
+            i += run;
+        }
+        return valueCount;
+    }
+
+    /**
+     * Reads integral values written as offsets to the minimum or as deltas to the previous value.
+     *
+     * @param n the number of values
+     * @return the values
+     * @throws IOException if an error occurs while reading the file
+     */
+    private long[] readLongs(int n) throws IOException {
+        byte packing = in.readByte();
+        long first = unzigzag(readVarLong(in));
+        if (packing == PACKING_DELTA) {
+            long[] deltas = readPacked(in, n - 1);
+            long[] longs = new long[n];
+            longs[0] = first;
+            for (int i = 1; i < n; i++) {
+                longs[i] = longs[i - 1] + unzigzag(deltas[i - 1]);
+            }
+            return longs;
+        }
+        long[] longs = readPacked(in, n);
+        for (int i = 0; i < n; i++) {
+            longs[i] += first;
+        }
+        return longs;
+    }
+
+    private ColumnStatistics readStatistics(byte kind) throws IOException {
+        long nullCount = readVarLong(in);
+        if (!in.readBoolean()) {
+            return new ColumnStatistics(nullCount, null, null);
+        }
+        return switch (kind) {
+            case KIND_LONG -> new ColumnStatistics(nullCount, toNumber(unzigzag(readVarLong(in))), toNumber(unzigzag(readVarLong(in))));
+            case KIND_TIMESTAMP -> new ColumnStatistics(nullCount, toTimestamp(unzigzag(readVarLong(in))), toTimestamp(unzigzag(readVarLong(in))));
+            case KIND_DATE -> new ColumnStatistics(nullCount,
+                    LocalDate.ofEpochDay(unzigzag(readVarLong(in))).toString(), LocalDate.ofEpochDay(unzigzag(readVarLong(in))).toString());
+            case KIND_DOUBLE -> new ColumnStatistics(nullCount, toDouble(in.readDouble()), toDouble(in.readDouble()));
+            case KIND_BOOLEAN -> new ColumnStatistics(nullCount, in.readBoolean(), in.readBoolean());
+            default -> new ColumnStatistics(nullCount, readString(), readString());
+        };
+    }
+
+    // Ganze Zahlen wie Jackson als Integer zurückgeben, wenn sie passen
+    private static Object toNumber(long value) {
+        return value == (int) value ? (Object) (int) value : (Object) value;
+    }
+
+    private Object toDouble(double value) {
+        return exact && Double.isFinite(value) ? BigDecimal.valueOf(value) : (Object) value;
+    }
+
+    private static String toTimestamp(long nanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC).toString();
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
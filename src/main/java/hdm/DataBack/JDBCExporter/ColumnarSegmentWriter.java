@@ -0,0 +1,478 @@
+package hdm.DataBack.JDBCExporter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static hdm.DataBack.JDBCExporter.ColumnarSegment.*;
+
+/*
+
+Writes table entries as a columnar file (see ColumnarSegment). Entries are collected until a segment is full,
+then every column of the segment is encoded on its own, so at most one segment of rows is held in memory.
+
+ */
+
+public class ColumnarSegmentWriter implements RowSink {
+    private final DataOutputStream out;
+    private final ObjectMapper valueMapper;
+    private final int segmentRows;
+    private final List<String> indexes = new ArrayList<>();
+    private final List<Map<String, Object>> rows = new ArrayList<>();
+    private long rowCount;
+
+    private record Statistics(long nullCount, byte kind, Object min, Object max) {}
+
+    /**
+     * Constructor for ColumnarSegmentWriter that writes the file header.
+     *
+     * @param stream the stream the file is written to
+     * @param codec the codec values without a columnar encoding are written in
+     * @param segmentRows the number of rows per segment
+     * @throws IOException if an error occurs while writing the header
+     */
+    ColumnarSegmentWriter(OutputStream stream, FileCodec codec, int segmentRows) throws IOException {
+        this.out = new DataOutputStream(stream);
+        this.valueMapper = codec.getObjectMapper();
+        this.segmentRows = Math.max(1, segmentRows);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(codec.name());
+    }
+
+    /**
+     * Adds a row to the current segment and writes the segment once it is full.
+     *
+     * @param index the index of the entry
+     * @param row the column values of the row
+     * @throws IOException if an error occurs while writing a segment
+     */
+    @Override
+    public void writeEntry(String index, Map<String, Object> row) throws IOException {
+        indexes.add(index);
+        rows.add(row);
+        rowCount++;
+        if (rows.size() >= segmentRows) {
+            writeSegment();
+        }
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Writes the last segment and the end marker and closes the underlying stream.
+     *
+     * @throws IOException if an error occurs while writing
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeSegment();
+            writeVarLong(out, 0);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Encodes the collected rows column by column, followed by the statistics of every column.
+     *
+     * @throws IOException if an error occurs while writing
+     */
+    private void writeSegment() throws IOException {
+        int count = rows.size();
+        if (count == 0) {
+            return;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (Map<String, Object> row : rows) {
+            names.addAll(row.keySet());
+        }
+        writeVarLong(out, count);
+        writeVarLong(out, names.size());
+
+        byte[] states = new byte[count];
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = indexes.get(i);
+            states[i] = values[i] == null ? STATE_NULL : STATE_VALUE;
+        }
+        writeColumn(states, values, count);
+
+        List<Statistics> statistics = new ArrayList<>(names.size());
+        for (String name : names) {
+            for (int i = 0; i < count; i++) {
+                Map<String, Object> row = rows.get(i);
+                values[i] = row.get(name);
+                states[i] = values[i] != null ? STATE_VALUE : row.containsKey(name) ? STATE_NULL : STATE_ABSENT;
+            }
+            writeString(name);
+            statistics.add(writeColumn(states, values, count));
+        }
+        for (Statistics column : statistics) {
+            writeStatistics(column);
+        }
+        indexes.clear();
+        rows.clear();
+    }
+
+    /**
+     * Writes the kind, the states and the values of one column.
+     *
+     * @param states the state of every row
+     * @param values the value of every row, null unless the state is VALUE
+     * @param count the number of rows
+     * @return the statistics of the column
+     * @throws IOException if an error occurs while writing
+     */
+    private Statistics writeColumn(byte[] states, Object[] values, int count) throws IOException {
+        Object[] present = new Object[count];
+        int n = 0;
+        long nullCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (states[i] == STATE_VALUE) {
+                present[n++] = values[i];
+            } else if (states[i] == STATE_NULL) {
+                nullCount++;
+            }
+        }
+
+        byte kind = chooseKind(present, n);
+        long[] encoded = null;
+        if (kind == KIND_STRING) {
+            // Zeitstempel und Datumswerte werden als Zahlen gespeichert, sofern sie sich exakt zurückverwandeln lassen
+            if ((encoded = timestamps(present, n)) != null) {
+                kind = KIND_TIMESTAMP;
+            } else if ((encoded = dates(present, n)) != null) {
+                kind = KIND_DATE;
+            } else if (isDictionaryCandidate(present, n)) {
+                kind = KIND_DICTIONARY;
+            }
+        }
+
+        out.writeByte(kind);
+        writeStates(states, count);
+        switch (kind) {
+            case KIND_LONG -> {
+                long[] longs = new long[n];
+                for (int i = 0; i < n; i++) {
+                    longs[i] = ((Number) present[i]).longValue();
+                }
+                return writeLongs(longs, n, nullCount, kind);
+            }
+            case KIND_TIMESTAMP, KIND_DATE -> {
+                return writeLongs(encoded, n, nullCount, kind);
+            }
+            case KIND_DOUBLE -> {
+                double min = Double.NaN;
+                double max = Double.NaN;
+                for (int i = 0; i < n; i++) {
+                    double value = (Double) present[i];
+                    out.writeDouble(value);
+                    if (!Double.isNaN(value)) {
+                        min = Double.isNaN(min) ? value : Math.min(min, value);
+                        max = Double.isNaN(max) ? value : Math.max(max, value);
+                    }
+                }
+                return Double.isNaN(min) ? new Statistics(nullCount, kind, null, null) : new Statistics(nullCount, kind, min, max);
+            }
+            case KIND_BOOLEAN -> {
+                boolean sawFalse = false;
+                boolean sawTrue = false;
+                int i = 0;
+                while (i < n) {
+                    boolean value = (Boolean) present[i];
+                    int run = 1;
+                    while (i + run < n && (Boolean) present[i + run] == value) {
+                        run++;
+                    }
+                    out.writeBoolean(value);
+                    writeVarLong(out, run);
+                    sawFalse |= !value;
+                    sawTrue |= value;
+                    i += run;
+                }
+                return n == 0 ? new Statistics(nullCount, kind, null, null) : new Statistics(nullCount, kind, !sawFalse, sawTrue);
+            }
+            case KIND_UUID -> {
+                for (int i = 0; i < n; i++) {
+                    UUID uuid = present[i] instanceof UUID ? (UUID) present[i] : UUID.fromString((String) present[i]);
+                    out.writeLong(uuid.getMostSignificantBits());
+                    out.writeLong(uuid.getLeastSignificantBits());
+                }
+                return stringStatistics(present, n, nullCount, kind);
+            }
+            case KIND_DICTIONARY -> {
+                Map<String, Integer> dictionary = new LinkedHashMap<>();
+                long[] codes = new long[n];
+                for (int i = 0; i < n; i++) {
+                    codes[i] = dictionary.computeIfAbsent(present[i].toString(), key -> dictionary.size());
+                }
+                writeVarLong(out, dictionary.size());
+                for (String entry : dictionary.keySet()) {
+                    writeString(entry);
+                }
+                writePacked(out, codes, n, bitWidth(dictionary.size() - 1));
+                return stringStatistics(present, n, nullCount, kind);
+            }
+            case KIND_STRING -> {
+                for (int i = 0; i < n; i++) {
+                    writeString(present[i].toString());
+                }
+                return stringStatistics(present, n, nullCount, kind);
+            }
+            case KIND_VALUES -> {
+                for (int i = 0; i < n; i++) {
+                    byte[] bytes = valueMapper.writeValueAsBytes(present[i]);
+                    writeVarLong(out, bytes.length);
+                    out.write(bytes);
+                }
+                return new Statistics(nullCount, kind, null, null);
+            }
+            default -> {
+                return new Statistics(nullCount, kind, null, null);
+            }
+        }
+    }
+
+    /**
+     * Chooses the kind of a column from the types of its values. Strings are refined later.
+     *
+     * @param present the values of the rows in state VALUE
+     * @param n the number of values
+     * @return the kind of the column
+     */
+    private static byte chooseKind(Object[] present, int n) {
+        if (n == 0) {
+            return KIND_NULL;
+        }
+        boolean integral = true;
+        boolean doubles = true;
+        boolean booleans = true;
+        boolean uuids = true;
+        boolean texts = true;
+        for (int i = 0; i < n; i++) {
+            Object value = present[i];
+            integral &= value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+            doubles &= value instanceof Double;
+            booleans &= value instanceof Boolean;
+            texts &= value instanceof String || value instanceof UUID;
+            uuids &= value instanceof UUID || value instanceof String && isCanonicalUUID((String) value);
+        }
+        if (integral) return KIND_LONG;
+        if (doubles) return KIND_DOUBLE;
+        if (booleans) return KIND_BOOLEAN;
+        if (uuids) return KIND_UUID;
+        if (texts) return KIND_STRING;
+        return KIND_VALUES;
+    }
+
+    private static boolean isCanonicalUUID(String value) {
+        if (value.length() != 36 || value.charAt(8) != '-' || value.charAt(13) != '-' || value.charAt(18) != '-' || value.charAt(23) != '-') {
+            return false;
+        }
+        try {
+            return UUID.fromString(value).toString().equals(value);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Converts timestamps in the form written by the exporter into nanoseconds since 1970.
+     *
+     * @param present the string values of the column
+     * @param n the number of values
+     * @return the nanoseconds, or null if a value is no timestamp or would not be written back identically
+     */
+    private static long[] timestamps(Object[] present, int n) {
+        long[] nanos = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (!(present[i] instanceof String text) || text.length() < 16 || text.charAt(10) != 'T') {
+                return null;
+            }
+            try {
+                LocalDateTime timestamp = LocalDateTime.parse(text);
+                if (!timestamp.toString().equals(text)) {
+                    return null;
+                }
+                nanos[i] = Math.addExact(Math.multiplyExact(timestamp.toEpochSecond(ZoneOffset.UTC), 1_000_000_000L), timestamp.getNano());
+            } catch (DateTimeParseException | ArithmeticException e) {
+                return null;
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * Converts dates in ISO form into days since 1970.
+     *
+     * @param present the string values of the column
+     * @param n the number of values
+     * @return the days, or null if a value is no date or would not be written back identically
+     */
+    private static long[] dates(Object[] present, int n) {
+        long[] days = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (!(present[i] instanceof String text) || text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+                return null;
+            }
+            try {
+                LocalDate date = LocalDate.parse(text);
+                if (!date.toString().equals(text)) {
+                    return null;
+                }
+                days[i] = date.toEpochDay();
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Checks whether a string column repeats its values often enough for a dictionary.
+     *
+     * @param present the values of the column
+     * @param n the number of values
+     * @return true if at most half of the values are distinct
+     */
+    private static boolean isDictionaryCandidate(Object[] present, int n) {
+        Set<String> distinct = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            if (distinct.add(present[i].toString()) && distinct.size() * 2 > n) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes integral values either as offsets to the minimum or as deltas to the previous value,
+     * whichever needs fewer bits, bit-packed.
+     *
+     * @param values the values
+     * @param n the number of values
+     * @param nullCount the number of null values of the column
+     * @param kind the kind of the column
+     * @return the statistics of the column
+     * @throws IOException if an error occurs while writing
+     */
+    private Statistics writeLongs(long[] values, int n, long nullCount, byte kind) throws IOException {
+        long min = values[0];
+        long max = values[0];
+        for (int i = 1; i < n; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        long offsetBits = 0;
+        long deltaBits = 0;
+        for (int i = 0; i < n; i++) {
+            offsetBits |= values[i] - min;
+            if (i > 0) {
+                deltaBits |= zigzag(values[i] - values[i - 1]);
+            }
+        }
+        long[] packed = new long[n];
+        if (bitWidth(deltaBits) < bitWidth(offsetBits)) {
+            out.writeByte(PACKING_DELTA);
+            writeVarLong(out, zigzag(values[0]));
+            for (int i = 1; i < n; i++) {
+                packed[i - 1] = zigzag(values[i] - values[i - 1]);
+            }
+            writePacked(out, packed, n - 1, bitWidth(deltaBits));
+        } else {
+            out.writeByte(PACKING_OFFSET);
+            writeVarLong(out, zigzag(min));
+            for (int i = 0; i < n; i++) {
+                packed[i] = values[i] - min;
+            }
+            writePacked(out, packed, n, bitWidth(offsetBits));
+        }
+        return new Statistics(nullCount, kind, min, max);
+    }
+
+    private static Statistics stringStatistics(Object[] present, int n, long nullCount, byte kind) {
+        String min = null;
+        String max = null;
+        for (int i = 0; i < n; i++) {
+            String value = present[i].toString();
+            if (min == null || value.compareTo(min) < 0) min = value;
+            if (max == null || value.compareTo(max) > 0) max = value;
+        }
+        if (min == null || min.length() > MAX_STATISTICS_LENGTH || max.length() > MAX_STATISTICS_LENGTH) {
+            return new Statistics(nullCount, kind, null, null);
+        }
+        return new Statistics(nullCount, kind, min, max);
+    }
+
+    /**
+     * Writes the states of all rows as runs of equal states.
+     *
+     * @param states the state of every row
+     * @param count the number of rows
+     * @throws IOException if an error occurs while writing
+     */
+    private void writeStates(byte[] states, int count) throws IOException {
+        int i = 0;
+        while (i < count) {
+            int run = 1;
+            while (i + run < count && states[i + run] == states[i]) {
+                run++;
+            }
+            out.writeByte(states[i]);
+            writeVarLong(out, run);
+            i += run;
+        }
+    }
+
+    private void writeStatistics(Statistics statistics) throws IOException {
+        writeVarLong(out, statistics.nullCount());
+        out.writeBoolean(statistics.min() != null);
+        if (statistics.min() == null) {
+            return;
+        }
+        switch (statistics.kind()) {
+            case KIND_LONG, KIND_TIMESTAMP, KIND_DATE -> {
+                writeVarLong(out, zigzag((Long) statistics.min()));
+                writeVarLong(out, zigzag((Long) statistics.max()));
+            }
+            case KIND_DOUBLE -> {
+                out.writeDouble((Double) statistics.min());
+                out.writeDouble((Double) statistics.max());
+            }
+            case KIND_BOOLEAN -> {
+                out.writeBoolean((Boolean) statistics.min());
+                out.writeBoolean((Boolean) statistics.max());
+            }
+            default -> {
+                writeString((String) statistics.min());
+                writeString((String) statistics.max());
+            }
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,16 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface ConnectionFactory {
+
+    /**
+     * Opens a new connection to the database that is backed up or restored.
+     *
+     * @return a new database connection
+     * @throws SQLException if a database access error occurs
+     */
+    Connection open() throws SQLException;
+}
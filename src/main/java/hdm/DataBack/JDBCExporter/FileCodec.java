@@ -0,0 +1,106 @@
+package hdm.DataBack.JDBCExporter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+
+The encodings the rows of backup files can be written in. All readers and writers work on Jackson's streaming
+parsers and generators, so they handle every codec the same way; only the factory creating them differs.
+- JSON is human readable and stays the default, e.g. for debugging.
+- SMILE is Jackson's binary form of JSON. Column names are written once per file and afterwards referenced by a
+  back-reference of one or two bytes, as are short repeated string values, and numbers are stored in binary.
+  Decimals keep their exact value. UUIDs and byte arrays are still written as strings, so a row read from a Smile
+  file holds the same values as one read from a JSON file.
+The codec of a file is recognized by its first bytes, so the codec of a repository can be chosen freely for new
+repositories and every file can be read without knowing it.
+
+ */
+
+public enum FileCodec {
+    JSON(new ObjectMapper()),
+    SMILE(new ObjectMapper(SmileFactory.builder()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build())
+            .registerModule(new SimpleModule("TextValues")
+                    .addSerializer(UUID.class, ToStringSerializer.instance)
+                    .addSerializer(byte[].class, new Base64Serializer())));
+
+    // Jeder Smile-Inhalt beginnt mit ":)\n"
+    private static final byte[] SMILE_HEADER = {':', ')', '\n'};
+    private static final TypeReference<Map<String, Object>> ROW_TYPE = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper;
+
+    FileCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns the mapper reading and writing this codec. Its factory creates the parsers and generators of the codec.
+     *
+     * @return the shared mapper of this codec
+     */
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Returns the values of a row as a reader returns them after the row was written with this codec.
+     *
+     * @param row the column values of the row
+     * @return the column values after writing and reading them
+     * @throws IOException if a value cannot be converted
+     */
+    public Map<String, Object> normalize(Map<String, Object> row) throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(row), ROW_TYPE);
+    }
+
+    /**
+     * Recognizes the codec of a stream by its first bytes without consuming them.
+     *
+     * @param in a stream supporting mark and reset, positioned at the start of the content
+     * @return SMILE if the stream starts with the Smile header, JSON otherwise
+     * @throws IOException if the stream cannot be read
+     */
+    public static FileCodec detect(InputStream in) throws IOException {
+        in.mark(SMILE_HEADER.length);
+        try {
+            for (byte expected : SMILE_HEADER) {
+                if (in.read() != expected) {
+                    return JSON;
+                }
+            }
+            return SMILE;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Writes byte arrays as Base64 strings like the JSON codec, instead of Smile's raw binary values.
+     */
+    private static class Base64Serializer extends StdSerializer<byte[]> {
+        Base64Serializer() {
+            super(byte[].class);
+        }
+
+        @Override
+        public void serialize(byte[] value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeString(Base64.getEncoder().encodeToString(value));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package hdm.DataBack.JDBCExporter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.GZIPInputStream;
+
+public class FileReader {
+
+    /**
+     * Opens a buffered input stream to a backup file.
+     * A gzip compressed file is recognized by its first bytes and decompressed transparently,
+     * as is a file stored as chunks of a {@link ChunkStore}.
+     *
+     * @param filePath the path of the file to read
+     * @return an input stream that must be closed by the caller
+     * @throws IOException if the file cannot be opened
+     */
+    public InputStream openInputStream(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        InputStream file = openDecompressed(path);
+        if (ChunkStore.isManifest(file)) {
+            try (file) {
+                return ChunkStore.locate(path).open(file, filePath);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Opens a buffered input stream to a file, decompressing it if it is gzip compressed.
+     * Large files are read from a shared memory mapping (see {@link MappedFile}) instead of being copied into buffers.
+     *
+     * @param path the path of the file to read
+     * @return an input stream that must be closed by the caller
+     * @throws IOException if the file cannot be opened
+     */
+    static InputStream openDecompressed(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        InputStream file = attributes.size() >= MappedFile.MIN_MAPPED_SIZE
+                ? MappedFile.open(path, attributes)
+                : new BufferedInputStream(Files.newInputStream(path));
+        file.mark(2);
+        int first = file.read();
+        int second = file.read();
+        file.reset();
+        if (first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+            return new BufferedInputStream(new GZIPInputStream(file, 64 * 1024));
+        }
+        return file;
+    }
+
+    /**
+     * Reads a whole text file, e.g. an SQL script, decompressing it if necessary.
+     *
+     * @param filePath the path of the file to read
+     * @return the content of the file
+     * @throws IOException if the file cannot be read
+     */
+    public String readString(String filePath) throws IOException {
+        try (InputStream in = openInputStream(filePath)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Opens a streaming reader over a file of indexed rows: a JSON or Smile array of entries, or a columnar file.
+     * A missing file is treated like an empty array.
+     *
+     * @param filePath the path of the file to read
+     * @return a row reader that must be closed by the caller
+     * @throws IOException if the file cannot be opened or does not contain indexed rows
+     */
+    public RowSource openRowReader(String filePath) throws IOException {
+        return openRowReader(filePath, false);
+    }
+
+    /**
+     * Opens a streaming reader over a file of indexed rows,
+     * reading decimal numbers as BigDecimal so their scale is kept (e.g. 9.50 stays 9.50).
+     * A missing file is treated like an empty array.
+     *
+     * @param filePath the path of the file to read
+     * @return a row reader that must be closed by the caller
+     * @throws IOException if the file cannot be opened or does not contain indexed rows
+     */
+    public RowSource openExactRowReader(String filePath) throws IOException {
+        return openRowReader(filePath, true);
+    }
+
+    /**
+     * Checks whether a file holds a table snapshot in the columnar format.
+     *
+     * @param filePath the path of the file
+     * @return true if the file exists and is columnar
+     * @throws IOException if the file cannot be read
+     */
+    public boolean isColumnar(String filePath) throws IOException {
+        if (!new File(filePath).exists()) {
+            return false;
+        }
+        try (InputStream in = openInputStream(filePath)) {
+            return ColumnarSegment.isColumnar(in);
+        }
+    }
+
+    private RowSource openRowReader(String filePath, boolean exact) throws IOException {
+        if (!new File(filePath).exists()) {
+            return new JsonRowReader(null, FileCodec.JSON.getObjectMapper());
+        }
+        InputStream in = openInputStream(filePath);
+        if (ColumnarSegment.isColumnar(in)) {
+            return new ColumnarSegmentReader(in, exact);
+        }
+        ObjectMapper mapper = FileCodec.detect(in).getObjectMapper();
+        if (exact) {
+            mapper = mapper.copy().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        }
+        return new JsonRowReader(mapper.getFactory().createParser(in), mapper);
+    }
+
+    /**
+     * Creates a JSON parser that streams from a file. The codec of the file is recognized by its first bytes,
+     * and the parser is bound to the ObjectMapper of that codec.
+     *
+     * @param filePath the path of the JSON file to read
+     * @return a parser that must be closed by the caller
+     * @throws IOException if the file cannot be opened
+     */
+    public JsonParser createJSONParser(String filePath) throws IOException {
+        InputStream in = openInputStream(filePath);
+        return FileCodec.detect(in).getObjectMapper().getFactory().createParser(in);
+    }
+}
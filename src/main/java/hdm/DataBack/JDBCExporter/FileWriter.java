@@ -1,18 +1,115 @@
 package hdm.DataBack.JDBCExporter;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.RowIdentity;
 import hdm.DataBack.Logger.Logger;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 
 public class FileWriter {
+    public static final int NO_COMPRESSION = 0;
+
+    // Gilt für alle Dateien, die ab jetzt geschrieben werden
+    private static volatile int compressionLevel = NO_COMPRESSION;
+    private static volatile int compressionThreads = 1;
+    private static volatile FileCodec codec = FileCodec.JSON;
+    private static volatile BackupOptions.TableFormat tableFormat = BackupOptions.TableFormat.ROWS;
+    private static volatile ChunkStore chunkStore;
+
     Logger logger = new Logger();
-    ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Sets how backup files are compressed from now on. Files are compressed as gzip in independent blocks,
+     * so large files are compressed on several threads. Readers detect compressed files by their content,
+     * so compressed and uncompressed files can be mixed in one backup repository.
+     *
+     * @param level the deflate level from 1 (fastest) to 9 (smallest), or 0 to write uncompressed files
+     * @param threads the number of threads compressing the blocks of one file
+     */
+    public static void setCompression(int level, int threads) {
+        compressionLevel = Math.max(NO_COMPRESSION, Math.min(9, level));
+        compressionThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the codec the rows of backup files are written in from now on.
+     * Readers recognize the codec of a file by its content, so no reader has to be configured.
+     *
+     * @param fileCodec the codec of new files, null for JSON
+     */
+    public static void setCodec(FileCodec fileCodec) {
+        codec = fileCodec != null ? fileCodec : FileCodec.JSON;
+    }
+
+    /**
+     * Sets the format full table snapshots are written in from now on.
+     * Readers recognize columnar files by their content, so no reader has to be configured.
+     *
+     * @param format the format of table snapshots, null for rows
+     */
+    public static void setTableFormat(BackupOptions.TableFormat format) {
+        tableFormat = format != null ? format : BackupOptions.TableFormat.ROWS;
+    }
+
+    /**
+     * Sets the store full table snapshots are deduplicated in from now on.
+     * Readers recognize files stored as chunks by their content, so no reader has to be configured.
+     *
+     * @param store the chunk store of the repository, null to write table snapshots as plain files
+     */
+    public static void setChunkStore(ChunkStore store) {
+        chunkStore = store;
+    }
+
+    /**
+     * Returns the store full table snapshots are deduplicated in.
+     *
+     * @return the chunk store, or null if table snapshots are written as plain files
+     */
+    public static ChunkStore getChunkStore() {
+        return chunkStore;
+    }
+
+    /**
+     * Checks whether table snapshots are written exactly like row files,
+     * so a file written with {@link #openJSONRowWriter(String)} can become a table snapshot by moving it.
+     *
+     * @return true if table snapshots are neither columnar nor deduplicated
+     */
+    public static boolean writesTablesAsRows() {
+        return tableFormat == BackupOptions.TableFormat.ROWS && chunkStore == null;
+    }
+
+    /**
+     * Returns the codec the rows of backup files are written in.
+     *
+     * @return the codec of new files
+     */
+    public static FileCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the format full table snapshots are written in.
+     *
+     * @return the format of table snapshots
+     */
+    public static BackupOptions.TableFormat getTableFormat() {
+        return tableFormat;
+    }
 
     /**
      * Writes the given content to a file at the specified file path.
@@ -22,7 +119,7 @@ public class FileWriter {
      * @throws IOException if an error occurs while writing to the file
      */
     public void writeFile(String filePath, String content) throws IOException {
-        try(java.io.FileWriter writer = new java.io.FileWriter(filePath)){
+        try(Writer writer = new OutputStreamWriter(openOutputStream(filePath), StandardCharsets.UTF_8)){
             writer.write(content);
             logger.info(String.format("File exported successfully: %s", filePath));
         }catch (IOException e){
@@ -31,7 +128,7 @@ public class FileWriter {
     }
 
     /**
-     * Writes a list of maps to a JSON file, adding unique indexes to each entry.
+     * Writes a list of maps to a JSON file, adding an index derived from its content to each entry.
      *
      * @param filePath the path of the JSON file to write
      * @param data the list of maps containing the data to write
@@ -40,16 +137,17 @@ public class FileWriter {
     public void writeJSONFile(String filePath, List<Map<String, Object>> data) throws IOException {
         try {
             List<Map<String, Object>> indexedData = new ArrayList<>();
+            RowIdentity identity = new RowIdentity(null);
 
             for(Map<String, Object> entry : data){
                 Map<String, Object> indexedEntry = new HashMap<>();
-                indexedEntry.put("index", UUID.randomUUID().toString());
+                indexedEntry.put("index", identity.next(entry));
                 indexedEntry.put("object", entry);
                 logger.info("Writing entry: " + entry);
                 indexedData.add(indexedEntry);
             }
             File jsonFile = new File(filePath);
-            objectMapper.writeValue(jsonFile, indexedData);
+            codec.getObjectMapper().writeValue(openOutputStream(filePath), indexedData);
             logger.info(String.format("Data exported to JSON successfully: %s", jsonFile.getName()));
         } catch (IOException e) {
             logger.error(String.format("Error writing JSON file: %s: %s", filePath, e.getMessage()));
@@ -57,7 +155,114 @@ public class FileWriter {
     }
 
     /**
-     * Writes a map to a JSON file using a pretty-printed format.
+     * Opens a streaming writer that appends indexed rows to a JSON file one at a time.
+     * The resulting file has the same layout as {@link #writeJSONFile(String, List)},
+     * but rows never have to be collected in memory first.
+     *
+     * @param filePath the path of the JSON file to write
+     * @return a row writer that must be closed to finish the file
+     * @throws IOException if the file cannot be opened
+     */
+    public JsonRowWriter openJSONRowWriter(String filePath) throws IOException {
+        return new JsonRowWriter(createJSONGenerator(filePath));
+    }
+
+    /**
+     * Returns the values of a row as a reader returns them after the row was written to a file in the current codec.
+     * A value read back can differ from the value that was written (a BigDecimal may come back as a Double,
+     * a byte array as its Base64 string), so sort keys that have to match rows read from a file are computed on the result.
+     *
+     * @param row the column values of the row
+     * @return the column values after writing and reading them
+     * @throws IOException if a value cannot be converted
+     */
+    public Map<String, Object> normalize(Map<String, Object> row) throws IOException {
+        return codec.normalize(row);
+    }
+
+    /**
+     * Opens a streaming writer for a full table snapshot (an export, current, head or checkpoint file).
+     * In the columnar table format the rows are written column by column in segments,
+     * otherwise like {@link #openJSONRowWriter(String)}. With a chunk store set, the file is deduplicated. Temporary files should use the row writer,
+     * because a columnar reader holds a whole segment in memory.
+     *
+     * @param filePath the path of the file to write
+     * @return a row writer that must be closed to finish the file
+     * @throws IOException if the file cannot be opened
+     */
+    public RowSink openTableWriter(String filePath) throws IOException {
+        OutputStream out = openTableOutputStream(filePath);
+        if (tableFormat == BackupOptions.TableFormat.COLUMNAR) {
+            return new ColumnarSegmentWriter(out, codec, ColumnarSegment.DEFAULT_SEGMENT_ROWS);
+        }
+        return new JsonRowWriter(codec.getObjectMapper().getFactory().createGenerator(out, JsonEncoding.UTF8));
+    }
+
+    /**
+     * Opens the output stream of a full table snapshot. With a chunk store set, the content is cut into chunks
+     * that are stored once per repository (each compressed if compression is enabled), and the file receives
+     * their manifest. Otherwise the file is opened like {@link #openOutputStream(String)}.
+     *
+     * @param filePath the path of the file to write
+     * @return an output stream that must be closed to finish the file
+     * @throws IOException if the file cannot be opened
+     */
+    private OutputStream openTableOutputStream(String filePath) throws IOException {
+        ChunkStore store = chunkStore;
+        if (store == null) {
+            return openOutputStream(filePath);
+        }
+        return new BufferedOutputStream(new ChunkingOutputStream(store, Paths.get(filePath), compressionLevel), 64 * 1024);
+    }
+
+    /**
+     * Writes the entries of a full table snapshot, keeping their indexes, in the table format set with
+     * {@link #setTableFormat(BackupOptions.TableFormat)}.
+     *
+     * @param filePath the path of the file to write
+     * @param entries the entries holding an "index" and an "object"
+     * @throws IOException if an error occurs while writing the file
+     */
+    public void writeTableFile(String filePath, List<Map<String, Object>> entries) throws IOException {
+        try (RowSink writer = openTableWriter(filePath)) {
+            for (Map<String, Object> entry : entries) {
+                writer.writeEntry(String.valueOf(entry.get("index")), (Map<String, Object>) entry.get("object"));
+            }
+        }
+        logger.info(String.format("Table data exported successfully: %s", new File(filePath).getName()));
+    }
+
+    /**
+     * Creates a JSON generator that streams into a file.
+     * The generator writes the codec set with {@link #setCodec(FileCodec)} and is bound to its ObjectMapper,
+     * so arbitrary values can be written with writeObject.
+     *
+     * @param filePath the path of the JSON file to write
+     * @return a generator that must be closed to finish the file
+     * @throws IOException if the file cannot be opened
+     */
+    public JsonGenerator createJSONGenerator(String filePath) throws IOException {
+        return codec.getObjectMapper().getFactory().createGenerator(openOutputStream(filePath), JsonEncoding.UTF8);
+    }
+
+    /**
+     * Opens a buffered output stream to a file, replacing any existing content.
+     * If compression is enabled, the written data is compressed as gzip.
+     *
+     * @param filePath the path of the file to write
+     * @return an output stream that must be closed to finish the file
+     * @throws IOException if the file cannot be opened
+     */
+    public OutputStream openOutputStream(String filePath) throws IOException {
+        OutputStream file = Files.newOutputStream(Paths.get(filePath));
+        if (compressionLevel == NO_COMPRESSION) {
+            return new BufferedOutputStream(file);
+        }
+        return new BufferedOutputStream(new ParallelGzipOutputStream(new BufferedOutputStream(file), compressionLevel, compressionThreads));
+    }
+
+    /**
+     * Writes a map to a JSON file using a pretty-printed format, or to a file of the binary codec if one is set.
      *
      * @param filePath the path of the JSON file to write
      * @param data the map containing the data to write
@@ -66,7 +271,12 @@ public class FileWriter {
     public void writeJSONFile(String filePath, Map<String, Object> data) throws IOException {
         try {
             File jsonFile = new File(filePath);
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, data);
+            FileCodec fileCodec = codec;
+            // Nur JSON wird eingerückt, binäre Formate kennen keine Formatierung
+            ObjectWriter writer = fileCodec == FileCodec.JSON
+                    ? fileCodec.getObjectMapper().writerWithDefaultPrettyPrinter()
+                    : fileCodec.getObjectMapper().writer();
+            writer.writeValue(openOutputStream(filePath), data);
             logger.info(String.format("Data exported to JSON successfully: %s", jsonFile.getName()));
         } catch (IOException e) {
             logger.error(String.format("Error writing JSON file: %s: %s", filePath, e.getMessage()));
@@ -83,7 +293,7 @@ public class FileWriter {
     public void writeJSONFileWithoutIndex(String filePath, List<Map<String, Object>> data) throws IOException {
         try {
             File jsonFile = new File(filePath);
-            objectMapper.writeValue(jsonFile, data); // Speichere die Daten direkt, ohne sie zu verändern
+            codec.getObjectMapper().writeValue(openOutputStream(filePath), data); // Speichere die Daten direkt, ohne sie zu verändern
             logger.info(String.format("Data exported to JSON successfully: %s", jsonFile.getName()));
         } catch (IOException e) {
             logger.error(String.format("Error writing JSON file: %s: %s", filePath, e.getMessage()));
@@ -0,0 +1,213 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+
+Computes the difference between two versions of a table in linear time.
+Every row is fingerprinted exactly once (see RowFingerprint) and rows are matched through hash lookups
+instead of comparing every old row with every new row. Rows are treated as a multiset: if a row exists
+twice in the old version and three times in the new one, exactly one copy is reported as added.
+Copies with the same index in both versions are paired first, so an index keeps naming the same copy across
+versions. An added copy keeps its index unless an old copy already holds it, in which case it is renumbered
+(see RowIdentity).
+
+If the table has a primary key, rows are matched by their key instead. A row whose key exists in both
+versions but whose content changed is reported in the "updated" section with only the changed columns,
+instead of as a full deletion plus a full re-addition.
+
+ */
+
+public class DiffEngine {
+
+    /**
+     * Compares old and new datasets, matching rows by primary key if the table has one.
+     *
+     * @param oldData the previous dataset, each entry holding an "index" and an "object"
+     * @param newData the new dataset, each entry holding an "index" and an "object"
+     * @param primaryKeys the primary key columns of the table, empty to match rows by content
+     * @return a map containing added records, deleted indexes and, for keyed tables, updated records
+     */
+    public Map<String, Object> compare(List<Map<String, Object>> oldData, List<Map<String, Object>> newData, List<String> primaryKeys) {
+        if (primaryKeys == null || primaryKeys.isEmpty()) {
+            return compare(oldData, newData);
+        }
+
+        List<Map<String, Object>> added = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        List<Map<String, Object>> updated = new ArrayList<>();
+
+        RowFingerprint[] oldKeys = new RowFingerprint[oldData.size()];
+        Map<RowFingerprint, Map<String, Object>> oldByKey = new HashMap<>(oldData.size() * 2);
+        for (int i = 0; i < oldData.size(); i++) {
+            oldKeys[i] = keyOf((Map<String, Object>) oldData.get(i).get("object"), primaryKeys);
+            oldByKey.put(oldKeys[i], oldData.get(i));
+        }
+
+        for (Map<String, Object> newRow : newData) {
+            Map<String, Object> newObject = (Map<String, Object>) newRow.get("object");
+            Map<String, Object> oldRow = oldByKey.remove(keyOf(newObject, primaryKeys));
+            if (oldRow == null) {
+                added.add(newRow);
+                continue;
+            }
+            Map<String, Object> oldObject = (Map<String, Object>) oldRow.get("object");
+            if (!RowFingerprint.of(oldObject).equals(RowFingerprint.of(newObject))) {
+                updated.add(updateOf(oldRow, oldObject, newObject));
+            }
+        }
+
+        // Alle übrigen Schlüssel existieren nicht mehr
+        for (int i = 0; i < oldData.size(); i++) {
+            if (oldByKey.containsKey(oldKeys[i])) {
+                deleted.add((String) oldData.get(i).get("index"));
+            }
+        }
+
+        // Reihenfolge der Abschnitte: siehe ReplayEngine
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put("deleted", deleted);
+        changes.put("updated", updated);
+        changes.put("added", added);
+        return changes;
+    }
+
+    /**
+     * Compares old and new datasets and identifies differences.
+     *
+     * @param oldData the previous dataset, each entry holding an "index" and an "object"
+     * @param newData the new dataset, each entry holding an "index" and an "object"
+     * @return a map containing the list of added records and the list of deleted indexes
+     */
+    public Map<String, Object> compare(List<Map<String, Object>> oldData, List<Map<String, Object>> newData) {
+        List<Map<String, Object>> added = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+
+        // Anzahl der Vorkommen jedes alten Eintrags
+        RowFingerprint[] oldFingerprints = new RowFingerprint[oldData.size()];
+        Map<RowFingerprint, int[]> remaining = new HashMap<>(oldData.size() * 2);
+        Map<Object, Integer> oldPositions = new HashMap<>(oldData.size() * 2);
+        for (int i = 0; i < oldData.size(); i++) {
+            RowFingerprint fingerprint = RowFingerprint.of(oldData.get(i).get("object"));
+            oldFingerprints[i] = fingerprint;
+            remaining.computeIfAbsent(fingerprint, k -> new int[1])[0]++;
+            oldPositions.put(oldData.get(i).get("index"), i);
+        }
+
+        // Kopien mit gleichem Index zuerst paaren, damit ein Index über alle Versionen dieselbe Kopie bezeichnet
+        boolean[] oldPaired = new boolean[oldData.size()];
+        RowFingerprint[] newFingerprints = new RowFingerprint[newData.size()];
+        boolean[] newPaired = new boolean[newData.size()];
+        for (int j = 0; j < newData.size(); j++) {
+            newFingerprints[j] = RowFingerprint.of(newData.get(j).get("object"));
+            Integer position = oldPositions.get(newData.get(j).get("index"));
+            if (position != null && !oldPaired[position] && oldFingerprints[position].equals(newFingerprints[j])) {
+                oldPaired[position] = true;
+                newPaired[j] = true;
+                remaining.get(newFingerprints[j])[0]--;
+            }
+        }
+
+        // Neue Einträge, für die kein alter Eintrag mehr übrig ist, wurden hinzugefügt
+        for (int j = 0; j < newData.size(); j++) {
+            if (newPaired[j]) {
+                continue;
+            }
+            int[] count = remaining.get(newFingerprints[j]);
+            if (count != null && count[0] > 0) {
+                count[0]--;
+            } else {
+                added.add(newData.get(j));
+            }
+        }
+
+        // Alte Einträge, die nicht verbraucht wurden, wurden gelöscht
+        for (int i = 0; i < oldData.size(); i++) {
+            int[] count = remaining.get(oldFingerprints[i]);
+            if (!oldPaired[i] && count[0] > 0) {
+                count[0]--;
+                deleted.add((String) oldData.get(i).get("index"));
+            }
+        }
+
+        if (!added.isEmpty()) {
+            renumberCopies(oldData, added);
+        }
+
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put("deleted", deleted);
+        changes.put("added", added);
+        return changes;
+    }
+
+    /**
+     * Gives every added row whose index is already held by an old row (another copy of the same content) the next
+     * free index of its content fingerprint.
+     *
+     * @param oldData the previous dataset
+     * @param added the added entries, updated in place
+     */
+    private void renumberCopies(List<Map<String, Object>> oldData, List<Map<String, Object>> added) {
+        Set<String> taken = new HashSet<>(oldData.size() * 2);
+        for (Map<String, Object> oldRow : oldData) {
+            taken.add((String) oldRow.get("index"));
+        }
+        for (int i = 0; i < added.size(); i++) {
+            String index = (String) added.get(i).get("index");
+            String free = RowIdentity.unique(index, taken);
+            if (!free.equals(index)) {
+                Map<String, Object> entry = new LinkedHashMap<>(added.get(i));
+                entry.put("index", free);
+                added.set(i, entry);
+            }
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the primary key values of a row.
+     *
+     * @param object the column values of the row
+     * @param primaryKeys the primary key columns
+     * @return the fingerprint of the key
+     */
+    private RowFingerprint keyOf(Map<String, Object> object, List<String> primaryKeys) {
+        List<Object> key = new ArrayList<>(primaryKeys.size());
+        for (String primaryKey : primaryKeys) {
+            key.add(object.get(primaryKey));
+        }
+        return RowFingerprint.of(key);
+    }
+
+    /**
+     * Builds the "updated" entry for a row whose key is unchanged but whose content differs.
+     * Only changed columns are stored; if the set of columns itself changed, the full new object is stored instead.
+     *
+     * @param oldRow the previous entry of the row
+     * @param oldObject the previous column values
+     * @param newObject the new column values
+     * @return a map holding the index of the old entry and either the changed columns or the full new object
+     */
+    Map<String, Object> updateOf(Map<String, Object> oldRow, Map<String, Object> oldObject, Map<String, Object> newObject) {
+        Map<String, Object> update = new HashMap<>();
+        update.put("index", oldRow.get("index"));
+        if (!oldObject.keySet().equals(newObject.keySet())) {
+            update.put("object", newObject);
+            return update;
+        }
+        Map<String, Object> changedColumns = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> column : newObject.entrySet()) {
+            Object oldValue = oldObject.get(column.getKey());
+            if (!RowFingerprint.of(oldValue).equals(RowFingerprint.of(column.getValue()))) {
+                changedColumns.put(column.getKey(), column.getValue());
+            }
+        }
+        update.put("changes", changedColumns);
+        return update;
+    }
+}
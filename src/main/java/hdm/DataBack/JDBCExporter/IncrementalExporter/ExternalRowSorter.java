@@ -0,0 +1,256 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import hdm.DataBack.JDBCExporter.FileReader;
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.RowSource;
+import hdm.DataBack.JDBCExporter.JsonRowWriter;
+import hdm.DataBack.JDBCExporter.RowSink;
+import hdm.DataBack.Logger.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/*
+
+Sorts indexed rows by a RowOrder with a bounded amount of memory (external merge sort).
+Rows are buffered until the run size is reached, sorted, and spilled into a sorted run file.
+If the next buffer continues where the previous run ended (which is the normal case, because the
+exporter already asks the database for ORDER BY primary key), it is appended to the same run.
+Input that arrives in order therefore produces a single run that is simply moved into place.
+Otherwise the runs are combined with a k-way merge, in several passes if there are many runs.
+
+ */
+
+public class ExternalRowSorter implements AutoCloseable {
+    public static final int DEFAULT_RUN_SIZE = 100000;
+    private static final int MAX_FAN_IN = 64;
+
+    private final Logger logger = new Logger();
+    private final FileWriter fileWriter = new FileWriter();
+    private final FileReader fileReader = new FileReader();
+
+    private final RowOrder order;
+    private final String tempDirectory;
+    private final int runSize;
+
+    private final List<KeyedEntry> buffer = new ArrayList<>();
+    private final List<String> runs = new ArrayList<>();
+    private JsonRowWriter currentRun;
+    private Object lastKey;
+    private long rowCount;
+
+    private record KeyedEntry(Object key, Map<String, Object> entry) {}
+
+    /**
+     * Constructor for ExternalRowSorter with the default run size.
+     *
+     * @param order the order rows are sorted in
+     * @param tempDirectory the directory for temporary run files
+     */
+    public ExternalRowSorter(RowOrder order, String tempDirectory) {
+        this(order, tempDirectory, DEFAULT_RUN_SIZE);
+    }
+
+    /**
+     * Constructor for ExternalRowSorter.
+     *
+     * @param order the order rows are sorted in
+     * @param tempDirectory the directory for temporary run files
+     * @param runSize the maximum number of rows held in memory at once
+     */
+    public ExternalRowSorter(RowOrder order, String tempDirectory, int runSize) {
+        this.order = order;
+        this.tempDirectory = tempDirectory;
+        this.runSize = runSize;
+    }
+
+    /**
+     * Sorts an existing file of indexed rows into another file.
+     *
+     * @param order the order rows are sorted in
+     * @param tempDirectory the directory for temporary run files
+     * @param sourcePath the file to sort
+     * @param targetPath the file to write the sorted rows to
+     * @return the number of sorted rows
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    public static long sortFile(RowOrder order, String tempDirectory, String sourcePath, String targetPath) throws IOException {
+        try (ExternalRowSorter sorter = new ExternalRowSorter(order, tempDirectory);
+             RowSource reader = new FileReader().openRowReader(sourcePath)) {
+            Map<String, Object> entry;
+            while ((entry = reader.next()) != null) {
+                sorter.add(entry);
+            }
+            return sorter.finish(targetPath);
+        }
+    }
+
+    /**
+     * Adds an entry to the sort.
+     *
+     * @param entry an entry holding an "index" and an "object"
+     * @throws IOException if an error occurs while spilling a run
+     */
+    public void add(Map<String, Object> entry) throws IOException {
+        add(entry, order.keyOf((Map<String, Object>) entry.get("object")));
+    }
+
+    /**
+     * Adds an entry to the sort under a key computed in advance. The key has to be the one {@link RowOrder#keyOf(Map)}
+     * returns for the object as it is read back from a run file, because the runs are merged by the keys of the rows
+     * read back.
+     *
+     * @param entry an entry holding an "index" and an "object"
+     * @param key the sort key of the entry
+     * @throws IOException if an error occurs while spilling a run
+     */
+    public void add(Map<String, Object> entry, Object key) throws IOException {
+        buffer.add(new KeyedEntry(key, entry));
+        rowCount++;
+        if (buffer.size() >= runSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Writes all added entries in sorted order to the target file.
+     *
+     * @param targetPath the file to write the sorted rows to
+     * @return the number of sorted rows
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    public long finish(String targetPath) throws IOException {
+        spill();
+        closeCurrentRun();
+
+        if (runs.isEmpty()) {
+            fileWriter.openTableWriter(targetPath).close();
+            return 0;
+        }
+        while (runs.size() > MAX_FAN_IN) {
+            List<String> merged = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                List<String> group = new ArrayList<>(runs.subList(i, Math.min(i + MAX_FAN_IN, runs.size())));
+                String mergedRun = newRunPath();
+                try (RowSink writer = fileWriter.openJSONRowWriter(mergedRun)) {
+                    merge(group, writer);
+                }
+                merged.add(mergedRun);
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+        // Ein einzelner Lauf hat schon das Zielformat, außer Tabellen werden spaltenweise oder in Chunks gespeichert
+        if (runs.size() == 1 && FileWriter.writesTablesAsRows()) {
+            Files.move(Paths.get(runs.get(0)), Paths.get(targetPath), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            logger.info(String.format("Merging %d sorted runs into %s", runs.size(), targetPath));
+            try (RowSink writer = fileWriter.openTableWriter(targetPath)) {
+                merge(new ArrayList<>(runs), writer);
+            }
+        }
+        runs.clear();
+        return rowCount;
+    }
+
+    /**
+     * Deletes all remaining temporary run files.
+     *
+     * @throws IOException if a run file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closeCurrentRun();
+        for (String run : runs) {
+            Files.deleteIfExists(Paths.get(run));
+        }
+        runs.clear();
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort((a, b) -> order.compareKeys(a.key(), b.key()));
+        // Nur einen neuen Lauf beginnen, wenn der Puffer nicht nahtlos an den letzten anschließt
+        if (currentRun == null || order.compareKeys(buffer.get(0).key(), lastKey) < 0) {
+            closeCurrentRun();
+            String run = newRunPath();
+            runs.add(run);
+            currentRun = fileWriter.openJSONRowWriter(run);
+        }
+        for (KeyedEntry keyedEntry : buffer) {
+            currentRun.writeEntry((String) keyedEntry.entry().get("index"), (Map<String, Object>) keyedEntry.entry().get("object"));
+        }
+        lastKey = buffer.get(buffer.size() - 1).key();
+        buffer.clear();
+    }
+
+    private void closeCurrentRun() throws IOException {
+        if (currentRun != null) {
+            currentRun.close();
+            currentRun = null;
+        }
+    }
+
+    private String newRunPath() throws IOException {
+        Files.createDirectories(Paths.get(tempDirectory));
+        Path run = Files.createTempFile(Paths.get(tempDirectory), "run_", ".json");
+        return run.toString();
+    }
+
+    private void merge(List<String> inputs, RowSink writer) throws IOException {
+        List<RowSource> readers = new ArrayList<>();
+        PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> order.compareKeys(a.key, b.key));
+        try {
+            for (String input : inputs) {
+                RowSource reader = fileReader.openRowReader(input);
+                readers.add(reader);
+                Cursor cursor = new Cursor(reader);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                writer.writeEntry((String) cursor.entry.get("index"), (Map<String, Object>) cursor.entry.get("object"));
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (RowSource reader : readers) {
+                reader.close();
+            }
+            for (String input : inputs) {
+                Files.deleteIfExists(Paths.get(input));
+            }
+        }
+    }
+
+    private class Cursor {
+        private final RowSource reader;
+        private Map<String, Object> entry;
+        private Object key;
+
+        Cursor(RowSource reader) {
+            this.reader = reader;
+        }
+
+        boolean advance() throws IOException {
+            entry = reader.next();
+            if (entry == null) {
+                return false;
+            }
+            key = order.keyOf((Map<String, Object>) entry.get("object"));
+            return true;
+        }
+    }
+}
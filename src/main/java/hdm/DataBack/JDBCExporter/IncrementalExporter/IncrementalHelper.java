@@ -1,21 +1,49 @@
 package hdm.DataBack.JDBCExporter.IncrementalExporter;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
+import hdm.DataBack.JDBCExporter.FileReader;
 import hdm.DataBack.JDBCExporter.FileWriter;
 import hdm.DataBack.JDBCExporter.MetaDataController;
+import hdm.DataBack.JDBCExporter.RowSource;
 import hdm.DataBack.Logger.Logger;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 
 public class IncrementalHelper {
     static Logger logger = new Logger();
     static FileWriter fileWriter = new FileWriter();
+    static FileReader fileReader = new FileReader();
     static ObjectMapper objectMapper = new ObjectMapper();
+    private final DiffEngine diffEngine = new DiffEngine();
+    private final MergeJoinDiff mergeJoinDiff = new MergeJoinDiff();
+    private final VersionCache versionCache;
+
+    /**
+     * Constructor for IncrementalHelper without a version cache.
+     */
+    public IncrementalHelper() {
+        this(null);
+    }
+
+    /**
+     * Constructor for IncrementalHelper that caches reconstructed table versions.
+     *
+     * @param versionCache the cache of reconstructed versions, or null to always replay the chain
+     */
+    public IncrementalHelper(VersionCache versionCache) {
+        this.versionCache = versionCache;
+    }
 
     /**
      * Compares the current data with the latest incremental backup and updates the incremental files accordingly.
@@ -26,24 +54,42 @@ public class IncrementalHelper {
      * @throws IOException if an error occurs while reading or writing files
      */
     public void compareCurrentToIncremental(List<String> incrementalPaths, List<Map<String, Object>> currentData, String currentPath) throws IOException {
+        compareCurrentToIncremental(incrementalPaths, currentData, currentPath, new ArrayList<>());
+    }
+
+    /**
+     * Compares the current data with the latest incremental backup and updates the incremental files accordingly.
+     * Rows are matched by primary key, so changed rows are stored as updates of the changed columns.
+     *
+     * @param incrementalPaths list of file paths to incremental backup files
+     * @param currentData the latest current data from the database
+     * @param currentPath the file path to store updated current data
+     * @param primaryKeys the primary key columns of the table, empty to match rows by content
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    public void compareCurrentToIncremental(List<String> incrementalPaths, List<Map<String, Object>> currentData, String currentPath, List<String> primaryKeys) throws IOException {
         if (!incrementalPaths.isEmpty()) {
             String latestIncrementalPath = incrementalPaths.get(incrementalPaths.size() - 1);
             File latestIncrementalFile = new File(latestIncrementalPath);
             logger.info("Latest incremental file:"+ latestIncrementalPath);
 
             if (latestIncrementalFile.exists()) {
-                if (isIncrementalChangesFile(latestIncrementalFile)) {
+                ReplayEngine replayEngine = new ReplayEngine();
+                replayEngine.load(currentData);
+                if (replayEngine.applyChanges(latestIncrementalPath)) {
                     logger.info("Latest file contains incremental changes.");
                     // Wenn die neueste inkrementelle Datei Änderungen enthält
-                    Map<String, Object> incrementalChanges = loadIncrementalChangesFromFile(latestIncrementalPath);
-                    applyIncrementalChangesInFile(currentData, incrementalChanges);
+                    currentData.clear();
+                    currentData.addAll(replayEngine.getRows());
+                    fileWriter.writeTableFile(currentPath, currentData);
+                    logger.info("Current data updated with latest incremental changes.");
                 } else {
                     logger.info("Latest file contains full data.");
                     // Wenn die neueste inkrementelle Datei vollständige Daten enthält
                     List<Map<String, Object>> latestIncrementalData = loadDataFromFile(latestIncrementalPath);
                     logger.info("Latest incremental data loaded: "+ latestIncrementalData);
                     logger.info("Current data: "+currentData);
-                    Map<String, Object> changes = compareData(currentData, latestIncrementalData);
+                    Map<String, Object> changes = compareData(currentData, latestIncrementalData, primaryKeys);
                     applyIncrementalChangesInFile(currentData, changes);
                     // Überschreibe die neueste inkrementelle Datei mit den Änderungen
                     fileWriter.writeJSONFile(latestIncrementalPath, changes);
@@ -51,7 +97,7 @@ public class IncrementalHelper {
 
                     // Aktualisiere die Current-Datei mit dem neuesten Zustand
                     logger.info("Latest Incremental data saved: "+ latestIncrementalData);
-                    fileWriter.writeJSONFileWithoutIndex(currentPath, currentData);
+                    fileWriter.writeTableFile(currentPath, currentData);
                     logger.info("Current data updated with latest incremental data.");
                 }
             } else {
@@ -61,36 +107,20 @@ public class IncrementalHelper {
     }
 
     /**
-     * Applies incremental changes from a list of incremental backup files to the current dataset.
+     * Reconstructs the state of a table before the latest backup.
+     * The latest incremental file still contains the full export at this point and is therefore not applied.
      *
-     * @param incrementalPaths list of file paths to incremental backup files
-     * @param currentData the dataset to update with incremental changes
+     * @param tableName the name of the table
+     * @return a list of entries representing the previous state of the table
      * @throws IOException if an error occurs while reading files
      */
-    void applyIncrementalChanges(List<String> incrementalPaths, List<Map<String, Object>> currentData) throws IOException {
-        for (String path : incrementalPaths) {
-            File file = new File(path);
-            logger.info("Processing incremental file: "+ path);
-
-            if (file.exists()) {
-                // Überprüfe, ob die Datei Änderungen oder vollständige Daten enthält
-                if (isIncrementalChangesFile(file)) {
-                    logger.info("File contains incremental changes.");
-                    Map<String, Object> incrementalChanges = loadIncrementalChangesFromFile(path);
-                    applyIncrementalChangesInFile(currentData, incrementalChanges);
-                } else {
-                    logger.info("File contains full data.");
-
-                }
-                logger.info("Current data after processing,"+ path +", Current data: "+ currentData);
-            } else {
-                logger.warn("File does not exist: , "+ path);
-            }
-        }
+    List<Map<String, Object>> loadPreviousState(String tableName) throws IOException {
+        return replay(planForward(MetaDataController.getInstance(), tableName, Integer.MAX_VALUE), false).getRows();
     }
 
     /**
      * Retrieves the reconstructed data for a specific backup version of a table.
+     * If a version cache is configured and holds this version for an unchanged chain, the replay is skipped.
      *
      * @param targetVersion the target backup version to retrieve
      * @param tableName the name of the table to restore
@@ -98,191 +128,344 @@ public class IncrementalHelper {
      * @throws IOException if an error occurs while reading files
      */
     public List<Map<String, Object>> getBackupCurrentData(String targetVersion, String tableName) throws IOException {
-        MetaDataController metaDataController = MetaDataController.getInstance();
-        Map<String, List<Map<String, Object>>> allTablesData = new HashMap<>();
-
-        // Lade die Basisdatei
-        String basePath = metaDataController.getTableBaseFilePath(tableName);
-        logger.info("Loading base file from: " + basePath);
-        List<Map<String, Object>> BackupCurrentData = loadDataFromFile(basePath);
-        logger.info("Base data loaded for table " + tableName + ": " + BackupCurrentData);
+        List<Map<String, Object>> data = new ArrayList<>();
+        try (RowSource rows = openBackupData(targetVersion, tableName)) {
+            Map<String, Object> entry;
+            while ((entry = rows.next()) != null) {
+                data.add(entry);
+            }
+        }
+        return data;
+    }
 
-        // Lade alle inkrementellen Dateien
-        List<String> incrementalPaths = metaDataController.getIncrementalFilePath(tableName);
-        logger.info("Incremental paths for table " + tableName + ": " + incrementalPaths);
+    /**
+     * Opens the reconstructed data for a specific backup version of a table as a source of entries.
+     * A version held by the version cache is streamed from the cache file without loading it into memory,
+     * otherwise the version chain is replayed and the reconstructed entries are returned.
+     *
+     * @param targetVersion the target backup version to retrieve
+     * @param tableName the name of the table to restore
+     * @return the entries of the version
+     * @throws IOException if an error occurs while reading files
+     */
+    public RowSource openBackupData(String targetVersion, String tableName) throws IOException {
+        int target = MetaDataController.parseVersionNumber(targetVersion);
+        if (target < 0) {
+            throw new RuntimeException("The target version could not be read %s".formatted(targetVersion));
+        }
+        List<String> plan = planReplay(target, tableName);
 
-        for (String path : incrementalPaths) {
-            File file = new File(path);
-            logger.info("Processing incremental file: " + path);
+        if (versionCache == null) {
+            return RowSource.of(replay(plan, true).getRows());
+        }
+        String chainHash = versionCache.chainHash(plan);
+        RowSource cachedData = versionCache.open(tableName, target, chainHash);
+        if (cachedData != null) {
+            logger.info("Version v" + target + " of table " + tableName + " loaded from cache.");
+            return cachedData;
+        }
+        ReplayEngine replayEngine = replay(plan, true);
+        versionCache.put(tableName, target, chainHash, replayEngine);
+        return RowSource.of(replayEngine.getRows());
+    }
 
-            if (file.exists()) {
-                // Extrahiere die Versionsnummer aus dem Dateinamen
-                String fileName = file.getName();
-                // Extrahiere die Versionsnummer aus dem Dateinamen
-                int vIndex = fileName.indexOf("v");
-                int dotIndex = fileName.indexOf(".", vIndex);
-                String version;
-                if (vIndex != -1 && dotIndex != -1) {
-                    version = fileName.substring(vIndex, dotIndex);
-                }else {
-                    throw new RuntimeException("The filename version could not be read %s".formatted(fileName));
-                }
+    /**
+     * Determines the files needed to reconstruct a backup version of a table in the layout of the repository.
+     * The first file holds the full data the replay starts from: the base file or a checkpoint,
+     * or the newest version in the reverse layout.
+     *
+     * @param targetVersion the target backup version
+     * @param tableName the name of the table
+     * @return the start file followed by the changes to apply
+     */
+    public List<String> planReplay(String targetVersion, String tableName) {
+        int target = MetaDataController.parseVersionNumber(targetVersion);
+        if (target < 0) {
+            throw new RuntimeException("The target version could not be read %s".formatted(targetVersion));
+        }
+        return planReplay(target, tableName);
+    }
 
-                if (isIncrementalChangesFile(file)) {
-                    logger.info("File contains incremental changes.");
-                    Map<String, Object> incrementalChanges = loadIncrementalChangesFromFile(path);
-                    applyIncrementalChangesInFile(BackupCurrentData, incrementalChanges);
-                } else {
-                    logger.info("File contains full data.");
-                    List<Map<String, Object>> fullData = loadDataFromFile(path);
-                    BackupCurrentData = new ArrayList<>(fullData);
-                }
-                // Stoppe, wenn die Zielversion erreicht ist
-                if (version.equals(targetVersion)) {
-                    logger.info("Reached target version: " + targetVersion + " for table " + tableName + ", stopping.");
-                    break;
-                }
+    private List<String> planReplay(int target, String tableName) {
+        MetaDataController metaDataController = MetaDataController.getInstance();
+        return metaDataController.getLayout() == BackupOptions.Layout.REVERSE
+                ? planBackward(metaDataController, tableName, target)
+                : planForward(metaDataController, tableName, target);
+    }
 
-                logger.info("Temporary current data after processing " + path + " for table " + tableName + ": " + BackupCurrentData);
+    /**
+     * Replays a list of files: the first file is loaded as full data, all following files are applied in order.
+     *
+     * @param plan the files to read
+     * @param replaceOnFullData whether following files with full data replace the working set or are skipped
+     * @return the replay engine holding the reconstructed state
+     * @throws IOException if the first file does not exist or an error occurs while reading files
+     */
+    private ReplayEngine replay(List<String> plan, boolean replaceOnFullData) throws IOException {
+        // Ohne vollständigen Startzustand würde eine leere Tabelle wiederhergestellt
+        if (!new File(plan.get(0)).exists()) {
+            throw new FileNotFoundException("Full state to replay from does not exist: " + plan.get(0));
+        }
+        ReplayEngine replayEngine = new ReplayEngine();
+        replayEngine.load(plan.get(0));
+        logger.info("Start data loaded from " + plan.get(0) + ": " + replayEngine.size() + " entries");
+        for (String path : plan.subList(1, plan.size())) {
+            logger.info("Processing incremental file: " + path);
+            if (replaceOnFullData) {
+                replayEngine.apply(path);
             } else {
-                logger.warn("File does not exist: " + path);
+                replayEngine.applyChanges(path);
             }
         }
-
-        return BackupCurrentData;
+        return replayEngine;
     }
 
     /**
-     * Determines whether a file contains incremental changes rather than full data.
+     * Determines the files needed to replay the version chain of a table up to a target version.
+     * Replay starts at the newest checkpoint that is not newer than the target (or at the base file),
+     * so only the incremental files written after that checkpoint are applied.
      *
-     * @param file the file to check
-     * @return true if the file contains incremental changes, false otherwise
-     * @throws IOException if an error occurs while reading the file
+     * @param metaDataController the metadata of the backup repository
+     * @param tableName the name of the table
+     * @param target the target version number
+     * @return the start file followed by the incremental files to apply
      */
-    private boolean isIncrementalChangesFile(File file) throws IOException {
-        if (!file.exists()) {
-            return false; // Datei existiert nicht
+    List<String> planForward(MetaDataController metaDataController, String tableName, int target) {
+        // Suche den neuesten Checkpoint vor der Zielversion
+        String startPath = metaDataController.getTableBaseFilePath(tableName);
+        int startVersion = MetaDataController.parseVersionNumber(new File(startPath).getName());
+        for (String checkpointPath : metaDataController.getCheckpointFilePaths(tableName)) {
+            int checkpointVersion = MetaDataController.parseVersionNumber(new File(checkpointPath).getName());
+            if (checkpointVersion > startVersion && checkpointVersion <= target && new File(checkpointPath).exists()) {
+                startPath = checkpointPath;
+                startVersion = checkpointVersion;
+            }
         }
-
-        try {
-            // Lese die gesamte Datei als JSON-Knoten ein
-            JsonNode rootNode = objectMapper.readTree(file);
-
-            // Überprüfe, ob es sich um ein Objekt (Map) mit den Schlüsseln "added" und "deleted" handelt
-            if (rootNode.isObject()) {
-                return rootNode.has("added") && rootNode.has("deleted");
+        List<String> plan = new ArrayList<>();
+        plan.add(startPath);
+
+        // Alle inkrementellen Dateien nach dem Startpunkt bis zur Zielversion
+        for (String path : metaDataController.getIncrementalFilePath(tableName)) {
+            // Extrahiere die Versionsnummer aus dem Dateinamen
+            String fileName = new File(path).getName();
+            int version = MetaDataController.parseVersionNumber(fileName);
+            if (version < 0) {
+                throw new RuntimeException("The filename version could not be read %s".formatted(fileName));
+            }
+            if (version <= startVersion) {
+                continue;
             }
+            // Stoppe, wenn die Zielversion überschritten würde
+            if (version > target) {
+                break;
+            }
+            plan.add(path);
+        }
+        return plan;
+    }
 
-            // Wenn es sich um ein Array handelt, ist es keine inkrementelle Änderungsdatei
-            return false;
-        } catch (IOException e) {
-            logger.error("Error reading file: " + file.getPath() + ", " + e.getMessage());
-            return false; // Bei einem Fehler wird angenommen, dass es sich nicht um eine inkrementelle Änderungsdatei handelt
+    /**
+     * Determines the files needed to replay the version chain of a table stored in the reverse layout back to a target version.
+     * Replay starts at the oldest full snapshot that is not older than the target, which is either a checkpoint
+     * or the newest version, and applies the backward changes of every version from there down to the target.
+     *
+     * @param metaDataController the metadata of the backup repository
+     * @param tableName the name of the table
+     * @param target the target version number
+     * @return the start file followed by the backward changes to apply
+     */
+    List<String> planBackward(MetaDataController metaDataController, String tableName, int target) {
+        // Alle Versionen der Tabelle, älteste zuerst
+        List<String> chain = new ArrayList<>();
+        chain.add(metaDataController.getTableBaseFilePath(tableName));
+        chain.addAll(metaDataController.getIncrementalFilePath(tableName));
+
+        String startPath = metaDataController.getTableCurrentFilePath(tableName);
+        int startVersion = MetaDataController.parseVersionNumber(new File(chain.get(chain.size() - 1)).getName());
+        for (String checkpointPath : metaDataController.getCheckpointFilePaths(tableName)) {
+            int checkpointVersion = MetaDataController.parseVersionNumber(new File(checkpointPath).getName());
+            if (checkpointVersion >= target && checkpointVersion < startVersion && new File(checkpointPath).exists()) {
+                startPath = checkpointPath;
+                startVersion = checkpointVersion;
+            }
+        }
+        List<String> plan = new ArrayList<>();
+        plan.add(startPath);
+
+        // Rückwärtsänderungen von der Startversion bis zur Zielversion
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            String path = chain.get(i);
+            int version = MetaDataController.parseVersionNumber(new File(path).getName());
+            if (version >= startVersion) {
+                continue;
+            }
+            if (version < target) {
+                break;
+            }
+            plan.add(path);
         }
+        return plan;
     }
 
     /**
-     * Loads table data from a JSON file.
+     * Turns the previous newest version of a table into backward changes when a new version lands (reverse layout).
+     * Both versions are streamed through merge-joins, so neither of them is loaded into memory:
+     * - The new export is diffed against the previous full version and becomes the new full version,
+     *   keeping the indexes of all rows that existed before.
+     * - The previous full version is replaced by the changes that turn the new version back into it.
+     * A file that is not yet sorted in the given order is sorted externally first; the new full version is written in that order.
      *
-     * @param filePath the path to the JSON file
-     * @return a list of maps representing the table data
-     * @throws IOException if an error occurs while reading the file
+     * @param previousPath the file holding the previous full version
+     * @param latestPath the file holding the new export
+     * @param order the order the merge-joins match rows in
+     * @param previousSorted whether the previous full version is already sorted in this order
+     * @param latestSorted whether the new export is already sorted in this order
+     * @param tempDirectory the directory for temporary files
+     * @throws IOException if an error occurs while reading or writing files
      */
-    List<Map<String, Object>> loadDataFromFile(String filePath) throws IOException {
-        File file = new File(filePath);
-        if (file.exists()) {
-            // Verwende TypeReference, um den Typ der Map explizit anzugeben
-            return objectMapper.readValue(file, new TypeReference<List<Map<String, Object>>>() {});
-        } else {
-            return new ArrayList<>();
+    public void rewriteAsReverseDelta(String previousPath, String latestPath, RowOrder order, boolean previousSorted,
+                                      boolean latestSorted, String tempDirectory) throws IOException {
+        Files.createDirectories(Paths.get(tempDirectory));
+        List<Path> tempFiles = new ArrayList<>();
+        try {
+            String sortedPrevious = previousSorted ? previousPath : sortedCopy(order, previousPath, tempDirectory, tempFiles);
+            String sortedLatest = latestSorted ? latestPath : sortedCopy(order, latestPath, tempDirectory, tempFiles);
+            Path forwardChanges = tempFile(tempDirectory, "changes_", tempFiles);
+            Path head = tempFile(tempDirectory, "current_", tempFiles);
+            Path backwardChanges = tempFile(tempDirectory, "changes_", tempFiles);
+            Path previousWithNewIndexes = tempFile(tempDirectory, "previous_", tempFiles);
+
+            // Neuer Zustand mit den Indizes der unveränderten Zeilen, danach die Änderungen zurück zum vorherigen Zustand
+            mergeJoinDiff.diff(sortedPrevious, sortedLatest, order, forwardChanges.toString(), head.toString(), tempDirectory);
+            mergeJoinDiff.diff(head.toString(), sortedPrevious, order, backwardChanges.toString(), previousWithNewIndexes.toString(), tempDirectory);
+
+            Files.move(head, Paths.get(latestPath), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(backwardChanges, Paths.get(previousPath), StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Backward changes saved to: " + previousPath);
+        } finally {
+            for (Path tempFile : tempFiles) {
+                Files.deleteIfExists(tempFile);
+            }
         }
     }
 
+    private static String sortedCopy(RowOrder order, String sourcePath, String tempDirectory, List<Path> tempFiles) throws IOException {
+        Path sorted = tempFile(tempDirectory, "sorted_", tempFiles);
+        ExternalRowSorter.sortFile(order, tempDirectory, sourcePath, sorted.toString());
+        return sorted.toString();
+    }
+
+    private static Path tempFile(String tempDirectory, String prefix, List<Path> tempFiles) throws IOException {
+        Path tempFile = Files.createTempFile(Paths.get(tempDirectory), prefix, ".json");
+        tempFiles.add(tempFile);
+        return tempFile;
+    }
+
     /**
-     * Loads incremental changes from a JSON file.
+     * Loads table data from a JSON, Smile or columnar file.
      *
-     * @param filePath the path to the JSON file
-     * @return a map containing added and deleted data changes
+     * @param filePath the path to the file
+     * @return a list of maps representing the table data
      * @throws IOException if an error occurs while reading the file
      */
-    private Map<String, Object> loadIncrementalChangesFromFile(String filePath) throws IOException {
+    List<Map<String, Object>> loadDataFromFile(String filePath) throws IOException {
         File file = new File(filePath);
-        if (file.exists()) {
-            return objectMapper.readValue(file, Map.class);
+        if (fileReader.isColumnar(filePath)) {
+            List<Map<String, Object>> entries = new ArrayList<>();
+            try (RowSource reader = fileReader.openRowReader(filePath)) {
+                Map<String, Object> entry;
+                while ((entry = reader.next()) != null) {
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        } else if (file.exists()) {
+            // Verwende TypeReference, um den Typ der Map explizit anzugeben
+            try (JsonParser parser = fileReader.createJSONParser(filePath)) {
+                return objectMapper.readValue(parser, new TypeReference<List<Map<String, Object>>>() {});
+            }
         } else {
-            return new HashMap<>();
+            return new ArrayList<>();
         }
     }
 
     /**
      * Applies incremental changes to the current dataset.
+     * - Deleted indexes are looked up in a hash set.
+     * - Updated entries are located through a map from index to entry and only their changed columns are replaced.
+     * - Added entries are skipped only if their index is already present,
+     *   so duplicate rows with equal content are kept as separate entries.
      *
      * @param currentData the dataset to update
-     * @param changes a map containing added and deleted data changes
+     * @param changes a map containing added, deleted and updated data changes
      */
     private void applyIncrementalChangesInFile(List<Map<String, Object>> currentData, Map<String, Object> changes) {
         // Lösche gelöschte Einträge
-        List<String> deletedIndices = (List<String>) changes.getOrDefault("deleted", new ArrayList<>());
-        currentData.removeIf(entry -> deletedIndices.contains(entry.get("index")));
+        Set<Object> deletedIndices = new HashSet<>((List<String>) changes.getOrDefault("deleted", new ArrayList<>()));
+        if (!deletedIndices.isEmpty()) {
+            currentData.removeIf(entry -> deletedIndices.contains(entry.get("index")));
+        }
 
-        // Füge neue Einträge hinzu
+        List<Map<String, Object>> updatedEntries = (List<Map<String, Object>>) changes.getOrDefault("updated", new ArrayList<>());
         List<Map<String, Object>> addedEntries = (List<Map<String, Object>>) changes.getOrDefault("added", new ArrayList<>());
+        if (updatedEntries.isEmpty() && addedEntries.isEmpty()) {
+            return;
+        }
+        Map<Object, Map<String, Object>> entriesByIndex = new HashMap<>(currentData.size() * 2);
+        for (Map<String, Object> entry : currentData) {
+            entriesByIndex.put(entry.get("index"), entry);
+        }
+
+        // Aktualisiere geänderte Einträge
+        for (Map<String, Object> updatedEntry : updatedEntries) {
+            Map<String, Object> entry = entriesByIndex.get(updatedEntry.get("index"));
+            if (entry == null) {
+                logger.warn("Updated entry not found in current data: " + updatedEntry.get("index"));
+                continue;
+            }
+            if (updatedEntry.containsKey("object")) {
+                entry.put("object", updatedEntry.get("object"));
+            } else {
+                Map<String, Object> object = new LinkedHashMap<>((Map<String, Object>) entry.get("object"));
+                object.putAll((Map<String, Object>) updatedEntry.get("changes"));
+                entry.put("object", object);
+            }
+        }
+
+        // Füge neue Einträge hinzu
         for (Map<String, Object> addedEntry : addedEntries) {
             // Überprüfe, ob der Eintrag bereits in currentData existiert
-            boolean exists = currentData.stream()
-                    .anyMatch(entry -> Objects.equals(entry.get("object"), addedEntry.get("object")));
-
-            if (!exists) {
-                // Wenn der Eintrag neu ist, füge ihn mit einem neuen Index hinzu
+            if (!entriesByIndex.containsKey(addedEntry.get("index"))) {
                 Map<String, Object> newEntry = new HashMap<>();
-                newEntry.put("index", addedEntry.get("index")); // Neuer Index
+                newEntry.put("index", addedEntry.get("index"));
                 newEntry.put("object", addedEntry.get("object"));
+                entriesByIndex.put(newEntry.get("index"), newEntry);
                 currentData.add(newEntry);
             }
         }
     }
 
+    /**
+     * Compares old and new datasets of a table with a primary key and identifies added, deleted and updated rows.
+     *
+     * @param oldData the previous dataset
+     * @param newData the new dataset
+     * @param primaryKeys the primary key columns, empty to fall back to content fingerprints
+     * @return a map containing lists of added, deleted and updated records
+     */
+    public Map<String, Object> compareData(List<Map<String, Object>> oldData, List<Map<String, Object>> newData, List<String> primaryKeys) {
+        return diffEngine.compare(oldData, newData, primaryKeys);
+    }
+
     /**
      * Compares old and new datasets and identifies differences.
+     * Every row is fingerprinted once and matched through hash lookups, see {@link DiffEngine}.
      *
      * @param oldData the previous dataset
      * @param newData the new dataset
      * @return a map containing lists of added and deleted records
      */
     public Map<String, Object> compareData(List<Map<String, Object>> oldData, List<Map<String, Object>> newData) {
-        List<Map<String, Object>> added = new ArrayList<>();
-        List<String> deleted = new ArrayList<>();
-
-        // Erstelle eine Map von alten Daten, wobei der Index als Schlüssel dient
-        Map<String, Map<String, Object>> oldDataMap = new HashMap<>();
-        for (Map<String, Object> oldRow : oldData) {
-            oldDataMap.put((String) oldRow.get("index"), oldRow);
-        }
-
-        // Neue Einträge hinzufügen, falls sie nicht existieren
-        for (Map<String, Object> newRow : newData) {
-            boolean exists = oldData.stream()
-                    .anyMatch(oldRow -> Objects.equals(oldRow.get("object"), newRow.get("object")));
-
-            if (!exists) {
-                added.add(newRow);
-            }
-        }
-
-        // Gelöschte Einträge finden
-        for (Map<String, Object> oldRow : oldData) {
-            boolean exists = newData.stream()
-                    .anyMatch(newRow -> Objects.equals(oldRow.get("object"), newRow.get("object")));
-
-            if (!exists) {
-                deleted.add((String) oldRow.get("index"));
-            }
-        }
-
-        // Rückgabe der Änderungen
-        Map<String, Object> changes = new HashMap<>();
-        changes.put("added", added);
-        changes.put("deleted", deleted);
-        return changes;
+        return diffEngine.compare(oldData, newData);
     }
 }
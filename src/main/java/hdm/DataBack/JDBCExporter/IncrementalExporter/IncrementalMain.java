@@ -1,24 +1,56 @@
 package hdm.DataBack.JDBCExporter.IncrementalExporter;
 
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
 import hdm.DataBack.JDBCExporter.FileWriter;
 import hdm.DataBack.JDBCExporter.MetaDataController;
 import hdm.DataBack.Logger.Logger;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 public class IncrementalMain {
+    private static final String EMPTY_CHANGES = "{\"deleted\":[],\"updated\":[],\"added\":[]}";
 
     static Logger logger = new Logger();
     static FileWriter fileWriter = new FileWriter();
     IncrementalHelper incrementalHelper = new IncrementalHelper();
+    MergeJoinDiff mergeJoinDiff = new MergeJoinDiff();
+
+    private final BackupOptions options;
+    private final BackupOptions.DiffMode diffMode;
+
+    /**
+     * Constructor for IncrementalMain that computes incremental changes in memory.
+     */
+    public IncrementalMain() {
+        this(new BackupOptions());
+    }
+
+    /**
+     * Constructor for IncrementalMain with specific backup options.
+     *
+     * @param options the options defining the diff mode and when checkpoints are written
+     */
+    public IncrementalMain(BackupOptions options) {
+        this.options = options;
+        this.diffMode = options.getDiffMode();
+    }
 
     /**
      * Processes all tables by updating the current data file based on the base file and incremental backups.
-     * - Loads the base file for each table.
-     * - Applies all incremental changes in the correct order.
+     * - Restores the previous state from the newest checkpoint (or the base file) and the following incremental files.
+     * - Compares it with the latest incremental backup and replaces that backup with the changes.
      * - Saves the latest state to the current data file.
-     * - Compares the current data file with the latest incremental backup to detect further changes.
+     * - Writes a full snapshot checkpoint if the table is due for one.
+     * In the reverse layout the new export becomes the full newest version and the previous one is rewritten into backward changes.
+     * Tables detected as unchanged were not exported and only get an empty set of changes.
+     * Tables whose changes were extracted by watermark already have their changes and current file written.
      *
      * @throws IOException if an error occurs while reading or writing files
      */
@@ -31,29 +63,204 @@ public class IncrementalMain {
 
             for (String tableName : tableNames) {
                 logger.info("Processing table: "+ tableName);
-
-                // Lade die Basisdatei
-                String basePath = metaDataController.getTableBaseFilePath(tableName);
-                logger.info("Loading base file from: "+ basePath);
-                List<Map<String, Object>> currentData = incrementalHelper.loadDataFromFile(basePath);
-                logger.info("Base data loaded: "+ currentData);
-
-                // Lade alle inkrementellen Dateien in der richtigen Reihenfolge
-                List<String> incrementalPaths = metaDataController.getIncrementalFilePath(tableName);
-                logger.info("Incremental paths: "+ incrementalPaths);
-
-                // Speichere den aktuellen Zustand in der Current-Datei
-                String currentPath = metaDataController.getTableCurrentFilePath(tableName);
-                logger.info("Saving current data to: "+ currentPath);
-                fileWriter.writeJSONFile(currentPath, currentData);
-                logger.info("Current data saved: "+ currentData);
-                incrementalHelper.applyIncrementalChanges(incrementalPaths, currentData);
-                // Vergleiche die Current-Datei mit der neuesten inkrementellen Datei (falls vorhanden)
-                incrementalHelper.compareCurrentToIncremental(incrementalPaths, currentData, currentPath);
+                if (metaDataController.isUnchanged(tableName)) {
+                    processTableUnchanged(metaDataController, tableName);
+                } else if (metaDataController.isChangesExported(tableName)) {
+                    logger.info("Changes of table " + tableName + " were already extracted.");
+                } else if (metaDataController.getLayout() == BackupOptions.Layout.REVERSE) {
+                    processTableReverse(metaDataController, tableName);
+                } else if (diffMode == BackupOptions.DiffMode.MERGE) {
+                    processTableMerge(metaDataController, tableName);
+                } else {
+                    processTableMemory(metaDataController, tableName);
+                }
+                createCheckpointIfDue(metaDataController, tableName);
             }
         } catch (Exception e) {
             logger.error("Error processing tables: " + e.getMessage());
         }
     }
 
+    /**
+     * Computes the incremental changes of a table in memory.
+     *
+     * @param metaDataController the metadata of the backup repository
+     * @param tableName the name of the table
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    private void processTableMemory(MetaDataController metaDataController, String tableName) throws IOException {
+        // Stelle den Zustand vor dem neuesten Export wieder her (ab dem neuesten Checkpoint)
+        List<Map<String, Object>> currentData = incrementalHelper.loadPreviousState(tableName);
+        logger.info("Previous data loaded: " + currentData.size() + " entries");
+
+        List<String> incrementalPaths = metaDataController.getIncrementalFilePath(tableName);
+        logger.info("Incremental paths: "+ incrementalPaths);
+        String currentPath = metaDataController.getTableCurrentFilePath(tableName);
+
+        // Vergleiche die Current-Datei mit der neuesten inkrementellen Datei (falls vorhanden)
+        incrementalHelper.compareCurrentToIncremental(incrementalPaths, currentData, currentPath, metaDataController.getPrimaryKeys(tableName));
+        metaDataController.setSortedBy(tableName, null);
+    }
+
+    /**
+     * Stores a new version of a table that was detected as unchanged and therefore not exported.
+     * In the forward layout the new version is an empty set of changes and the current file stays as it is.
+     * On the first incremental backup of the table the current file does not exist yet, so the base file,
+     * which is the full state of the table, is copied to it.
+     * In the reverse layout the full newest version is moved to the new version's file and the previous version
+     * becomes an empty set of changes, so no table data is read or written.
+     *
+     * @param metaDataController the metadata of the backup repository
+     * @param tableName the name of the table
+     * @throws IOException if an error occurs while writing files
+     */
+    private void processTableUnchanged(MetaDataController metaDataController, String tableName) throws IOException {
+        List<String> incrementalPaths = metaDataController.getIncrementalFilePath(tableName);
+        String latestPath = incrementalPaths.get(incrementalPaths.size() - 1);
+        String emptyPath = latestPath;
+
+        if (metaDataController.getLayout() == BackupOptions.Layout.REVERSE) {
+            emptyPath = incrementalPaths.size() > 1
+                    ? incrementalPaths.get(incrementalPaths.size() - 2)
+                    : metaDataController.getTableBaseFilePath(tableName);
+            Files.move(Paths.get(emptyPath), Paths.get(latestPath), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Path currentPath = Paths.get(metaDataController.getTableCurrentFilePath(tableName));
+            if (!Files.exists(currentPath)) {
+                // Nur vor der ersten inkrementellen Sicherung ist die Basisdatei der vollständige Zustand
+                Path basePath = Paths.get(metaDataController.getTableBaseFilePath(tableName));
+                if (incrementalPaths.size() > 1 || !Files.exists(basePath)) {
+                    throw new FileNotFoundException("No previous state of unchanged table " + tableName + ": " + currentPath);
+                }
+                Files.copy(basePath, currentPath);
+            }
+        }
+        Files.writeString(Paths.get(emptyPath), EMPTY_CHANGES);
+        logger.info("Table " + tableName + " unchanged, empty changes saved to: " + emptyPath);
+    }
+
+    /**
+     * Writes a full snapshot checkpoint of a table if enough versions or enough incremental data accumulated
+     * since the last checkpoint (or the base file). The checkpoint is a copy of the current file,
+     * so restoring any later version only has to replay the incremental files written after it.
+     *
+     * @param metaDataController the metadata of the backup repository
+     * @param tableName the name of the table
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void createCheckpointIfDue(MetaDataController metaDataController, String tableName) throws IOException {
+        List<String> incrementalPaths = metaDataController.getIncrementalFilePath(tableName);
+        if (incrementalPaths.isEmpty()) {
+            return;
+        }
+        int latestVersion = MetaDataController.parseVersionNumber(new File(incrementalPaths.get(incrementalPaths.size() - 1)).getName());
+
+        int lastCheckpointVersion = MetaDataController.parseVersionNumber(new File(metaDataController.getTableBaseFilePath(tableName)).getName());
+        for (String checkpointPath : metaDataController.getCheckpointFilePaths(tableName)) {
+            lastCheckpointVersion = Math.max(lastCheckpointVersion, MetaDataController.parseVersionNumber(new File(checkpointPath).getName()));
+        }
+
+        boolean due = options.getCheckpointInterval() > 0 && latestVersion - lastCheckpointVersion >= options.getCheckpointInterval();
+        if (!due && options.getCheckpointDeltaBytes() > 0) {
+            // Größe aller inkrementellen Dateien seit dem letzten Checkpoint
+            long deltaBytes = 0;
+            for (String path : incrementalPaths) {
+                File file = new File(path);
+                if (MetaDataController.parseVersionNumber(file.getName()) > lastCheckpointVersion) {
+                    deltaBytes += file.length();
+                }
+            }
+            due = deltaBytes >= options.getCheckpointDeltaBytes();
+        }
+        if (!due) {
+            return;
+        }
+
+        Path currentPath = Paths.get(metaDataController.getTableCurrentFilePath(tableName));
+        if (!Files.exists(currentPath)) {
+            logger.warn("No current file to checkpoint for table: " + tableName);
+            return;
+        }
+        String checkpointPath = metaDataController.addCheckpoint(tableName, latestVersion);
+        Files.copy(currentPath, Paths.get(checkpointPath), StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Checkpoint for version v" + latestVersion + " of table " + tableName + " written to: " + checkpointPath);
+    }
+
+    /**
+     * Computes the incremental changes of a table with a streaming merge-join instead of loading it into memory.
+     * - The previous state is the sorted current file (or the base file if no current file exists yet).
+     *   If it is not sorted by the table's primary key, it is sorted externally first.
+     * - The latest export was already written sorted by {@link hdm.DataBack.JDBCExporter.ObjectExporter}.
+     * - The latest export is replaced by the changes and the current file by the new sorted state.
+     *
+     * @param metaDataController the metadata of the backup repository
+     * @param tableName the name of the table
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    private void processTableMerge(MetaDataController metaDataController, String tableName) throws IOException {
+        List<String> incrementalPaths = metaDataController.getIncrementalFilePath(tableName);
+        if (incrementalPaths.isEmpty()) {
+            logger.info("No previous version to compare for table: " + tableName);
+            return;
+        }
+        List<String> primaryKeys = metaDataController.getPrimaryKeys(tableName);
+        RowOrder order = new RowOrder(primaryKeys);
+        String tempDirectory = metaDataController.getTempDirectoryPath();
+
+        String newPath = incrementalPaths.get(incrementalPaths.size() - 1);
+        String currentPath = metaDataController.getTableCurrentFilePath(tableName);
+        String previousPath = new File(currentPath).exists() ? currentPath : metaDataController.getTableBaseFilePath(tableName);
+
+        Path sortedPrevious = null;
+        Path changes = Files.createTempFile(Paths.get(tempDirectory), "changes_", ".json");
+        Path current = Files.createTempFile(Paths.get(tempDirectory), "current_", ".json");
+        try {
+            if (!primaryKeys.equals(metaDataController.getSortedBy(tableName))) {
+                logger.info("Sorting previous state of table " + tableName + " by " + (order.isKeyed() ? primaryKeys : "content"));
+                sortedPrevious = Files.createTempFile(Paths.get(tempDirectory), "previous_", ".json");
+                ExternalRowSorter.sortFile(order, tempDirectory, previousPath, sortedPrevious.toString());
+                previousPath = sortedPrevious.toString();
+            }
+            mergeJoinDiff.diff(previousPath, newPath, order, changes.toString(), current.toString(), tempDirectory);
+
+            Files.move(changes, Paths.get(newPath), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(current, Paths.get(currentPath), StandardCopyOption.REPLACE_EXISTING);
+            metaDataController.setSortedBy(tableName, primaryKeys);
+            logger.info("Incremental changes saved to: " + newPath);
+        } finally {
+            Files.deleteIfExists(changes);
+            Files.deleteIfExists(current);
+            if (sortedPrevious != null) {
+                Files.deleteIfExists(sortedPrevious);
+            }
+        }
+    }
+
+    /**
+     * Stores a new version of a table in the reverse layout.
+     * The new export becomes the full newest version (which is also the current file),
+     * and the previous newest version is rewritten into the changes that restore it from the new one.
+     *
+     * @param metaDataController the metadata of the backup repository
+     * @param tableName the name of the table
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    private void processTableReverse(MetaDataController metaDataController, String tableName) throws IOException {
+        List<String> incrementalPaths = metaDataController.getIncrementalFilePath(tableName);
+        if (incrementalPaths.isEmpty()) {
+            logger.info("No previous version to compare for table: " + tableName);
+            return;
+        }
+        List<String> primaryKeys = metaDataController.getPrimaryKeys(tableName);
+        String latestPath = incrementalPaths.get(incrementalPaths.size() - 1);
+        String previousPath = incrementalPaths.size() > 1
+                ? incrementalPaths.get(incrementalPaths.size() - 2)
+                : metaDataController.getTableBaseFilePath(tableName);
+
+        boolean previousSorted = primaryKeys.equals(metaDataController.getSortedBy(tableName));
+        // Im Merge-Modus ist der neue Export bereits sortiert
+        incrementalHelper.rewriteAsReverseDelta(previousPath, latestPath, new RowOrder(primaryKeys), previousSorted,
+                diffMode == BackupOptions.DiffMode.MERGE, metaDataController.getTempDirectoryPath());
+        metaDataController.setSortedBy(tableName, primaryKeys);
+    }
 }
@@ -0,0 +1,165 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import hdm.DataBack.JDBCExporter.FileReader;
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.RowSource;
+import hdm.DataBack.JDBCExporter.JsonRowWriter;
+import hdm.DataBack.JDBCExporter.RowSink;
+import hdm.DataBack.Logger.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+
+Out-of-core diff of two table snapshots that are both sorted by the same RowOrder.
+Both files are read in a single pass, like the merge step of a merge sort, so only one row of each side
+is held in memory at a time:
+    - a key that only exists in the previous snapshot was deleted
+    - a key that only exists in the new snapshot was added
+    - a key that exists in both is unchanged, or updated if the content differs (keyed tables only)
+The added, deleted and updated sections are streamed into separate temporary files and copied token by token
+into the usual incremental changes file at the end. At the same time the new current snapshot is written,
+keeping the index of every row that already existed, so it stays sorted for the next diff.
+Without a primary key, equal rows are adjacent in both files. An added copy of a row is only written once all
+previous copies were read, so its index is checked against theirs and renumbered if a previous copy holds it.
+
+ */
+
+public class MergeJoinDiff {
+    private final Logger logger = new Logger();
+    private final FileWriter fileWriter = new FileWriter();
+    private final FileReader fileReader = new FileReader();
+    private final DiffEngine diffEngine = new DiffEngine();
+
+    /**
+     * Computes the incremental changes between two sorted snapshots.
+     *
+     * @param previousPath the sorted snapshot of the previous version
+     * @param newPath the sorted snapshot of the new version
+     * @param order the order both snapshots are sorted in
+     * @param changesPath the file to write the incremental changes to
+     * @param currentPath the file to write the new sorted current snapshot to
+     * @param tempDirectory the directory for temporary files
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    public void diff(String previousPath, String newPath, RowOrder order, String changesPath, String currentPath, String tempDirectory) throws IOException {
+        Files.createDirectories(Paths.get(tempDirectory));
+        Path addedPath = Files.createTempFile(Paths.get(tempDirectory), "added_", ".json");
+        Path deletedPath = Files.createTempFile(Paths.get(tempDirectory), "deleted_", ".json");
+        Path updatedPath = Files.createTempFile(Paths.get(tempDirectory), "updated_", ".json");
+        long added = 0, deleted = 0, updated = 0;
+
+        try {
+            try (RowSource previousReader = fileReader.openRowReader(previousPath);
+                 RowSource newReader = fileReader.openRowReader(newPath);
+                 RowSink currentWriter = fileWriter.openTableWriter(currentPath);
+                 JsonRowWriter addedWriter = fileWriter.openJSONRowWriter(addedPath.toString());
+                 JsonGenerator deletedWriter = fileWriter.createJSONGenerator(deletedPath.toString());
+                 JsonGenerator updatedWriter = fileWriter.createJSONGenerator(updatedPath.toString())) {
+                deletedWriter.writeStartArray();
+                updatedWriter.writeStartArray();
+
+                Map<String, Object> previous = previousReader.next();
+                Map<String, Object> next = newReader.next();
+                Object previousKey = previous == null ? null : order.keyOf(objectOf(previous));
+                Object nextKey = next == null ? null : order.keyOf(objectOf(next));
+                // Indizes der bisherigen Kopien der aktuellen Zeile (nur ohne Primärschlüssel)
+                Object groupKey = null;
+                Set<String> groupIndexes = new HashSet<>();
+
+                while (previous != null || next != null) {
+                    int comparison;
+                    if (previous == null) {
+                        comparison = 1;
+                    } else if (next == null) {
+                        comparison = -1;
+                    } else {
+                        comparison = order.compareKeys(previousKey, nextKey);
+                    }
+
+                    if (!order.isKeyed() && comparison <= 0) {
+                        if (groupKey == null || order.compareKeys(groupKey, previousKey) != 0) {
+                            groupKey = previousKey;
+                            groupIndexes.clear();
+                        }
+                        groupIndexes.add((String) previous.get("index"));
+                    }
+
+                    if (comparison < 0) {
+                        deletedWriter.writeString((String) previous.get("index"));
+                        deleted++;
+                    } else if (comparison > 0) {
+                        String index = (String) next.get("index");
+                        if (!order.isKeyed() && groupKey != null && order.compareKeys(groupKey, nextKey) == 0) {
+                            index = RowIdentity.unique(index, groupIndexes);
+                        }
+                        addedWriter.writeEntry(index, objectOf(next));
+                        currentWriter.writeEntry(index, objectOf(next));
+                        added++;
+                    } else {
+                        if (order.isKeyed() && !RowFingerprint.of(objectOf(previous)).equals(RowFingerprint.of(objectOf(next)))) {
+                            updatedWriter.writeObject(diffEngine.updateOf(previous, objectOf(previous), objectOf(next)));
+                            updated++;
+                        }
+                        currentWriter.writeEntry((String) previous.get("index"), objectOf(next));
+                    }
+
+                    if (comparison <= 0) {
+                        previous = previousReader.next();
+                        previousKey = previous == null ? null : order.keyOf(objectOf(previous));
+                    }
+                    if (comparison >= 0) {
+                        next = newReader.next();
+                        nextKey = next == null ? null : order.keyOf(objectOf(next));
+                    }
+                }
+                deletedWriter.writeEndArray();
+                updatedWriter.writeEndArray();
+            }
+
+            try (JsonGenerator changes = fileWriter.createJSONGenerator(changesPath)) {
+                // Löschungen zuerst, damit die Änderungen beim Wiederherstellen in einem Durchlauf angewendet werden können
+                changes.writeStartObject();
+                copySection(changes, "deleted", deletedPath);
+                if (order.isKeyed()) {
+                    copySection(changes, "updated", updatedPath);
+                }
+                copySection(changes, "added", addedPath);
+                changes.writeEndObject();
+            }
+            logger.info(String.format("Merge-join diff finished: %d added, %d deleted, %d updated", added, deleted, updated));
+        } finally {
+            Files.deleteIfExists(addedPath);
+            Files.deleteIfExists(deletedPath);
+            Files.deleteIfExists(updatedPath);
+        }
+    }
+
+    /**
+     * Streams a temporary JSON array into a field of the changes file token by token.
+     *
+     * @param changes the generator of the changes file
+     * @param fieldName the name of the section
+     * @param sectionPath the temporary file holding the section
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    private void copySection(JsonGenerator changes, String fieldName, Path sectionPath) throws IOException {
+        changes.writeFieldName(fieldName);
+        try (JsonParser section = fileReader.createJSONParser(sectionPath.toString())) {
+            section.nextToken();
+            changes.copyCurrentStructure(section);
+        }
+    }
+
+    private static Map<String, Object> objectOf(Map<String, Object> entry) {
+        return (Map<String, Object>) entry.get("object");
+    }
+}
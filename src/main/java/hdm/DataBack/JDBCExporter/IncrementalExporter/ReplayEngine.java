@@ -0,0 +1,236 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hdm.DataBack.JDBCExporter.FileReader;
+import hdm.DataBack.JDBCExporter.RowSource;
+import hdm.DataBack.JDBCExporter.RowSink;
+import hdm.DataBack.Logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+Replays a chain of backup files (base file followed by incremental files) to reconstruct a table version.
+The working set is kept in a map from index to entry, so every deleted, updated or added entry is applied
+with a single hash lookup. Replaying a whole chain therefore costs O(rows + total delta size).
+
+Every file is parsed exactly once as a stream:
+    - a file starting with a JSON array contains full data and replaces the working set
+    - a file starting with a JSON object contains changes ("deleted", "updated", "added")
+Deletions are applied before additions. Delta files are written with "deleted" first, so added entries
+can be applied while they are read; for older files with a different section order, the added entries
+are held back until the rest of the file has been read.
+
+ */
+
+public class ReplayEngine {
+    private static final TypeReference<Map<String, Object>> ENTRY_TYPE = new TypeReference<>() {};
+
+    static Logger logger = new Logger();
+    private final FileReader fileReader = new FileReader();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Object, Map<String, Object>> workingSet = new LinkedHashMap<>();
+
+    /**
+     * Replaces the working set with the entries of a full data file.
+     * A missing file results in an empty working set.
+     *
+     * @param filePath the path of the file containing the entries
+     * @throws IOException if an error occurs while reading the file
+     */
+    public void load(String filePath) throws IOException {
+        workingSet.clear();
+        try (RowSource reader = fileReader.openRowReader(filePath)) {
+            Map<String, Object> entry;
+            while ((entry = reader.next()) != null) {
+                workingSet.put(entry.get("index"), entry);
+            }
+        }
+    }
+
+    /**
+     * Replaces the working set with the given entries.
+     *
+     * @param entries the entries holding an "index" and an "object"
+     */
+    public void load(List<Map<String, Object>> entries) {
+        workingSet.clear();
+        for (Map<String, Object> entry : entries) {
+            workingSet.put(entry.get("index"), entry);
+        }
+    }
+
+    /**
+     * Applies a file of the chain to the working set.
+     * A file with changes is applied to the working set, a file with full data replaces it.
+     *
+     * @param filePath the path of the backup file
+     * @return true if the file contained changes, false if it contained full data or does not exist
+     * @throws IOException if an error occurs while reading the file
+     */
+    public boolean apply(String filePath) throws IOException {
+        return apply(filePath, true);
+    }
+
+    /**
+     * Applies a file of the chain to the working set, but leaves the working set untouched if the file contains full data.
+     * This is used while the latest export has not been turned into changes yet.
+     *
+     * @param filePath the path of the backup file
+     * @return true if the file contained changes, false if it contained full data or does not exist
+     * @throws IOException if an error occurs while reading the file
+     */
+    public boolean applyChanges(String filePath) throws IOException {
+        return apply(filePath, false);
+    }
+
+    /**
+     * Returns the reconstructed entries in insertion order.
+     *
+     * @return a list of entries holding an "index" and an "object"
+     */
+    public List<Map<String, Object>> getRows() {
+        return new ArrayList<>(workingSet.values());
+    }
+
+    /**
+     * Returns the number of entries in the working set.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return workingSet.size();
+    }
+
+    /**
+     * Writes the working set to a file as an array of entries, keeping their indexes.
+     *
+     * @param writer the row writer of the target file
+     * @throws IOException if an error occurs while writing
+     */
+    public void writeTo(RowSink writer) throws IOException {
+        for (Map<String, Object> entry : workingSet.values()) {
+            writer.writeEntry(String.valueOf(entry.get("index")), (Map<String, Object>) entry.get("object"));
+        }
+    }
+
+    private boolean apply(String filePath, boolean replaceOnFullData) throws IOException {
+        if (!new File(filePath).exists()) {
+            logger.warn("File does not exist: " + filePath);
+            return false;
+        }
+        // Spaltenweise Dateien enthalten immer vollständige Daten
+        if (fileReader.isColumnar(filePath)) {
+            if (replaceOnFullData) {
+                logger.info("File contains full data: " + filePath);
+                load(filePath);
+            }
+            return false;
+        }
+        try (JsonParser parser = fileReader.createJSONParser(filePath)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                if (replaceOnFullData) {
+                    logger.info("File contains full data: " + filePath);
+                    workingSet.clear();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Map<String, Object> entry = objectMapper.readValue(parser, ENTRY_TYPE);
+                        workingSet.put(entry.get("index"), entry);
+                    }
+                }
+                return false;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected content in backup file: " + filePath);
+            }
+            logger.info("File contains incremental changes: " + filePath);
+            applyChanges(parser);
+            return true;
+        }
+    }
+
+    /**
+     * Applies the sections of a changes object while reading it.
+     *
+     * @param parser the parser positioned at the start of the changes object
+     * @throws IOException if an error occurs while reading the file
+     */
+    private void applyChanges(JsonParser parser) throws IOException {
+        boolean deletedApplied = false;
+        List<Map<String, Object>> pendingAdded = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String section = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (section) {
+                case "deleted":
+                    // Lösche gelöschte Einträge
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        workingSet.remove(parser.getValueAsString());
+                    }
+                    deletedApplied = true;
+                    break;
+                case "updated":
+                    // Aktualisiere geänderte Einträge
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        applyUpdate(objectMapper.readValue(parser, ENTRY_TYPE));
+                    }
+                    break;
+                case "added":
+                    // Füge neue Einträge hinzu, sobald alle Löschungen angewendet wurden
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Map<String, Object> entry = objectMapper.readValue(parser, ENTRY_TYPE);
+                        if (deletedApplied) {
+                            applyAdd(entry);
+                        } else {
+                            pendingAdded.add(entry);
+                        }
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        for (Map<String, Object> entry : pendingAdded) {
+            applyAdd(entry);
+        }
+    }
+
+    private void applyUpdate(Map<String, Object> updatedEntry) {
+        Map<String, Object> entry = workingSet.get(updatedEntry.get("index"));
+        if (entry == null) {
+            logger.warn("Updated entry not found in current data: " + updatedEntry.get("index"));
+            return;
+        }
+        if (updatedEntry.containsKey("object")) {
+            entry.put("object", updatedEntry.get("object"));
+        } else {
+            Map<String, Object> object = new LinkedHashMap<>((Map<String, Object>) entry.get("object"));
+            object.putAll((Map<String, Object>) updatedEntry.get("changes"));
+            entry.put("object", object);
+        }
+    }
+
+    private void applyAdd(Map<String, Object> addedEntry) {
+        // Einträge mit bereits vorhandenem Index werden nicht doppelt hinzugefügt
+        Object index = addedEntry.get("index");
+        if (!workingSet.containsKey(index)) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("index", index);
+            entry.put("object", addedEntry.get("object"));
+            workingSet.put(index, entry);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+A 128-bit fingerprint of a canonicalized row (or any JSON-like value), computed with MurmurHash3 (x64, 128 bit).
+The value is walked once and fed into the hash as a stream of 64-bit words:
+    - every value is prefixed with a type tag, so "1", 1 and 1.0 produce different fingerprints
+    - integral numbers are widened to long, so Integer 1 and Long 1 produce the same fingerprint
+    - BigDecimals are compared without trailing zeros
+    - map entries are hashed in key order, so the column order of a row does not matter
+Two rows with equal fingerprints are treated as equal by the diff engine.
+
+ */
+
+public final class RowFingerprint implements Comparable<RowFingerprint> {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final long TAG_NULL = 0;
+    private static final long TAG_BOOLEAN = 1;
+    private static final long TAG_LONG = 2;
+    private static final long TAG_BIG_INTEGER = 3;
+    private static final long TAG_DOUBLE = 4;
+    private static final long TAG_DECIMAL = 5;
+    private static final long TAG_STRING = 6;
+    private static final long TAG_MAP = 7;
+    private static final long TAG_LIST = 8;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final long high;
+    private final long low;
+
+    private RowFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Computes the fingerprint of a value.
+     *
+     * @param value a row map or any value that can be stored in a JSON backup file
+     * @return the 128-bit fingerprint of the canonicalized value
+     */
+    public static RowFingerprint of(Object value) {
+        Hasher hasher = new Hasher();
+        hasher.value(value);
+        return hasher.finish();
+    }
+
+    /**
+     * Returns the upper 64 bits of the fingerprint.
+     *
+     * @return the upper half
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * Returns the lower 64 bits of the fingerprint.
+     *
+     * @return the lower half
+     */
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public int compareTo(RowFingerprint other) {
+        int result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RowFingerprint)) return false;
+        RowFingerprint other = (RowFingerprint) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) low;
+    }
+
+    /**
+     * Returns the fingerprint as a 32 character hex string.
+     *
+     * @return the hex representation
+     */
+    @Override
+    public String toString() {
+        // Wird für den Index jeder exportierten Zeile aufgerufen, daher ohne String.format
+        return HEX.toHexDigits(high) + HEX.toHexDigits(low);
+    }
+
+    private static final class Hasher {
+        private long h1;
+        private long h2;
+        private long pending;
+        private boolean hasPending;
+        private long length;
+
+        void value(Object value) {
+            if (value == null) {
+                word(TAG_NULL);
+            } else if (value instanceof Boolean) {
+                word(TAG_BOOLEAN);
+                word((Boolean) value ? 1 : 0);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                word(TAG_LONG);
+                word(((Number) value).longValue());
+            } else if (value instanceof BigInteger) {
+                BigInteger bigInteger = (BigInteger) value;
+                if (bigInteger.bitLength() < 64) {
+                    word(TAG_LONG);
+                    word(bigInteger.longValue());
+                } else {
+                    word(TAG_BIG_INTEGER);
+                    string(bigInteger.toString());
+                }
+            } else if (value instanceof Double || value instanceof Float) {
+                word(TAG_DOUBLE);
+                word(Double.doubleToLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof BigDecimal) {
+                word(TAG_DECIMAL);
+                string(((BigDecimal) value).stripTrailingZeros().toPlainString());
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                word(TAG_MAP);
+                word(map.size());
+                List<Map.Entry<?, ?>> entries = new ArrayList<>(map.entrySet());
+                entries.sort((a, b) -> String.valueOf(a.getKey()).compareTo(String.valueOf(b.getKey())));
+                for (Map.Entry<?, ?> entry : entries) {
+                    string(String.valueOf(entry.getKey()));
+                    value(entry.getValue());
+                }
+            } else if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                word(TAG_LIST);
+                word(collection.size());
+                for (Object element : collection) {
+                    value(element);
+                }
+            } else {
+                word(TAG_STRING);
+                string(value.toString());
+            }
+        }
+
+        void string(String s) {
+            int length = s.length();
+            word(length);
+            int i = 0;
+            for (; i + 4 <= length; i += 4) {
+                word(((long) s.charAt(i) << 48) | ((long) s.charAt(i + 1) << 32) | ((long) s.charAt(i + 2) << 16) | s.charAt(i + 3));
+            }
+            long last = 0;
+            for (; i < length; i++) {
+                last = (last << 16) | s.charAt(i);
+            }
+            if (length % 4 != 0) {
+                word(last);
+            }
+        }
+
+        void word(long word) {
+            length += 8;
+            if (!hasPending) {
+                pending = word;
+                hasPending = true;
+                return;
+            }
+            hasPending = false;
+            long k1 = pending;
+            long k2 = word;
+
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        RowFingerprint finish() {
+            if (hasPending) {
+                long k1 = pending;
+                k1 *= C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= C2;
+                h1 ^= k1;
+            }
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new RowFingerprint(h1, h2);
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
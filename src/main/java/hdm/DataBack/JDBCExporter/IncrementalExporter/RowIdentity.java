@@ -0,0 +1,155 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+
+Derives the index of a row from the row itself instead of drawing a random UUID, so the same row gets the same
+index in every export:
+    - rows of a table with a primary key are identified by the fingerprint of their key values
+    - rows of a table without one are identified by the fingerprint of their content (see RowFingerprint)
+An index is the 32 character hex form of the fingerprint. Equal rows of a table without a primary key share a
+fingerprint, so every further copy within one export gets a number appended: <fingerprint>-2, <fingerprint>-3, ...
+Whether a content fingerprint was seen before is tracked in a compact set of the 128-bit fingerprints, so exporting
+a large table costs about 32 bytes per row instead of a set of strings.
+
+A diff reports a copy of a row as added if the previous version held fewer copies. Its index may then already be
+used by one of the previous copies, so the diff engines pick the next free number with unique(...).
+
+ */
+
+public final class RowIdentity {
+    private final List<String> primaryKeys;
+    private final FingerprintSet seen = new FingerprintSet();
+    private final Map<String, int[]> copies = new HashMap<>();
+
+    /**
+     * Constructor for RowIdentity.
+     *
+     * @param primaryKeys the primary key columns of the table, empty to identify rows by content
+     */
+    public RowIdentity(List<String> primaryKeys) {
+        this.primaryKeys = primaryKeys == null ? new ArrayList<>() : primaryKeys;
+    }
+
+    /**
+     * Returns the index of the next exported row. Copies of a row without a primary key get distinct indexes.
+     *
+     * @param object the column values of the row
+     * @return the index of the row
+     */
+    public String next(Map<String, Object> object) {
+        if (!primaryKeys.isEmpty()) {
+            List<Object> key = new ArrayList<>(primaryKeys.size());
+            for (String primaryKey : primaryKeys) {
+                key.add(object.get(primaryKey));
+            }
+            return RowFingerprint.of(key).toString();
+        }
+        RowFingerprint fingerprint = RowFingerprint.of(object);
+        String index = fingerprint.toString();
+        // Nur Kopien werden gezählt, die erste Zeile braucht keinen Eintrag in der Map
+        if (seen.add(fingerprint.getHigh(), fingerprint.getLow())) {
+            return index;
+        }
+        int copy = ++copies.computeIfAbsent(index, k -> new int[] {1})[0];
+        return index + "-" + copy;
+    }
+
+    /**
+     * Returns the fingerprint part of an index, without the number of the copy.
+     *
+     * @param index an index created by {@link #next(Map)}
+     * @return the index without its copy number
+     */
+    public static String baseOf(String index) {
+        int dash = index.indexOf('-');
+        return dash < 0 ? index : index.substring(0, dash);
+    }
+
+    /**
+     * Returns an index that is not taken yet and marks it as taken: the given index if it is free,
+     * otherwise the first free numbered copy of its fingerprint.
+     *
+     * @param index the index the row currently has
+     * @param taken the indexes in use, which receives the returned index
+     * @return the free index
+     */
+    public static String unique(String index, Set<String> taken) {
+        if (taken.add(index)) {
+            return index;
+        }
+        String base = baseOf(index);
+        if (taken.add(base)) {
+            return base;
+        }
+        for (int copy = 2; ; copy++) {
+            String candidate = base + "-" + copy;
+            if (taken.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * A set of 128-bit fingerprints with open addressing, stored as pairs of longs. Zero is stored in a separate flag.
+     * Both halves are compared, so distinct fingerprints never count as the same row.
+     */
+    static final class FingerprintSet {
+        private long[] slots = new long[2048];
+        private int size;
+        private boolean containsZero;
+
+        /**
+         * Adds a fingerprint to the set.
+         *
+         * @param high the upper 64 bits of the fingerprint
+         * @param low the lower 64 bits of the fingerprint
+         * @return true if the fingerprint was not in the set yet
+         */
+        boolean add(long high, long low) {
+            if (high == 0 && low == 0) {
+                boolean added = !containsZero;
+                containsZero = true;
+                return added;
+            }
+            // Höchstens halb voll: jeder Eintrag belegt zwei Felder
+            if (size * 4 >= slots.length) {
+                grow();
+            }
+            if (!insert(slots, high, low)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private static boolean insert(long[] table, long high, long low) {
+            int mask = table.length / 2 - 1;
+            int slot = (int) (low ^ (low >>> 32)) & mask;
+            while (table[2 * slot] != 0 || table[2 * slot + 1] != 0) {
+                if (table[2 * slot] == high && table[2 * slot + 1] == low) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[2 * slot] = high;
+            table[2 * slot + 1] = low;
+            return true;
+        }
+
+        private void grow() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            for (int i = 0; i < old.length; i += 2) {
+                if (old[i] != 0 || old[i + 1] != 0) {
+                    insert(slots, old[i], old[i + 1]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+The sort order used for sorted table snapshots and the merge-join diff.
+Tables with a primary key are ordered by their key values; tables without one are ordered by the
+fingerprint of the whole row, so equal rows end up next to each other and can be paired as a multiset.
+Values are compared by their JSON type first (null, boolean, number, string) and then by value,
+so numbers compare numerically no matter whether they were read back as Integer, Long or Double.
+
+ */
+
+public class RowOrder {
+    private final List<String> primaryKeys;
+
+    /**
+     * Constructor for RowOrder.
+     *
+     * @param primaryKeys the primary key columns of the table, empty to order rows by content fingerprint
+     */
+    public RowOrder(List<String> primaryKeys) {
+        this.primaryKeys = primaryKeys == null ? new ArrayList<>() : primaryKeys;
+    }
+
+    /**
+     * Returns whether rows are ordered by primary key.
+     *
+     * @return true if the table has a primary key
+     */
+    public boolean isKeyed() {
+        return !primaryKeys.isEmpty();
+    }
+
+    /**
+     * Returns the columns the rows are ordered by.
+     *
+     * @return the primary key columns, empty if rows are ordered by content
+     */
+    public List<String> getPrimaryKeys() {
+        return primaryKeys;
+    }
+
+    /**
+     * Computes the sort key of a row.
+     *
+     * @param object the column values of the row
+     * @return the list of key values, or the content fingerprint for tables without a primary key
+     */
+    public Object keyOf(Map<String, Object> object) {
+        if (!isKeyed()) {
+            return RowFingerprint.of(object);
+        }
+        List<Object> key = new ArrayList<>(primaryKeys.size());
+        for (String primaryKey : primaryKeys) {
+            key.add(object.get(primaryKey));
+        }
+        return key;
+    }
+
+    /**
+     * Compares two sort keys computed by {@link #keyOf(Map)}.
+     *
+     * @param a the first key
+     * @param b the second key
+     * @return a negative number, zero or a positive number if a sorts before, together with or after b
+     */
+    public int compareKeys(Object a, Object b) {
+        if (!isKeyed()) {
+            return ((RowFingerprint) a).compareTo((RowFingerprint) b);
+        }
+        List<?> left = (List<?>) a;
+        List<?> right = (List<?>) b;
+        for (int i = 0; i < left.size(); i++) {
+            int result = compareValues(left.get(i), right.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares two column values.
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return a negative number, zero or a positive number if a sorts before, together with or after b
+     */
+    static int compareValues(Object a, Object b) {
+        if (a == b) return 0;
+        int rank = Integer.compare(rank(a), rank(b));
+        if (rank != 0) return rank;
+
+        if (a instanceof Boolean) {
+            return Boolean.compare((Boolean) a, (Boolean) b);
+        }
+        if (a instanceof Number) {
+            if (isIntegral(a) && isIntegral(b) && !(a instanceof BigInteger) && !(b instanceof BigInteger)) {
+                return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+            }
+            return toBigDecimal((Number) a).compareTo(toBigDecimal((Number) b));
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static int rank(Object value) {
+        if (value == null) return 0;
+        if (value instanceof Boolean) return 1;
+        if (value instanceof Number) return 2;
+        return 3;
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof BigInteger;
+    }
+
+    private static BigDecimal toBigDecimal(Number value) {
+        if (value instanceof BigDecimal) return (BigDecimal) value;
+        if (value instanceof BigInteger) return new BigDecimal((BigInteger) value);
+        if (value instanceof Double || value instanceof Float) return BigDecimal.valueOf(value.doubleValue());
+        return BigDecimal.valueOf(value.longValue());
+    }
+}
@@ -0,0 +1,160 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import hdm.DataBack.JDBCExporter.FileReader;
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.RowSource;
+import hdm.DataBack.JDBCExporter.JsonRowWriter;
+import hdm.DataBack.Logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+
+A size-bounded on-disk cache of reconstructed table versions.
+Every entry is a full data file named "<table>_v<version>_<chain hash>.json". The chain hash covers the name, size and
+modification time of every file the replay of that version reads, so an entry is only used as long as the part of the
+chain it was built from is unchanged. An entry whose chain changed is replaced the next time the version is stored.
+
+The least recently used entries are evicted once the cache grows beyond its size limit. The modification time of an
+entry file serves as its last access time, so the LRU order survives between runs.
+
+ */
+
+public class VersionCache {
+    static Logger logger = new Logger();
+    private final FileReader fileReader = new FileReader();
+    private final FileWriter fileWriter = new FileWriter();
+
+    private final String directory;
+    private final long maxBytes;
+
+    /**
+     * Constructor for VersionCache.
+     *
+     * @param directory the directory holding the cache entries
+     * @param maxBytes the maximum total size of all cache entries
+     */
+    public VersionCache(String directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        fileWriter.createDirectory(directory);
+    }
+
+    /**
+     * Computes the hash of the files a replay reads.
+     *
+     * @param paths the files of the replay in the order they are read
+     * @return a 16 character hex hash of the file names, sizes and modification times
+     */
+    public String chainHash(List<String> paths) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String path : paths) {
+                File file = new File(path);
+                digest.update((file.getName() + "|" + file.length() + "|" + file.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] hash = digest.digest();
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens a cached version of a table for streaming and marks it as recently used.
+     *
+     * @param tableName the name of the table
+     * @param version the version number
+     * @param chainHash the hash of the chain the version is built from
+     * @return a reader over the entries of the version, or null if the cache holds no entry for this chain
+     * @throws IOException if the cache entry cannot be opened
+     */
+    public synchronized RowSource open(String tableName, int version, String chainHash) throws IOException {
+        File file = entryPath(tableName, version, chainHash).toFile();
+        if (!file.exists()) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return fileReader.openRowReader(file.getPath());
+    }
+
+    /**
+     * Stores a reconstructed version of a table, removes entries of the same version built from an older chain
+     * and evicts the least recently used entries if the cache is full.
+     *
+     * @param tableName the name of the table
+     * @param version the version number
+     * @param chainHash the hash of the chain the version is built from
+     * @param replayEngine the replay engine holding the reconstructed version
+     * @throws IOException if the cache entry cannot be written
+     */
+    public synchronized void put(String tableName, int version, String chainHash, ReplayEngine replayEngine) throws IOException {
+        Path target = entryPath(tableName, version, chainHash);
+        Path temp = Files.createTempFile(Paths.get(directory), "entry_", ".tmp");
+        try {
+            try (JsonRowWriter writer = fileWriter.openJSONRowWriter(temp.toString())) {
+                replayEngine.writeTo(writer);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        // Lösche veraltete Einträge derselben Version
+        String prefix = tableName + "_v" + version + "_";
+        for (File file : listEntries()) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && name.substring(prefix.length()).matches("[0-9a-f]{16}\\.json")
+                    && !name.equals(target.getFileName().toString())) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits into its size limit.
+     *
+     * @throws IOException if an entry cannot be deleted
+     */
+    private void evict() throws IOException {
+        File[] entries = listEntries();
+        long totalBytes = 0;
+        for (File file : entries) {
+            totalBytes += file.length();
+        }
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File file : entries) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            totalBytes -= file.length();
+            Files.deleteIfExists(file.toPath());
+            logger.info("Evicted cached version: " + file.getName());
+        }
+    }
+
+    private File[] listEntries() {
+        File[] entries = new File(directory).listFiles((dir, name) -> name.endsWith(".json"));
+        return entries != null ? entries : new File[0];
+    }
+
+    private Path entryPath(String tableName, int version, String chainHash) {
+        return Paths.get(directory, tableName + "_v" + version + "_" + chainHash + ".json");
+    }
+}
@@ -0,0 +1,61 @@
+package hdm.DataBack.JDBCExporter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Map;
+
+public class JsonRowReader implements RowSource {
+    private static final TypeReference<Map<String, Object>> ENTRY_TYPE = new TypeReference<>() {};
+
+    private final JsonParser parser;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructor for JsonRowReader that positions the parser inside the surrounding JSON array.
+     *
+     * @param parser the parser of the file, or null to read nothing
+     * @param objectMapper the mapper used to bind single entries
+     * @throws IOException if the file does not start with a JSON array
+     */
+    JsonRowReader(JsonParser parser, ObjectMapper objectMapper) throws IOException {
+        this.parser = parser;
+        this.objectMapper = objectMapper;
+        if (parser != null && parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Expected a JSON array of rows in " + parser.currentLocation());
+        }
+    }
+
+    /**
+     * Reads the next entry of the array. Only this entry is held in memory.
+     *
+     * @return the next entry holding an "index" and an "object", or null if the array is exhausted
+     * @throws IOException if an error occurs while reading the file
+     */
+    @Override
+    public Map<String, Object> next() throws IOException {
+        if (parser == null) {
+            return null;
+        }
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        return objectMapper.readValue(parser, ENTRY_TYPE);
+    }
+
+    /**
+     * Closes the underlying file.
+     *
+     * @throws IOException if an error occurs while closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (parser != null) {
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package hdm.DataBack.JDBCExporter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.Map;
+
+public class JsonRowWriter implements RowSink {
+    private final JsonGenerator generator;
+    private long rowCount;
+
+    /**
+     * Constructor for JsonRowWriter that opens the surrounding JSON array.
+     *
+     * @param generator the generator the rows are written to
+     * @throws IOException if an error occurs while writing to the generator
+     */
+    JsonRowWriter(JsonGenerator generator) throws IOException {
+        this.generator = generator;
+        this.generator.writeStartArray();
+    }
+
+    /**
+     * Writes a single row with an existing index to the file.
+     * The row is serialized immediately, so no reference to it is kept after this call returns.
+     *
+     * @param index the index of the entry
+     * @param row the column values of the row
+     * @throws IOException if an error occurs while writing the row
+     */
+    @Override
+    public void writeEntry(String index, Map<String, Object> row) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("index", index);
+        generator.writeFieldName("object");
+        generator.writeObject(row);
+        generator.writeEndObject();
+        rowCount++;
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     *
+     * @return the number of written rows
+     */
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Closes the JSON array and the underlying file.
+     *
+     * @throws IOException if an error occurs while closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        generator.writeEndArray();
+        generator.close();
+    }
+}
@@ -0,0 +1,247 @@
+package hdm.DataBack.JDBCExporter;
+
+import hdm.DataBack.JDBCExporter.IncrementalExporter.RowFingerprint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+
+Collects the changes of a table with a primary key against its previous state and writes them as a new version.
+Rows are matched to the entries of the previous state by primary key, so an inserted or updated row becomes an
+update of the existing entry (or is dropped if its content did not change) and a deleted key removes the entry.
+Only the index and a fingerprint per previous row are held in memory, plus the changed rows themselves.
+
+A column value of UNCHANGED keeps the value the row had before; it is filled in when the new current file is written.
+
+ */
+
+public class KeyedChangeSet {
+    public static final Object UNCHANGED = new Object();
+
+    private final FileReader fileReader = new FileReader();
+    private final FileWriter fileWriter = new FileWriter();
+
+    private final String previousPath;
+    private final List<String> primaryKeys;
+    private final Map<RowFingerprint, String> previousIndexes = new HashMap<>();
+    private final Map<String, RowFingerprint> previousContent = new HashMap<>();
+
+    private final Map<String, Map<String, Object>> updated = new LinkedHashMap<>();
+    private final Map<RowFingerprint, Map<String, Object>> added = new LinkedHashMap<>();
+    private final Set<String> deleted = new LinkedHashSet<>();
+
+    /**
+     * Constructor for KeyedChangeSet that reads the indexes and fingerprints of the previous state.
+     *
+     * @param previousPath the file holding the previous state of the table with its indexes
+     * @param primaryKeys the primary key columns of the table
+     * @throws IOException if the previous state cannot be read
+     */
+    public KeyedChangeSet(String previousPath, List<String> primaryKeys) throws IOException {
+        this.previousPath = previousPath;
+        this.primaryKeys = primaryKeys;
+        try (RowSource reader = fileReader.openRowReader(previousPath)) {
+            Map<String, Object> entry;
+            while ((entry = reader.next()) != null) {
+                Map<String, Object> object = (Map<String, Object>) entry.get("object");
+                String index = (String) entry.get("index");
+                previousIndexes.put(keyOf(object), index);
+                previousContent.put(index, RowFingerprint.of(object));
+            }
+        }
+    }
+
+    /**
+     * Computes the key of a row, independent of whether numbers were read as Integer or Long.
+     *
+     * @param object the column values of the row, containing at least the primary key columns
+     * @return the fingerprint of the primary key values
+     */
+    public RowFingerprint keyOf(Map<String, Object> object) {
+        List<Object> key = new ArrayList<>(primaryKeys.size());
+        for (String primaryKey : primaryKeys) {
+            key.add(object.get(primaryKey));
+        }
+        return RowFingerprint.of(key);
+    }
+
+    /**
+     * Records the new content of an inserted or updated row.
+     *
+     * @param object the column values of the row
+     */
+    public void upsert(Map<String, Object> object) {
+        RowFingerprint key = keyOf(object);
+        Map<String, Object> pendingAdd = added.get(key);
+        if (pendingAdd != null) {
+            pendingAdd.put("object", merge((Map<String, Object>) pendingAdd.get("object"), object));
+            return;
+        }
+        String index = previousIndexes.get(key);
+        if (index == null) {
+            // Der Index einer neuen Zeile ist der Fingerabdruck ihres Schlüssels, wie beim vollständigen Export
+            added.put(key, entry(key.toString(), object));
+            return;
+        }
+        deleted.remove(index);
+        Map<String, Object> pendingUpdate = updated.get(index);
+        Map<String, Object> newObject = pendingUpdate != null ? merge((Map<String, Object>) pendingUpdate.get("object"), object) : object;
+        if (!newObject.containsValue(UNCHANGED) && RowFingerprint.of(newObject).equals(previousContent.get(index))) {
+            updated.remove(index);
+        } else {
+            updated.put(index, entry(index, newObject));
+        }
+    }
+
+    /**
+     * Records that the row with the given key was deleted.
+     *
+     * @param keyValues the column values holding at least the primary key columns
+     */
+    public void delete(Map<String, Object> keyValues) {
+        RowFingerprint key = keyOf(keyValues);
+        if (added.remove(key) != null) {
+            return;
+        }
+        String index = previousIndexes.get(key);
+        if (index != null) {
+            updated.remove(index);
+            deleted.add(index);
+        }
+    }
+
+    /**
+     * Records every row of the previous state whose key is not present anymore as deleted.
+     *
+     * @param presentKeys the keys of all rows present in the table, computed with {@link #keyOf(Map)}
+     */
+    public void deleteMissing(Collection<RowFingerprint> presentKeys) {
+        Set<RowFingerprint> present = presentKeys instanceof Set ? (Set<RowFingerprint>) presentKeys : Set.copyOf(presentKeys);
+        for (Map.Entry<RowFingerprint, String> previous : previousIndexes.entrySet()) {
+            if (!present.contains(previous.getKey())) {
+                updated.remove(previous.getValue());
+                deleted.add(previous.getValue());
+            }
+        }
+    }
+
+    /**
+     * Records that all rows were deleted, discarding the changes recorded so far.
+     */
+    public void truncate() {
+        added.clear();
+        updated.clear();
+        deleted.addAll(previousIndexes.values());
+    }
+
+    /**
+     * Returns the number of recorded changes.
+     *
+     * @return the number of added, updated and deleted rows
+     */
+    public int size() {
+        return added.size() + updated.size() + deleted.size();
+    }
+
+    /**
+     * Writes the new current file and the changes file of the new version.
+     *
+     * @param changesPath the file the changes are written to
+     * @param currentPath the current file of the table
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    public void write(String changesPath, String currentPath) throws IOException {
+        for (Map<String, Object> addedEntry : added.values()) {
+            ((Map<String, Object>) addedEntry.get("object")).values().removeIf(value -> value == UNCHANGED);
+        }
+        writeCurrent(previousPath, currentPath, deleted, updated, added.values());
+
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put("deleted", new ArrayList<>(deleted));
+        changes.put("updated", new ArrayList<>(updated.values()));
+        changes.put("added", new ArrayList<>(added.values()));
+        fileWriter.writeJSONFile(changesPath, changes);
+    }
+
+    /**
+     * Writes a new current file: the previous state without deleted rows, with updated rows replaced and the added rows
+     * appended. UNCHANGED values of an updated row are filled in from the previous state, also in its update entry.
+     * The current file is replaced only after it was written completely.
+     *
+     * @param previousPath the file holding the previous state of the table with its indexes
+     * @param currentPath the current file of the table
+     * @param deleted the indexes of the deleted rows
+     * @param updated the update entries by index
+     * @param added the added entries
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    public static void writeCurrent(String previousPath, String currentPath, Set<String> deleted,
+                                    Map<String, Map<String, Object>> updated, Collection<Map<String, Object>> added) throws IOException {
+        FileReader fileReader = new FileReader();
+        FileWriter fileWriter = new FileWriter();
+        Path current = Paths.get(currentPath);
+        Path temp = Files.createTempFile(current.toAbsolutePath().getParent(), "current_", ".json");
+        try {
+            try (RowSource reader = fileReader.openRowReader(previousPath);
+                 RowSink writer = fileWriter.openTableWriter(temp.toString())) {
+                Map<String, Object> entry;
+                while ((entry = reader.next()) != null) {
+                    String index = (String) entry.get("index");
+                    if (deleted.contains(index)) {
+                        continue;
+                    }
+                    Map<String, Object> object = (Map<String, Object>) entry.get("object");
+                    Map<String, Object> update = updated.get(index);
+                    if (update != null) {
+                        // Unveränderte Werte aus dem bisherigen Zustand übernehmen
+                        object = merge(object, (Map<String, Object>) update.get("object"));
+                        update.put("object", object);
+                    }
+                    writer.writeEntry(index, object);
+                }
+                for (Map<String, Object> addedEntry : added) {
+                    writer.writeEntry((String) addedEntry.get("index"), (Map<String, Object>) addedEntry.get("object"));
+                }
+            }
+            Files.move(temp, current, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Overlays the new values of a row on its old values; UNCHANGED values keep the old value.
+     *
+     * @param oldObject the old column values
+     * @param newObject the new column values
+     * @return the merged column values
+     */
+    private static Map<String, Object> merge(Map<String, Object> oldObject, Map<String, Object> newObject) {
+        Map<String, Object> merged = new LinkedHashMap<>(oldObject);
+        for (Map.Entry<String, Object> column : newObject.entrySet()) {
+            if (column.getValue() != UNCHANGED || !merged.containsKey(column.getKey())) {
+                merged.put(column.getKey(), column.getValue());
+            }
+        }
+        return merged;
+    }
+
+    private static Map<String, Object> entry(String index, Map<String, Object> object) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("index", index);
+        entry.put("object", object);
+        return entry;
+    }
+}
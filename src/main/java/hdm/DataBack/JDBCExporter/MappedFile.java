@@ -0,0 +1,246 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+
+A backup file mapped into memory. Large files are read through the mapping instead of a FileInputStream, so their
+content is not copied from the page cache into a heap buffer, and the parsers only copy the few kilobytes they
+currently look at. The mapping of a file is shared by all streams that read it at the same time, e.g. the restore
+workers and the version cache, each with its own stream position. A file is identified by its path and its
+identity (inode, size and modification time), so a file that was rewritten or moved over gets a new mapping.
+The mapping only lives as long as streams are open on it: when the last one is closed, it is removed from the
+cache and unmapped, so a file that is replaced or deleted afterwards (e.g. a current file or a collected chunk)
+does not keep its disk space, and on Windows does not block the replace or delete.
+Files larger than 2 GiB are mapped in several regions, because one buffer cannot address more.
+
+ */
+
+final class MappedFile {
+    // Kleinere Dateien werden normal gelesen, das Mappen lohnt sich dort nicht
+    static final long MIN_MAPPED_SIZE = 1024 * 1024;
+    private static final long REGION_SIZE = 1L << 30;
+
+    // Nur Abbildungen mit offenen Streams
+    private static final Map<Path, MappedFile> cache = new HashMap<>();
+
+    // Gibt eine Abbildung sofort frei statt erst bei der nächsten Garbage Collection (falls die JVM es erlaubt)
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path key;
+    private final Object fileKey;
+    private final long size;
+    private final FileTime lastModified;
+    private final long regionSize;
+    private final MappedByteBuffer[] regions;
+    private int openStreams;
+
+    /**
+     * Constructor for MappedFile that maps the whole file.
+     *
+     * @param path the path of the file
+     * @param attributes the attributes of the file
+     * @param regionSize the largest number of bytes mapped by one buffer
+     * @throws IOException if the file cannot be mapped
+     */
+    MappedFile(Path path, BasicFileAttributes attributes, long regionSize) throws IOException {
+        this.key = path.toAbsolutePath().normalize();
+        this.fileKey = attributes.fileKey();
+        this.size = attributes.size();
+        this.lastModified = attributes.lastModifiedTime();
+        this.regionSize = regionSize;
+        this.regions = new MappedByteBuffer[(int) ((size + regionSize - 1) / regionSize)];
+        // Die Abbildung bleibt nach dem Schließen des Kanals gültig
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < regions.length; i++) {
+                long start = i * regionSize;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+            }
+        }
+    }
+
+    /**
+     * Opens a stream over a file, sharing the mapping with the streams already open on the same file.
+     * The file is mapped if no stream is open on it or it changed since it was mapped.
+     *
+     * @param path the path of the file
+     * @param attributes the current attributes of the file
+     * @return a stream supporting mark and reset, which must be closed to release the mapping
+     * @throws IOException if the file cannot be mapped
+     */
+    static synchronized InputStream open(Path path, BasicFileAttributes attributes) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        MappedFile mapped = cache.get(key);
+        if (mapped == null || !mapped.matches(attributes)) {
+            // Eine veraltete Abbildung bleibt für ihre offenen Streams bestehen
+            mapped = new MappedFile(key, attributes, REGION_SIZE);
+            cache.put(key, mapped);
+        }
+        return mapped.newInputStream();
+    }
+
+    /**
+     * Returns the mapping that new streams on a file would share.
+     *
+     * @param path the path of the file
+     * @return the mapping of the file, or null if no stream is open on it
+     */
+    static synchronized MappedFile cached(Path path) {
+        return cache.get(path.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Opens a stream over the mapped content. Streams of the same mapping can be read concurrently.
+     *
+     * @return a stream supporting mark and reset, which must be closed to release the mapping
+     */
+    InputStream newInputStream() {
+        synchronized (MappedFile.class) {
+            openStreams++;
+        }
+        return new MappedInputStream();
+    }
+
+    private boolean matches(BasicFileAttributes attributes) {
+        return Objects.equals(fileKey, attributes.fileKey())
+                && size == attributes.size()
+                && lastModified.equals(attributes.lastModifiedTime());
+    }
+
+    /**
+     * Releases the mapping when its last stream was closed.
+     */
+    private void release() {
+        synchronized (MappedFile.class) {
+            if (--openStreams > 0) {
+                return;
+            }
+            cache.remove(key, this);
+        }
+        if (INVOKE_CLEANER != null) {
+            for (MappedByteBuffer region : regions) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, region);
+                } catch (ReflectiveOperationException e) {
+                    // Dann gibt die Garbage Collection die Abbildung frei
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the mapped regions with absolute accesses, so the buffers are never modified and can be shared.
+     * A closed stream does not touch the buffers anymore, because they may already be unmapped. Reading and closing
+     * are synchronized on the stream, so a stream closed by another thread waits for a running read before the
+     * mapping is released, and the reader's next call fails with an IOException instead of reading unmapped memory.
+     */
+    private class MappedInputStream extends InputStream {
+        private long position;
+        private long mark;
+        private boolean closed;
+
+        @Override
+        public synchronized int read() throws IOException {
+            ensureOpen();
+            if (position >= size) {
+                return -1;
+            }
+            byte b = regions[(int) (position / regionSize)].get((int) (position % regionSize));
+            position++;
+            return b & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, buffer.length);
+            ensureOpen();
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            MappedByteBuffer region = regions[(int) (position / regionSize)];
+            int start = (int) (position % regionSize);
+            int count = Math.min(length, region.limit() - start);
+            region.get(start, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public synchronized long skip(long n) throws IOException {
+            ensureOpen();
+            long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized int available() throws IOException {
+            ensureOpen();
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                release();
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+    }
+}
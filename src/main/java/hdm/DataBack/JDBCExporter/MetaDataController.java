@@ -1,17 +1,22 @@
 package hdm.DataBack.JDBCExporter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
 import hdm.DataBack.Logger.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.Statement;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class MetaDataController {
     private final Logger logger = new Logger();
@@ -19,18 +24,31 @@ public class MetaDataController {
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     // path constants
-    private final String BASE_PATH = "./BackupData";
-    private final String META_FILE_PATH = BASE_PATH + "/metadata.json";
+    private static final String DEFAULT_BASE_PATH = "./BackupData";
+    private final String BASE_PATH;
+    private final String META_FILE_PATH;
     private final String CONSTRAINTS_PATH = "/Constraints";
     private final String TABLE_SCHEMA_PATH = "/tableSchema";
     private final String OBJECTS_PATH = "/Objects";
     private final String OBJECTS_TABLES_PATH = "/tables";
+    private final String TEMP_PATH = "/tmp";
+    private final String CACHE_PATH = "/Cache";
+    private final String CHUNKS_PATH = "/" + ChunkStore.DIRECTORY_NAME;
+
+    // a version is a "v" followed by digits at the end of a name, optionally before the file extension
+    private static final Pattern VERSION_PATTERN = Pattern.compile("v(\\d+)(?:\\.[^.]*)?$");
 
     private Map<String, Object> metadata;
+    // Tabellen, die in diesem Lauf als unverändert erkannt wurden (wird nicht gespeichert)
+    private final Set<String> unchangedTables = new HashSet<>();
+    // Tabellen, deren Änderungen in diesem Lauf direkt exportiert wurden (wird nicht gespeichert)
+    private final Set<String> changesExportedTables = new HashSet<>();
 
     private static MetaDataController instance;
 
-    private MetaDataController() {
+    private MetaDataController(String basePath) {
+        BASE_PATH = basePath;
+        META_FILE_PATH = BASE_PATH + "/metadata.json";
         File metaFile = new File(META_FILE_PATH);
 
         if (metaFile.exists()) {
@@ -55,11 +73,23 @@ public class MetaDataController {
      */
     public static synchronized MetaDataController getInstance() {
         if (instance == null) {
-            instance = new MetaDataController();
+            instance = new MetaDataController(DEFAULT_BASE_PATH);
         }
         return instance;
     }
 
+    /**
+     * Replaces the singleton instance with the metadata of the backup repository in another directory,
+     * e.g. to maintain a repository that is not located in the working directory.
+     *
+     * @param basePath the directory of the backup repository
+     * @return instance of MetaDataController for that repository
+     */
+    public static synchronized MetaDataController openRepository(String basePath) {
+        instance = new MetaDataController(basePath);
+        return instance;
+    }
+
     /**
      * Ensures that the metadata file is initialized properly with required structures.
      * Creates necessary directories if they do not exist.
@@ -90,6 +120,116 @@ public class MetaDataController {
         fileWriter.createDirectory(BASE_PATH + TABLE_SCHEMA_PATH);
         fileWriter.createDirectory(BASE_PATH + OBJECTS_PATH);
         fileWriter.createDirectory(BASE_PATH + OBJECTS_PATH + OBJECTS_TABLES_PATH);
+        fileWriter.createDirectory(BASE_PATH + TEMP_PATH);
+    }
+
+    /**
+     * Records the storage layout of the repository when the first backup is created.
+     * An existing repository keeps its layout, because its version chain was written in that layout.
+     *
+     * @param layout the requested layout
+     */
+    public void initLayout(BackupOptions.Layout layout) {
+        List<String> versions = (List<String>) ((Map<String, Object>) metadata.get("constraints")).get("versions");
+        if (!metadata.containsKey("layout") && versions.isEmpty()) {
+            metadata.put("layout", layout.name());
+        } else if (getLayout() != layout) {
+            logger.warn("Backup repository uses the " + getLayout() + " layout, ignoring requested layout " + layout);
+        }
+    }
+
+    /**
+     * Retrieves the storage layout of the repository.
+     *
+     * @return the layout of the version chain, forward for repositories created before layouts existed
+     */
+    public BackupOptions.Layout getLayout() {
+        Object layout = metadata.get("layout");
+        return layout == null ? BackupOptions.Layout.FORWARD : BackupOptions.Layout.valueOf((String) layout);
+    }
+
+    /**
+     * Records the codec of the backup files when the first backup is created.
+     * An existing repository keeps its codec, so all versions of a table hold values of the same types.
+     *
+     * @param codec the requested codec
+     */
+    public void initCodec(FileCodec codec) {
+        List<String> versions = (List<String>) ((Map<String, Object>) metadata.get("constraints")).get("versions");
+        if (!metadata.containsKey("codec") && versions.isEmpty()) {
+            metadata.put("codec", codec.name());
+        } else if (getCodec() != codec) {
+            logger.warn("Backup repository uses the " + getCodec() + " codec, ignoring requested codec " + codec);
+        }
+    }
+
+    /**
+     * Retrieves the codec of the backup files of the repository.
+     *
+     * @return the codec new files are written in, JSON for repositories created before codecs existed
+     */
+    public FileCodec getCodec() {
+        Object codec = metadata.get("codec");
+        return codec == null ? FileCodec.JSON : FileCodec.valueOf((String) codec);
+    }
+
+    /**
+     * Records the format of full table snapshots when the first backup is created.
+     * An existing repository keeps its format.
+     *
+     * @param tableFormat the requested format
+     */
+    public void initTableFormat(BackupOptions.TableFormat tableFormat) {
+        List<String> versions = (List<String>) ((Map<String, Object>) metadata.get("constraints")).get("versions");
+        if (!metadata.containsKey("tableFormat") && versions.isEmpty()) {
+            metadata.put("tableFormat", tableFormat.name());
+        } else if (getTableFormat() != tableFormat) {
+            logger.warn("Backup repository uses the " + getTableFormat() + " table format, ignoring requested table format " + tableFormat);
+        }
+    }
+
+    /**
+     * Retrieves the format of full table snapshots of the repository.
+     *
+     * @return the format new table snapshots are written in, rows for repositories created before formats existed
+     */
+    public BackupOptions.TableFormat getTableFormat() {
+        Object tableFormat = metadata.get("tableFormat");
+        return tableFormat == null ? BackupOptions.TableFormat.ROWS : BackupOptions.TableFormat.valueOf((String) tableFormat);
+    }
+
+    /**
+     * Records whether full table snapshots are deduplicated when the first backup is created.
+     * An existing repository keeps its setting.
+     *
+     * @param deduplicate the requested setting
+     */
+    public void initDeduplication(boolean deduplicate) {
+        List<String> versions = (List<String>) ((Map<String, Object>) metadata.get("constraints")).get("versions");
+        if (!metadata.containsKey("deduplicate") && versions.isEmpty()) {
+            metadata.put("deduplicate", deduplicate);
+        } else if (isDeduplicated() != deduplicate) {
+            logger.warn("Backup repository " + (isDeduplicated() ? "deduplicates" : "does not deduplicate")
+                    + " table snapshots, ignoring requested deduplication setting " + deduplicate);
+        }
+    }
+
+    /**
+     * Retrieves whether full table snapshots of the repository are deduplicated.
+     *
+     * @return true if table snapshots are stored as chunks, false for repositories created before deduplication existed
+     */
+    public boolean isDeduplicated() {
+        return Boolean.TRUE.equals(metadata.get("deduplicate"));
+    }
+
+    /**
+     * Creates the chunk store of the repository if its table snapshots are deduplicated.
+     *
+     * @return the chunk store, or null if table snapshots are written as plain files
+     */
+    public ChunkStore getChunkStore() {
+        return isDeduplicated() ? new ChunkStore(Paths.get(BASE_PATH + CHUNKS_PATH)) : null;
     }
 
     /**
@@ -98,6 +238,25 @@ public class MetaDataController {
      * @param connection the database connection to fetch table names
      */
     public void updateMetaData(Connection connection){
+        TableCatalog catalog;
+        try {
+            catalog = TableCatalog.load(connection);
+        } catch (SQLException e) {
+            logger.error("Error fetching table names: " + e.getMessage());
+            catalog = TableCatalog.empty();
+        }
+        updateMetaData(catalog);
+    }
+
+    /**
+     * Updates metadata with the latest constraints, table schema versions, and table objects.
+     *
+     * @param catalog the table catalog of the database
+     */
+    public void updateMetaData(TableCatalog catalog){
+        unchangedTables.clear();
+        changesExportedTables.clear();
+
         // Update constraints versions
         Map<String, Object> constraints = (Map<String, Object>) metadata.get("constraints");
         List<String> constraintsVersions = (List<String>) constraints.get("versions");
@@ -124,7 +283,7 @@ public class MetaDataController {
         Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
         Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
 
-        List<String> tableNames = getTableNamesFromDB(connection);
+        List<String> tableNames = catalog.getTableNames();
         for(String tableName : tableNames) {
             if (tableObjects.containsKey(tableName)) {
                 Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
@@ -135,7 +294,9 @@ public class MetaDataController {
 
                 String nextIncremental = tableName + "_incremental_" + nextVersionStr + ".json";
                 incrementalList.add(nextIncremental);
-                tableEntry.put("current", tableName + "_current.json");
+                // Im umgekehrten Layout ist die neueste Version selbst der aktuelle Zustand
+                tableEntry.put("current", getLayout() == BackupOptions.Layout.REVERSE ? nextIncremental : tableName + "_current.json");
+                tableEntry.put("primaryKeys", catalog.getPrimaryKeys(tableName));
                 tableObjects.put(tableName, tableEntry);
             }else{
                 Map<String, Object> tableEntry = new HashMap<>();
@@ -145,6 +306,7 @@ public class MetaDataController {
                 List<String> incrementalList = new ArrayList<>();
                 tableEntry.put("incremental", incrementalList);
                 tableEntry.put("current", tableName + "_" + nextVersionStr + ".json");
+                tableEntry.put("primaryKeys", catalog.getPrimaryKeys(tableName));
                 tableObjects.put(tableName, tableEntry);
 
                 fileWriter.createDirectory(BASE_PATH + OBJECTS_PATH + OBJECTS_TABLES_PATH + "/" + tableName);
@@ -165,30 +327,6 @@ public class MetaDataController {
         logger.info("Saved metadata file at: " + metaFile.getAbsolutePath());
     }
 
-    /**
-     * Retrieves table names from the database schema.
-     *
-     * @param connection the database connection
-     * @return list of table names in the public schema
-     */
-    private List<String> getTableNamesFromDB(Connection connection) {
-        List<String> tableNames = new ArrayList<>();
-        String query = String.format("""
-            SELECT table_name
-            FROM information_schema.tables
-            WHERE table_schema = 'public'""");
-
-        try (Statement statement = connection.createStatement(); ResultSet tables = statement.executeQuery(query)) {
-            while (tables.next()) {
-                tableNames.add(tables.getString("table_name"));
-            }
-        } catch (Exception e) {
-            logger.error("Error fetching table names: " + e.getMessage());
-        }
-
-        return tableNames;
-    }
-
     /**
      * Extracts the version number from a given filename.
      *
@@ -196,18 +334,26 @@ public class MetaDataController {
      * @return extracted version number, defaults to 1 if extraction fails
      */
     public int getCurrentVersion(String filename) {
-        int version = 1;
-        try {
-            int vIndex = filename.indexOf("v");
-            int dotIndex = filename.indexOf(".", vIndex);
-            String numberStr = filename.substring(vIndex + 1, dotIndex);
-            version = Integer.parseInt(numberStr);
-        } catch (Exception e) {
+        int version = parseVersionNumber(filename);
+        if (version < 0) {
             logger.warn("Could not get version from " + filename + ". Defaulting to 1.");
+            return 1;
         }
         return version;
     }
 
+    /**
+     * Extracts the version number from a version name like "v3" or a file name like "orders_incremental_v3.json".
+     * The version is always the last "v" followed by digits, so table names containing a "v" are not mistaken for it.
+     *
+     * @param name the version name or file name
+     * @return the version number, or -1 if the name does not contain a version
+     */
+    public static int parseVersionNumber(String name) {
+        Matcher matcher = VERSION_PATTERN.matcher(name);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
     /**
      * Retrieves the current version index from metadata.
      *
@@ -292,11 +438,13 @@ public class MetaDataController {
         if (version == null || version.isEmpty()) {
             fileName = versions.get(versions.size() - 1);
         } else {
+            int versionNumber = parseVersionNumber(version);
             fileName = versions.stream()
-                    .filter(v -> v.contains(version))
+                    .filter(v -> parseVersionNumber(v) == versionNumber)
                     .findFirst()
                     .orElseThrow(() -> new IllegalArgumentException("No constraints file found for version " + version));
         }
+        fileName = resolveScriptFile(constraints, fileName);
 
         return BASE_PATH + CONSTRAINTS_PATH + "/" + fileName;
     }
@@ -321,15 +469,65 @@ public class MetaDataController {
         if (version == null || version.isEmpty()) {
             fileName = versions.get(versions.size() - 1);
         } else {
+            int versionNumber = parseVersionNumber(version);
             fileName = versions.stream()
-                    .filter(v -> v.contains(version))
+                    .filter(v -> parseVersionNumber(v) == versionNumber)
                     .findFirst()
                     .orElseThrow(() -> new IllegalArgumentException("No tableSchema file found for version " + version));
         }
+        fileName = resolveScriptFile(tableSchema, fileName);
 
         return BASE_PATH + TABLE_SCHEMA_PATH + "/" + fileName;
     }
 
+    /**
+     * Resolves the name of a script version to the file that holds its content.
+     * A version whose schema did not change refers to the script file of an earlier version instead of a copy.
+     *
+     * @param section the "constraints" or "tableSchema" section of the metadata
+     * @param fileName the file name of the version
+     * @return the name of the file holding the script
+     */
+    private String resolveScriptFile(Map<String, Object> section, String fileName) {
+        Map<String, String> aliases = (Map<String, String>) section.get("aliases");
+        return aliases != null ? aliases.getOrDefault(fileName, fileName) : fileName;
+    }
+
+    /**
+     * Compares the schema fingerprint of the new version with the one of the previous version and records it.
+     * If they match, the table schema and constraints versions of the new version refer to the script files of the
+     * previous version, so the scripts do not have to be generated and stored again.
+     *
+     * @param fingerprint the schema fingerprint of the new version
+     * @return true if the scripts of the previous version are reused, false if new scripts must be written
+     */
+    public synchronized boolean reuseSchemaScripts(String fingerprint) {
+        Map<String, Object> tableSchema = (Map<String, Object>) metadata.get("tableSchema");
+        Map<String, Object> constraints = (Map<String, Object>) metadata.get("constraints");
+        String previousFingerprint = (String) tableSchema.put("fingerprint", fingerprint);
+
+        if (!fingerprint.equals(previousFingerprint)
+                || ((List<String>) tableSchema.get("versions")).size() < 2
+                || ((List<String>) constraints.get("versions")).size() < 2) {
+            return false;
+        }
+        addScriptAlias(tableSchema);
+        addScriptAlias(constraints);
+        return true;
+    }
+
+    /**
+     * Lets the newest version of a script section refer to the file of the version before it.
+     *
+     * @param section the "constraints" or "tableSchema" section of the metadata
+     */
+    private void addScriptAlias(Map<String, Object> section) {
+        List<String> versions = (List<String>) section.get("versions");
+        Map<String, String> aliases = (Map<String, String>) section.computeIfAbsent("aliases", key -> new HashMap<String, String>());
+        String previousFile = versions.get(versions.size() - 2);
+        aliases.put(versions.get(versions.size() - 1), aliases.getOrDefault(previousFile, previousFile));
+    }
+
     /**
      * Gets the latest file path for a specific table.
      *
@@ -444,4 +642,231 @@ public class MetaDataController {
 
         return new ArrayList<>(tableObjects.keySet());
     }
+
+    /**
+     * Retrieves the primary key columns recorded for a table during the last backup.
+     *
+     * @param tableName the name of the table
+     * @return list of primary key columns, empty if the table has no primary key
+     */
+    public List<String> getPrimaryKeys(String tableName) {
+        Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
+        Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
+
+        if (!tableObjects.containsKey(tableName)) {
+            return new ArrayList<>();
+        }
+
+        Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
+        return (List<String>) tableEntry.getOrDefault("primaryKeys", new ArrayList<>());
+    }
+
+    /**
+     * Gets the directory for temporary files such as sorted runs.
+     *
+     * @return path to the temporary directory
+     */
+    public String getTempDirectoryPath() {
+        return BASE_PATH + TEMP_PATH;
+    }
+
+    /**
+     * Gets the directory of the cache of reconstructed table versions.
+     *
+     * @return path to the cache directory
+     */
+    public String getCacheDirectoryPath() {
+        return BASE_PATH + CACHE_PATH;
+    }
+
+    /**
+     * Retrieves the columns the current file of a table is sorted by.
+     *
+     * @param tableName the name of the table
+     * @return the primary key columns (empty if sorted by content), or null if the current file is not sorted
+     */
+    public synchronized List<String> getSortedBy(String tableName) {
+        Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
+        Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
+
+        if (!tableObjects.containsKey(tableName)) {
+            return null;
+        }
+
+        Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
+        return (List<String>) tableEntry.get("sortedBy");
+    }
+
+    /**
+     * Records the columns the current file of a table is sorted by.
+     *
+     * @param tableName the name of the table
+     * @param sortedBy the primary key columns (empty if sorted by content), or null if the current file is not sorted
+     */
+    public synchronized void setSortedBy(String tableName, List<String> sortedBy) {
+        Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
+        Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
+        Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
+
+        if (tableEntry == null) {
+            return;
+        }
+        if (sortedBy == null) {
+            tableEntry.remove("sortedBy");
+        } else {
+            tableEntry.put("sortedBy", new ArrayList<>(sortedBy));
+        }
+    }
+
+    /**
+     * Records the change signal of a table for the new version and returns the signal of the previous version.
+     *
+     * @param tableName the name of the table
+     * @param signal the change signal read before the export, or null if no signal is available
+     * @return the signal stored for the previous version, or null if there is none
+     */
+    public synchronized String updateChangeSignal(String tableName, String signal) {
+        Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
+        Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
+        Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
+
+        if (tableEntry == null) {
+            return null;
+        }
+        return (String) (signal == null ? tableEntry.remove("changeSignal") : tableEntry.put("changeSignal", signal));
+    }
+
+    /**
+     * Marks a table as unchanged since the previous version, so it is neither exported nor diffed in this backup.
+     *
+     * @param tableName the name of the table
+     */
+    public synchronized void markUnchanged(String tableName) {
+        unchangedTables.add(tableName);
+    }
+
+    /**
+     * Checks whether a table was detected as unchanged since the previous version.
+     *
+     * @param tableName the name of the table
+     * @return true if the table is not exported in this backup
+     */
+    public synchronized boolean isUnchanged(String tableName) {
+        return unchangedTables.contains(tableName);
+    }
+
+    /**
+     * Marks a table whose new version was written directly as changes (together with its new current file),
+     * so it is not diffed again in this backup.
+     *
+     * @param tableName the name of the table
+     */
+    public synchronized void markChangesExported(String tableName) {
+        changesExportedTables.add(tableName);
+    }
+
+    /**
+     * Checks whether the new version of a table was written directly as changes.
+     *
+     * @param tableName the name of the table
+     * @return true if the table does not need to be diffed in this backup
+     */
+    public synchronized boolean isChangesExported(String tableName) {
+        return changesExportedTables.contains(tableName);
+    }
+
+    /**
+     * Retrieves the watermark stored for a table by the previous backup.
+     *
+     * @param tableName the name of the table
+     * @param column the watermark column the caller uses, or "xmin"
+     * @return the watermark value, or null if none is stored for this column
+     */
+    public synchronized String getWatermark(String tableName, String column) {
+        Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
+        Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
+        Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
+
+        if (tableEntry == null || !(tableEntry.get("watermark") instanceof Map)) {
+            return null;
+        }
+        Map<String, Object> watermark = (Map<String, Object>) tableEntry.get("watermark");
+        return column.equals(watermark.get("column")) ? (String) watermark.get("value") : null;
+    }
+
+    /**
+     * Stores the watermark of a table reached by this backup.
+     *
+     * @param tableName the name of the table
+     * @param column the watermark column, or "xmin"
+     * @param value the watermark value, or null to remove the watermark
+     */
+    public synchronized void setWatermark(String tableName, String column, String value) {
+        Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
+        Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
+        Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
+
+        if (tableEntry == null) {
+            return;
+        }
+        if (value == null) {
+            tableEntry.remove("watermark");
+        } else {
+            Map<String, Object> watermark = new HashMap<>();
+            watermark.put("column", column);
+            watermark.put("value", value);
+            tableEntry.put("watermark", watermark);
+        }
+    }
+
+    /**
+     * Gets the file paths of all full snapshot checkpoints of a table, oldest first.
+     *
+     * @param tableName the name of the table
+     * @return list of checkpoint file paths, empty if the table has no checkpoint
+     */
+    public synchronized List<String> getCheckpointFilePaths(String tableName) {
+        Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
+        Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
+
+        List<String> checkpointFilePaths = new ArrayList<>();
+        if (!tableObjects.containsKey(tableName)) {
+            return checkpointFilePaths;
+        }
+
+        Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
+        List<String> checkpointFileNames = (List<String>) tableEntry.getOrDefault("checkpoints", new ArrayList<>());
+        for (String fileName : checkpointFileNames) {
+            checkpointFilePaths.add(BASE_PATH + OBJECTS_PATH + OBJECTS_TABLES_PATH + "/" + tableName + "/" + fileName);
+        }
+        return checkpointFilePaths;
+    }
+
+    /**
+     * Records a full snapshot checkpoint of a table for a version.
+     * The checkpoint file is named after the version, e.g. "orders_checkpoint_v10.json".
+     *
+     * @param tableName the name of the table
+     * @param version the version the checkpoint contains
+     * @return the file path the checkpoint has to be written to
+     */
+    public synchronized String addCheckpoint(String tableName, int version) {
+        Map<String, Object> objects = (Map<String, Object>) metadata.get("objects");
+        Map<String, Object> tableObjects = (Map<String, Object>) objects.get("tables");
+
+        if (!tableObjects.containsKey(tableName)) {
+            throw new IllegalArgumentException("Table " + tableName + " not found in metadata");
+        }
+
+        Map<String, Object> tableEntry = (Map<String, Object>) tableObjects.get(tableName);
+        List<String> checkpointList = (List<String>) tableEntry.get("checkpoints");
+        if (checkpointList == null) {
+            checkpointList = new ArrayList<>();
+            tableEntry.put("checkpoints", checkpointList);
+        }
+
+        String fileName = tableName + "_checkpoint_v" + version + ".json";
+        checkpointList.add(fileName);
+        return BASE_PATH + OBJECTS_PATH + OBJECTS_TABLES_PATH + "/" + tableName + "/" + fileName;
+    }
 }
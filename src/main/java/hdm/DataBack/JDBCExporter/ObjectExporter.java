@@ -1,10 +1,20 @@
 package hdm.DataBack.JDBCExporter;
 
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.ExternalRowSorter;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.RowIdentity;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.RowOrder;
 import hdm.DataBack.Logger.Logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ObjectExporter {
     Logger logger = new Logger();
@@ -12,6 +22,14 @@ public class ObjectExporter {
     MetaDataController metaDataController = MetaDataController.getInstance();
 
     private final Connection connection;
+    private final int fetchSize;
+    private final boolean sortedExport;
+    private final boolean serverDiff;
+    private final boolean watermarkExtraction;
+    private final Map<String, String> watermarkColumns;
+    private final WatermarkExporter watermarkExporter;
+    private final ServerDiff serverDiffExporter;
+    private TableCatalog catalog;
 
     /**
      * Constructor to initialize ObjectExporter with a database connection
@@ -19,11 +37,43 @@ public class ObjectExporter {
      * @param connection the database connection
      */
     public ObjectExporter(Connection connection, String filePath){
+        this(connection, filePath, new BackupOptions());
+    }
+
+    /**
+     * Constructor to initialize ObjectExporter with a database connection and backup options.
+     * - The fetch size controls how many rows are fetched per round trip while streaming a table.
+     * - In merge diff mode, tables are written sorted by primary key (or by content if they have none).
+     *
+     * @param connection the database connection
+     * @param options the options controlling how tables are exported
+     */
+    public ObjectExporter(Connection connection, String filePath, BackupOptions options){
+        this(connection, filePath, options, null);
+    }
+
+    /**
+     * Constructor to initialize ObjectExporter with a database connection, backup options and a shared table catalog.
+     *
+     * @param connection the database connection
+     * @param options the options controlling how tables are exported
+     * @param catalog the table catalog of the database, or null to load it on first use
+     */
+    public ObjectExporter(Connection connection, String filePath, BackupOptions options, TableCatalog catalog){
         this.connection = connection;
+        this.catalog = catalog;
+        this.fetchSize = options.getFetchSize();
+        this.sortedExport = options.getDiffMode() == BackupOptions.DiffMode.MERGE;
+        this.serverDiff = options.getDiffMode() == BackupOptions.DiffMode.SERVER;
+        this.watermarkExtraction = options.getExtraction() == BackupOptions.Extraction.WATERMARK;
+        this.watermarkColumns = options.getWatermarkColumns();
+        this.watermarkExporter = new WatermarkExporter(fetchSize, options.getWatermarkLagSeconds());
+        this.serverDiffExporter = new ServerDiff(fetchSize);
     }
 
     /**
      * Exports data from all tables in the public schema to JSON files.
+     * Every table is streamed through a server-side cursor, so heap usage does not depend on the table size.
      *
      * @return a map where the key is the table name and the value is the file path of the exported JSON
      * @throws SQLException if a database access error occurs
@@ -31,18 +81,16 @@ public class ObjectExporter {
     public Map<String, String> exportData() throws SQLException {
         Map<String, String> dataFiles = new HashMap<>();
         logger.info("Starting exporting Data to JSON...");
-        String query = String.format("""
-            SELECT table_name
-            FROM information_schema.tables
-            WHERE table_schema = 'public'""");
+        List<String> tableNames = getCatalog(connection).getTableNames();
 
-        try (Statement statement = connection.createStatement(); ResultSet tables = statement.executeQuery(query)) {
-            while (tables.next()) {
-                String tableName = tables.getString("table_name");
-                List<Map<String, Object>> data = fetchDataFromTable(tableName);
+        try {
+            for (String tableName : tableNames) {
+                if (metaDataController.isUnchanged(tableName)) {
+                    logger.info(String.format("Skipping unchanged table: %s", tableName));
+                    continue;
+                }
                 String newFilePath = metaDataController.getTableFilePath(tableName);
-
-                fileWriter.writeJSONFile(newFilePath, data);
+                exportTable(tableName, newFilePath);
                 dataFiles.put(tableName, newFilePath);
             }
             logger.info("Data export to JSON completed successfully.");
@@ -52,6 +100,351 @@ public class ObjectExporter {
         return dataFiles;
     }
 
+    /**
+     * Exports data from all tables in the public schema to JSON files using the worker connections of a snapshot pool.
+     * - All workers read the same exported snapshot, so the files form one consistent point in time.
+     * - The largest tables are scheduled first to keep all workers busy until the end.
+     *
+     * @param pool the pool of connections sharing one snapshot
+     * @return a map where the key is the table name and the value is the file path of the exported JSON
+     * @throws SQLException if a database access error occurs or an export task fails
+     */
+    public Map<String, String> exportData(SnapshotConnectionPool pool) throws SQLException {
+        Map<String, String> dataFiles = new ConcurrentHashMap<>();
+        logger.info(String.format("Starting exporting Data to JSON with %d parallel jobs...", pool.size()));
+        List<String> tableNames = getCatalog(pool.getLeader()).getTableNamesBySize();
+
+        ExecutorService executor = Executors.newFixedThreadPool(pool.size());
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (String tableName : tableNames) {
+                if (metaDataController.isUnchanged(tableName)) {
+                    logger.info(String.format("Skipping unchanged table: %s", tableName));
+                    continue;
+                }
+                String newFilePath = metaDataController.getTableFilePath(tableName);
+                tasks.add(executor.submit(() -> {
+                    Connection worker = pool.borrow();
+                    try {
+                        exportTable(worker, tableName, newFilePath);
+                        dataFiles.put(tableName, newFilePath);
+                    } finally {
+                        pool.release(worker);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            logger.info("Parallel data export to JSON completed successfully.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Data export was interrupted", e);
+        } catch (ExecutionException e) {
+            logger.error(String.format("Error during parallel data export: %s", e.getCause().getMessage()));
+            throw new SQLException("Parallel data export failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return dataFiles;
+    }
+
+    /**
+     * Streams all rows of a table into a JSON file.
+     * - Opens a server-side cursor by disabling autocommit and setting the fetch size,
+     *   so the driver only holds one batch of rows at a time.
+     * - Each row is written to the file as soon as it arrives.
+     *
+     * @param tableName the name of the table to export
+     * @param filePath the path of the file to write
+     * @return the number of exported rows
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while writing the file
+     */
+    public long exportTable(String tableName, String filePath) throws SQLException, IOException {
+        return exportTable(connection, tableName, filePath);
+    }
+
+    /**
+     * Streams all rows of a table into a JSON file over the given connection.
+     * If the connection already runs inside a transaction (e.g. a shared snapshot), that transaction is left untouched.
+     * For sorted exports the rows are requested in primary key order and passed through an external sort,
+     * which writes sorted runs to disk instead of holding the table in memory.
+     * In watermark extraction mode, only the changes since the previous backup are fetched if the table allows it,
+     * and the watermark for the next backup is recorded.
+     * In server diff mode, the changes against the previous version are computed by the database if the table allows it.
+     *
+     * @param connection the connection used to read the table
+     * @param tableName the name of the table to export
+     * @param filePath the path of the file to write
+     * @return the number of exported rows
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while writing the file
+     */
+    private long exportTable(Connection connection, String tableName, String filePath) throws SQLException, IOException {
+        logger.info(String.format("Streaming data from table: %s", tableName));
+        // Die Primärschlüssel bestimmen die Indizes der Zeilen, sortiert wird nur im sortierten Export
+        List<String> primaryKeys = metaDataController.getPrimaryKeys(tableName);
+        String query = String.format("SELECT * FROM \"%s\"", tableName) + (sortedExport ? orderBy(primaryKeys) : "");
+
+        boolean autoCommit = connection.getAutoCommit();
+        int isolation = connection.getTransactionIsolation();
+        if (autoCommit) {
+            // Der PostgreSQL-Treiber nutzt Cursor nur innerhalb einer Transaktion
+            connection.setAutoCommit(false);
+            if (watermarkExtraction) {
+                // Wasserzeichen und Zeilen aus demselben Snapshot lesen
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            }
+        }
+        try {
+            long rowCount;
+            try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                if (watermarkExtraction) {
+                    rowCount = exportWithWatermark(connection, statement, query, tableName, filePath, primaryKeys);
+                } else {
+                    rowCount = serverDiff ? exportServerDiff(connection, tableName, filePath) : -1;
+                    if (rowCount < 0) {
+                        rowCount = exportAll(statement, query, tableName, filePath, primaryKeys);
+                    }
+                }
+            }
+            if (autoCommit) {
+                connection.commit();
+            }
+            logger.info(String.format("Exported %d rows from table %s to %s", rowCount, tableName, filePath));
+            return rowCount;
+        } catch (SQLException | IOException | RuntimeException e) {
+            if (autoCommit) {
+                // Eine abgebrochene Transaktion darf nicht committet werden, der ursprüngliche Fehler bleibt erhalten
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackError) {
+                    e.addSuppressed(rollbackError);
+                }
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+                if (watermarkExtraction) {
+                    connection.setTransactionIsolation(isolation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Exports the changes of a table since the watermark of the previous backup and records the new watermark.
+     * Tables that do not allow it fall back to the server-side diff if enabled, otherwise to all rows.
+     * The watermark is read in the same snapshot as the rows, so every change that is not part of the read rows
+     * lies at or above it.
+     *
+     * @param connection the connection used to read the table, inside a REPEATABLE READ transaction
+     * @param statement the statement configured for cursor-based fetching
+     * @param query the query selecting the table's rows
+     * @param tableName the name of the table to export
+     * @param filePath the path of the JSON file to write
+     * @param primaryKeys the primary key columns the rows are sorted by
+     * @return the number of exported rows
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    private long exportWithWatermark(Connection connection, Statement statement, String query, String tableName, String filePath,
+                                     List<String> primaryKeys) throws SQLException, IOException {
+        String watermarkColumn = watermarkExporter.resolveColumn(getCatalog(connection), watermarkColumns, tableName);
+        String watermark = watermarkExporter.readWatermark(connection, getCatalog(connection), tableName, watermarkColumn);
+        long changedRows = exportChanges(connection, tableName, filePath, watermarkColumn);
+        if (changedRows < 0 && serverDiff) {
+            changedRows = exportServerDiff(connection, tableName, filePath);
+        }
+        if (changedRows < 0) {
+            changedRows = exportAll(statement, query, tableName, filePath, primaryKeys);
+        }
+        metaDataController.setWatermark(tableName, watermarkColumn, watermark);
+        return changedRows;
+    }
+
+    /**
+     * Streams all rows of a query into a JSON file, sorted if the export is sorted.
+     * Each row gets an index derived from its primary key, or from its content if the table has none.
+     *
+     * @param statement the statement configured for cursor-based fetching
+     * @param query the query selecting the table's rows
+     * @param tableName the name of the table to export
+     * @param filePath the path of the file to write
+     * @param primaryKeys the primary key columns identifying (and in a sorted export ordering) the rows
+     * @return the number of exported rows
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while writing the file
+     */
+    private long exportAll(Statement statement, String query, String tableName, String filePath, List<String> primaryKeys) throws SQLException, IOException {
+        if (sortedExport) {
+            return exportSorted(statement, query, tableName, filePath, primaryKeys);
+        }
+        try (ResultSet rows = statement.executeQuery(query);
+             RowSink writer = fileWriter.openTableWriter(filePath)) {
+            ResultSetMetaData metaData = rows.getMetaData();
+            RowIdentity identity = new RowIdentity(primaryKeys);
+            while (rows.next()) {
+                Map<String, Object> row = readRow(rows, metaData);
+                writer.writeEntry(identity.next(row), row);
+            }
+            return writer.getRowCount();
+        }
+    }
+
+    /**
+     * Writes only the changes of a table since the watermark of the previous backup, if the table allows it:
+     * the backup uses the forward layout, the table has a primary key and a previous version with a watermark
+     * for the same column.
+     *
+     * @param connection the connection used to read the table
+     * @param tableName the name of the table
+     * @param filePath the path of the new version's file
+     * @param watermarkColumn the watermark column of the table, or "xmin"
+     * @return the number of changed rows, or -1 if the table has to be exported in full
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    private long exportChanges(Connection connection, String tableName, String filePath, String watermarkColumn) throws SQLException, IOException {
+        String previousWatermark = metaDataController.getWatermark(tableName, watermarkColumn);
+        if (previousWatermark == null
+                || metaDataController.getLayout() != BackupOptions.Layout.FORWARD
+                || metaDataController.getIncrementalFilePath(tableName).isEmpty()
+                || getCatalog(connection).getPrimaryKeys(tableName).isEmpty()) {
+            return -1;
+        }
+        String currentPath = metaDataController.getTableCurrentFilePath(tableName);
+        String previousPath = new File(currentPath).exists() ? currentPath : metaDataController.getTableBaseFilePath(tableName);
+
+        long changedRows = watermarkExporter.exportChanges(connection, getCatalog(connection), tableName, watermarkColumn,
+                previousWatermark, previousPath, filePath, currentPath);
+        if (changedRows >= 0) {
+            metaDataController.markChangesExported(tableName);
+            metaDataController.setSortedBy(tableName, null);
+        }
+        return changedRows;
+    }
+
+    /**
+     * Writes only the changes of a table against the previous version, computed by the database, if the table allows it:
+     * the backup uses the forward layout and the table has a previous version.
+     *
+     * @param connection the connection used to read the table
+     * @param tableName the name of the table
+     * @param filePath the path of the new version's file
+     * @return the number of changed rows, or -1 if the table has to be exported in full
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    private long exportServerDiff(Connection connection, String tableName, String filePath) throws SQLException, IOException {
+        if (metaDataController.getLayout() != BackupOptions.Layout.FORWARD
+                || metaDataController.getIncrementalFilePath(tableName).isEmpty()
+                || getCatalog(connection).getColumns(tableName).isEmpty()) {
+            return -1;
+        }
+        String currentPath = metaDataController.getTableCurrentFilePath(tableName);
+        String previousPath = new File(currentPath).exists() ? currentPath : metaDataController.getTableBaseFilePath(tableName);
+
+        long changedRows = serverDiffExporter.exportChanges(connection, getCatalog(connection), tableName, previousPath, filePath, currentPath);
+        metaDataController.markChangesExported(tableName);
+        metaDataController.setSortedBy(tableName, null);
+        return changedRows;
+    }
+
+    /**
+     * Streams the rows of a query through an external sort into a JSON file.
+     * If the file is the table's current file (first backup of the table), its sort order is recorded in the metadata.
+     *
+     * @param statement the statement configured for cursor-based fetching
+     * @param query the query selecting the table's rows
+     * @param tableName the name of the table to export
+     * @param filePath the path of the file to write
+     * @param primaryKeys the primary key columns the rows are sorted by, empty to sort by content
+     * @return the number of exported rows
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while writing the file
+     */
+    private long exportSorted(Statement statement, String query, String tableName, String filePath, List<String> primaryKeys) throws SQLException, IOException {
+        long rowCount;
+        RowOrder order = new RowOrder(primaryKeys);
+        try (ResultSet rows = statement.executeQuery(query);
+             ExternalRowSorter sorter = new ExternalRowSorter(order, metaDataController.getTempDirectoryPath())) {
+            ResultSetMetaData metaData = rows.getMetaData();
+            RowIdentity identity = new RowIdentity(primaryKeys);
+            while (rows.next()) {
+                Map<String, Object> row = readRow(rows, metaData);
+                Map<String, Object> entry = new HashMap<>();
+                Map<String, Object> values = identityValues(row, primaryKeys);
+                entry.put("index", identity.next(values));
+                entry.put("object", row);
+                // Index und Sortierung aus den Werten, die der Merge-Join-Diff später aus der Datei liest
+                sorter.add(entry, order.keyOf(values));
+            }
+            rowCount = sorter.finish(filePath);
+        }
+        // Nur der erste Export einer Tabelle ist zugleich ihr aktueller Zustand
+        if (metaDataController.getIncrementalFilePath(tableName).isEmpty() && filePath.equals(metaDataController.getTableCurrentFilePath(tableName))) {
+            metaDataController.setSortedBy(tableName, primaryKeys);
+        }
+        return rowCount;
+    }
+
+    /**
+     * Returns the values a row is sorted and indexed by, as they are read back from the backup file: the primary key columns,
+     * or the whole row for a table without a primary key. The row itself is written unchanged, so decimals keep
+     * their exact value in the file.
+     *
+     * @param row the column values read from the database
+     * @param primaryKeys the primary key columns of the table
+     * @return the identifying values after they were written and read back
+     * @throws IOException if a value cannot be converted
+     */
+    private Map<String, Object> identityValues(Map<String, Object> row, List<String> primaryKeys) throws IOException {
+        if (primaryKeys.isEmpty()) {
+            return fileWriter.normalize(row);
+        }
+        Map<String, Object> key = new HashMap<>();
+        for (String primaryKey : primaryKeys) {
+            key.put(primaryKey, row.get(primaryKey));
+        }
+        return fileWriter.normalize(key);
+    }
+
+    /**
+     * Builds the ORDER BY clause for the primary key columns of a table.
+     *
+     * @param primaryKeys the primary key columns
+     * @return the ORDER BY clause, or an empty string if there are no primary key columns
+     */
+    private String orderBy(List<String> primaryKeys) {
+        if (primaryKeys.isEmpty()) {
+            return "";
+        }
+        StringJoiner columns = new StringJoiner(", ", " ORDER BY ", "");
+        for (String primaryKey : primaryKeys) {
+            columns.add("\"" + primaryKey + "\"");
+        }
+        return columns.toString();
+    }
+
+    /**
+     * Returns the table catalog, loading it with one bulk query if it was not provided.
+     *
+     * @param connection the connection used to load the catalog
+     * @return the table catalog
+     * @throws SQLException if a database access error occurs
+     */
+    private TableCatalog getCatalog(Connection connection) throws SQLException {
+        if (catalog == null) {
+            catalog = TableCatalog.load(connection);
+        }
+        return catalog;
+    }
+
     /**
      * Fetches all data from a specified table.
      *
@@ -67,29 +460,41 @@ public class ObjectExporter {
 
         try (Statement statement = connection.createStatement(); ResultSet tables = statement.executeQuery(query)) {
             ResultSetMetaData metaData = tables.getMetaData();
-            int columnCount = metaData.getColumnCount();
 
             while (tables.next()) {
-                Map<String, Object> row = new HashMap<>();
-                for (int i = 1; i <= columnCount; i++) {
-                    String columnName = metaData.getColumnName(i);
-                    Object value = tables.getObject(i);
-
-
-                    if (value instanceof java.sql.Date) {
-                        java.sql.Date sqlDate = (java.sql.Date) value;
-                        row.put(columnName, sqlDate.toString());
-                    } else if (value instanceof java.sql.Timestamp) {
-                        java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
-                        row.put(columnName, timestamp.toLocalDateTime().toString());
-                    } else {
-                        row.put(columnName, value); // Keep other values as-is
-                    }
-                }
-                data.add(row);
+                data.add(readRow(tables, metaData));
             }
             logger.info(String.format("Data fetched successfully from table: %s", tableName));
         }
         return data;
     }
+
+    /**
+     * Converts the current row of a result set into a map of column names to JSON-compatible values.
+     *
+     * @param resultSet the result set positioned on a row
+     * @param metaData the metadata of the result set
+     * @return a map representing the row
+     * @throws SQLException if a database access error occurs
+     */
+    static Map<String, Object> readRow(ResultSet resultSet, ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 1; i <= columnCount; i++) {
+            String columnName = metaData.getColumnName(i);
+            Object value = resultSet.getObject(i);
+
+
+            if (value instanceof java.sql.Date) {
+                java.sql.Date sqlDate = (java.sql.Date) value;
+                row.put(columnName, sqlDate.toString());
+            } else if (value instanceof java.sql.Timestamp) {
+                java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+                row.put(columnName, timestamp.toLocalDateTime().toString());
+            } else {
+                row.put(columnName, value); // Keep other values as-is
+            }
+        }
+        return row;
+    }
 }
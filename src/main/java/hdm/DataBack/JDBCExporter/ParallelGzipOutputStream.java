@@ -0,0 +1,206 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/*
+
+A gzip output stream that compresses independent blocks on several threads, like pigz.
+The written bytes are cut into blocks of a fixed size, every block is compressed into a complete gzip member
+by a thread of a shared pool, and the members are written in order. A file made of concatenated gzip members
+is a valid gzip file, so it can be read with GZIPInputStream or any gzip tool.
+At most two blocks per thread are waiting for compression, so the memory use does not depend on the file size.
+Compressing blocks independently costs a little compression ratio, because a block cannot refer to the previous one.
+
+ */
+
+public class ParallelGzipOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private static ExecutorService executor;
+    private static int executorThreads;
+
+    private final OutputStream out;
+    private final int level;
+    private final int threads;
+    private final int blockSize;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Constructor for ParallelGzipOutputStream with the default block size.
+     *
+     * @param out the stream the compressed data is written to
+     * @param level the deflate level from 1 (fastest) to 9 (smallest)
+     * @param threads the number of threads compressing blocks, 1 to compress on the writing thread
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int threads) {
+        this(out, level, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor for ParallelGzipOutputStream.
+     *
+     * @param out the stream the compressed data is written to
+     * @param level the deflate level from 1 (fastest) to 9 (smallest)
+     * @param threads the number of threads compressing blocks, 1 to compress on the writing thread
+     * @param blockSize the number of uncompressed bytes per gzip member
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int threads, int blockSize) {
+        this.out = out;
+        this.level = level;
+        this.threads = Math.max(1, threads);
+        this.blockSize = Math.max(1, blockSize);
+        this.block = new byte[this.blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[count++] = (byte) b;
+        if (count == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int chunk = Math.min(length, blockSize - count);
+            System.arraycopy(bytes, offset, block, count, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+            if (count == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Flushes the blocks that are already compressed. A partly filled block is only compressed when it is full
+     * or the stream is closed, so flushing does not produce small gzip members.
+     *
+     * @throws IOException if an error occurs while writing
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the last block, writes all outstanding members and closes the underlying stream.
+     *
+     * @throws IOException if an error occurs while compressing or writing
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (count > 0) {
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Hands the current block to the compression threads and waits for the oldest block if too many are outstanding.
+     *
+     * @throws IOException if an error occurs while compressing or writing
+     */
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int length = count;
+        block = new byte[blockSize];
+        count = 0;
+        if (threads == 1) {
+            out.write(compress(data, length, level));
+            return;
+        }
+        pending.addLast(executor(threads).submit(() -> compress(data, length, level)));
+        while (pending.size() > 2 * threads) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Writes the oldest compressed block, waiting for it if necessary.
+     *
+     * @throws IOException if the compression failed or an error occurs while writing
+     */
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Compression of a block failed", e.getCause());
+        }
+    }
+
+    /**
+     * Compresses one block into a complete gzip member.
+     *
+     * @param data the block
+     * @param length the number of valid bytes in the block
+     * @param level the deflate level
+     * @return the gzip member
+     * @throws IOException if the block cannot be compressed
+     */
+    static byte[] compress(byte[] data, int length, int level) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, 64 * 1024) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(data, 0, length);
+        }
+        return member.toByteArray();
+    }
+
+    /**
+     * Returns the shared pool of compression threads, replacing it if a different number of threads is requested.
+     *
+     * @param threads the number of threads
+     * @return the pool
+     */
+    private static synchronized ExecutorService executor(int threads) {
+        if (executor == null || executorThreads != threads) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "gzip-block");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executorThreads = threads;
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,136 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+
+A row source that reads ahead on a background thread.
+The reader thread parses entries from the wrapped source into chunks and puts them into a bounded queue, while the
+consumer (e.g. the COPY loader) takes the chunks from the queue. Parsing the next chunk therefore overlaps with
+loading the current one, and at most (capacity + 2) chunks are held in memory, however large the table is.
+An error of the reader thread is rethrown to the consumer.
+
+ */
+
+public class PipelinedRowSource implements RowSource {
+    public static final int DEFAULT_CHUNK_ROWS = 1000;
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private static final List<Map<String, Object>> END = new ArrayList<>();
+
+    private final RowSource source;
+    private final int chunkRows;
+    private final BlockingQueue<List<Map<String, Object>>> queue;
+    private final Thread reader;
+    private volatile Exception failure;
+    private Iterator<Map<String, Object>> chunk = List.<Map<String, Object>>of().iterator();
+    private boolean exhausted;
+
+    /**
+     * Constructor for PipelinedRowSource with the default chunk size and queue capacity.
+     *
+     * @param source the source that is read ahead
+     */
+    public PipelinedRowSource(RowSource source) {
+        this(source, DEFAULT_CHUNK_ROWS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for PipelinedRowSource that starts the reader thread.
+     *
+     * @param source the source that is read ahead
+     * @param chunkRows the number of entries per chunk
+     * @param capacity the maximum number of parsed chunks waiting in the queue
+     */
+    public PipelinedRowSource(RowSource source, int chunkRows, int capacity) {
+        this.source = source;
+        this.chunkRows = Math.max(1, chunkRows);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.reader = new Thread(this::readAhead, "row-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Reads chunks from the source until it is exhausted or the consumer closes the pipeline.
+     */
+    private void readAhead() {
+        try {
+            List<Map<String, Object>> rows = new ArrayList<>(chunkRows);
+            Map<String, Object> entry;
+            while ((entry = source.next()) != null) {
+                rows.add(entry);
+                if (rows.size() == chunkRows) {
+                    queue.put(rows);
+                    rows = new ArrayList<>(chunkRows);
+                }
+            }
+            if (!rows.isEmpty()) {
+                queue.put(rows);
+            }
+        } catch (InterruptedException e) {
+            // Pipeline wurde vom Verbraucher geschlossen
+            return;
+        } catch (Exception e) {
+            failure = e;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Returns the next entry, waiting for the reader thread if no parsed chunk is available yet.
+     *
+     * @return the next entry holding an "index" and an "object", or null if the source is exhausted
+     * @throws IOException if the reader thread failed to read the source
+     */
+    @Override
+    public Map<String, Object> next() throws IOException {
+        while (!chunk.hasNext()) {
+            if (exhausted) {
+                return null;
+            }
+            List<Map<String, Object>> rows;
+            try {
+                rows = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for rows", e);
+            }
+            if (rows == END) {
+                exhausted = true;
+                if (failure != null) {
+                    throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+                }
+                return null;
+            }
+            chunk = rows.iterator();
+        }
+        return chunk.next();
+    }
+
+    /**
+     * Stops the reader thread and closes the wrapped source.
+     *
+     * @throws IOException if an error occurs while closing the source
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+        source.close();
+    }
+}
@@ -0,0 +1,38 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/*
+
+A target that table entries (an index and the column values of a row) are written to one at a time,
+either as JSON rows or as columnar segments.
+
+ */
+
+public interface RowSink extends AutoCloseable {
+
+    /**
+     * Writes a single row with its index.
+     *
+     * @param index the index of the entry
+     * @param row the column values of the row
+     * @throws IOException if an error occurs while writing the row
+     */
+    void writeEntry(String index, Map<String, Object> row) throws IOException;
+
+    /**
+     * Returns the number of rows written so far.
+     *
+     * @return the number of written rows
+     */
+    long getRowCount();
+
+    /**
+     * Finishes the file and closes it.
+     *
+     * @throws IOException if an error occurs while closing the file
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,52 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+A source of table entries (maps holding an "index" and an "object") that are consumed one at a time,
+either streamed from a backup file or taken from a reconstructed version in memory.
+
+ */
+
+public interface RowSource extends AutoCloseable {
+
+    /**
+     * Returns the next entry.
+     *
+     * @return the next entry holding an "index" and an "object", or null if the source is exhausted
+     * @throws IOException if an error occurs while reading the entry
+     */
+    Map<String, Object> next() throws IOException;
+
+    /**
+     * Releases the resources of the source.
+     *
+     * @throws IOException if an error occurs while closing the source
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Creates a source over entries held in memory.
+     *
+     * @param entries the entries to return
+     * @return a source returning the entries in list order
+     */
+    static RowSource of(List<Map<String, Object>> entries) {
+        Iterator<Map<String, Object>> iterator = entries.iterator();
+        return new RowSource() {
+            @Override
+            public Map<String, Object> next() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -2,33 +2,107 @@ package hdm.DataBack.JDBCExporter;
 
 import hdm.DataBack.Logger.Logger;
 
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static hdm.DataBack.JDBCExporter.DataTypeMapper.mapDataType;
 
 public class SchemaExporter {
+    // Fremdschlüssel, UNIQUE- und CHECK-Constraints aller Tabellen in einer Abfrage
+    private static final String CONSTRAINTS_QUERY = """
+            SELECT cl.relname AS table_name,
+                   con.conname AS constraint_name,
+                   con.contype,
+                   ARRAY(SELECT a.attname FROM unnest(con.conkey) WITH ORDINALITY AS k(attnum, ord)
+                         JOIN pg_attribute a ON a.attrelid = con.conrelid AND a.attnum = k.attnum
+                         ORDER BY k.ord) AS columns,
+                   ref.relname AS referenced_table,
+                   ARRAY(SELECT a.attname FROM unnest(con.confkey) WITH ORDINALITY AS k(attnum, ord)
+                         JOIN pg_attribute a ON a.attrelid = con.confrelid AND a.attnum = k.attnum
+                         ORDER BY k.ord) AS referenced_columns,
+                   pg_get_constraintdef(con.oid) AS definition
+            FROM pg_constraint con
+            JOIN pg_class cl ON cl.oid = con.conrelid
+            JOIN pg_namespace n ON n.oid = cl.relnamespace
+            LEFT JOIN pg_class ref ON ref.oid = con.confrelid
+            WHERE n.nspname = 'public' AND con.contype IN ('f', 'u', 'c')
+            ORDER BY cl.relname, position(con.contype IN 'fuc'), con.conname""";
+
+    // Prüfsumme über Spalten und Constraints aller Tabellen, ohne die Skripte zu erzeugen
+    private static final String FINGERPRINT_QUERY = """
+            SELECT md5(coalesce(string_agg(entry, E'\\n' ORDER BY entry), '')) AS fingerprint
+            FROM (
+                SELECT format('column|%s|%s|%s|%s|%s|%s|%s', c.relname, a.attnum, a.attname,
+                              format_type(a.atttypid, a.atttypmod), a.attnotnull, a.attidentity,
+                              pg_get_expr(d.adbin, d.adrelid)) AS entry
+                FROM pg_class c
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped
+                LEFT JOIN pg_attrdef d ON d.adrelid = c.oid AND d.adnum = a.attnum
+                WHERE n.nspname = 'public' AND c.relkind IN ('r', 'p')
+                UNION ALL
+                SELECT format('constraint|%s|%s|%s', cl.relname, con.conname, pg_get_constraintdef(con.oid))
+                FROM pg_constraint con
+                JOIN pg_class cl ON cl.oid = con.conrelid
+                JOIN pg_namespace n ON n.oid = cl.relnamespace
+                WHERE n.nspname = 'public'
+            ) entries""";
+
+    // Erhöhen, wenn sich die Erzeugung der Skripte ändert, damit alte Skripte nicht wiederverwendet werden
+    private static final int SCRIPT_FORMAT = 1;
+
     Logger logger = new Logger();
 
     private final Connection connection;
     private final StringBuilder tableScript;
     private final StringBuilder constraintsScript;
+    private TableCatalog catalog;
 
     /**
      * Constructor for SchemaExporter that initializes a database connection.
+     * The table catalog is loaded on first use.
      *
      * @param connection the database connection
      */
     public SchemaExporter(Connection connection) {
+        this(connection, null);
+    }
+
+    /**
+     * Constructor for SchemaExporter that shares an already loaded table catalog.
+     *
+     * @param connection the database connection
+     * @param catalog the table catalog of the database, or null to load it on first use
+     */
+    public SchemaExporter(Connection connection, TableCatalog catalog) {
         this.connection = connection;
+        this.catalog = catalog;
         this.tableScript = new StringBuilder();
         this.constraintsScript = new StringBuilder();
     }
 
+    /**
+     * Computes a fingerprint of the schema from the catalog: all columns with their types, defaults, NOT NULL and
+     * identity flags, and all constraints of the public schema. The scripts are not generated for this, so the
+     * fingerprint can be compared with the previous backup before deciding whether the scripts must be written.
+     *
+     * @return the fingerprint of the schema
+     * @throws SQLException if a database access error occurs
+     */
+    public String getSchemaFingerprint() throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(FINGERPRINT_QUERY)) {
+            result.next();
+            return SCRIPT_FORMAT + ":" + result.getString("fingerprint");
+        }
+    }
+
     /**
      * Generates SQL scripts for creating tables in the database.
      *
@@ -64,38 +138,40 @@ public class SchemaExporter {
             logger.info(String.format("Generating PrimaryKeys for table: %s", tableName));
             getPrimaryKeys(tableName);
         }
+        Map<String, StringBuilder> constraintStatements = getConstraintStatements();
         for(String tableName: tableNames) {
-            logger.info(String.format("Generating constraints for table: %s", tableName));
-            getForeignKeys(tableName);
-            getUniqueConstraints(tableName);
-            getCheckConstraints(tableName);
+            StringBuilder statements = constraintStatements.get(tableName);
+            if (statements != null) {
+                constraintsScript.append(statements);
+            }
         }
         logger.info("Constraints script generation completed successfully.");
         return constraintsScript.toString();
     }
 
     /**
-     * Retrieves the list of table names from the database.
+     * Retrieves the list of table names from the table catalog.
      *
      * @return a list of table names
-     * @throws SQLException if a database access error occurs
+     * @throws SQLException if the catalog cannot be loaded
      */
     private List<String> getTableNames() throws SQLException {
-        logger.info("Fetching table names from the database...");
-        String query = String.format("""
-            SELECT table_name
-            FROM information_schema.tables
-            WHERE table_schema = 'public'""");
-
-        List<String> tableNames = new ArrayList<>();
+        return getCatalog().getTableNames();
+    }
 
-        try(Statement statement = connection.createStatement(); ResultSet tables = statement.executeQuery(query)){
-            while (tables.next()){
-                tableNames.add(tables.getString("table_name"));
-            }
+    /**
+     * Returns the table catalog, loading it with one bulk query if it was not provided.
+     *
+     * @return the table catalog
+     * @throws SQLException if a database access error occurs
+     */
+    private TableCatalog getCatalog() throws SQLException {
+        if (catalog == null) {
+            logger.info("Fetching table catalog from the database...");
+            catalog = TableCatalog.load(connection);
+            logger.info("Successfully fetched table catalog.");
         }
-        logger.info("Successfully fetched table names.");
-        return tableNames;
+        return catalog;
     }
 
     /**
@@ -103,40 +179,27 @@ public class SchemaExporter {
      *
      * @param tableName the name of the table
      * @return a list of column definitions in SQL format
-     * @throws SQLException if a database access error occurs
+     * @throws SQLException if the catalog cannot be loaded
      */
     private List<String> getColumnDefinitions(String tableName) throws SQLException {
-        logger.info(String.format("Fetching column definitions for table: %s", tableName));
-        String query = String.format("""
-        SELECT column_name, data_type, is_nullable, column_default
-        FROM information_schema.columns
-        WHERE table_name = '%s'""", tableName);
-
         List<String> columnDefinitions = new ArrayList<>();
 
-        try(Statement statement = connection.createStatement(); ResultSet columns = statement.executeQuery(query)){
-            while (columns.next()){
-                String columnName = columns.getString("column_name");
-                String dataType = columns.getString("data_type");
-                String columnDefault = columns.getString("column_default");
+        for (TableCatalog.Column column : getCatalog().getColumns(tableName)) {
+            String columnName = column.getName();
 
-                boolean isSerial = columnDefault != null && columnDefault.startsWith("nextval(");
-
-                String columnDefinition;
-                if (isSerial) {
-                    columnDefinition = String.format("\"%s\" SERIAL", columnName);
-                } else {
-                    String defaultValue = (columnDefault != null) ? String.format(" DEFAULT %s", columnDefault) : "";
-                    columnDefinition = String.format("\"%s\" %s%s", columnName, mapDataType(dataType), defaultValue);
-                }
+            String columnDefinition;
+            if (column.isSerial()) {
+                columnDefinition = String.format("\"%s\" SERIAL", columnName);
+            } else {
+                String defaultValue = (column.getDefaultValue() != null) ? String.format(" DEFAULT %s", column.getDefaultValue()) : "";
+                columnDefinition = String.format("\"%s\" %s%s", columnName, mapDataType(column.getDataType()), defaultValue);
+            }
 
-                columnDefinitions.add(columnDefinition);
+            columnDefinitions.add(columnDefinition);
 
-                if(columns.getString("is_nullable").equals("NO")) {
-                    constraintsScript.append(String.format("ALTER TABLE \"%s\" ALTER COLUMN \"%s\" SET NOT NULL;\n", tableName, columnName));
-                }
+            if (!column.isNullable()) {
+                constraintsScript.append(String.format("ALTER TABLE \"%s\" ALTER COLUMN \"%s\" SET NOT NULL;\n", tableName, columnName));
             }
-            logger.info(String.format("Successfully fetched column definitions for table: %s", tableName));
         }
 
         return columnDefinitions;
@@ -149,106 +212,86 @@ public class SchemaExporter {
      * @throws SQLException if a database access error occurs
      */
     private void getPrimaryKeys(String tableName) throws SQLException {
-        String query = String.format("""
-        SELECT kcu.column_name
-        FROM information_schema.key_column_usage kcu
-        JOIN information_schema.table_constraints tc ON kcu.constraint_name = tc.constraint_name
-        WHERE kcu.table_name = '%s' AND tc.constraint_type = 'PRIMARY KEY'
-        ORDER BY kcu.ordinal_position""", tableName);
-
-        logger.info(String.format("Fetching primary keys for table: %s", tableName));
-
-        try (Statement statement = connection.createStatement();
-             ResultSet primaryKeys = statement.executeQuery(query)) {
-
-            StringBuilder primaryKeyColumns = new StringBuilder();
-
-            while (primaryKeys.next()) {
-                if (primaryKeyColumns.length() > 0) {
-                    primaryKeyColumns.append(", ");
-                }
-                primaryKeyColumns.append("\"" + primaryKeys.getString("column_name") + "\"");
-            }
+        List<String> primaryKeys = getPrimaryKeyColumns(tableName);
 
+        StringBuilder primaryKeyColumns = new StringBuilder();
+        for (String primaryKey : primaryKeys) {
             if (primaryKeyColumns.length() > 0) {
-                constraintsScript.append(String.format("ALTER TABLE \"%s\" ADD PRIMARY KEY (%s);\n",
-                        tableName, primaryKeyColumns.toString()));
+                primaryKeyColumns.append(", ");
             }
+            primaryKeyColumns.append("\"" + primaryKey + "\"");
+        }
+
+        if (primaryKeyColumns.length() > 0) {
+            constraintsScript.append(String.format("ALTER TABLE \"%s\" ADD PRIMARY KEY (%s);\n",
+                    tableName, primaryKeyColumns.toString()));
         }
     }
 
     /**
-     * Retrieves foreign key constraints for a given table and appends them to the constraints script.
+     * Retrieves the primary key columns of a given table in key order.
      *
      * @param tableName the name of the table
+     * @return the names of the primary key columns, empty if the table has no primary key
      * @throws SQLException if a database access error occurs
      */
-    private void getForeignKeys(String tableName) throws SQLException {
-        String query = String.format("""
-            SELECT kcu.constraint_name, kcu.column_name, ccu.table_name AS referenced_table, ccu.column_name AS referenced_column 
-            FROM information_schema.key_column_usage kcu 
-            JOIN information_schema.table_constraints tc ON kcu.constraint_name = tc.constraint_name 
-            JOIN information_schema.constraint_column_usage ccu ON ccu.constraint_name = tc.constraint_name 
-            WHERE kcu.table_name = '%s' AND tc.constraint_type = 'FOREIGN KEY'""", tableName);
-
-        logger.info(String.format("Fetching foreign keys for table: %s", tableName));
-        try (Statement statement = connection.createStatement(); ResultSet foreignKeys = statement.executeQuery(query)) {
-            while (foreignKeys.next()) {
-                constraintsScript.append(String.format("ALTER TABLE \"%s\" ADD CONSTRAINT \"%s\" FOREIGN KEY (\"%s\") REFERENCES \"%s\"(\"%s\");\n",
-                        tableName,
-                        foreignKeys.getString("constraint_name"),
-                        foreignKeys.getString("column_name"),
-                        foreignKeys.getString("referenced_table"),
-                        foreignKeys.getString("referenced_column")));
-            }
-        }
+    public List<String> getPrimaryKeyColumns(String tableName) throws SQLException {
+        return getCatalog().getPrimaryKeys(tableName);
     }
 
     /**
-     * Retrieves unique constraints for a given table and appends them to the constraints script.
+     * Retrieves the foreign key, unique and check constraints of all tables with one query against pg_catalog.
+     * Constraints spanning several columns are kept together in one statement with the columns in key order.
      *
-     * @param tableName the name of the table
+     * @return a map where the key is the table name and the value holds the ALTER TABLE statements of the table
      * @throws SQLException if a database access error occurs
      */
-    private void getUniqueConstraints(String tableName) throws SQLException {
-        String query = String.format("""
-            SELECT tc.constraint_name, kcu.column_name
-            FROM information_schema.table_constraints tc
-            JOIN information_schema.key_column_usage kcu ON tc.constraint_name = kcu.constraint_name
-            WHERE tc.table_name = '%s' AND tc.constraint_type = 'UNIQUE'""", tableName);
-
-        logger.info(String.format("Fetching unique constraints for table: %s", tableName));
-        try (Statement statement = connection.createStatement(); ResultSet uniqueConstraints = statement.executeQuery(query)) {
-            while (uniqueConstraints.next()) {
-                constraintsScript.append(String.format("ALTER TABLE \"%s\" ADD CONSTRAINT \"%s\" UNIQUE (\"%s\");\n",
-                        tableName,
-                        uniqueConstraints.getString("constraint_name"),
-                        uniqueConstraints.getString("column_name")));
+    private Map<String, StringBuilder> getConstraintStatements() throws SQLException {
+        Map<String, StringBuilder> statements = new HashMap<>();
+
+        logger.info("Fetching foreign key, unique and check constraints of all tables...");
+        try (Statement statement = connection.createStatement(); ResultSet constraints = statement.executeQuery(CONSTRAINTS_QUERY)) {
+            while (constraints.next()) {
+                String tableName = constraints.getString("table_name");
+                String constraintName = constraints.getString("constraint_name");
+                String constraint = switch (constraints.getString("contype")) {
+                    case "f" -> String.format("ALTER TABLE \"%s\" ADD CONSTRAINT \"%s\" FOREIGN KEY (%s) REFERENCES \"%s\"(%s);\n",
+                            tableName,
+                            constraintName,
+                            quoteColumns(constraints.getArray("columns")),
+                            constraints.getString("referenced_table"),
+                            quoteColumns(constraints.getArray("referenced_columns")));
+                    case "u" -> String.format("ALTER TABLE \"%s\" ADD CONSTRAINT \"%s\" UNIQUE (%s);\n",
+                            tableName,
+                            constraintName,
+                            quoteColumns(constraints.getArray("columns")));
+                    default -> String.format("ALTER TABLE \"%s\" ADD CONSTRAINT \"%s\" %s;\n",
+                            tableName,
+                            constraintName,
+                            constraints.getString("definition"));
+                };
+                statements.computeIfAbsent(tableName, name -> new StringBuilder()).append(constraint);
             }
         }
+        logger.info("Successfully fetched constraints.");
+        return statements;
     }
 
     /**
-     * Retrieves check constraints for a given table and appends them to the constraints script.
+     * Joins the column names of a constraint into a quoted, comma separated list.
      *
-     * @param tableName the name of the table
-     * @throws SQLException if a database access error occurs
+     * @param columns the SQL array of column names
+     * @return the quoted column list, e.g. "a", "b"
+     * @throws SQLException if the array cannot be read
      */
-    private void getCheckConstraints(String tableName) throws SQLException {
-        String checkQuery = String.format("""
-            SELECT cc.constraint_name, cc.check_clause
-            FROM information_schema.check_constraints cc
-            JOIN information_schema.constraint_table_usage ctu ON cc.constraint_name = ctu.constraint_name
-            WHERE ctu.table_name = '%s'""", tableName);
-
-        logger.info(String.format("Fetching check constraints for table: %s", tableName));
-        try (Statement statement = connection.createStatement(); ResultSet checkConstraints = statement.executeQuery(checkQuery)) {
-            while (checkConstraints.next()) {
-                constraintsScript.append(String.format("ALTER TABLE \"%s\" ADD CONSTRAINT \"%s\" CHECK (%s);\n",
-                        tableName,
-                        checkConstraints.getString("constraint_name"),
-                        checkConstraints.getString("check_clause")));
+    private static String quoteColumns(Array columns) throws SQLException {
+        StringBuilder columnList = new StringBuilder();
+        for (Object column : (Object[]) columns.getArray()) {
+            if (columnList.length() > 0) {
+                columnList.append(", ");
             }
+            columnList.append('"').append(column).append('"');
         }
+        return columnList.toString();
     }
 }
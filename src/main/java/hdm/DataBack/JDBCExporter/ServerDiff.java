@@ -0,0 +1,270 @@
+package hdm.DataBack.JDBCExporter;
+
+import hdm.DataBack.JDBCExporter.Backup.CopyLoader;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.RowIdentity;
+import hdm.DataBack.Logger.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/*
+
+Computes the changes of a table in the database instead of the JVM.
+The previous state is loaded with COPY into a temporary table of the same structure, with the index of every row
+in an extra column, and one query returns only the differing rows:
+- Tables with a primary key are joined with the previous state on the key (full outer join). A row without a
+  previous partner was added, a previous row without a partner was deleted, and a pair whose row values differ
+  was updated.
+- Tables without a primary key are compared as multisets: every row is keyed by its text form and numbered among
+  its duplicates, and the two numbered sets are joined on that key, which is what EXCEPT ALL computes in both
+  directions, but keeps the index of the deleted rows.
+Rows are compared by their text form, so columns without an equality operator (e.g. json) can be compared as well.
+The new current file is written from the previous state and the changes, so no full export of the table is written.
+Added rows get the same index a full export would give them (see RowIdentity); an added copy of a row without a
+primary key is renumbered if a previous copy already holds its index.
+
+ */
+
+public class ServerDiff {
+    private static final String PREVIOUS_TABLE = "databack_previous";
+    private static final String INDEX_COLUMN = "databack_index";
+    private static final String KEY_COLUMN = "databack_key";
+    private static final String NUMBER_COLUMN = "databack_number";
+
+    private final Logger logger = new Logger();
+    private final FileReader fileReader = new FileReader();
+    private final FileWriter fileWriter = new FileWriter();
+    private final int fetchSize;
+
+    /**
+     * Constructor for ServerDiff.
+     *
+     * @param fetchSize the number of changed rows fetched per round trip
+     */
+    public ServerDiff(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Computes the changes of a table against its previous state in the database,
+     * writes them into the new version's file and updates the current file.
+     *
+     * @param connection the connection the table is read with; the temporary table lives in its session
+     * @param catalog the table catalog of the database
+     * @param tableName the name of the table
+     * @param previousPath the file holding the previous state of the table with its indexes
+     * @param changesPath the file the changes are written to
+     * @param currentPath the current file of the table
+     * @return the number of changed rows
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    public long exportChanges(Connection connection, TableCatalog catalog, String tableName,
+                              String previousPath, String changesPath, String currentPath) throws SQLException, IOException {
+        List<String> columns = new ArrayList<>();
+        for (TableCatalog.Column column : catalog.getColumns(tableName)) {
+            columns.add(column.getName());
+        }
+        List<String> primaryKeys = catalog.getPrimaryKeys(tableName);
+
+        Set<String> deleted = new LinkedHashSet<>();
+        Map<String, Map<String, Object>> updated = new LinkedHashMap<>();
+        List<Map<String, Object>> added = new ArrayList<>();
+        RowIdentity identity = new RowIdentity(primaryKeys);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + PREVIOUS_TABLE);
+            statement.execute(String.format("CREATE TEMP TABLE %s (LIKE %s)", PREVIOUS_TABLE, quote(tableName)));
+            statement.execute(String.format("ALTER TABLE %s ADD COLUMN %s text", PREVIOUS_TABLE, INDEX_COLUMN));
+            long previousRows;
+            // Dezimalzahlen exakt laden, damit die Textform mit der Tabelle übereinstimmt
+            try (RowSource previous = withIndexColumn(fileReader.openExactRowReader(previousPath), new HashSet<>(columns))) {
+                previousRows = new CopyLoader(connection).load(PREVIOUS_TABLE, Set.of(), previous);
+            }
+            // Temporäre Tabellen werden nicht automatisch analysiert
+            statement.execute("ANALYZE " + PREVIOUS_TABLE);
+            logger.info(String.format("Loaded %d previous rows of table %s for the server-side diff", previousRows, tableName));
+
+            try {
+                statement.setFetchSize(fetchSize);
+                String query = primaryKeys.isEmpty() ? multisetQuery(tableName, columns) : keyedQuery(tableName, columns, primaryKeys);
+                try (ResultSet rows = statement.executeQuery(query)) {
+                    ResultSetMetaData metaData = rows.getMetaData();
+                    while (rows.next()) {
+                        Map<String, Object> object = ObjectExporter.readRow(rows, metaData);
+                        String index = (String) object.remove(INDEX_COLUMN);
+                        object.remove(KEY_COLUMN);
+                        object.remove(NUMBER_COLUMN);
+                        boolean missing = primaryKeys.isEmpty() ? rows.getString(KEY_COLUMN) == null : object.get(primaryKeys.get(0)) == null;
+                        if (index == null) {
+                            added.add(entry(identity.next(object), object));
+                        } else if (missing) {
+                            deleted.add(index);
+                        } else {
+                            updated.put(index, entry(index, object));
+                        }
+                    }
+                }
+            } finally {
+                statement.execute("DROP TABLE IF EXISTS " + PREVIOUS_TABLE);
+            }
+        }
+
+        if (primaryKeys.isEmpty() && !added.isEmpty()) {
+            renumberCopies(previousPath, added);
+        }
+
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put("deleted", new ArrayList<>(deleted));
+        changes.put("updated", new ArrayList<>(updated.values()));
+        changes.put("added", added);
+        fileWriter.writeJSONFile(changesPath, changes);
+        KeyedChangeSet.writeCurrent(previousPath, currentPath, deleted, updated, added);
+
+        logger.info(String.format("Server-side diff of table %s: %d added, %d updated, %d deleted",
+                tableName, added.size(), updated.size(), deleted.size()));
+        return added.size() + updated.size() + deleted.size();
+    }
+
+    /**
+     * Gives every added row whose index is held by a previous copy of the same content the next free index.
+     * Only the previous indexes with the fingerprint of an added row are collected.
+     *
+     * @param previousPath the file holding the previous state of the table with its indexes
+     * @param added the added entries, updated in place
+     * @throws IOException if an error occurs while reading the previous state
+     */
+    void renumberCopies(String previousPath, List<Map<String, Object>> added) throws IOException {
+        Set<String> bases = new HashSet<>();
+        for (Map<String, Object> entry : added) {
+            bases.add(RowIdentity.baseOf((String) entry.get("index")));
+        }
+        Set<String> taken = new HashSet<>();
+        try (RowSource previous = fileReader.openRowReader(previousPath)) {
+            Map<String, Object> entry;
+            while ((entry = previous.next()) != null) {
+                String index = String.valueOf(entry.get("index"));
+                if (bases.contains(RowIdentity.baseOf(index))) {
+                    taken.add(index);
+                }
+            }
+        }
+        for (Map<String, Object> entry : added) {
+            entry.put("index", RowIdentity.unique((String) entry.get("index"), taken));
+        }
+    }
+
+    /**
+     * Builds the query returning the changed rows of a table with a primary key.
+     * Every result row holds the index of the previous row (null if added) and the current row (all null if deleted).
+     *
+     * @param tableName the name of the table
+     * @param columns the columns of the table
+     * @param primaryKeys the primary key columns
+     * @return the query
+     */
+    String keyedQuery(String tableName, List<String> columns, List<String> primaryKeys) {
+        StringJoiner joinCondition = new StringJoiner(" AND ");
+        for (String primaryKey : primaryKeys) {
+            joinCondition.add(String.format("t.%s = p.%s", quote(primaryKey), quote(primaryKey)));
+        }
+        String firstKey = quote(primaryKeys.get(0));
+        return String.format("""
+                SELECT p.%s, t.* FROM %s t FULL JOIN %s p ON %s
+                WHERE p.%s IS NULL OR t.%s IS NULL OR %s IS DISTINCT FROM %s""",
+                INDEX_COLUMN, quote(tableName), PREVIOUS_TABLE, joinCondition,
+                INDEX_COLUMN, firstKey, rowText("t", columns), rowText("p", columns));
+    }
+
+    /**
+     * Builds the query returning the added and deleted rows of a table without a primary key.
+     * Duplicates are numbered, so a row that exists twice as often as before is reported as added once.
+     *
+     * @param tableName the name of the table
+     * @param columns the columns of the table
+     * @return the query
+     */
+    String multisetQuery(String tableName, List<String> columns) {
+        String previousText = rowText(PREVIOUS_TABLE, columns);
+        String currentText = rowText("t", columns);
+        return String.format("""
+                WITH p AS (SELECT %s, %s AS %s, row_number() OVER (PARTITION BY %s) AS %s FROM %s),
+                     c AS (SELECT t.*, %s AS %s, row_number() OVER (PARTITION BY %s) AS %s FROM %s t)
+                SELECT p.%s, c.* FROM c FULL JOIN p ON c.%s = p.%s AND c.%s = p.%s
+                WHERE c.%s IS NULL OR p.%s IS NULL""",
+                INDEX_COLUMN, previousText, KEY_COLUMN, previousText, NUMBER_COLUMN, PREVIOUS_TABLE,
+                currentText, KEY_COLUMN, currentText, NUMBER_COLUMN, quote(tableName),
+                INDEX_COLUMN, KEY_COLUMN, KEY_COLUMN, NUMBER_COLUMN, NUMBER_COLUMN,
+                KEY_COLUMN, KEY_COLUMN);
+    }
+
+    /**
+     * Builds the expression for the text form of a row, e.g. ROW(t."id", t."name")::text.
+     *
+     * @param alias the alias of the table
+     * @param columns the columns of the row
+     * @return the expression
+     */
+    private static String rowText(String alias, List<String> columns) {
+        StringJoiner row = new StringJoiner(", ", "ROW(", ")::text");
+        for (String column : columns) {
+            row.add(alias + "." + quote(column));
+        }
+        return row.toString();
+    }
+
+    /**
+     * Passes the entries of the previous state to COPY with their index as an extra column.
+     * Columns that no longer exist in the table are left out.
+     *
+     * @param source the entries of the previous state
+     * @param columns the columns of the table
+     * @return the source of the rows to load
+     */
+    private static RowSource withIndexColumn(RowSource source, Set<String> columns) {
+        return new RowSource() {
+            @Override
+            public Map<String, Object> next() throws IOException {
+                Map<String, Object> entry = source.next();
+                if (entry == null) {
+                    return null;
+                }
+                Map<String, Object> object = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> column : ((Map<String, Object>) entry.get("object")).entrySet()) {
+                    if (columns.contains(column.getKey())) {
+                        object.put(column.getKey(), column.getValue());
+                    }
+                }
+                object.put(INDEX_COLUMN, entry.get("index"));
+                return entry(String.valueOf(entry.get("index")), object);
+            }
+
+            @Override
+            public void close() throws IOException {
+                source.close();
+            }
+        };
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static Map<String, Object> entry(String index, Map<String, Object> object) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("index", index);
+        entry.put("object", object);
+        return entry;
+    }
+}
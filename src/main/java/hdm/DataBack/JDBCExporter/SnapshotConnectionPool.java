@@ -0,0 +1,132 @@
+package hdm.DataBack.JDBCExporter;
+
+import hdm.DataBack.Logger.Logger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+
+A fixed set of connections that all read the database at the same point in time.
+The leader connection opens a REPEATABLE READ transaction and exports its snapshot with pg_export_snapshot().
+Every worker connection imports that snapshot with SET TRANSACTION SNAPSHOT, so tables exported in parallel
+still form one consistent backup. The leader transaction has to stay open until the pool is closed.
+
+ */
+
+public class SnapshotConnectionPool implements AutoCloseable {
+    private final Logger logger = new Logger();
+
+    private final Connection leader;
+    private final boolean leaderAutoCommit;
+    private final int leaderIsolation;
+    private final String snapshotId;
+    private final List<Connection> workers = new ArrayList<>();
+    private final BlockingQueue<Connection> idle;
+
+    /**
+     * Constructor for SnapshotConnectionPool that exports the leader's snapshot and opens the worker connections.
+     *
+     * @param leader the connection that owns the exported snapshot
+     * @param connectionFactory the factory used to open worker connections
+     * @param size the number of worker connections
+     * @throws SQLException if a database access error occurs
+     */
+    public SnapshotConnectionPool(Connection leader, ConnectionFactory connectionFactory, int size) throws SQLException {
+        this.leader = leader;
+        this.leaderAutoCommit = leader.getAutoCommit();
+        this.leaderIsolation = leader.getTransactionIsolation();
+        this.idle = new ArrayBlockingQueue<>(size);
+
+        leader.setAutoCommit(false);
+        leader.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        try (Statement statement = leader.createStatement(); ResultSet rs = statement.executeQuery("SELECT pg_export_snapshot()")) {
+            rs.next();
+            snapshotId = rs.getString(1);
+        }
+        logger.info("Exported snapshot " + snapshotId + " for " + size + " worker connections.");
+
+        try {
+            for (int i = 0; i < size; i++) {
+                Connection worker = connectionFactory.open();
+                workers.add(worker);
+                worker.setAutoCommit(false);
+                worker.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                try (Statement statement = worker.createStatement()) {
+                    statement.execute(String.format("SET TRANSACTION SNAPSHOT '%s'", snapshotId));
+                }
+                idle.add(worker);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the connection that owns the exported snapshot.
+     * Statements on this connection see the same data as the worker connections.
+     *
+     * @return the leader connection
+     */
+    public Connection getLeader() {
+        return leader;
+    }
+
+    /**
+     * Returns the number of worker connections.
+     *
+     * @return the pool size
+     */
+    public int size() {
+        return workers.size();
+    }
+
+    /**
+     * Takes an idle worker connection, waiting until one is returned if all are in use.
+     *
+     * @return a worker connection that reads the shared snapshot
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Connection borrow() throws InterruptedException {
+        return idle.take();
+    }
+
+    /**
+     * Returns a worker connection to the pool.
+     *
+     * @param connection the connection obtained from {@link #borrow()}
+     */
+    public void release(Connection connection) {
+        idle.add(connection);
+    }
+
+    /**
+     * Ends the snapshot transactions, closes all worker connections and restores the leader's transaction settings.
+     */
+    @Override
+    public void close() {
+        for (Connection worker : workers) {
+            try {
+                worker.rollback();
+                worker.close();
+            } catch (SQLException e) {
+                logger.warn("Error closing worker connection: " + e.getMessage());
+            }
+        }
+        workers.clear();
+        try {
+            leader.commit();
+            leader.setTransactionIsolation(leaderIsolation);
+            leader.setAutoCommit(leaderAutoCommit);
+        } catch (SQLException e) {
+            logger.warn("Error ending snapshot transaction: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+
+An in-memory snapshot of the table metadata of the public schema: tables, their size, columns with types,
+defaults, NOT NULL, serial and identity flags, and primary keys.
+It is loaded with a single query against pg_catalog and then shared by the backup and restore steps,
+so looking up the metadata of a table or column never needs another round trip to the server.
+
+ */
+
+public class TableCatalog {
+    private static final String CATALOG_QUERY = """
+            SELECT c.relname AS table_name,
+                   c.relpages,
+                   a.attname AS column_name,
+                   format_type(a.atttypid, NULL) AS data_type,
+                   a.attnotnull,
+                   pg_get_expr(d.adbin, d.adrelid) AS column_default,
+                   a.attidentity,
+                   array_position(pk.conkey, a.attnum) AS pk_position
+            FROM pg_class c
+            JOIN pg_namespace n ON n.oid = c.relnamespace
+            JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped
+            LEFT JOIN pg_attrdef d ON d.adrelid = c.oid AND d.adnum = a.attnum
+            LEFT JOIN pg_constraint pk ON pk.conrelid = c.oid AND pk.contype = 'p'
+            WHERE n.nspname = 'public' AND c.relkind IN ('r', 'p')
+            ORDER BY c.relname, a.attnum""";
+
+    private final Map<String, Table> tables;
+
+    private TableCatalog(Map<String, Table> tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Loads the metadata of all tables in the public schema with one query.
+     * Called on a connection inside a snapshot transaction, the catalog matches the exported data.
+     *
+     * @param connection the database connection
+     * @return the loaded catalog
+     * @throws SQLException if a database access error occurs
+     */
+    public static TableCatalog load(Connection connection) throws SQLException {
+        Map<String, Table> tables = new LinkedHashMap<>();
+        Map<String, TreeMap<Integer, String>> primaryKeys = new LinkedHashMap<>();
+
+        try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(CATALOG_QUERY)) {
+            while (rows.next()) {
+                String tableName = rows.getString("table_name");
+                Table table = tables.computeIfAbsent(tableName, name -> new Table());
+                table.pages = rows.getLong("relpages");
+
+                String identity = rows.getString("attidentity");
+                Column column = new Column(
+                        rows.getString("column_name"),
+                        rows.getString("data_type"),
+                        !rows.getBoolean("attnotnull"),
+                        rows.getString("column_default"),
+                        identity != null && !identity.isEmpty() ? identity.charAt(0) : 0);
+                table.columns.put(column.getName(), column);
+
+                int pkPosition = rows.getInt("pk_position");
+                if (!rows.wasNull()) {
+                    primaryKeys.computeIfAbsent(tableName, name -> new TreeMap<>()).put(pkPosition, column.getName());
+                }
+            }
+        }
+        for (Map.Entry<String, TreeMap<Integer, String>> primaryKey : primaryKeys.entrySet()) {
+            tables.get(primaryKey.getKey()).primaryKeys.addAll(primaryKey.getValue().values());
+        }
+        return new TableCatalog(tables);
+    }
+
+    /**
+     * Creates a catalog without any tables.
+     *
+     * @return an empty catalog
+     */
+    public static TableCatalog empty() {
+        return new TableCatalog(new LinkedHashMap<>());
+    }
+
+    /**
+     * Creates a catalog of tables that only knows their primary keys, e.g. to maintain a backup repository
+     * without a database connection.
+     *
+     * @param primaryKeys the primary key columns of every table, an empty list for tables without one
+     * @return a catalog of the given tables
+     */
+    public static TableCatalog of(Map<String, List<String>> primaryKeys) {
+        Map<String, Table> tables = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> primaryKey : primaryKeys.entrySet()) {
+            Table table = new Table();
+            table.primaryKeys.addAll(primaryKey.getValue());
+            tables.put(primaryKey.getKey(), table);
+        }
+        return new TableCatalog(tables);
+    }
+
+    /**
+     * Retrieves the names of all tables in the public schema in alphabetical order.
+     *
+     * @return list of table names
+     */
+    public List<String> getTableNames() {
+        return new ArrayList<>(tables.keySet());
+    }
+
+    /**
+     * Retrieves the names of all tables, largest first (by number of disk pages).
+     *
+     * @return list of table names ordered by size
+     */
+    public List<String> getTableNamesBySize() {
+        List<String> tableNames = getTableNames();
+        tableNames.sort(Comparator.comparingLong((String name) -> tables.get(name).pages).reversed());
+        return tableNames;
+    }
+
+    /**
+     * Checks whether a table exists in the catalog.
+     *
+     * @param tableName the name of the table
+     * @return true if the table exists
+     */
+    public boolean hasTable(String tableName) {
+        return tables.containsKey(tableName);
+    }
+
+    /**
+     * Retrieves the columns of a table in their physical order.
+     *
+     * @param tableName the name of the table
+     * @return list of columns, empty if the table does not exist
+     */
+    public List<Column> getColumns(String tableName) {
+        Table table = tables.get(tableName);
+        return table == null ? new ArrayList<>() : new ArrayList<>(table.columns.values());
+    }
+
+    /**
+     * Retrieves a single column of a table.
+     *
+     * @param tableName the name of the table
+     * @param columnName the name of the column
+     * @return the column, or null if the table or column does not exist
+     */
+    public Column getColumn(String tableName, String columnName) {
+        Table table = tables.get(tableName);
+        return table == null ? null : table.columns.get(columnName);
+    }
+
+    /**
+     * Retrieves the primary key columns of a table in key order.
+     *
+     * @param tableName the name of the table
+     * @return list of primary key columns, empty if the table has no primary key
+     */
+    public List<String> getPrimaryKeys(String tableName) {
+        Table table = tables.get(tableName);
+        return table == null ? new ArrayList<>() : new ArrayList<>(table.primaryKeys);
+    }
+
+    private static final class Table {
+        private final Map<String, Column> columns = new LinkedHashMap<>();
+        private final Set<String> primaryKeys = new LinkedHashSet<>();
+        private long pages;
+    }
+
+    public static final class Column {
+        private final String name;
+        private final String dataType;
+        private final boolean nullable;
+        private final String defaultValue;
+        private final char identity;
+
+        Column(String name, String dataType, boolean nullable, String defaultValue, char identity) {
+            this.name = name;
+            this.dataType = dataType;
+            this.nullable = nullable;
+            this.defaultValue = defaultValue;
+            this.identity = identity;
+        }
+
+        /**
+         * Returns the name of the column.
+         *
+         * @return the column name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the data type of the column as formatted by PostgreSQL, e.g. "integer" or "character varying".
+         *
+         * @return the data type without type modifiers
+         */
+        public String getDataType() {
+            return dataType;
+        }
+
+        /**
+         * Returns whether the column accepts NULL values.
+         *
+         * @return false if the column is NOT NULL
+         */
+        public boolean isNullable() {
+            return nullable;
+        }
+
+        /**
+         * Returns the default expression of the column.
+         *
+         * @return the default expression, or null if the column has none
+         */
+        public String getDefaultValue() {
+            return defaultValue;
+        }
+
+        /**
+         * Returns whether the column takes its default from a sequence (SERIAL).
+         *
+         * @return true if the default expression calls nextval
+         */
+        public boolean isSerial() {
+            return defaultValue != null && defaultValue.startsWith("nextval(");
+        }
+
+        /**
+         * Returns whether the column is an identity column (GENERATED ... AS IDENTITY).
+         *
+         * @return true for identity columns
+         */
+        public boolean isIdentity() {
+            return identity == 'a' || identity == 'd';
+        }
+
+        /**
+         * Returns whether the column is an identity column that rejects explicit values (GENERATED ALWAYS).
+         *
+         * @return true for GENERATED ALWAYS identity columns
+         */
+        public boolean isIdentityAlways() {
+            return identity == 'a';
+        }
+    }
+}
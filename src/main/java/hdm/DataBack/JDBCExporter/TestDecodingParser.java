@@ -0,0 +1,294 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+Parses the text output of PostgreSQL's test_decoding logical decoding plugin (started with include-xids off).
+Every message is one line:
+    BEGIN
+    table public.orders: INSERT: id[integer]:1 note[text]:'it''s' total[numeric]:9.50
+    table public.orders: UPDATE: old-key: id[integer]:1 new-tuple: id[integer]:2 note[text]:unchanged-toast-datum
+    table public.orders: DELETE: id[integer]:2
+    table public.orders, public.items: TRUNCATE: (no-flags)
+    COMMIT
+Values are converted to the same JSON-compatible types the object exporter writes for a column of that type.
+A TOASTed value that was not changed by an update is not part of the message and becomes KeyedChangeSet.UNCHANGED.
+
+ */
+
+public class TestDecodingParser {
+    private static final String UNCHANGED_TOAST = "unchanged-toast-datum";
+    private static final String OLD_KEY = "old-key:";
+    private static final String NEW_TUPLE = "new-tuple:";
+    private static final String NO_TUPLE_DATA = "(no-tuple-data)";
+
+    public enum Kind { BEGIN, COMMIT, INSERT, UPDATE, DELETE, TRUNCATE }
+
+    public static class Change {
+        private final Kind kind;
+        private final List<String> tableNames;
+        private final Map<String, Object> oldKey;
+        private final Map<String, Object> values;
+
+        Change(Kind kind, List<String> tableNames, Map<String, Object> oldKey, Map<String, Object> values) {
+            this.kind = kind;
+            this.tableNames = tableNames;
+            this.oldKey = oldKey;
+            this.values = values;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the tables of the change as schema-qualified names like "public.orders".
+         *
+         * @return the affected tables, more than one only for a TRUNCATE
+         */
+        public List<String> getTableNames() {
+            return tableNames;
+        }
+
+        /**
+         * Returns the old key of an update that changed the primary key.
+         *
+         * @return the old primary key values, or null if the key was not changed
+         */
+        public Map<String, Object> getOldKey() {
+            return oldKey;
+        }
+
+        /**
+         * Returns the new row of an insert or update, or the key of the deleted row.
+         *
+         * @return the column values, empty if the message carries no tuple data
+         */
+        public Map<String, Object> getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * Parses one message of the test_decoding plugin.
+     *
+     * @param message the message text
+     * @return the parsed change
+     * @throws IllegalArgumentException if the message does not have the test_decoding format
+     */
+    public Change parse(String message) {
+        if (message.startsWith("BEGIN")) {
+            return new Change(Kind.BEGIN, List.of(), null, Map.of());
+        }
+        if (message.startsWith("COMMIT")) {
+            return new Change(Kind.COMMIT, List.of(), null, Map.of());
+        }
+        if (!message.startsWith("table ")) {
+            throw new IllegalArgumentException("Unexpected decoding message: " + message);
+        }
+        Cursor cursor = new Cursor(message, "table ".length());
+
+        List<String> tableNames = new ArrayList<>();
+        do {
+            String schema = cursor.identifier();
+            cursor.expect('.');
+            tableNames.add(schema + "." + cursor.identifier());
+        } while (cursor.skip(", "));
+        cursor.expect(':');
+        cursor.expect(' ');
+
+        int kindEnd = message.indexOf(':', cursor.position);
+        Kind kind = Kind.valueOf(message.substring(cursor.position, kindEnd));
+        cursor.position = kindEnd + 1;
+        if (kind == Kind.TRUNCATE) {
+            return new Change(kind, tableNames, null, Map.of());
+        }
+
+        Map<String, Object> oldKey = null;
+        cursor.skip(" ");
+        if (cursor.skip(OLD_KEY)) {
+            oldKey = columns(cursor);
+            cursor.skip(NEW_TUPLE);
+        }
+        Map<String, Object> values = cursor.skip(" " + NO_TUPLE_DATA) || cursor.skip(NO_TUPLE_DATA) ? Map.of() : columns(cursor);
+        return new Change(kind, tableNames, oldKey, values);
+    }
+
+    /**
+     * Reads a list of "name[type]:value" columns up to the end of the message or the new-tuple marker.
+     *
+     * @param cursor the cursor positioned before the first column
+     * @return the converted column values
+     */
+    private Map<String, Object> columns(Cursor cursor) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        while (true) {
+            cursor.skip(" ");
+            if (cursor.atEnd() || cursor.startsWith(NEW_TUPLE)) {
+                return values;
+            }
+            String name = cursor.identifier();
+            cursor.expect('[');
+            // Typen wie "integer[]" oder "numeric(10,2)" enden erst vor "]:"
+            int typeEnd = cursor.text.indexOf("]:", cursor.position);
+            if (typeEnd < 0) {
+                throw new IllegalArgumentException("Missing column type in: " + cursor.text);
+            }
+            String type = cursor.text.substring(cursor.position, typeEnd);
+            cursor.position = typeEnd + 2;
+
+            if (cursor.startsWith("'")) {
+                values.put(name, convert(type, cursor.quoted()));
+            } else {
+                String token = cursor.token();
+                if (token.equals("null")) {
+                    values.put(name, null);
+                } else if (token.equals(UNCHANGED_TOAST)) {
+                    values.put(name, KeyedChangeSet.UNCHANGED);
+                } else {
+                    values.put(name, convert(type, token));
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts the text of a value into the type the object exporter writes for the column type.
+     *
+     * @param type the column type as printed by format_type, e.g. "integer" or "timestamp without time zone"
+     * @param text the text form of the value
+     * @return the converted value
+     */
+    static Object convert(String type, String text) {
+        try {
+            switch (type) {
+                case "smallint", "integer", "bigint", "oid":
+                    return Long.parseLong(text);
+                case "real", "double precision":
+                    return Double.parseDouble(text);
+                case "boolean":
+                    return Boolean.parseBoolean(text);
+                case "bytea":
+                    return text.startsWith("\\x") ? HexFormat.of().parseHex(text.substring(2)) : text;
+                case "timestamp without time zone":
+                    return LocalDateTime.parse(text.replace(' ', 'T')).toString();
+                case "timestamp with time zone":
+                    // Wie beim Lesen über JDBC in der Zeitzone der JVM darstellen
+                    return OffsetDateTime.parse(normalizeOffset(text.replace(' ', 'T')))
+                            .atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime().toString();
+                default:
+                    if (type.startsWith("numeric")) {
+                        return new BigDecimal(text);
+                    }
+                    return text;
+            }
+        } catch (RuntimeException e) {
+            // Sonderwerte wie 'infinity' oder 'NaN' bleiben Text
+            return text;
+        }
+    }
+
+    /**
+     * Extends an hour-only UTC offset like "+02" to "+02:00", which is the form java.time expects.
+     *
+     * @param timestamp the timestamp with offset
+     * @return the timestamp with a complete offset
+     */
+    private static String normalizeOffset(String timestamp) {
+        return timestamp.matches(".*[+-]\\d\\d$") ? timestamp + ":00" : timestamp;
+    }
+
+    private static class Cursor {
+        private final String text;
+        private int position;
+
+        Cursor(String text, int position) {
+            this.text = text;
+            this.position = position;
+        }
+
+        boolean atEnd() {
+            return position >= text.length();
+        }
+
+        boolean startsWith(String prefix) {
+            return text.startsWith(prefix, position);
+        }
+
+        boolean skip(String prefix) {
+            if (startsWith(prefix)) {
+                position += prefix.length();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char expected) {
+            if (atEnd() || text.charAt(position) != expected) {
+                throw new IllegalArgumentException(String.format("Expected '%c' at position %d in: %s", expected, position, text));
+            }
+            position++;
+        }
+
+        /**
+         * Reads an identifier, either plain or in double quotes with doubled inner quotes.
+         */
+        String identifier() {
+            if (startsWith("\"")) {
+                return enclosed('"');
+            }
+            int start = position;
+            while (!atEnd() && "[.:, ".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            return text.substring(start, position);
+        }
+
+        /**
+         * Reads a value in single quotes with doubled inner quotes.
+         */
+        String quoted() {
+            return enclosed('\'');
+        }
+
+        String token() {
+            int end = text.indexOf(' ', position);
+            if (end < 0) {
+                end = text.length();
+            }
+            String token = text.substring(position, end);
+            position = end;
+            return token;
+        }
+
+        private String enclosed(char quote) {
+            StringBuilder value = new StringBuilder();
+            position++;
+            while (true) {
+                if (atEnd()) {
+                    throw new IllegalArgumentException("Unterminated quoted value in: " + text);
+                }
+                char c = text.charAt(position++);
+                if (c == quote) {
+                    if (!atEnd() && text.charAt(position) == quote) {
+                        value.append(quote);
+                        position++;
+                    } else {
+                        return value.toString();
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+        }
+    }
+}
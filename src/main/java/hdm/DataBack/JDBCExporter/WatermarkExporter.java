@@ -0,0 +1,206 @@
+package hdm.DataBack.JDBCExporter;
+
+import hdm.DataBack.JDBCExporter.IncrementalExporter.RowFingerprint;
+import hdm.DataBack.Logger.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/*
+
+Extracts only the changes of a table since the previous backup instead of exporting it in full.
+- A watermark is stored with every backup: the highest value of a timestamp column such as "updated_at",
+  or the oldest transaction ID still running when the rows were read (snapshot xmin).
+- The next backup fetches only the rows at or above the watermark. Rows are matched to the previous state by
+  primary key; rows that already exist with the same content are dropped, so reading a few rows twice is harmless.
+- Deleted rows are found with a key-only pass over the table.
+The previous state is read from the current file on disk, and the new current file is written from it and the changes,
+so the amount of data transferred from the database is proportional to the change.
+
+The watermark and the rows are read in one REPEATABLE READ snapshot, so the watermark never covers a change the rows miss.
+A timestamp watermark assumes the column is set on every insert and update. A transaction sets its timestamps before
+it commits, so its rows can become visible after a later watermark was stored; the stored timestamp is therefore moved
+back by a safety lag, and only transactions open longer than the lag can be missed.
+The xmin watermark is the oldest transaction still running in the snapshot and has neither requirement.
+
+ */
+
+public class WatermarkExporter {
+    public static final String XMIN = "xmin";
+    private static final List<String> WATERMARK_COLUMN_NAMES = List.of("updated_at", "modified_at", "last_modified", "last_updated", "changed_at");
+
+    private final Logger logger = new Logger();
+    private final int fetchSize;
+    private final int lagSeconds;
+
+    /**
+     * Constructor for WatermarkExporter.
+     *
+     * @param fetchSize the number of rows fetched per round trip
+     * @param lagSeconds the number of seconds a timestamp watermark is moved back
+     */
+    public WatermarkExporter(int fetchSize, int lagSeconds) {
+        this.fetchSize = fetchSize;
+        this.lagSeconds = lagSeconds;
+    }
+
+    /**
+     * Determines the watermark column of a table.
+     * A configured column is used as is; otherwise a timestamp column with a typical name like "updated_at" is used,
+     * and tables without one fall back to the transaction ID of their rows.
+     *
+     * @param catalog the table catalog of the database
+     * @param watermarkColumns the configured watermark columns per table
+     * @param tableName the name of the table
+     * @return the watermark column, or {@link #XMIN}
+     */
+    public String resolveColumn(TableCatalog catalog, Map<String, String> watermarkColumns, String tableName) {
+        String configured = watermarkColumns.get(tableName);
+        if (configured != null) {
+            return configured;
+        }
+        for (String columnName : WATERMARK_COLUMN_NAMES) {
+            TableCatalog.Column column = catalog.getColumn(tableName, columnName);
+            if (column != null && column.getDataType().startsWith("timestamp")) {
+                return columnName;
+            }
+        }
+        return XMIN;
+    }
+
+    /**
+     * Reads the watermark a later backup continues from. It has to be read in the same snapshot as the rows
+     * of the table, so every change that is not part of the read rows lies at or above it.
+     * A timestamp watermark is moved back by the safety lag; other column types are stored as they are.
+     *
+     * @param connection the connection the rows are read with, inside a REPEATABLE READ transaction
+     * @param catalog the table catalog of the database
+     * @param tableName the name of the table
+     * @param column the watermark column, or {@link #XMIN}
+     * @return the watermark value, or null if the table has no rows with a watermark value
+     * @throws SQLException if a database access error occurs
+     */
+    public String readWatermark(Connection connection, TableCatalog catalog, String tableName, String column) throws SQLException {
+        String query;
+        if (XMIN.equals(column)) {
+            query = "SELECT txid_snapshot_xmin(txid_current_snapshot())::text";
+        } else {
+            TableCatalog.Column watermarkColumn = catalog.getColumn(tableName, column);
+            boolean timestamp = watermarkColumn != null && watermarkColumn.getDataType().startsWith("timestamp");
+            query = timestamp
+                    ? String.format("SELECT (max(\"%s\") - make_interval(secs => %d))::text FROM \"%s\"", column, lagSeconds, tableName)
+                    : String.format("SELECT max(\"%s\")::text FROM \"%s\"", column, tableName);
+        }
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(query)) {
+            result.next();
+            return result.getString(1);
+        }
+    }
+
+    /**
+     * Writes the changes of a table since a watermark into the new version's file and updates the current file.
+     *
+     * @param connection the connection the rows are read with
+     * @param catalog the table catalog of the database
+     * @param tableName the name of the table
+     * @param column the watermark column, or {@link #XMIN}
+     * @param watermark the watermark stored by the previous backup
+     * @param previousPath the file holding the previous state of the table with its indexes
+     * @param changesPath the file the changes are written to
+     * @param currentPath the current file of the table
+     * @return the number of changed rows, or -1 if the watermark cannot be used and the table has to be exported in full
+     * @throws SQLException if a database access error occurs
+     * @throws IOException if an error occurs while reading or writing files
+     */
+    public long exportChanges(Connection connection, TableCatalog catalog, String tableName, String column, String watermark,
+                                 String previousPath, String changesPath, String currentPath) throws SQLException, IOException {
+        List<String> primaryKeys = catalog.getPrimaryKeys(tableName);
+        String condition = changedRowsCondition(connection, catalog, tableName, column, watermark);
+        if (condition == null) {
+            return -1;
+        }
+
+        KeyedChangeSet changeSet = new KeyedChangeSet(previousPath, primaryKeys);
+        FileCodec codec = FileWriter.getCodec();
+        String query = String.format("SELECT * FROM \"%s\" WHERE %s", tableName, condition);
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setFetchSize(fetchSize);
+            if (!XMIN.equals(column)) {
+                statement.setString(1, watermark);
+            }
+            try (ResultSet rows = statement.executeQuery()) {
+                ResultSetMetaData metaData = rows.getMetaData();
+                while (rows.next()) {
+                    // Über den Codec der Sicherung normalisieren, damit die Prüfsumme zu den gespeicherten Zeilen passt
+                    changeSet.upsert(codec.normalize(ObjectExporter.readRow(rows, metaData)));
+                }
+            }
+        }
+
+        // Schlüssel-Durchlauf: nicht mehr vorhandene Schlüssel sind gelöscht
+        Set<RowFingerprint> presentKeys = new HashSet<>();
+        StringJoiner keyColumns = new StringJoiner(", ");
+        for (String primaryKey : primaryKeys) {
+            keyColumns.add("\"" + primaryKey + "\"");
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(fetchSize);
+            try (ResultSet keys = statement.executeQuery(String.format("SELECT %s FROM \"%s\"", keyColumns, tableName))) {
+                ResultSetMetaData metaData = keys.getMetaData();
+                while (keys.next()) {
+                    presentKeys.add(changeSet.keyOf(codec.normalize(ObjectExporter.readRow(keys, metaData))));
+                }
+            }
+        }
+        changeSet.deleteMissing(presentKeys);
+        changeSet.write(changesPath, currentPath);
+
+        logger.info(String.format("Extracted %d changed rows of table %s since watermark %s", changeSet.size(), tableName, watermark));
+        return changeSet.size();
+    }
+
+    /**
+     * Builds the WHERE condition selecting the rows changed since a watermark.
+     * For a timestamp column the watermark is bound as the first parameter of the query.
+     *
+     * @param connection the connection the rows are read with
+     * @param catalog the table catalog of the database
+     * @param tableName the name of the table
+     * @param column the watermark column, or {@link #XMIN}
+     * @param watermark the watermark stored by the previous backup
+     * @return the condition, or null if the watermark cannot be used
+     * @throws SQLException if a database access error occurs
+     */
+    private String changedRowsCondition(Connection connection, TableCatalog catalog, String tableName, String column, String watermark) throws SQLException {
+        if (!XMIN.equals(column)) {
+            TableCatalog.Column watermarkColumn = catalog.getColumn(tableName, column);
+            if (watermarkColumn == null) {
+                logger.warn(String.format("Watermark column %s does not exist in table %s", column, tableName));
+                return null;
+            }
+            return String.format("(\"%s\" >= CAST(? AS %s) OR \"%s\" IS NULL)", column, watermarkColumn.getDataType(), column);
+        }
+        // age(xmin) zählt ab der eigenen Transaktions-ID, die txid_current() vergibt
+        long currentXid;
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery("SELECT txid_current()")) {
+            result.next();
+            currentXid = result.getLong(1);
+        }
+        long distance = currentXid - Long.parseLong(watermark);
+        if (distance < 0 || distance >= Integer.MAX_VALUE) {
+            logger.warn(String.format("Watermark of table %s is too old for a comparison of transaction IDs", tableName));
+            return null;
+        }
+        return "age(xmin) <= " + distance;
+    }
+}
@@ -0,0 +1,99 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.JsonRowWriter;
+import hdm.DataBack.JDBCExporter.MetaDataController;
+import hdm.DataBack.JDBCExporter.TableCatalog;
+import hdm.DataBack.JDBCExporter.TestDecodingParser;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.RowIdentity;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link CapturedChanges}, applied to a repository with one backed up table.
+ */
+public class CapturedChangesTest {
+    private static final String TABLE = "items";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TestDecodingParser parser = new TestDecodingParser();
+    private CapturedChanges changes;
+
+    @Before
+    public void backupTable() throws Exception {
+        MetaDataController metaDataController = MetaDataController.openRepository(folder.getRoot().getPath());
+        metaDataController.initLayout(BackupOptions.Layout.FORWARD);
+        metaDataController.updateMetaData(TableCatalog.of(Map.of(TABLE, List.of("id"))));
+        Map<String, Object> row = Map.of("id", 1, "name", "item 1");
+        try (JsonRowWriter writer = new FileWriter().openJSONRowWriter(metaDataController.getTableFilePath(TABLE))) {
+            writer.writeEntry(new RowIdentity(List.of("id")).next(row), row);
+        }
+        metaDataController.save();
+        changes = new CapturedChanges();
+    }
+
+    /**
+     * The changes of a transaction are only pending once its COMMIT was applied.
+     */
+    @Test
+    public void testChangesPendingAfterCommit() throws Exception {
+        assertFalse(apply("BEGIN"));
+        assertFalse(apply("table public.items: INSERT: id[integer]:2 name[text]:'item 2'"));
+        assertEquals(0, changes.getPendingChanges());
+        assertNull(changes.getChangeSet(TABLE));
+
+        assertTrue(apply("COMMIT"));
+        assertEquals(1, changes.getPendingChanges());
+        assertEquals(1, changes.getChangeSet(TABLE).size());
+    }
+
+    /**
+     * Clearing after a version keeps the open transaction, its changes are pending after the COMMIT.
+     */
+    @Test
+    public void testClearKeepsOpenTransaction() throws Exception {
+        apply("BEGIN");
+        apply("table public.items: UPDATE: id[integer]:1 name[text]:'renamed'");
+        apply("COMMIT");
+        apply("BEGIN");
+        apply("table public.items: DELETE: id[integer]:1");
+        changes.clear();
+        assertEquals(0, changes.getPendingChanges());
+
+        apply("COMMIT");
+        assertEquals(1, changes.getPendingChanges());
+        assertEquals(1, changes.getChangeSet(TABLE).size());
+    }
+
+    /**
+     * Tables that are not part of the backup yet are marked for a full export instead of being matched by key.
+     */
+    @Test
+    public void testNewTableIsExportedInFull() throws Exception {
+        apply("BEGIN");
+        apply("table public.orders: INSERT: id[integer]:1");
+        apply("table audit.log: INSERT: id[integer]:1");
+        apply("COMMIT");
+
+        assertEquals(1, changes.getPendingChanges());
+        assertTrue(changes.isFullExport("orders"));
+        assertNull(changes.getChangeSet("orders"));
+        assertFalse(changes.isFullExport(TABLE));
+    }
+
+    private boolean apply(String message) throws Exception {
+        return changes.apply(parser.parse(message));
+    }
+}
@@ -0,0 +1,40 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of the COPY text encoding of class {@link CopyLoader}.
+ */
+public class CopyLoaderTest {
+    private final CopyLoader copyLoader = new CopyLoader(null);
+
+    /**
+     * Values are separated by tabs, nulls and booleans use the COPY notation and special characters are escaped.
+     */
+    @Test
+    public void testEncodeRow() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 7);
+        row.put("name", "a\tb\\c\nd");
+        row.put("active", true);
+        row.put("note", null);
+        row.put("tags", List.of("x", "y"));
+
+        StringBuilder block = new StringBuilder();
+        copyLoader.encodeRow(block, List.of("id", "name", "active", "note", "tags"), row);
+
+        assertEquals("7\ta\\tb\\\\c\\nd\tt\t\\N\t[\"x\",\"y\"]\n", block.toString());
+    }
+
+    /**
+     * Identifiers are quoted, so mixed-case table and column names are kept.
+     */
+    @Test
+    public void testCopyStatement() {
+        assertEquals("COPY \"Order\" (\"id\", \"Total\") FROM STDIN", CopyLoader.copyStatement("Order", List.of("id", "Total")));
+    }
+}
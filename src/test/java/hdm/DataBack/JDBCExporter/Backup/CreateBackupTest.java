@@ -0,0 +1,192 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.JdbcFake;
+import hdm.DataBack.JDBCExporter.JsonRowWriter;
+import hdm.DataBack.JDBCExporter.MetaDataController;
+import hdm.DataBack.JDBCExporter.RowSource;
+import hdm.DataBack.JDBCExporter.TableCatalog;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.IncrementalHelper;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.IncrementalMain;
+import hdm.DataBack.JDBCExporter.IncrementalExporter.RowIdentity;
+import hdm.DataBack.Logger.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the change detection of class {@link CreateBackup} and the restore of skipped tables.
+ */
+public class CreateBackupTest {
+    private static final String TABLE = "items";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BackupOptions options = new BackupOptions();
+    private final TableCatalog catalog = TableCatalog.of(Map.of(TABLE, List.of("id")));
+    private MetaDataController metaDataController;
+
+    @Before
+    public void openRepository() {
+        metaDataController = MetaDataController.openRepository(folder.getRoot().getPath());
+        options.setChangeDetection(BackupOptions.ChangeDetection.STATS);
+    }
+
+    /**
+     * Without an explicit mode, unchanged tables are detected by the exact server-side hash.
+     */
+    @Test
+    public void testHashIsDefault() {
+        assertEquals(BackupOptions.ChangeDetection.HASH, new BackupOptions().getChangeDetection());
+        BackupOptions options = new BackupOptions();
+        options.setChangeDetection(null);
+        assertEquals(BackupOptions.ChangeDetection.HASH, options.getChangeDetection());
+    }
+
+    /**
+     * A table whose hash did not change is skipped, a table whose hash changed is exported again.
+     */
+    @Test
+    public void testHashDetection() throws Exception {
+        options.setChangeDetection(BackupOptions.ChangeDetection.HASH);
+        backup(hash(3, 42), Map.of(), rows(3));
+        backup(hash(3, 42), Map.of(), null);
+        assertTrue(metaDataController.isUnchanged(TABLE));
+
+        List<Map<String, Object>> rows = rows(4);
+        backup(hash(4, 42), Map.of(), rows);
+        assertFalse(metaDataController.isUnchanged(TABLE));
+        assertEquals(rows(3), restore("v2"));
+        assertEquals(rows, restore("v3"));
+    }
+
+    /**
+     * A table whose signal did not move after the full backup is skipped, and the skipped version restores all rows.
+     */
+    @Test
+    public void testUnchangedTableIsRestorable() throws Exception {
+        List<Map<String, Object>> rows = rows(3);
+        backup(null, Map.of(TABLE, "stats:1"), rows);
+        assertFalse(metaDataController.isUnchanged(TABLE));
+
+        backup(null, Map.of(TABLE, "stats:1"), null);
+        assertTrue(metaDataController.isUnchanged(TABLE));
+
+        assertEquals(rows, restore("v1"));
+        assertEquals(rows, restore("v2"));
+    }
+
+    /**
+     * A table whose signal moved is exported again.
+     */
+    @Test
+    public void testChangedTableIsExported() throws Exception {
+        backup(null, Map.of(TABLE, "stats:1"), rows(3));
+        List<Map<String, Object>> rows = rows(5);
+        backup(null, Map.of(TABLE, "stats:2"), rows);
+
+        assertFalse(metaDataController.isUnchanged(TABLE));
+        assertEquals(rows, restore("v2"));
+    }
+
+    /**
+     * A backup without change detection removes the stored signal, so the next backup with detection cannot skip
+     * a table whose rows changed in between.
+     */
+    @Test
+    public void testBackupWithoutDetectionResetsSignal() throws Exception {
+        backup(null, Map.of(TABLE, "stats:1"), rows(3));
+        options.setChangeDetection(BackupOptions.ChangeDetection.OFF);
+        backup(null, Map.of(), rows(4));
+        options.setChangeDetection(BackupOptions.ChangeDetection.STATS);
+        List<Map<String, Object>> rows = rows(5);
+        backup(null, Map.of(TABLE, "stats:1"), rows);
+
+        assertFalse(metaDataController.isUnchanged(TABLE));
+        assertEquals(rows, restore("v3"));
+        assertEquals(rows(4), restore("v2"));
+    }
+
+    /**
+     * A missing current file fails the restore instead of restoring an empty table.
+     */
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingCurrentFile() throws Exception {
+        backup(null, Map.of(TABLE, "stats:1"), rows(3));
+        backup(null, Map.of(TABLE, "stats:1"), null);
+        Files.delete(Paths.get(metaDataController.getTableCurrentFilePath(TABLE)));
+
+        restore("v2");
+    }
+
+    /**
+     * Runs the steps of a backup without a database: change detection, export of the changed tables and diffing.
+     *
+     * @param connection the connection the hash signal is read from, or null
+     * @param statistics the statistics signal of every table
+     * @param rows the rows of the table, only exported if the table was not detected as unchanged
+     */
+    private void backup(Connection connection, Map<String, String> statistics, List<Map<String, Object>> rows) throws Exception {
+        metaDataController.initLayout(options.getLayout());
+        metaDataController.updateMetaData(catalog);
+        new CreateBackup(connection, new Logger(), new FileWriter(), options, null).detectUnchangedTables(catalog, statistics);
+        if (!metaDataController.isUnchanged(TABLE)) {
+            RowIdentity identity = new RowIdentity(List.of("id"));
+            try (JsonRowWriter writer = new FileWriter().openJSONRowWriter(metaDataController.getTableFilePath(TABLE))) {
+                for (Map<String, Object> row : rows) {
+                    writer.writeEntry(identity.next(row), row);
+                }
+            }
+        }
+        if (metaDataController.getCurrentVersion() > 0) {
+            new IncrementalMain(options).processTables();
+        }
+        metaDataController.save();
+    }
+
+    private List<Map<String, Object>> restore(String version) throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (RowSource source = new RestoreBackup(null, new Logger()).openTableData(TABLE, version, new IncrementalHelper())) {
+            Map<String, Object> entry;
+            while ((entry = source.next()) != null) {
+                rows.add((Map<String, Object>) entry.get("object"));
+            }
+        }
+        rows.sort((a, b) -> Integer.compare((Integer) a.get("id"), (Integer) b.get("id")));
+        return rows;
+    }
+
+    private static Connection hash(long rowCount, long rowHash) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("row_count", rowCount);
+        result.put("row_hash", rowHash);
+        return new JdbcFake().rows("hashtextextended", List.of(result)).connection();
+    }
+
+    private static List<Map<String, Object>> rows(int count) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i);
+            row.put("name", "item " + i);
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,48 @@
+package hdm.DataBack.JDBCExporter.Backup;
+
+import hdm.DataBack.JDBCExporter.JdbcFake;
+import hdm.DataBack.JDBCExporter.TableCatalog;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link RestoreBackup#getSerialColumns(TableCatalog, String)}.
+ */
+public class RestoreBackupTest {
+
+    /**
+     * Only integer columns with a sequence default are recreated as SERIAL by the schema script,
+     * so only they are skipped when the data is loaded.
+     */
+    @Test
+    public void testSerialColumns() throws Exception {
+        JdbcFake database = new JdbcFake().rows("attnotnull", List.of(
+                column("id", "integer", "nextval('orders_id_seq'::regclass)", ""),
+                column("line", "bigint", "nextval('orders_line_seq'::regclass)", ""),
+                column("code", "integer", null, "d"),
+                column("amount", "integer", "0", "")));
+        TableCatalog catalog = TableCatalog.load(database.connection());
+
+        assertEquals(Set.of("id"), RestoreBackup.getSerialColumns(catalog, "orders"));
+        assertEquals(Set.of(), RestoreBackup.getSerialColumns(catalog, "missing"));
+    }
+
+    private static Map<String, Object> column(String name, String dataType, String defaultValue, String identity) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("table_name", "orders");
+        row.put("relpages", 1L);
+        row.put("column_name", name);
+        row.put("data_type", dataType);
+        row.put("attnotnull", true);
+        row.put("column_default", defaultValue);
+        row.put("attidentity", identity);
+        row.put("pk_position", null);
+        return row;
+    }
+}
@@ -0,0 +1,101 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link ChunkStore}.
+ */
+public class ChunkStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetChunkStore() {
+        FileWriter.setChunkStore(null);
+        FileWriter.setCompression(FileWriter.NO_COMPRESSION, 1);
+    }
+
+    /**
+     * A snapshot with one changed row shares almost all chunks with its predecessor, is read back unchanged,
+     * and keeps its chunks when the predecessor is removed and garbage is collected.
+     */
+    @Test
+    public void testDeduplicatedSnapshots() throws IOException {
+        Path chunks = folder.newFolder(ChunkStore.DIRECTORY_NAME).toPath();
+        File tables = folder.newFolder("Objects");
+        ChunkStore store = new ChunkStore(chunks);
+        FileWriter.setChunkStore(store);
+        FileWriter.setCompression(6, 1);
+
+        List<Map<String, Object>> rows = rows();
+        String first = new File(tables, "table_v1.json").getPath();
+        writeSnapshot(first, rows);
+        long firstChunks = countChunks(chunks);
+        assertTrue(firstChunks > 4);
+
+        rows.get(rows.size() / 2).put("name", "changed");
+        String second = new File(tables, "table_v2.json").getPath();
+        writeSnapshot(second, rows);
+        assertTrue(countChunks(chunks) - firstChunks <= 2);
+        assertEquals(rows, readSnapshot(second));
+
+        Files.delete(Path.of(first));
+        assertTrue(store.collectGarbage() >= 1);
+        assertEquals(rows, readSnapshot(second));
+        assertEquals(0, store.collectGarbage());
+    }
+
+    private static List<Map<String, Object>> rows() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i);
+            row.put("name", "name " + (i * 7919 % 10007));
+            row.put("price", i % 100 + 0.5);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static void writeSnapshot(String filePath, List<Map<String, Object>> rows) throws IOException {
+        try (RowSink writer = new FileWriter().openTableWriter(filePath)) {
+            for (Map<String, Object> row : rows) {
+                writer.writeEntry(String.valueOf(row.get("id")), row);
+            }
+        }
+    }
+
+    private static List<Map<String, Object>> readSnapshot(String filePath) throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (RowSource reader = new FileReader().openRowReader(filePath)) {
+            Map<String, Object> entry;
+            while ((entry = reader.next()) != null) {
+                rows.add((Map<String, Object>) entry.get("object"));
+            }
+        }
+        return rows;
+    }
+
+    private static long countChunks(Path chunks) throws IOException {
+        try (Stream<Path> files = Files.walk(chunks)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
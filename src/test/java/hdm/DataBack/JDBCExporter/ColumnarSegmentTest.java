@@ -0,0 +1,112 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the columnar file format in {@link ColumnarSegmentWriter} and {@link ColumnarSegmentReader}.
+ */
+public class ColumnarSegmentTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A columnar file returns the same entries as a JSON row file holding the same rows, across several segments.
+     */
+    @Test
+    public void testRoundTripMatchesRows() throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i == 2 ? 3_000_000_000L : i);
+            row.put("created", "2024-01-0" + (i + 1) + "T03:04:05.123456");
+            row.put("day", "2024-01-0" + (i + 1));
+            row.put("status", i % 3 == 0 ? "closed" : "open");
+            row.put("uuid", UUID.randomUUID().toString());
+            row.put("price", i * 1.5);
+            row.put("flag", i < 4);
+            row.put("amount", new BigDecimal("1.10"));
+            if (i != 1) {
+                row.put("note", i % 2 == 0 ? null : "text " + i);
+            }
+            rows.add(row);
+        }
+
+        File rowFile = folder.newFile();
+        try (RowSink writer = new FileWriter().openJSONRowWriter(rowFile.getPath())) {
+            for (int i = 0; i < rows.size(); i++) {
+                writer.writeEntry("i" + i, rows.get(i));
+            }
+        }
+        File columnarFile = folder.newFile();
+        try (RowSink writer = new ColumnarSegmentWriter(new FileOutputStream(columnarFile), FileCodec.JSON, 3)) {
+            for (int i = 0; i < rows.size(); i++) {
+                writer.writeEntry("i" + i, rows.get(i));
+            }
+            assertEquals(7, writer.getRowCount());
+        }
+
+        FileReader fileReader = new FileReader();
+        assertTrue(fileReader.isColumnar(columnarFile.getPath()));
+        assertEquals(readAll(fileReader.openExactRowReader(rowFile.getPath())), readAll(fileReader.openExactRowReader(columnarFile.getPath())));
+        assertEquals(readAll(fileReader.openRowReader(rowFile.getPath())), readAll(fileReader.openRowReader(columnarFile.getPath())));
+    }
+
+    /**
+     * Every segment records the null count and the range of its columns.
+     */
+    @Test
+    public void testSegmentStatistics() throws IOException {
+        File file = folder.newFile();
+        try (RowSink writer = new ColumnarSegmentWriter(new FileOutputStream(file), FileCodec.JSON, 3)) {
+            for (int i = 0; i < 4; i++) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("id", 10 - i);
+                row.put("name", i == 1 ? null : "n" + i);
+                writer.writeEntry("i" + i, row);
+            }
+        }
+
+        try (ColumnarSegmentReader reader = (ColumnarSegmentReader) new FileReader().openRowReader(file.getPath())) {
+            reader.next();
+            Map<String, ColumnarSegmentReader.ColumnStatistics> statistics = reader.getSegmentStatistics();
+            assertEquals(8, statistics.get("id").getMin());
+            assertEquals(10, statistics.get("id").getMax());
+            assertEquals(0, statistics.get("id").getNullCount());
+            assertEquals(1, statistics.get("name").getNullCount());
+            assertEquals("n0", statistics.get("name").getMin());
+            assertEquals("n2", statistics.get("name").getMax());
+
+            reader.next();
+            reader.next();
+            reader.next();
+            assertEquals(7, reader.getSegmentStatistics().get("id").getMin());
+        }
+    }
+
+    private static List<Map<String, Object>> readAll(RowSource reader) throws IOException {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        try (reader) {
+            Map<String, Object> entry;
+            while ((entry = reader.next()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+}
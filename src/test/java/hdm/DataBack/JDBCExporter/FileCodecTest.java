@@ -0,0 +1,80 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests of class {@link FileCodec}.
+ */
+public class FileCodecTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetCodec() {
+        FileWriter.setCodec(FileCodec.JSON);
+    }
+
+    /**
+     * Rows written with the Smile codec are recognized and read back with the values the JSON codec would return.
+     */
+    @Test
+    public void testSmileRoundTrip() throws IOException {
+        UUID id = UUID.randomUUID();
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("price", new BigDecimal("9.50"));
+        row.put("data", new byte[] {1, 2, 3});
+        row.put("note", null);
+
+        FileWriter.setCodec(FileCodec.SMILE);
+        File file = folder.newFile();
+        try (JsonRowWriter writer = new FileWriter().openJSONRowWriter(file.getPath())) {
+            writer.writeEntry("a", row);
+            writer.writeEntry("b", row);
+        }
+        assertArrayEquals(new byte[] {':', ')', '\n'}, Arrays.copyOf(Files.readAllBytes(file.toPath()), 3));
+
+        try (RowSource reader = new FileReader().openExactRowReader(file.getPath())) {
+            Map<String, Object> entry = reader.next();
+            assertEquals("a", entry.get("index"));
+            Map<String, Object> object = (Map<String, Object>) entry.get("object");
+            assertEquals(id.toString(), object.get("id"));
+            assertEquals(new BigDecimal("9.50"), object.get("price"));
+            assertEquals(Base64.getEncoder().encodeToString(new byte[] {1, 2, 3}), object.get("data"));
+            assertNull(object.get("note"));
+            assertEquals("b", reader.next().get("index"));
+            assertNull(reader.next());
+        }
+    }
+
+    /**
+     * JSON files written before codecs existed are still read as JSON.
+     */
+    @Test
+    public void testDetectJSON() throws IOException {
+        File file = folder.newFile();
+        Files.writeString(file.toPath(), "[{\"index\":\"a\",\"object\":{\"id\":1}}]");
+        try (RowSource reader = new FileReader().openRowReader(file.getPath())) {
+            assertEquals(Map.of("id", 1), reader.next().get("object"));
+            assertNull(reader.next());
+        }
+    }
+}
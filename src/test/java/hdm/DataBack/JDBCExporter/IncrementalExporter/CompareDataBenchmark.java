@@ -0,0 +1,94 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing {@link IncrementalHelper#compareData} with the former nested-scan implementation.
+ * Run with: mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * "-Dexec.args=-cp %classpath hdm.DataBack.JDBCExporter.IncrementalExporter.CompareDataBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CompareDataBenchmark {
+
+    @Param({"1000", "5000"})
+    public int rows;
+
+    private final IncrementalHelper incrementalHelper = new IncrementalHelper();
+    private List<Map<String, Object>> oldData;
+    private List<Map<String, Object>> newData;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        oldData = new ArrayList<>();
+        newData = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = row(i, "customer_" + random.nextInt(rows), random.nextInt(10_000));
+            oldData.add(indexed(row));
+            // etwa 1% der Zeilen ändert sich zwischen zwei Versionen
+            newData.add(indexed(i % 100 == 0 ? row(i, "changed_" + i, 0) : new HashMap<>(row)));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> hashIndexed() {
+        return incrementalHelper.compareData(oldData, newData);
+    }
+
+    @Benchmark
+    public Map<String, Object> nestedScan() {
+        List<Map<String, Object>> added = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (Map<String, Object> newRow : newData) {
+            boolean exists = oldData.stream()
+                    .anyMatch(oldRow -> Objects.equals(oldRow.get("object"), newRow.get("object")));
+            if (!exists) {
+                added.add(newRow);
+            }
+        }
+        for (Map<String, Object> oldRow : oldData) {
+            boolean exists = newData.stream()
+                    .anyMatch(newRow -> Objects.equals(oldRow.get("object"), newRow.get("object")));
+            if (!exists) {
+                deleted.add((String) oldRow.get("index"));
+            }
+        }
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("added", added);
+        changes.put("deleted", deleted);
+        return changes;
+    }
+
+    private static Map<String, Object> row(int id, String name, int amount) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        row.put("amount", amount);
+        row.put("created_at", "2024-01-01T10:00");
+        return row;
+    }
+
+    private static Map<String, Object> indexed(Map<String, Object> row) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("index", UUID.randomUUID().toString());
+        entry.put("object", row);
+        return entry;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CompareDataBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
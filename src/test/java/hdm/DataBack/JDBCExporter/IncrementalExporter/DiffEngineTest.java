@@ -0,0 +1,102 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Unit tests of class {@link DiffEngine}.
+ */
+public class DiffEngineTest {
+    private final DiffEngine diffEngine = new DiffEngine();
+
+    /**
+     * Rows with equal content match regardless of index, column order and integral number type.
+     */
+    @Test
+    public void testUnchangedRows() {
+        Map<String, Object> oldRow = new LinkedHashMap<>();
+        oldRow.put("id", 1);
+        oldRow.put("name", "Alice");
+        Map<String, Object> newRow = new LinkedHashMap<>();
+        newRow.put("name", "Alice");
+        newRow.put("id", 1L);
+
+        Map<String, Object> changes = diffEngine.compare(List.of(entry("a", oldRow)), List.of(entry("b", newRow)));
+
+        assertEquals(List.of(), changes.get("added"));
+        assertEquals(List.of(), changes.get("deleted"));
+    }
+
+    /**
+     * Changed rows are reported as one deletion of the old index and one addition of the new entry.
+     */
+    @Test
+    public void testChangedRow() {
+        Map<String, Object> newEntry = entry("c", Map.of("id", 2, "name", "Robert"));
+
+        Map<String, Object> changes = diffEngine.compare(
+                List.of(entry("a", Map.of("id", 1, "name", "Alice")), entry("b", Map.of("id", 2, "name", "Bob"))),
+                List.of(entry("x", Map.of("id", 1, "name", "Alice")), newEntry));
+
+        assertEquals(List.of(newEntry), changes.get("added"));
+        assertEquals(List.of("b"), changes.get("deleted"));
+    }
+
+    /**
+     * Duplicate rows are compared as a multiset.
+     */
+    @Test
+    public void testDuplicateRows() {
+        Map<String, Object> row = Map.of("name", "dup");
+
+        Map<String, Object> grown = diffEngine.compare(
+                List.of(entry("a", row), entry("b", row)),
+                List.of(entry("x", row), entry("y", row), entry("z", row)));
+        assertEquals(List.of(entry("z", row)), grown.get("added"));
+        assertEquals(List.of(), grown.get("deleted"));
+
+        Map<String, Object> shrunk = diffEngine.compare(
+                List.of(entry("a", row), entry("b", row)),
+                List.of(entry("x", row)));
+        assertEquals(List.of(), shrunk.get("added"));
+        assertEquals(1, ((List<?>) shrunk.get("deleted")).size());
+    }
+
+    /**
+     * Rows of keyed tables are matched by primary key and changed rows only carry their changed columns.
+     */
+    @Test
+    public void testPrimaryKeyUpdate() {
+        Map<String, Object> addedEntry = entry("y", Map.of("id", 3, "name", "Carol"));
+
+        Map<String, Object> changes = diffEngine.compare(
+                List.of(entry("a", Map.of("id", 1, "name", "Alice")), entry("b", Map.of("id", 2, "name", "Bob"))),
+                List.of(entry("x", Map.of("id", 1, "name", "Alicia")), addedEntry),
+                List.of("id"));
+
+        assertEquals(List.of(addedEntry), changes.get("added"));
+        assertEquals(List.of("b"), changes.get("deleted"));
+        assertEquals(List.of(Map.of("index", "a", "changes", Map.of("name", "Alicia"))), changes.get("updated"));
+    }
+
+    /**
+     * Values of different JSON types never share a fingerprint.
+     */
+    @Test
+    public void testFingerprintTypes() {
+        assertNotEquals(RowFingerprint.of(Map.of("v", 1)), RowFingerprint.of(Map.of("v", "1")));
+        assertNotEquals(RowFingerprint.of(Map.of("v", 1)), RowFingerprint.of(Map.of("v", 1.0)));
+        assertEquals(RowFingerprint.of(Map.of("v", 1)), RowFingerprint.of(Map.of("v", 1L)));
+    }
+
+    private static Map<String, Object> entry(String index, Map<String, Object> object) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("index", index);
+        entry.put("object", object);
+        return entry;
+    }
+}
@@ -0,0 +1,79 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import hdm.DataBack.JDBCExporter.FileReader;
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.RowSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link ExternalRowSorter}.
+ */
+public class ExternalRowSorterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Rows of a table without a primary key, added with the key of their normalized values, come out of the sort in
+     * the order of the rows read back, with one run and with several merged runs.
+     */
+    @Test
+    public void testSortedByReadBackValues() throws Exception {
+        for (int runSize : new int[] {ExternalRowSorter.DEFAULT_RUN_SIZE, 7}) {
+            String target = sort(new RowOrder(List.of()), runSize, 50);
+
+            assertSorted(new RowOrder(List.of()), target, 50);
+        }
+    }
+
+    /**
+     * Rows with a primary key are sorted by their key values.
+     */
+    @Test
+    public void testSortedByPrimaryKey() throws Exception {
+        RowOrder order = new RowOrder(List.of("amount"));
+        String target = sort(order, 7, 50);
+
+        assertSorted(order, target, 50);
+    }
+
+    private String sort(RowOrder order, int runSize, int rowCount) throws Exception {
+        String target = folder.getRoot().toPath().resolve("sorted.json").toString();
+        try (ExternalRowSorter sorter = new ExternalRowSorter(order, folder.newFolder().getPath(), runSize)) {
+            for (int i = rowCount; i > 0; i--) {
+                Map<String, Object> row = RowOrderTest.databaseRow(i);
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("index", "r" + i);
+                entry.put("object", row);
+                sorter.add(entry, order.keyOf(new FileWriter().normalize(row)));
+            }
+            assertEquals(rowCount, sorter.finish(target));
+        }
+        return target;
+    }
+
+    private static void assertSorted(RowOrder order, String path, int rowCount) throws IOException {
+        List<Object> keys = new ArrayList<>();
+        try (RowSource reader = new FileReader().openRowReader(path)) {
+            Map<String, Object> entry;
+            while ((entry = reader.next()) != null) {
+                keys.add(order.keyOf((Map<String, Object>) entry.get("object")));
+            }
+        }
+        assertEquals(rowCount, keys.size());
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue("row " + i + " out of order", order.compareKeys(keys.get(i - 1), keys.get(i)) < 0);
+        }
+    }
+}
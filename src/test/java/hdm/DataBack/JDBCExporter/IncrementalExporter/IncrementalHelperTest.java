@@ -0,0 +1,158 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.JsonRowWriter;
+import hdm.DataBack.JDBCExporter.MetaDataController;
+import hdm.DataBack.JDBCExporter.TableCatalog;
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of the restore plans of class {@link IncrementalHelper}, built from backups of a table with four versions.
+ */
+public class IncrementalHelperTest {
+    private static final String TABLE = "items";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BackupOptions options = new BackupOptions();
+    private final TableCatalog catalog = TableCatalog.of(Map.of(TABLE, List.of("id")));
+    private final IncrementalHelper incrementalHelper = new IncrementalHelper();
+    private final List<List<Map<String, Object>>> versions = new ArrayList<>();
+    private MetaDataController metaDataController;
+
+    @Before
+    public void openRepository() {
+        metaDataController = MetaDataController.openRepository(folder.getRoot().getPath());
+        options.setCheckpointInterval(0);
+    }
+
+    /**
+     * Without checkpoints every version is replayed from the base file.
+     */
+    @Test
+    public void testPlanWithoutCheckpoints() throws Exception {
+        backupVersions();
+
+        assertEquals(List.of(base(), incremental(2), incremental(3)), incrementalHelper.planForward(metaDataController, TABLE, 3));
+        assertEquals(List.of(base()), incrementalHelper.planForward(metaDataController, TABLE, 1));
+        assertRestored();
+    }
+
+    /**
+     * With checkpoints a version is replayed from the newest checkpoint that is not newer than it.
+     */
+    @Test
+    public void testPlanWithCheckpoints() throws Exception {
+        options.setCheckpointInterval(2);
+        backupVersions();
+        String checkpoint = metaDataController.getCheckpointFilePaths(TABLE).get(0);
+
+        assertEquals(List.of(checkpoint), incrementalHelper.planForward(metaDataController, TABLE, 3));
+        assertEquals(List.of(checkpoint, incremental(4)), incrementalHelper.planForward(metaDataController, TABLE, 4));
+        assertEquals(List.of(base(), incremental(2)), incrementalHelper.planForward(metaDataController, TABLE, 2));
+        assertEquals(List.of(checkpoint, incremental(4)), incrementalHelper.planReplay("v4", TABLE));
+        assertRestored();
+    }
+
+    /**
+     * In the reverse layout the newest version is read directly and older versions apply the backward changes
+     * of every newer version.
+     */
+    @Test
+    public void testReverseLayoutChain() throws Exception {
+        options.setLayout(BackupOptions.Layout.REVERSE);
+        assertReverseChain();
+    }
+
+    /**
+     * The reverse layout restores the same versions when the exports are diffed in merge mode.
+     */
+    @Test
+    public void testReverseLayoutChainInMergeMode() throws Exception {
+        options.setLayout(BackupOptions.Layout.REVERSE);
+        options.setDiffMode(BackupOptions.DiffMode.MERGE);
+        assertReverseChain();
+    }
+
+    private void assertReverseChain() throws Exception {
+        backupVersions();
+        String current = metaDataController.getTableCurrentFilePath(TABLE);
+
+        assertEquals(List.of(current), incrementalHelper.planBackward(metaDataController, TABLE, 4));
+        assertEquals(List.of(current, incremental(3), incremental(2)), incrementalHelper.planBackward(metaDataController, TABLE, 2));
+        assertEquals(List.of(current, incremental(3), incremental(2)), incrementalHelper.planReplay("v2", TABLE));
+        assertRestored();
+    }
+
+    /**
+     * Creates four versions: the full export, an update and an insert, a delete, and another insert.
+     */
+    private void backupVersions() throws Exception {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int id = 1; id <= 3; id++) {
+            rows.add(row(id, "item " + id));
+        }
+        backup(rows);
+        rows.set(0, row(1, "renamed"));
+        rows.add(row(4, "item 4"));
+        backup(rows);
+        rows.remove(1);
+        backup(rows);
+        rows.add(row(5, "item 5"));
+        backup(rows);
+    }
+
+    private void backup(List<Map<String, Object>> rows) throws Exception {
+        metaDataController.initLayout(options.getLayout());
+        metaDataController.updateMetaData(catalog);
+        RowIdentity identity = new RowIdentity(List.of("id"));
+        try (JsonRowWriter writer = new FileWriter().openJSONRowWriter(metaDataController.getTableFilePath(TABLE))) {
+            for (Map<String, Object> row : rows) {
+                writer.writeEntry(identity.next(row), row);
+            }
+        }
+        if (metaDataController.getCurrentVersion() > 0) {
+            new IncrementalMain(options).processTables();
+        }
+        metaDataController.save();
+        versions.add(new ArrayList<>(rows));
+    }
+
+    private void assertRestored() throws Exception {
+        for (int version = 1; version <= versions.size(); version++) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map<String, Object> entry : incrementalHelper.getBackupCurrentData("v" + version, TABLE)) {
+                rows.add((Map<String, Object>) entry.get("object"));
+            }
+            rows.sort((a, b) -> Integer.compare((Integer) a.get("id"), (Integer) b.get("id")));
+            assertEquals("v" + version, versions.get(version - 1), rows);
+        }
+    }
+
+    private String base() {
+        return metaDataController.getTableBaseFilePath(TABLE);
+    }
+
+    private String incremental(int version) {
+        return metaDataController.getIncrementalFilePath(TABLE).get(version - 2);
+    }
+
+    private static Map<String, Object> row(int id, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+}
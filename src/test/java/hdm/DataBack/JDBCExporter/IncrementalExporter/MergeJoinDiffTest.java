@@ -0,0 +1,102 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import hdm.DataBack.JDBCExporter.FileReader;
+import hdm.DataBack.JDBCExporter.FileWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of class {@link MergeJoinDiff}.
+ */
+public class MergeJoinDiffTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Two sorted exports of a table without a primary key that hold numeric, bytea, uuid and json columns only
+     * differ by the rows that really changed: unchanged rows are matched, also across merged sort runs.
+     */
+    @Test
+    public void testUnkeyedExportsWithDatabaseValues() throws Exception {
+        List<Map<String, Object>> previousRows = new ArrayList<>();
+        List<Map<String, Object>> newRows = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            previousRows.add(RowOrderTest.databaseRow(i));
+            if (i > 1) {
+                newRows.add(RowOrderTest.databaseRow(i));
+            }
+        }
+        newRows.add(RowOrderTest.databaseRow(51));
+        newRows.add(RowOrderTest.databaseRow(5));
+
+        Map<String, Object> changes = diff(new RowOrder(List.of()), previousRows, newRows);
+
+        assertEquals(1, ((List<?>) changes.get("deleted")).size());
+        assertEquals(2, ((List<?>) changes.get("added")).size());
+    }
+
+    /**
+     * Rows with a primary key are matched by key, and a changed value is reported as an update.
+     */
+    @Test
+    public void testKeyedUpdate() throws Exception {
+        List<Map<String, Object>> previousRows = new ArrayList<>();
+        List<Map<String, Object>> newRows = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            previousRows.add(RowOrderTest.databaseRow(i));
+            Map<String, Object> row = RowOrderTest.databaseRow(i);
+            if (i == 3) {
+                row.put("data", new byte[] {9});
+            }
+            newRows.add(row);
+        }
+
+        Map<String, Object> changes = diff(new RowOrder(List.of("uuid")), previousRows, newRows);
+
+        assertEquals(List.of(), changes.get("deleted"));
+        assertEquals(List.of(), changes.get("added"));
+        assertEquals(1, ((List<?>) changes.get("updated")).size());
+    }
+
+    /**
+     * Exports both row lists sorted like the exporter does and diffs them.
+     */
+    private Map<String, Object> diff(RowOrder order, List<Map<String, Object>> previousRows,
+                                     List<Map<String, Object>> newRows) throws Exception {
+        String previousPath = export(order, previousRows);
+        String newPath = export(order, newRows);
+        String changesPath = new File(folder.getRoot(), "changes.json").getPath();
+
+        new MergeJoinDiff().diff(previousPath, newPath, order, changesPath,
+                new File(folder.getRoot(), "current.json").getPath(), folder.newFolder().getPath());
+        try (JsonParser parser = new FileReader().createJSONParser(changesPath)) {
+            return parser.readValueAs(Map.class);
+        }
+    }
+
+    private String export(RowOrder order, List<Map<String, Object>> rows) throws Exception {
+        String path = folder.newFile().getPath();
+        int index = 0;
+        try (ExternalRowSorter sorter = new ExternalRowSorter(order, folder.newFolder().getPath(), 7)) {
+            for (Map<String, Object> row : rows) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("index", "r" + index++);
+                entry.put("object", row);
+                sorter.add(entry, order.keyOf(new FileWriter().normalize(row)));
+            }
+            sorter.finish(path);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,64 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link ReplayEngine}.
+ */
+public class ReplayEngineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A chain of base file and changes is replayed in order, independent of the section order inside a changes file.
+     */
+    @Test
+    public void testReplayChain() throws IOException {
+        String base = write("[{\"index\":\"1\",\"object\":{\"id\":1,\"name\":\"a\"}},{\"index\":\"2\",\"object\":{\"id\":2,\"name\":\"b\"}}]");
+        String v2 = write("{\"added\":[{\"index\":\"3\",\"object\":{\"id\":3,\"name\":\"c\"}}],\"deleted\":[\"1\"],\"updated\":[{\"index\":\"2\",\"changes\":{\"name\":\"B\"}}]}");
+        String v3 = write("{\"deleted\":[\"3\"],\"added\":[{\"index\":\"3\",\"object\":{\"id\":3,\"name\":\"C\"}}]}");
+
+        ReplayEngine replayEngine = new ReplayEngine();
+        replayEngine.load(base);
+        assertTrue(replayEngine.apply(v2));
+        assertTrue(replayEngine.apply(v3));
+
+        List<Map<String, Object>> rows = replayEngine.getRows();
+        assertEquals(2, rows.size());
+        assertEquals(Map.of("id", 2, "name", "B"), rows.get(0).get("object"));
+        assertEquals(Map.of("id", 3, "name", "C"), rows.get(1).get("object"));
+    }
+
+    /**
+     * A file with full data replaces the working set, unless only changes are applied.
+     */
+    @Test
+    public void testFullDataFile() throws IOException {
+        String base = write("[{\"index\":\"1\",\"object\":{\"id\":1}}]");
+        String full = write("[{\"index\":\"2\",\"object\":{\"id\":2}}]");
+
+        ReplayEngine replayEngine = new ReplayEngine();
+        replayEngine.load(base);
+        assertFalse(replayEngine.applyChanges(full));
+        assertEquals("1", replayEngine.getRows().get(0).get("index"));
+        assertFalse(replayEngine.apply(full));
+        assertEquals("2", replayEngine.getRows().get(0).get("index"));
+    }
+
+    private String write(String content) throws IOException {
+        File file = folder.newFile();
+        Files.writeString(file.toPath(), content);
+        return file.getPath();
+    }
+}
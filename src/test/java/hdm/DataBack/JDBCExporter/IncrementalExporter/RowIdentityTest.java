@@ -0,0 +1,87 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link RowIdentity}.
+ */
+public class RowIdentityTest {
+
+    /**
+     * A row with a primary key is identified by its key, independent of its other columns and the number type.
+     */
+    @Test
+    public void testKeyedIndex() {
+        String index = new RowIdentity(List.of("id")).next(Map.of("id", 7, "name", "Alice"));
+
+        assertEquals(index, new RowIdentity(List.of("id")).next(Map.of("id", 7L, "name", "Alicia")));
+        assertEquals(RowFingerprint.of(List.of(7)).toString(), index);
+        assertNotEquals(index, new RowIdentity(List.of("id")).next(Map.of("id", 8, "name", "Alice")));
+    }
+
+    /**
+     * Copies of a row without a primary key are numbered in the order they are exported.
+     */
+    @Test
+    public void testUnkeyedCopies() {
+        RowIdentity identity = new RowIdentity(List.of());
+        Map<String, Object> row = Map.of("name", "dup");
+        String base = RowFingerprint.of(row).toString();
+
+        assertEquals(base, identity.next(row));
+        assertEquals(base + "-2", identity.next(row));
+        assertEquals(RowFingerprint.of(Map.of("name", "other")).toString(), identity.next(Map.of("name", "other")));
+        assertEquals(base + "-3", identity.next(row));
+        assertEquals(base, RowIdentity.baseOf(base + "-3"));
+    }
+
+    /**
+     * Distinct rows never get a copy number, also after the set of seen fingerprints grew several times.
+     */
+    @Test
+    public void testDistinctRowsAcrossGrowth() {
+        RowIdentity identity = new RowIdentity(List.of());
+        for (int i = 0; i < 20000; i++) {
+            Map<String, Object> row = Map.of("id", i);
+            assertEquals(RowFingerprint.of(row).toString(), identity.next(row));
+        }
+        Map<String, Object> first = Map.of("id", 0);
+        assertEquals(RowFingerprint.of(first) + "-2", identity.next(first));
+    }
+
+    /**
+     * Fingerprints whose halves XOR to the same value are distinct entries of the set of seen rows.
+     */
+    @Test
+    public void testFingerprintsWithEqualXor() {
+        RowIdentity.FingerprintSet seen = new RowIdentity.FingerprintSet();
+
+        assertTrue(seen.add(0x1234L, 0x00ffL));
+        assertTrue(seen.add(0x12cbL, 0x0000L));
+        assertTrue(seen.add(0x0000L, 0x12cbL));
+        assertFalse(seen.add(0x1234L, 0x00ffL));
+        assertFalse(seen.add(0x0000L, 0x12cbL));
+    }
+
+    /**
+     * A taken index is replaced by the first free copy number of its fingerprint.
+     */
+    @Test
+    public void testUnique() {
+        Set<String> taken = new HashSet<>(Set.of("f", "f-2", "f-4"));
+
+        assertEquals("g", RowIdentity.unique("g", taken));
+        assertEquals("f-3", RowIdentity.unique("f-2", taken));
+        assertEquals("f-5", RowIdentity.unique("f", taken));
+    }
+}
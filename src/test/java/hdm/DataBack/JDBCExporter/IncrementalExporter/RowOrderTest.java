@@ -0,0 +1,100 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import hdm.DataBack.JDBCExporter.FileCodec;
+import hdm.DataBack.JDBCExporter.FileReader;
+import hdm.DataBack.JDBCExporter.FileWriter;
+import hdm.DataBack.JDBCExporter.RowSink;
+import hdm.DataBack.JDBCExporter.RowSource;
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.postgresql.util.PGobject;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link RowOrder}.
+ */
+public class RowOrderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetFormat() {
+        FileWriter.setCodec(FileCodec.JSON);
+        FileWriter.setTableFormat(BackupOptions.TableFormat.ROWS);
+    }
+
+    /**
+     * The key of a row without a primary key, computed on the normalized values of the database row, is the key of
+     * the row read back from a table file, in every codec and table format.
+     */
+    @Test
+    public void testKeyOfNormalizedRowMatchesReadBack() throws Exception {
+        RowOrder order = new RowOrder(List.of());
+        Map<String, Object> row = databaseRow(1);
+
+        for (FileCodec codec : FileCodec.values()) {
+            for (BackupOptions.TableFormat format : BackupOptions.TableFormat.values()) {
+                FileWriter.setCodec(codec);
+                FileWriter.setTableFormat(format);
+                assertEquals(codec + " " + format, order.keyOf(readBack(row)), order.keyOf(new FileWriter().normalize(row)));
+            }
+        }
+    }
+
+    /**
+     * Primary key values compare by their value, whatever number type they were read back as.
+     */
+    @Test
+    public void testKeyedCompareAcrossNumberTypes() {
+        RowOrder order = new RowOrder(List.of("id"));
+
+        assertEquals(0, order.compareKeys(order.keyOf(Map.of("id", new BigDecimal("2.50"))), order.keyOf(Map.of("id", 2.5))));
+        assertEquals(0, order.compareKeys(order.keyOf(Map.of("id", 7)), order.keyOf(Map.of("id", 7L))));
+        assertTrue(order.compareKeys(order.keyOf(Map.of("id", 2)), order.keyOf(Map.of("id", new BigDecimal("10")))) < 0);
+        assertTrue(order.compareKeys(order.keyOf(Map.of("id", 9.5)), order.keyOf(Map.of("id", "a"))) < 0);
+    }
+
+    /**
+     * Builds a row with the values the JDBC driver returns for numeric, real, bytea, uuid and json columns.
+     *
+     * @param id a number making the row distinct
+     * @return the row as read from the result set
+     */
+    static Map<String, Object> databaseRow(int id) throws SQLException {
+        PGobject json = new PGobject();
+        json.setType("json");
+        json.setValue("{\"n\": " + id + "}");
+        Map<String, Object> row = new HashMap<>();
+        row.put("amount", new BigDecimal(id + ".50"));
+        row.put("ratio", id + 0.1f);
+        row.put("data", new byte[] {(byte) id, 2, 3});
+        row.put("uuid", new UUID(id, id));
+        row.put("doc", json);
+        return row;
+    }
+
+    private Map<String, Object> readBack(Map<String, Object> row) throws IOException {
+        File file = folder.newFile();
+        try (RowSink writer = new FileWriter().openTableWriter(file.getPath())) {
+            writer.writeEntry("a", row);
+        }
+        try (RowSource reader = new FileReader().openRowReader(file.getPath())) {
+            return (Map<String, Object>) reader.next().get("object");
+        }
+    }
+}
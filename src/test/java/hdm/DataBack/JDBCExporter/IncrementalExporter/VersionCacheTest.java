@@ -0,0 +1,125 @@
+package hdm.DataBack.JDBCExporter.IncrementalExporter;
+
+import hdm.DataBack.JDBCExporter.RowSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests of class {@link VersionCache}.
+ */
+public class VersionCacheTest {
+    private static final String BASE = "[{\"index\":\"1\",\"object\":{\"id\":1,\"name\":\"a\"}},{\"index\":\"2\",\"object\":{\"id\":2,\"name\":\"b\"}}]";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A stored version is returned for the same chain without replaying it.
+     */
+    @Test
+    public void testCacheHit() throws IOException {
+        VersionCache cache = new VersionCache(folder.newFolder().getPath(), 1024 * 1024);
+        List<String> chain = List.of(write("base.json", BASE));
+        String chainHash = cache.chainHash(chain);
+
+        assertNull(cache.open("items", 1, chainHash));
+        cache.put("items", 1, chainHash, replay(chain));
+
+        assertEquals(replay(chain).getRows(), read(cache.open("items", 1, chainHash)));
+    }
+
+    /**
+     * A change of a file the version was built from changes the chain hash, so the stored version is not used
+     * anymore and is replaced when the version is stored again.
+     */
+    @Test
+    public void testInvalidatedByUpstreamChange() throws IOException {
+        File directory = folder.newFolder();
+        VersionCache cache = new VersionCache(directory.getPath(), 1024 * 1024);
+        String base = write("base.json", BASE);
+        String changes = write("changes.json", "{\"deleted\":[\"1\"],\"added\":[],\"updated\":[]}");
+        String oldHash = cache.chainHash(List.of(base, changes));
+        cache.put("items", 2, oldHash, replay(List.of(base, changes)));
+
+        Files.writeString(new File(changes).toPath(), "{\"deleted\":[\"2\"],\"added\":[],\"updated\":[]}");
+        new File(changes).setLastModified(System.currentTimeMillis() + 2000);
+        String newHash = cache.chainHash(List.of(base, changes));
+
+        assertNotEquals(oldHash, newHash);
+        assertNull(cache.open("items", 2, newHash));
+        cache.put("items", 2, newHash, replay(List.of(base, changes)));
+        assertNull(cache.open("items", 2, oldHash));
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(List.of(Map.of("index", "1", "object", Map.of("id", 1, "name", "a"))), read(cache.open("items", 2, newHash)));
+    }
+
+    /**
+     * The least recently used versions are evicted once the cache exceeds its size; opening a version marks it as used.
+     */
+    @Test
+    public void testEviction() throws IOException {
+        List<String> chain = List.of(write("base.json", BASE));
+        File directory = folder.newFolder();
+        VersionCache cache = new VersionCache(directory.getPath(), Long.MAX_VALUE);
+        String chainHash = cache.chainHash(chain);
+        cache.put("items", 1, chainHash, replay(chain));
+        cache.put("items", 2, chainHash, replay(chain));
+        // Alle Einträge sind gleich groß, es passen genau zwei in den Cache
+        cache = new VersionCache(directory.getPath(), 2 * directory.listFiles()[0].length());
+        age(directory, 2);
+        read(cache.open("items", 1, chainHash));
+        cache.put("items", 3, chainHash, replay(chain));
+
+        assertNotNull(read(cache.open("items", 1, chainHash)));
+        assertNull(cache.open("items", 2, chainHash));
+        assertNotNull(read(cache.open("items", 3, chainHash)));
+    }
+
+    /**
+     * Sets the access time of all entries back, so the following accesses are ordered after them.
+     */
+    private static void age(File directory, int seconds) {
+        for (File entry : directory.listFiles()) {
+            entry.setLastModified(entry.lastModified() - seconds * 1000L);
+        }
+    }
+
+    private String write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.writeString(file.toPath(), content);
+        return file.getPath();
+    }
+
+    private static ReplayEngine replay(List<String> chain) throws IOException {
+        ReplayEngine replayEngine = new ReplayEngine();
+        replayEngine.load(chain.get(0));
+        for (String path : chain.subList(1, chain.size())) {
+            replayEngine.apply(path);
+        }
+        return replayEngine;
+    }
+
+    private static List<Map<String, Object>> read(RowSource source) throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (source) {
+            Map<String, Object> entry;
+            while ((entry = source.next()) != null) {
+                rows.add(entry);
+            }
+        }
+        return rows;
+    }
+}
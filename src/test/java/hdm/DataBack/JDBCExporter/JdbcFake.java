@@ -0,0 +1,202 @@
+package hdm.DataBack.JDBCExporter;
+
+import java.lang.reflect.InvocationHandler;
+import java.math.BigDecimal;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A minimal JDBC connection for unit tests without a database, built from dynamic proxies.
+ * Every call on the connection and its statements is recorded, e.g. "setAutoCommit(false)", "commit()" or
+ * "execute(SET TRANSACTION SNAPSHOT '1')". Queries return the rows registered for a part of their text.
+ */
+public class JdbcFake {
+    private final List<String> log = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, List<Map<String, Object>>> results = new LinkedHashMap<>();
+    private final Map<String, Integer> failAfter = new LinkedHashMap<>();
+    private boolean autoCommit = true;
+    private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+
+    /**
+     * Registers the rows returned by every query containing the given text.
+     *
+     * @param queryPart a part of the query text
+     * @param rows the rows of the result, with the columns in insertion order
+     * @return this fake
+     */
+    public JdbcFake rows(String queryPart, List<Map<String, Object>> rows) {
+        results.put(queryPart, rows);
+        return this;
+    }
+
+    /**
+     * Lets reading the result of a query fail with an SQLException after a number of rows.
+     *
+     * @param queryPart a part of the query text
+     * @param rowCount the number of rows returned before the failure
+     * @return this fake
+     */
+    public JdbcFake failAfter(String queryPart, int rowCount) {
+        failAfter.put(queryPart, rowCount);
+        return this;
+    }
+
+    /**
+     * Returns the calls recorded so far.
+     *
+     * @return the calls in the order they were made
+     */
+    public List<String> getLog() {
+        synchronized (log) {
+            return new ArrayList<>(log);
+        }
+    }
+
+    /**
+     * Creates a connection backed by this fake.
+     *
+     * @return the connection
+     */
+    public Connection connection() {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            record(method.getName(), args);
+            switch (method.getName()) {
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "getTransactionIsolation":
+                    return isolation;
+                case "setTransactionIsolation":
+                    isolation = (Integer) args[0];
+                    return null;
+                case "createStatement":
+                case "prepareStatement":
+                    return statement(args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null);
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private Statement statement(String preparedQuery) {
+        Class<? extends Statement> type = preparedQuery != null ? java.sql.PreparedStatement.class : Statement.class;
+        return proxy(type, (proxy, method, args) -> {
+            record(method.getName(), args);
+            switch (method.getName()) {
+                case "executeQuery":
+                    return resultSet(args != null && args.length > 0 ? (String) args[0] : preparedQuery);
+                case "execute":
+                    return false;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private ResultSet resultSet(String query) {
+        List<Map<String, Object>> rows = List.of();
+        for (Map.Entry<String, List<Map<String, Object>>> result : results.entrySet()) {
+            if (query.contains(result.getKey())) {
+                rows = result.getValue();
+            }
+        }
+        int failure = Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> entry : failAfter.entrySet()) {
+            if (query.contains(entry.getKey())) {
+                failure = entry.getValue();
+            }
+        }
+        List<Map<String, Object>> resultRows = rows;
+        int failureRow = failure;
+        List<String> columns = rows.isEmpty() ? List.of() : new ArrayList<>(rows.get(0).keySet());
+        int[] position = {-1};
+        boolean[] lastNull = {false};
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getColumnCount" -> columns.size();
+            case "getColumnName", "getColumnLabel" -> columns.get((Integer) args[0] - 1);
+            default -> defaultValue(method.getReturnType());
+        });
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    if (position[0] + 1 >= failureRow) {
+                        throw new SQLException("Connection lost while reading " + query);
+                    }
+                    return ++position[0] < resultRows.size();
+                case "getMetaData":
+                    return metaData;
+                case "wasNull":
+                    return lastNull[0];
+                case "getArray":
+                    Object elements = resultRows.get(position[0]).get((String) args[0]);
+                    lastNull[0] = elements == null;
+                    return elements == null ? null : proxy(Array.class, (arrayProxy, arrayMethod, arrayArgs) ->
+                            arrayMethod.getName().equals("getArray") ? ((List<?>) elements).toArray() : defaultValue(arrayMethod.getReturnType()));
+                case "getObject":
+                case "getString":
+                case "getLong":
+                case "getInt":
+                case "getBoolean":
+                case "getBigDecimal":
+                    Object value = args[0] instanceof Integer
+                            ? resultRows.get(position[0]).get(columns.get((Integer) args[0] - 1))
+                            : resultRows.get(position[0]).get((String) args[0]);
+                    lastNull[0] = value == null;
+                    return switch (method.getName()) {
+                        case "getString" -> value == null ? null : value.toString();
+                        case "getLong" -> value == null ? 0L : ((Number) value).longValue();
+                        case "getInt" -> value == null ? 0 : ((Number) value).intValue();
+                        case "getBoolean" -> value != null && (Boolean) value;
+                        case "getBigDecimal" -> value == null ? null : new BigDecimal(value.toString());
+                        default -> value;
+                    };
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private void record(String name, Object[] args) {
+        String arguments = args == null ? "" : Arrays.stream(args).map(String::valueOf).collect(Collectors.joining(", "));
+        log.add(name + "(" + arguments + ")");
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(JdbcFake.class.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> type.getSimpleName() + "@fake";
+                };
+            }
+            try {
+                return handler.invoke(proxy, method, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link MappedFile}.
+ */
+public class MappedFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A stream reads across region boundaries and can be reset to a mark.
+     */
+    @Test
+    public void testReadAcrossRegions() throws IOException {
+        byte[] content = new byte[5000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        Path path = folder.newFile().toPath();
+        Files.write(path, content);
+
+        MappedFile mapped = new MappedFile(path, Files.readAttributes(path, BasicFileAttributes.class), 1024);
+        try (InputStream in = mapped.newInputStream()) {
+            assertEquals(content[0] & 0xff, in.read());
+            in.mark(0);
+            byte[] first = in.readNBytes(2000);
+            assertArrayEquals(Arrays.copyOfRange(content, 1, 2001), first);
+            in.reset();
+            assertArrayEquals(Arrays.copyOfRange(content, 1, content.length), in.readAllBytes());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /**
+     * Streams open at the same time share a mapping until the file is rewritten,
+     * and the mapping is released when its last stream is closed.
+     */
+    @Test
+    public void testSharedMapping() throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, new byte[(int) MappedFile.MIN_MAPPED_SIZE]);
+        InputStream first = MappedFile.open(path, Files.readAttributes(path, BasicFileAttributes.class));
+        MappedFile mapped = MappedFile.cached(path);
+        InputStream second = MappedFile.open(path, Files.readAttributes(path, BasicFileAttributes.class));
+        assertSame(mapped, MappedFile.cached(path));
+
+        byte[] content = new byte[(int) MappedFile.MIN_MAPPED_SIZE + 1];
+        Arrays.fill(content, (byte) 'x');
+        Path replacement = folder.newFile().toPath();
+        Files.write(replacement, content);
+        Files.move(replacement, path, StandardCopyOption.REPLACE_EXISTING);
+        try (InputStream in = new FileReader().openInputStream(path.toString())) {
+            assertNotSame(mapped, MappedFile.cached(path));
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertNull(MappedFile.cached(path));
+
+        // Die alte Abbildung bleibt für ihre Streams gültig
+        first.close();
+        assertEquals(0, second.read());
+        second.close();
+        assertNull(MappedFile.cached(path));
+    }
+
+    /**
+     * A closed stream fails instead of reading from a released mapping.
+     */
+    @Test(expected = IOException.class)
+    public void testReadAfterClose() throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, new byte[(int) MappedFile.MIN_MAPPED_SIZE]);
+        InputStream in = MappedFile.open(path, Files.readAttributes(path, BasicFileAttributes.class));
+        in.close();
+        in.read();
+    }
+
+    /**
+     * A stream closed by another thread while it is read ends with an IOException and never reads a released mapping.
+     */
+    @Test
+    public void testCloseWhileReading() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.write(path, new byte[(int) MappedFile.MIN_MAPPED_SIZE * 8]);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int attempt = 0; attempt < 20; attempt++) {
+                InputStream in = MappedFile.open(path, Files.readAttributes(path, BasicFileAttributes.class));
+                Future<Boolean> reader = executor.submit(() -> {
+                    byte[] buffer = new byte[4096];
+                    try {
+                        while (true) {
+                            if (in.read(buffer) < 0) {
+                                in.reset();
+                            }
+                        }
+                    } catch (IOException e) {
+                        return true;
+                    }
+                });
+                Thread.sleep(1);
+                in.close();
+                assertTrue(reader.get());
+                assertNull(MappedFile.cached(path));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the reuse of schema scripts by {@link MetaDataController#reuseSchemaScripts(String)}.
+ */
+public class MetaDataControllerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TableCatalog catalog = TableCatalog.of(Map.of("items", List.of("id")));
+    private MetaDataController metaDataController;
+
+    @Before
+    public void openRepository() {
+        metaDataController = MetaDataController.openRepository(folder.getRoot().getPath());
+    }
+
+    /**
+     * A version refers to the scripts of the previous version only while the fingerprint stays the same.
+     */
+    @Test
+    public void testScriptsReusedOnlyForUnchangedFingerprint() throws Exception {
+        assertFalse(backup("1:a"));
+        assertTrue(backup("1:a"));
+        assertFalse(backup("1:b"));
+        assertTrue(backup("1:b"));
+        assertTrue(backup("1:b"));
+
+        assertScripts("v1", "v2");
+        assertScripts("v3", "v4");
+        assertScripts("v3", "v5");
+        assertNotEquals(metaDataController.getTableSchemaFilePath("v1"), metaDataController.getTableSchemaFilePath("v3"));
+        assertNotEquals(metaDataController.getConstraintsFilePath("v1"), metaDataController.getConstraintsFilePath("v3"));
+    }
+
+    /**
+     * The references to earlier scripts are kept in the metadata file.
+     */
+    @Test
+    public void testReusedScriptsSurviveReopen() throws Exception {
+        backup("1:a");
+        backup("1:a");
+
+        metaDataController = MetaDataController.openRepository(folder.getRoot().getPath());
+
+        assertScripts("v1", "v2");
+        assertFalse(backup("1:b"));
+    }
+
+    private boolean backup(String fingerprint) throws Exception {
+        metaDataController.updateMetaData(catalog);
+        boolean reused = metaDataController.reuseSchemaScripts(fingerprint);
+        metaDataController.save();
+        return reused;
+    }
+
+    private void assertScripts(String original, String reused) {
+        assertEquals(metaDataController.getTableSchemaFilePath(original), metaDataController.getTableSchemaFilePath(reused));
+        assertEquals(metaDataController.getConstraintsFilePath(original), metaDataController.getConstraintsFilePath(reused));
+    }
+}
@@ -0,0 +1,132 @@
+package hdm.DataBack.JDBCExporter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ObjectExporter#exportTable(String, String)}: the streaming cursor path and its transaction handling.
+ */
+public class ObjectExporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void openRepository() throws Exception {
+        MetaDataController.openRepository(folder.newFolder("backup").getPath());
+    }
+
+    /**
+     * The table is read through a cursor with the configured fetch size inside a transaction that is committed afterwards.
+     */
+    @Test
+    public void testCursorExport() throws Exception {
+        JdbcFake database = new JdbcFake().rows("\"people\"", List.of(row(1, "Ada"), row(2, "Grace"), row(3, "Linus")));
+        File file = new File(folder.getRoot(), "people.json");
+
+        long rowCount = new ObjectExporter(database.connection(), null, fetchSize(2)).exportTable("people", file.getPath());
+
+        assertEquals(3, rowCount);
+        List<Map<String, Object>> written = new ObjectMapper().readValue(file, new TypeReference<>() {});
+        List<Object> names = new ArrayList<>();
+        for (Map<String, Object> entry : written) {
+            names.add(((Map<?, ?>) entry.get("object")).get("name"));
+        }
+        assertEquals(List.of("Ada", "Grace", "Linus"), names);
+
+        List<String> log = database.getLog();
+        assertTrue(log.contains("setFetchSize(2)"));
+        assertEquals(List.of("setAutoCommit(false)", "commit()", "setAutoCommit(true)"), transactionCalls(log));
+    }
+
+    /**
+     * A failure while streaming rolls the transaction back instead of committing it and keeps the original error.
+     */
+    @Test
+    public void testFailedExportRollsBack() throws Exception {
+        JdbcFake database = new JdbcFake().rows("\"people\"", List.of(row(1, "Ada"), row(2, "Grace"), row(3, "Linus")))
+                .failAfter("\"people\"", 2);
+        File file = new File(folder.getRoot(), "people.json");
+
+        try {
+            new ObjectExporter(database.connection(), null, fetchSize(2)).exportTable("people", file.getPath());
+            fail("The export must fail when the connection is lost");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage().startsWith("Connection lost"));
+        }
+
+        List<String> log = database.getLog();
+        assertEquals(List.of("setAutoCommit(false)", "rollback()", "setAutoCommit(true)"), transactionCalls(log));
+        assertFalse(log.contains("commit()"));
+    }
+
+    /**
+     * With watermark extraction the watermark is read in the same REPEATABLE READ transaction as the rows,
+     * and the isolation level of the connection is restored afterwards.
+     */
+    @Test
+    public void testWatermarkReadInRowSnapshot() throws Exception {
+        JdbcFake database = new JdbcFake()
+                .rows("\"people\"", List.of(row(1, "Ada"), row(2, "Grace")))
+                .rows("txid_snapshot_xmin", List.of(Map.of("txid_snapshot_xmin", "42")));
+        BackupOptions options = fetchSize(2);
+        options.setExtraction(BackupOptions.Extraction.WATERMARK);
+        File file = new File(folder.getRoot(), "people.json");
+
+        TableCatalog catalog = TableCatalog.of(Map.of("people", List.of("id")));
+        MetaDataController.getInstance().updateMetaData(catalog);
+
+        long rowCount = new ObjectExporter(database.connection(), null, options, catalog).exportTable("people", file.getPath());
+
+        assertEquals(2, rowCount);
+        assertEquals("42", MetaDataController.getInstance().getWatermark("people", WatermarkExporter.XMIN));
+        List<String> log = database.getLog();
+        int isolation = log.indexOf("setTransactionIsolation(" + Connection.TRANSACTION_REPEATABLE_READ + ")");
+        int watermark = log.indexOf("executeQuery(SELECT txid_snapshot_xmin(txid_current_snapshot())::text)");
+        int rows = log.indexOf("executeQuery(SELECT * FROM \"people\")");
+        int commit = log.indexOf("commit()");
+        assertTrue(log.indexOf("setAutoCommit(false)") < isolation);
+        assertTrue(isolation < watermark && watermark < rows && rows < commit);
+        assertEquals("setTransactionIsolation(" + Connection.TRANSACTION_READ_COMMITTED + ")", log.get(log.size() - 1));
+    }
+
+    private static BackupOptions fetchSize(int fetchSize) {
+        BackupOptions options = new BackupOptions();
+        options.setFetchSize(fetchSize);
+        return options;
+    }
+
+    private static Map<String, Object> row(int id, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+
+    private static List<String> transactionCalls(List<String> log) {
+        List<String> calls = new ArrayList<>();
+        for (String call : log) {
+            if (call.startsWith("setAutoCommit") || call.equals("commit()") || call.equals("rollback()")) {
+                calls.add(call);
+            }
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,57 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of class {@link ParallelGzipOutputStream}.
+ */
+public class ParallelGzipOutputStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Blocks compressed on several threads are written in order and read back transparently.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] data = new byte[10_500];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        File file = folder.newFile();
+        try (OutputStream out = new ParallelGzipOutputStream(Files.newOutputStream(file.toPath()), 6, 4, 1000)) {
+            out.write(data, 0, 3333);
+            out.write(data[3333]);
+            out.write(data, 3334, data.length - 3334);
+        }
+        assertEquals(0x1f, Files.readAllBytes(file.toPath())[0] & 0xff);
+
+        try (InputStream in = new FileReader().openInputStream(file.getPath())) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    /**
+     * Uncompressed files are read as they are.
+     */
+    @Test
+    public void testUncompressedFile() throws IOException {
+        File file = folder.newFile();
+        Files.writeString(file.toPath(), "[]");
+        assertEquals("[]", new FileReader().readString(file.getPath()));
+    }
+}
@@ -0,0 +1,66 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of class {@link PipelinedRowSource}.
+ */
+public class PipelinedRowSourceTest {
+
+    /**
+     * All entries are returned in source order across chunk boundaries.
+     */
+    @Test
+    public void testOrder() throws IOException {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            entries.add(Map.of("index", String.valueOf(i)));
+        }
+
+        try (RowSource rows = new PipelinedRowSource(RowSource.of(entries), 4, 2)) {
+            for (int i = 0; i < 25; i++) {
+                assertEquals(String.valueOf(i), rows.next().get("index"));
+            }
+            assertNull(rows.next());
+        }
+    }
+
+    /**
+     * An error of the reader thread is rethrown after the entries read before it.
+     */
+    @Test
+    public void testFailure() throws IOException {
+        RowSource failing = new RowSource() {
+            private int count;
+
+            @Override
+            public Map<String, Object> next() throws IOException {
+                if (count++ == 3) {
+                    throw new IOException("broken file");
+                }
+                return Map.of("index", String.valueOf(count));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try (RowSource rows = new PipelinedRowSource(failing, 2, 1)) {
+            for (int i = 0; i < 3; i++) {
+                rows.next();
+            }
+            rows.next();
+            fail("Expected the error of the reader thread");
+        } catch (IOException e) {
+            assertEquals("broken file", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static hdm.DataBack.JDBCExporter.TableCatalogTest.column;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the constraints script of {@link SchemaExporter}, built from the rows of its pg_constraint query.
+ */
+public class SchemaExporterTest {
+
+    /**
+     * Foreign key, unique and check constraints become one statement each, with all columns in key order,
+     * after the NOT NULL and primary key statements of the catalog.
+     */
+    @Test
+    public void testConstraintsScript() throws Exception {
+        JdbcFake database = new JdbcFake()
+                .rows("attnotnull", List.of(
+                        column("customers", 1, "tenant", "integer", true, null, "", 1),
+                        column("customers", 1, "id", "integer", true, null, "", 2),
+                        column("orders", 1, "id", "integer", true, null, "", 1),
+                        column("orders", 1, "tenant", "integer", false, null, "", null),
+                        column("orders", 1, "customer", "integer", false, null, "", null)))
+                .rows("pg_get_constraintdef", List.of(
+                        constraint("orders", "orders_customer_fkey", "f", List.of("tenant", "customer"), "customers", List.of("tenant", "id"), null),
+                        constraint("orders", "orders_tenant_customer_key", "u", List.of("tenant", "customer"), null, null, null),
+                        constraint("orders", "orders_id_check", "c", List.of("id"), null, null, "CHECK ((id > 0))")));
+        TableCatalog catalog = TableCatalog.load(database.connection());
+
+        String constraintsScript = new SchemaExporter(database.connection(), catalog).generateConstraintsScript();
+
+        assertEquals(List.of(
+                "ALTER TABLE \"customers\" ADD PRIMARY KEY (\"tenant\", \"id\");",
+                "ALTER TABLE \"orders\" ADD PRIMARY KEY (\"id\");",
+                "ALTER TABLE \"orders\" ADD CONSTRAINT \"orders_customer_fkey\" FOREIGN KEY (\"tenant\", \"customer\") REFERENCES \"customers\"(\"tenant\", \"id\");",
+                "ALTER TABLE \"orders\" ADD CONSTRAINT \"orders_tenant_customer_key\" UNIQUE (\"tenant\", \"customer\");",
+                "ALTER TABLE \"orders\" ADD CONSTRAINT \"orders_id_check\" CHECK ((id > 0));"),
+                List.of(constraintsScript.split("\n")));
+        assertTrue(database.getLog().stream().noneMatch(call -> call.contains("information_schema")));
+    }
+
+    private static Map<String, Object> constraint(String table, String name, String type, List<String> columns,
+                                                  String referencedTable, List<String> referencedColumns, String definition) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("table_name", table);
+        row.put("constraint_name", name);
+        row.put("contype", type);
+        row.put("columns", columns);
+        row.put("referenced_table", referencedTable);
+        row.put("referenced_columns", referencedColumns);
+        row.put("definition", definition);
+        return row;
+    }
+}
@@ -0,0 +1,81 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests of class {@link ServerDiff}.
+ */
+public class ServerDiffTest {
+    private final ServerDiff serverDiff = new ServerDiff(1000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Added copies whose index is held by a previous copy get the next free numbers; other added rows keep their index.
+     */
+    @Test
+    public void testRenumberCopies() throws IOException {
+        File previous = folder.newFile();
+        Files.writeString(previous.toPath(), "[{\"index\":\"f\",\"object\":{\"name\":\"dup\"}},"
+                + "{\"index\":\"f-2\",\"object\":{\"name\":\"dup\"}},{\"index\":\"g\",\"object\":{\"name\":\"other\"}}]");
+        List<Map<String, Object>> added = new ArrayList<>(List.of(entry("f"), entry("f-2"), entry("g"), entry("k")));
+
+        serverDiff.renumberCopies(previous.getPath(), added);
+
+        List<Object> indexes = new ArrayList<>();
+        for (Map<String, Object> entry : added) {
+            indexes.add(entry.get("index"));
+        }
+        assertEquals(List.of("f-3", "f-4", "g-2", "k"), indexes);
+    }
+
+    /**
+     * A table with a primary key is joined with the previous state on all key columns and compares rows by text form.
+     */
+    @Test
+    public void testKeyedQuery() {
+        String query = serverDiff.keyedQuery("order items", List.of("order", "line", "note\""), List.of("order", "line"));
+
+        assertEquals("""
+                SELECT p.databack_index, t.* FROM "order items" t FULL JOIN databack_previous p ON t."order" = p."order" AND t."line" = p."line"
+                WHERE p.databack_index IS NULL OR t."order" IS NULL OR ROW(t."order", t."line", t."note""\")::text IS DISTINCT FROM ROW(p."order", p."line", p."note""\")::text""",
+                query);
+    }
+
+    /**
+     * A table without a primary key is compared as a multiset of numbered row texts.
+     */
+    @Test
+    public void testMultisetQuery() {
+        String query = serverDiff.multisetQuery("logs", List.of("level", "message"));
+
+        assertEquals("""
+                WITH p AS (SELECT databack_index, ROW(databack_previous."level", databack_previous."message")::text AS databack_key, \
+                row_number() OVER (PARTITION BY ROW(databack_previous."level", databack_previous."message")::text) AS databack_number FROM databack_previous),
+                     c AS (SELECT t.*, ROW(t."level", t."message")::text AS databack_key, \
+                row_number() OVER (PARTITION BY ROW(t."level", t."message")::text) AS databack_number FROM "logs" t)
+                SELECT p.databack_index, c.* FROM c FULL JOIN p ON c.databack_key = p.databack_key AND c.databack_number = p.databack_number
+                WHERE c.databack_key IS NULL OR p.databack_key IS NULL""",
+                query);
+    }
+
+    private static Map<String, Object> entry(String index) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("index", index);
+        entry.put("object", Map.of("name", "added"));
+        return entry;
+    }
+}
@@ -0,0 +1,115 @@
+package hdm.DataBack.JDBCExporter;
+
+import hdm.DataBack.JDBCExporter.Backup.BackupOptions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the leader/worker lifecycle of {@link SnapshotConnectionPool} and the parallel export that uses it.
+ */
+public class SnapshotConnectionPoolTest {
+    private static final String SNAPSHOT_ID = "00000003-0000001B-1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void openRepository() throws Exception {
+        MetaDataController.openRepository(folder.newFolder("backup").getPath());
+    }
+
+    /**
+     * Every worker imports the leader's snapshot; closing the pool ends all transactions and restores the leader.
+     */
+    @Test
+    public void testWorkersImportLeaderSnapshot() throws Exception {
+        JdbcFake leader = leader();
+        List<JdbcFake> workers = List.of(new JdbcFake(), new JdbcFake());
+        Iterator<JdbcFake> next = workers.iterator();
+
+        try (SnapshotConnectionPool pool = new SnapshotConnectionPool(leader.connection(), () -> next.next().connection(), 2)) {
+            assertEquals(2, pool.size());
+            Connection worker = pool.borrow();
+            assertNotNull(worker);
+            pool.release(worker);
+        }
+
+        String isolation = "setTransactionIsolation(" + Connection.TRANSACTION_REPEATABLE_READ + ")";
+        assertTrue(leader.getLog().containsAll(List.of("setAutoCommit(false)", isolation, "executeQuery(SELECT pg_export_snapshot())")));
+        for (JdbcFake worker : workers) {
+            List<String> log = worker.getLog();
+            assertTrue(log.indexOf("execute(SET TRANSACTION SNAPSHOT '" + SNAPSHOT_ID + "')") > log.indexOf(isolation));
+            assertTrue(log.indexOf("setAutoCommit(false)") >= 0);
+            assertEquals(List.of("rollback()", "close()"), log.subList(log.size() - 2, log.size()));
+        }
+        List<String> leaderLog = leader.getLog();
+        assertEquals("setAutoCommit(true)", leaderLog.get(leaderLog.size() - 1));
+        assertTrue(leaderLog.contains("commit()"));
+    }
+
+    /**
+     * A worker that cannot be opened aborts the pool and closes the workers opened before it.
+     */
+    @Test
+    public void testFailedWorkerConnectionClosesPool() throws Exception {
+        JdbcFake leader = leader();
+        JdbcFake first = new JdbcFake();
+        List<JdbcFake> opened = new ArrayList<>();
+
+        try {
+            new SnapshotConnectionPool(leader.connection(), () -> {
+                if (!opened.isEmpty()) {
+                    throw new SQLException("too many connections");
+                }
+                opened.add(first);
+                return first.connection();
+            }, 2);
+            fail("The pool must not open with a missing worker");
+        } catch (SQLException e) {
+            assertEquals("too many connections", e.getMessage());
+        }
+
+        assertTrue(first.getLog().containsAll(List.of("rollback()", "close()")));
+        assertTrue(leader.getLog().contains("commit()"));
+    }
+
+    /**
+     * A table export that fails on one worker aborts the whole parallel export instead of leaving a partial backup.
+     */
+    @Test
+    public void testFailedWorkerAbortsExport() throws Exception {
+        JdbcFake leader = leader();
+        TableCatalog catalog = TableCatalog.of(Map.of("people", List.of(), "orders", List.of()));
+        JdbcFake worker = new JdbcFake()
+                .rows("\"people\"", List.of(Map.of("id", 1)))
+                .rows("\"orders\"", List.of(Map.of("id", 1)))
+                .failAfter("\"orders\"", 0);
+        MetaDataController.getInstance().updateMetaData(catalog);
+
+        try (SnapshotConnectionPool pool = new SnapshotConnectionPool(leader.connection(), worker::connection, 1)) {
+            new ObjectExporter(leader.connection(), null, new BackupOptions(), catalog).exportData(pool);
+            fail("The export must fail when a worker fails");
+        } catch (SQLException e) {
+            assertEquals("Parallel data export failed", e.getMessage());
+            assertTrue(e.getCause().getMessage().startsWith("Connection lost"));
+        }
+    }
+
+    private static JdbcFake leader() {
+        return new JdbcFake().rows("pg_export_snapshot", List.of(Map.of("pg_export_snapshot", SNAPSHOT_ID)));
+    }
+}
@@ -0,0 +1,78 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TableCatalog#load(java.sql.Connection)} and the scripts {@link SchemaExporter} generates from it.
+ */
+public class TableCatalogTest {
+    private final JdbcFake database = new JdbcFake().rows("attnotnull", List.of(
+            column("small", 1, "id", "integer", true, null, "", 1),
+            column("orders", 10, "id", "integer", true, "nextval('orders_id_seq'::regclass)", "", 2),
+            column("orders", 10, "tenant", "integer", true, null, "", 1),
+            column("orders", 10, "note", "text", false, null, "", null),
+            column("orders", 10, "line", "bigint", true, "nextval('orders_line_seq'::regclass)", "", null),
+            column("orders", 10, "code", "integer", true, null, "a", null)));
+
+    /**
+     * Columns, primary keys in key order and the flags of every column are taken from the catalog query.
+     */
+    @Test
+    public void testLoad() throws Exception {
+        TableCatalog catalog = TableCatalog.load(database.connection());
+
+        assertEquals(List.of("small", "orders"), catalog.getTableNames());
+        assertEquals(List.of("orders", "small"), catalog.getTableNamesBySize());
+        assertEquals(List.of("tenant", "id"), catalog.getPrimaryKeys("orders"));
+        assertEquals(List.of(), catalog.getPrimaryKeys("missing"));
+
+        TableCatalog.Column id = catalog.getColumn("orders", "id");
+        assertTrue(id.isSerial());
+        assertFalse(id.isNullable());
+        assertFalse(id.isIdentity());
+        assertTrue(catalog.getColumn("orders", "note").isNullable());
+        assertTrue(catalog.getColumn("orders", "line").isSerial());
+        assertTrue(catalog.getColumn("orders", "code").isIdentityAlways());
+        assertFalse(catalog.getColumn("orders", "code").isSerial());
+    }
+
+    /**
+     * The schema scripts declare serial columns as SERIAL and add NOT NULL and the primary key in key order.
+     */
+    @Test
+    public void testSchemaScripts() throws Exception {
+        TableCatalog catalog = TableCatalog.load(database.connection());
+        SchemaExporter schemaExporter = new SchemaExporter(database.connection(), catalog);
+
+        String tableScript = schemaExporter.generateTableScript();
+        String constraintsScript = schemaExporter.generateConstraintsScript();
+
+        assertTrue(tableScript.contains("\"id\" SERIAL"));
+        assertTrue(tableScript.contains("\"note\" text"));
+        assertTrue(constraintsScript.contains("ALTER TABLE \"orders\" ALTER COLUMN \"id\" SET NOT NULL;"));
+        assertFalse(constraintsScript.contains("ALTER COLUMN \"note\" SET NOT NULL"));
+        assertTrue(constraintsScript.contains("ALTER TABLE \"orders\" ADD PRIMARY KEY (\"tenant\", \"id\");"));
+    }
+
+    static Map<String, Object> column(String table, long pages, String name, String dataType, boolean notNull,
+                                      String defaultValue, String identity, Integer pkPosition) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("table_name", table);
+        row.put("relpages", pages);
+        row.put("column_name", name);
+        row.put("data_type", dataType);
+        row.put("attnotnull", notNull);
+        row.put("column_default", defaultValue);
+        row.put("attidentity", identity);
+        row.put("pk_position", pkPosition);
+        return row;
+    }
+}
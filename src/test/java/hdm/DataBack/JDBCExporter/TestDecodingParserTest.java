@@ -0,0 +1,76 @@
+package hdm.DataBack.JDBCExporter;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link TestDecodingParser}.
+ */
+public class TestDecodingParserTest {
+    private final TestDecodingParser parser = new TestDecodingParser();
+
+    /**
+     * Column values are converted by type; quotes inside strings and types with brackets are handled.
+     */
+    @Test
+    public void testInsert() {
+        TestDecodingParser.Change change = parser.parse(
+                "table public.orders: INSERT: id[integer]:7 note[text]:'it''s: [x]' total[numeric(10,2)]:9.50 "
+                        + "paid[boolean]:true tags[text[]]:'{a,b}' created[timestamp without time zone]:'2024-03-01 10:15:00' gone[text]:null");
+
+        assertEquals(TestDecodingParser.Kind.INSERT, change.getKind());
+        assertEquals(List.of("public.orders"), change.getTableNames());
+        Map<String, Object> values = change.getValues();
+        assertEquals(7L, values.get("id"));
+        assertEquals("it's: [x]", values.get("note"));
+        assertEquals(new BigDecimal("9.50"), values.get("total"));
+        assertEquals(true, values.get("paid"));
+        assertEquals("{a,b}", values.get("tags"));
+        assertEquals("2024-03-01T10:15", values.get("created"));
+        assertTrue(values.containsKey("gone"));
+        assertNull(values.get("gone"));
+    }
+
+    /**
+     * An update that changes the key carries the old key; unchanged TOAST values are marked.
+     */
+    @Test
+    public void testUpdateWithOldKey() {
+        TestDecodingParser.Change change = parser.parse(
+                "table public.\"Order Items\": UPDATE: old-key: \"Id\"[integer]:1 new-tuple: \"Id\"[integer]:2 body[text]:unchanged-toast-datum");
+
+        assertEquals(TestDecodingParser.Kind.UPDATE, change.getKind());
+        assertEquals(List.of("public.Order Items"), change.getTableNames());
+        assertEquals(Map.of("Id", 1L), change.getOldKey());
+        assertEquals(2L, change.getValues().get("Id"));
+        assertSame(KeyedChangeSet.UNCHANGED, change.getValues().get("body"));
+    }
+
+    /**
+     * Deletes carry the key, truncates list all affected tables.
+     */
+    @Test
+    public void testDeleteAndTruncate() {
+        TestDecodingParser.Change delete = parser.parse("table public.orders: DELETE: id[integer]:3");
+        assertEquals(TestDecodingParser.Kind.DELETE, delete.getKind());
+        assertEquals(Map.of("id", 3L), delete.getValues());
+
+        TestDecodingParser.Change noTuple = parser.parse("table public.logs: DELETE: (no-tuple-data)");
+        assertTrue(noTuple.getValues().isEmpty());
+
+        TestDecodingParser.Change truncate = parser.parse("table public.orders, public.items: TRUNCATE: (no-flags)");
+        assertEquals(TestDecodingParser.Kind.TRUNCATE, truncate.getKind());
+        assertEquals(List.of("public.orders", "public.items"), truncate.getTableNames());
+
+        assertEquals(TestDecodingParser.Kind.BEGIN, parser.parse("BEGIN").getKind());
+        assertEquals(TestDecodingParser.Kind.COMMIT, parser.parse("COMMIT").getKind());
+    }
+}
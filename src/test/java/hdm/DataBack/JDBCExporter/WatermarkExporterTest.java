@@ -0,0 +1,113 @@
+package hdm.DataBack.JDBCExporter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static hdm.DataBack.JDBCExporter.TableCatalogTest.column;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link WatermarkExporter}: reading the watermark and extracting the changes since a watermark.
+ */
+public class WatermarkExporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A timestamp watermark is moved back by the safety lag, other columns and xmin are read as they are.
+     */
+    @Test
+    public void testReadWatermark() throws Exception {
+        JdbcFake database = new JdbcFake().rows("attnotnull", List.of(
+                column("people", 1, "id", "integer", true, null, "", 1),
+                column("people", 1, "updated_at", "timestamp with time zone", false, null, "", null),
+                column("people", 1, "revision", "bigint", false, null, "", null)))
+                .rows("::text", List.of(Map.of("watermark", "1")));
+        TableCatalog catalog = TableCatalog.load(database.connection());
+        WatermarkExporter watermarkExporter = new WatermarkExporter(100, 300);
+
+        assertEquals("updated_at", watermarkExporter.resolveColumn(catalog, Map.of(), "people"));
+        watermarkExporter.readWatermark(database.connection(), catalog, "people", "updated_at");
+        watermarkExporter.readWatermark(database.connection(), catalog, "people", "revision");
+        watermarkExporter.readWatermark(database.connection(), catalog, "people", WatermarkExporter.XMIN);
+
+        List<String> queries = queries(database.getLog());
+        assertEquals("executeQuery(SELECT (max(\"updated_at\") - make_interval(secs => 300))::text FROM \"people\")", queries.get(1));
+        assertEquals("executeQuery(SELECT max(\"revision\")::text FROM \"people\")", queries.get(2));
+        assertEquals("executeQuery(SELECT txid_snapshot_xmin(txid_current_snapshot())::text)", queries.get(3));
+    }
+
+    /**
+     * Rows read again without a change are dropped, changed rows keep their index, new rows are added
+     * and keys missing from the key pass are deleted; the current file is rewritten from the previous state.
+     */
+    @Test
+    public void testExportChanges() throws Exception {
+        File previous = folder.newFile("people_current.json");
+        try (JsonRowWriter writer = new FileWriter().openJSONRowWriter(previous.getPath())) {
+            writer.writeEntry("a", row(1, "Ada"));
+            writer.writeEntry("b", row(2, "Grace"));
+            writer.writeEntry("c", row(3, "Linus"));
+        }
+        JdbcFake database = new JdbcFake()
+                .rows("txid_current()", List.of(Map.of("txid_current", 100L)))
+                .rows("age(xmin)", List.of(row(1, "Ada"), row(2, "Grace Hopper"), row(4, "Ken")))
+                .rows("SELECT \"id\" FROM", List.of(Map.of("id", 1), Map.of("id", 2), Map.of("id", 4)));
+        File changes = new File(folder.getRoot(), "people_v2.json");
+
+        long changedRows = new WatermarkExporter(100, 300).exportChanges(database.connection(), TableCatalog.of(Map.of("people", List.of("id"))),
+                "people", WatermarkExporter.XMIN, "90", previous.getPath(), changes.getPath(), previous.getPath());
+
+        assertEquals(3, changedRows);
+        assertTrue(database.getLog().contains("prepareStatement(SELECT * FROM \"people\" WHERE age(xmin) <= 10)"));
+        Map<String, Object> changeSet = new ObjectMapper().readValue(changes, new TypeReference<>() {});
+        assertEquals(List.of("c"), changeSet.get("deleted"));
+        assertEquals(List.of(Map.of("index", "b", "object", row(2, "Grace Hopper"))), changeSet.get("updated"));
+        assertEquals(List.of(row(4, "Ken")), objects((List<Map<String, Object>>) changeSet.get("added")));
+
+        List<Map<String, Object>> current = new ArrayList<>();
+        try (RowSource reader = new FileReader().openRowReader(previous.getPath())) {
+            Map<String, Object> entry;
+            while ((entry = reader.next()) != null) {
+                current.add(entry);
+            }
+        }
+        assertEquals(List.of(row(1, "Ada"), row(2, "Grace Hopper"), row(4, "Ken")), objects(current));
+        assertEquals(List.of("a", "b"), List.of(current.get(0).get("index"), current.get(1).get("index")));
+    }
+
+    private static List<String> queries(List<String> log) {
+        List<String> queries = new ArrayList<>();
+        for (String call : log) {
+            if (call.startsWith("executeQuery")) {
+                queries.add(call);
+            }
+        }
+        return queries;
+    }
+
+    private static List<Object> objects(List<Map<String, Object>> entries) {
+        List<Object> objects = new ArrayList<>();
+        for (Map<String, Object> entry : entries) {
+            objects.add(entry.get("object"));
+        }
+        return objects;
+    }
+
+    private static Map<String, Object> row(int id, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+}